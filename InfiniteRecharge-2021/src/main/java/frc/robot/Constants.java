@@ -75,12 +75,46 @@ public final class Constants {
      */
     public static final int
         JEVOIS_BAUD_RATE = 115200,
-        JEVOIS_RESOLUTION_X = 640;
+        JEVOIS_RESOLUTION_X = 640,
+        JEVOIS_RESOLUTION_Y = 480,
+        JEVOIS_MAX_POWER_CELLS = 16; //further power cells are left out
 
     public static final int
         JEVOIS_PORT = 3696,
         JEVOIS_BYTES = 1024;
 
+    /**
+     * Vision reactor constants
+     */
+    public static final int
+        VISION_MAX_PACKET_SIZE = 1024, //larger packets are truncated
+        VISION_SELECT_TIMEOUT_MS = 100, //how long the reactor thread waits for packets before checking for new sources
+        VISION_RECORDER_CHUNK_SIZE = 65536,
+        VISION_RECORDER_CHUNKS = 16; //about 1 MB of datagrams can wait for the disk before any are dropped
+
+    public static final String
+        VISION_LOG_DIRECTORY = "/home/lvuser/vision-logs";
+
+    /**
+     * Vision protocol v2. Packets start with the two magic bytes, which can never start a v1 text packet
+     */
+    public static final byte
+        VISION_PROTOCOL_MAGIC_0 = (byte) 0xC5,
+        VISION_PROTOCOL_MAGIC_1 = (byte) 0x56,
+        VISION_PROTOCOL_VERSION = 2;
+
+    /**
+     * Clock sync. The robot pings a responder on each coprocessor and lines their clocks up with its own from the pongs
+     */
+    public static final int
+        CLOCK_SYNC_KIWILIGHT_PORT = 3697, //robot side, next to KIWILIGHT_PORT
+        CLOCK_SYNC_JEVOIS_PORT = 3698,
+        CLOCK_SYNC_RESPONDER_PORT = 3699, //coprocessor side
+        CLOCK_SYNC_PERIOD_MS = 250,
+        CLOCK_SYNC_WINDOW = 16, //samples that the offset is picked from
+        CLOCK_SYNC_MAX_ROUND_TRIP_MS = 50, //pongs slower than this are thrown out
+        CLOCK_SYNC_TIMEOUT_MS = 3000; //without a good pong for this long, the clocks are not considered synced
+
     public static final int
         JEVOIS_SUCK_TIME = 1000;
     
@@ -185,7 +219,39 @@ public final class Constants {
      * PathVisualizer Constants
      */
     public static final int
-        SOCKET_BUFFER_SIZE = 128000;
+        SOCKET_BUFFER_SIZE = 128000,
+        PV_SELECT_TIMEOUT_MS = 5, //how long the PVHost I/O thread waits for socket activity before checking its queues
+        PV_MAX_PENDING_BYTES = 256000, //a client with more than this many unsent message bytes is considered stalled and disconnected
+        PV_MAX_CLIENTS = 4,
+        PV_CLIENT_POSITION_QUEUE_SIZE = 4, //positions queued per client before the oldest are dropped
+        PV_STATS_PERIOD_MS = 500,
+        PV_MAX_FRAME_SIZE = 16000000, //largest binary frame body the host will accept
+        PV_MAX_SUBJECT_LENGTH = 4096, //longest subject (including subject info) the host will accept
+        PV_MAX_INLINE_BODY_SIZE = 65536, //largest body the host will assemble in memory. Only SAVE bodies may be bigger, because they are streamed to disk
+        PV_POSITION_MIN_INTERVAL_MS = 20, //default for "PV Position Min Interval". Positions are never sent faster than this
+        PV_POSITION_KEEPALIVE_MS = 1000, //a position is sent at least this often, even if the robot has not moved
+        PV_DIRECTORY_INDEX_POLL_MS = 100, //how long the directory index thread waits for file changes before checking for new requests
+        PV_MAX_INDEXED_DIRECTORIES = 16; //directories watched at once. The least recently indexed one is forgotten first
+
+    public static final double
+        PV_POSITION_MIN_DISTANCE = 0.5, //default for "PV Position Min Distance". Inches the robot must move before a position is sent
+        PV_POSITION_MIN_HEADING = 1, //default for "PV Position Min Heading". Degrees the robot must turn before a position is sent
+        PV_POSITION_QUANTUM = 0.01; //resolution of delta positions. Matches the rounding of Point2D.toString()
+
+    /**
+     * First byte of every binary PathVisualizer frame. Text frames always start with START_SEQUENCE, so this tells the two apart.
+     */
+    public static final byte
+        PV_BINARY_MAGIC = (byte) 0xB7;
+
+    /**
+     * Capabilities that a PathVisualizer client may list in its HELLO.
+     */
+    public static final String
+        PV_CAPABILITY_DELTA = "delta", //client understands POSITION_DELTA messages
+        PV_CAPABILITY_PATH_STATS = "stats", //client wants path stats in DIRECTORY_REQUEST replies
+        PV_CAPABILITY_DEFLATE = "deflate", //client understands PVCompression.DEFLATE bodies. Binary framing only
+        PV_CAPABILITY_POINT_DELTA = "pointdelta"; //client understands PVCompression.POINT_DELTA bodies. Binary framing only
 
     /**
      * Message Format Constants. These should exactly match those from the PathVisualizer code.
@@ -222,6 +288,9 @@ public final class Constants {
         DISTANCE_INIT_LINE_TO_ALLIANCE_WALL = 120,
         KIWILIGHT_STABLE_DEGREES = 1, //degrees
         KIWILIGHT_STABLE_TIME = 0,
+        KIWILIGHT_MAX_FRAME_AGE_MS = 500, //frames older than this are treated as no target
+        KIWILIGHT_PIPELINE_LATENCY_MS = 30, //time from image capture to the packet arriving
+        TURRET_HISTORY_SIZE = 64, //about 1.3 seconds of turret positions at 50 Hz
         FLYWHEEL_STABLE_RPM = 5600,
         AUTO_OVERREV_EXTRA_RPM = 500,
         AUTO_INIT_YAW_TARGET = -624258,
@@ -246,6 +315,30 @@ public final class Constants {
         DRIVE_AUTO_INHIBITOR = 0.8,
         EMULATE_PATH_MAX_POINT_DISTANCE = 1;
 
+    /**
+     * KiwiLight target tracker defaults. Tunable from the dashboard.
+     */
+    public static final double
+        KIWILIGHT_TRACKER_BEARING_PROCESS_NOISE = 20000, //(deg/s^2)^2, about what the bearing sees when the robot swings it 20 degrees each way every two seconds
+        KIWILIGHT_TRACKER_BEARING_MEASUREMENT_NOISE = 0.25, //deg^2
+        KIWILIGHT_TRACKER_DISTANCE_PROCESS_NOISE = 2500, //(in/s^2)^2
+        KIWILIGHT_TRACKER_DISTANCE_MEASUREMENT_NOISE = 4, //in^2
+        KIWILIGHT_TRACKER_INNOVATION_GATE = 5; //standard deviations
+
+    /**
+     * Jevois power cell tracker defaults. Gate and coast time are tunable from the dashboard.
+     */
+    public static final int
+        JEVOIS_MAX_TRACKS = 16,
+        JEVOIS_TRACK_CONFIRM_HITS = 2; //frames a track must be seen in before it can be locked
+
+    public static final double
+        JEVOIS_TRACK_GATE_PIXELS = 80,
+        JEVOIS_TRACK_COAST_MS = 300,
+        JEVOIS_TRACK_RADIUS_WEIGHT = 2,
+        JEVOIS_TRACK_POSITION_GAIN = 0.6,
+        JEVOIS_TRACK_VELOCITY_GAIN = 0.2;
+
     /**
      * More auto values but booleans
      */
@@ -262,7 +355,26 @@ public final class Constants {
 
     public static final int
         EMULATE_POINT_SKIP_LIMIT = 5,
-        EMULATE_MAX_HEADING_TO_TURN_DIFFERENCE = 75;
+        EMULATE_MAX_HEADING_TO_TURN_DIFFERENCE = 75,
+        EMULATE_SEGMENT_GRID_MAX_CELLS = 65536;
+
+    public static final double
+        EMULATE_SEGMENT_GRID_CELL_SIZE = 12, //inches. About the spacing of recorded points times four
+        EMULATE_RELOCALIZE_MAX_DISTANCE = 72, //inches. Farther off the path than this, the robot is not re-localized
+        EMULATE_RELOCALIZE_BEHIND = 12, //inches of path behind the last closest point that the robot can be re-localized to. Tunable from the dashboard.
+        EMULATE_RELOCALIZE_AHEAD = 48; //inches of path ahead. Tunable from the dashboard.
+
+    /**
+     * Trajectory generator and follower defaults. Velocity, acceleration and heading kP are tunable from the dashboard; friction comes from "Emulate Coefficient of Friction".
+     */
+    public static final double
+        TRAJECTORY_MAX_VELOCITY = 90, //in/sec, of either wheel
+        TRAJECTORY_MAX_ACCELERATION = 120, //in/sec^2, of either wheel
+        TRAJECTORY_HEADING_KP = 2; //in/sec added to one side and taken from the other per degree the robot is off the path's heading
+
+    public static final int
+        TRAJECTORY_CURVATURE_WINDOW = 4, //points on each side averaged into the curvature at a point, to smooth out recording noise
+        TRAJECTORY_MAX_PASSES = 50; //most times the acceleration passes are repeated while they still change the speeds
 
     public static final String
         PATH_RECORD_LOCATION = "/home/lvuser/points.txt",
@@ -309,6 +421,44 @@ public final class Constants {
         GALACTIC_SEARCH_SET_A_PATH_2 = "/home/lvuser/GS1P2.txt",
         GALACTIC_SEARCH_SET_B_PATH_1 = "/home/lvuser/GS2P1.txt",
         GALACTIC_SEARCH_SET_B_PATH_2 = "/home/lvuser/GS2P2.txt";
+
+    /**
+     * Galactic Search pattern classifier. Pixel thresholds are tunable from the dashboard
+     */
+    public static final int
+        GALACTIC_SEARCH_CLOSE_Y = 300, //power cells lower in the image than this are in the near half of the field
+        GALACTIC_SEARCH_SET_A_PATH_1_MIN_X = -100, //closest power cell right of this means Set A Path 1
+        GALACTIC_SEARCH_SET_A_PATH_2_MIN_SPACING = 250, //far power cells further apart than this mean Set A Path 2
+        GALACTIC_SEARCH_VOTE_WINDOW = 30, //frames, about a second of Jevois packets
+        GALACTIC_SEARCH_MAX_FRAME_AGE_MS = 1000; //votes are thrown out if the Jevois goes quiet for this long
+
+    public static final double
+        GALACTIC_SEARCH_MIN_CONFIDENCE = 0.6;
+
+    /**
+     * Jevois camera model, for turning power cells in the image into positions on the field. Tunable from the dashboard
+     */
+    public static final double
+        JEVOIS_HORIZONTAL_FOV = 90, //degrees
+        JEVOIS_CAMERA_HEIGHT = 24, //inches from the carpet to the lens
+        JEVOIS_CAMERA_PITCH = 0, //degrees below level
+        JEVOIS_CAMERA_FORWARD_OFFSET = 12, //inches ahead of the center of the robot
+        JEVOIS_CAMERA_LEFT_OFFSET = 0, //inches left of the center of the robot
+        JEVOIS_PIXEL_ERROR = 1.5, //how far off a reported y or radius usually is, used to weigh the two ranges
+        POWER_CELL_RADIUS = 3.5; //inches
+
+    /**
+     * Galactic Search planner. Distances are in inches from where the robot starts, along the way it faces
+     */
+    public static final double
+        GALACTIC_SEARCH_END_ZONE_DISTANCE = 310, //to the end zone line
+        GALACTIC_SEARCH_END_ZONE_OVERSHOOT = 18, //emulate stops a few points early, so the path goes past the line
+        GALACTIC_SEARCH_MAX_BALL_LATERAL = 84, //power cells further to the side than this are off the field
+        GALACTIC_SEARCH_TURN_COST = 0.25, //inches of driving that one degree of turning is worth when ordering power cells
+        GALACTIC_SEARCH_MAX_PLAN_MS = 20; //one robot loop
+
+    public static final int
+        GALACTIC_SEARCH_PLAN_SAMPLES = 64; //fewest steps per leg when measuring the curve
     
     /**
      * AutoNav Challenge
@@ -325,6 +475,34 @@ public final class Constants {
         DRIVE_INTO_SHOOTING_ZONE_FILE = "/home/lvuser/sc_driveIntoShootingZone.txt",
         DRIVE_INTO_COLLECT_ZONE_FILE  = "/home/lvuser/sc_driveIntoCollectZone.txt";
 
+    /**
+     * Binary path files. The magic bytes can never start a text path
+     */
+    public static final byte
+        PATH_FILE_MAGIC_0 = (byte) 0xC5,
+        PATH_FILE_MAGIC_1 = (byte) 0x50,
+        PATH_FILE_VERSION = 1;
+
+    /**
+     * Path files that the path cache reads while the robot is disabled, so autos do not read them when they start
+     */
+    public static final String[] PRELOADED_PATHS = {
+        AUTONAV_SLALOM_FILE,
+        AUTONAV_BOUNCE_FILE,
+        AUTONAV_BARREL_FILE,
+        GALACTIC_SEARCH_SET_A_PATH_1,
+        GALACTIC_SEARCH_SET_A_PATH_2,
+        GALACTIC_SEARCH_SET_B_PATH_1,
+        GALACTIC_SEARCH_SET_B_PATH_2,
+        JUDGEMENT_AUTO_DRIVE_TO_POWER_CELLS_PATH_FILE,
+        JUDGEMENT_AUTO_DRIVE_TO_SITE_PATH_FILE,
+        JUDGEMENT_AUTO_DRIVE_BACK_TO_START_PATH_FILE,
+        TRAD_JUDGEMENT_AUTO_DRIVE_TO_POWER_CELLS_FILE,
+        TRAD_JUDGEMENT_AUTO_DRIVE_TO_SITE_FILE,
+        DRIVE_INTO_SHOOTING_ZONE_FILE,
+        DRIVE_INTO_COLLECT_ZONE_FILE
+    };
+
     /**
      * Camera Stuff
      */
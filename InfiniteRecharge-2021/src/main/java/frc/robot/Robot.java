@@ -61,6 +61,7 @@ public class Robot extends TimedRobot {
 
   @Override
   public void disabledPeriodic() {
+    robotContainer.updateDisabled();
   }
 
   /**
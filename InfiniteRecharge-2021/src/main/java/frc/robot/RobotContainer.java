@@ -7,6 +7,10 @@
 
 package frc.robot;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.GenericHID;
 import edu.wpi.first.wpilibj.Joystick;
@@ -57,11 +61,15 @@ import frc.robot.subsystems.SubsystemReceiver;
 import frc.robot.subsystems.SubsystemJevois;
 import frc.robot.subsystems.SubsystemSpinner;
 import frc.robot.subsystems.SubsystemTurret;
+import frc.robot.util.GalacticSearchClassifier;
 import frc.robot.util.Util;
 import frc.robot.util.Xbox;
 import frc.robot.util.PositionTracker;
 import frc.robot.util.Point2D;
 import frc.robot.util.PVHost;
+import frc.robot.util.PathCache;
+import frc.robot.util.VisionReactor;
+import frc.robot.util.VisionRecorder;
 
 /**
  * This class is where the bulk of the robot should be declared.  Since Command-based is a
@@ -70,6 +78,11 @@ import frc.robot.util.PVHost;
  * (including subsystems, commands, and button mappings) should be declared here.
  */
 public class RobotContainer {
+  /**
+   * Vision I/O, shared by the KiwiLight and Jevois subsystems
+   */
+  private final VisionReactor VISION_REACTOR = new VisionReactor();
+
   /**
    * Subsystems
    */
@@ -80,15 +93,17 @@ public class RobotContainer {
   private final SubsystemFlywheel  SUB_FLYWHEEL = new SubsystemFlywheel();
   private final SubsystemSpinner   SUB_SPINNER  = new SubsystemSpinner();
   private final SubsystemClimb     SUB_CLIMB    = new SubsystemClimb();
-  private final SubsystemReceiver  SUB_RECEIVER = new SubsystemReceiver();
-  private final SubsystemJevois    SUB_JEVOIS   = new SubsystemJevois();
+  private final SubsystemReceiver  SUB_RECEIVER = new SubsystemReceiver(VISION_REACTOR);
+  private final SubsystemJevois    SUB_JEVOIS   = new SubsystemJevois(VISION_REACTOR);
   // private final CameraHub          CAMERA_HUB   = new CameraHub();
 
   /**
    * Utilities
    */
-  private final PositionTracker POSITION_TRACKER     = new PositionTracker(SUB_DRIVE);
-  private final PVHost          PATH_VISUALIZER_HOST = new PVHost(Constants.PV_PORT);
+  private final PositionTracker          POSITION_TRACKER           = new PositionTracker(SUB_DRIVE);
+  private final PVHost                   PATH_VISUALIZER_HOST       = new PVHost(Constants.PV_PORT);
+  private final GalacticSearchClassifier GALACTIC_SEARCH_CLASSIFIER = new GalacticSearchClassifier(SUB_JEVOIS);
+  private final PathCache                PATH_CACHE                 = new PathCache(Constants.PRELOADED_PATHS);
 
   /**
    * Controllers
@@ -115,6 +130,8 @@ public class RobotContainer {
    */
   private IAuto currentAuto;
   private Command autoCommand;
+  private IAuto preparedAuto; //built while disabled, so startAuto() only has to schedule it
+  private AutoMode preparedMode;
 
   /**
    * Misc.
@@ -129,6 +146,8 @@ public class RobotContainer {
     configureButtonBindings();
     configureChoosers();
 
+    SUB_RECEIVER.setTurretYawSource(SUB_TURRET::getYawDegreesAt);
+
     currentAuto = new InitAuto(SUB_DRIVE, SUB_TURRET);
     autoCommand = currentAuto.getCommand();
     controllersGood = false;
@@ -141,6 +160,7 @@ public class RobotContainer {
    * Prints All Systems Go indicators,
    * Updates the drive scheme safety indicators
    * Updates the robot position indicator,
+   * Starts or stops the vision recorder
    */
   public void update() {
     POSITION_TRACKER.update();
@@ -148,6 +168,16 @@ public class RobotContainer {
     printAllSystemsGo();
     updateDriveSchemeIndicators();
     updatePositionIndicator();
+    updateVisionRecorder();
+  }
+
+  /**
+   * Updates things that should only run while the robot is disabled, like working out the Galactic Search layout.
+   */
+  public void updateDisabled() {
+    GALACTIC_SEARCH_CLASSIFIER.update();
+    prepareAuto();
+    PATH_CACHE.putStatistics();
   }
 
   /**
@@ -164,68 +194,96 @@ public class RobotContainer {
     return PATH_VISUALIZER_HOST;
   }
 
+  /**
+   * Returns the cache that keeps the auto paths read.
+   */
+  public PathCache getPathCache() {
+    return PATH_CACHE;
+  }
+
   /**
    * Schedules the autonomous command.
    */
   public void startAuto() {
+    long startTime = System.nanoTime();
     AutoMode desiredAuto = autoChooser.getSelected();
+    boolean prepared = preparedAuto != null && desiredAuto == preparedMode;
+    currentAuto = (prepared ? preparedAuto : createAuto(desiredAuto));
+    preparedAuto = null; //commands are not reused, the next disabled period builds a new auto
+    preparedMode = null;
+
+    autoCommand = currentAuto.getCommand();
+    if(autoCommand == null) {
+      DriverStation.reportError("Auto could not be started!", false);
+      return;
+    }
+
+    autoCommand.schedule();
+    SmartDashboard.putNumber("Auto Start ms", (System.nanoTime() - startTime) / 1000000.0);
+    SmartDashboard.putBoolean("Auto Prepared", prepared);
 
+    //start flywheel if necessary
+    if(currentAuto.requiresFlywheel()) {
+      if(Constants.AUTO_OVERREV_TURRET) {
+        driveFlywheelRPM.overrideRPM(Util.getAndSetDouble("FW Velocity Target", 6000) + (double) Constants.AUTO_OVERREV_EXTRA_RPM);
+      }
+
+      driveFlywheelRPM.schedule();
+    }
+  }
+  
+  /**
+   * Builds the auto selected on the chooser if it has not been built yet, so it is ready when auto starts.
+   */
+  private void prepareAuto() {
+    AutoMode desiredAuto = autoChooser.getSelected();
+    if(preparedAuto == null || desiredAuto != preparedMode) {
+      preparedAuto = createAuto(desiredAuto);
+      preparedMode = desiredAuto;
+    }
+  }
+
+  /**
+   * Creates an auto.
+   * @param desiredAuto The auto to create.
+   * @return The auto.
+   */
+  private IAuto createAuto(AutoMode desiredAuto) {
     //create the auto based on the enum
     switch(desiredAuto) {
       case INIT_ONLY:
-        currentAuto = new InitAuto(SUB_DRIVE, SUB_TURRET);
-        break;
+        return new InitAuto(SUB_DRIVE, SUB_TURRET);
       case THE_BARE_MINIMUM:
-        currentAuto = new BareMinimumAuto(SUB_DRIVE, SUB_TURRET, SUB_RECEIVER, SUB_INTAKE, SUB_FEEDER, SUB_FLYWHEEL);
-        break;
+        return new BareMinimumAuto(SUB_DRIVE, SUB_TURRET, SUB_RECEIVER, SUB_INTAKE, SUB_FEEDER, SUB_FLYWHEEL);
       case SIX_BALL_SIMPLE:
-        currentAuto = new SixBallSimpleAuto(SUB_DRIVE, SUB_TURRET, SUB_RECEIVER, SUB_INTAKE, SUB_FEEDER, SUB_FLYWHEEL);
-        break;
+        return new SixBallSimpleAuto(SUB_DRIVE, SUB_TURRET, SUB_RECEIVER, SUB_INTAKE, SUB_FEEDER, SUB_FLYWHEEL);
       case EIGHT_BALL_TRENCH:
-        currentAuto = new TrenchAuto(SUB_DRIVE, SUB_TURRET, SUB_RECEIVER, SUB_INTAKE, SUB_FEEDER, SUB_FLYWHEEL);
-        break;
+        return new TrenchAuto(SUB_DRIVE, SUB_TURRET, SUB_RECEIVER, SUB_INTAKE, SUB_FEEDER, SUB_FLYWHEEL);
       case FLEX_TIME:
-        currentAuto = new JudgementAuto(SUB_DRIVE, SUB_INTAKE, SUB_FEEDER, SUB_TURRET, SUB_FLYWHEEL, SUB_RECEIVER);
-        break;
+        return new JudgementAuto(SUB_DRIVE, SUB_INTAKE, SUB_FEEDER, SUB_TURRET, SUB_FLYWHEEL, SUB_RECEIVER);
       case FLEX_TIME_TRADIATIONAL:
-        currentAuto = new TraditionalJudgementAuto(SUB_DRIVE, SUB_TURRET, SUB_INTAKE, SUB_FEEDER, SUB_FLYWHEEL, SUB_RECEIVER);
-        break;
+        return new TraditionalJudgementAuto(SUB_DRIVE, SUB_TURRET, SUB_INTAKE, SUB_FEEDER, SUB_FLYWHEEL, SUB_RECEIVER);
       case GALACTIC_SEARCH:
-        currentAuto = new GalacticSearchAuto(SUB_DRIVE, SUB_JEVOIS, SUB_INTAKE, SUB_FEEDER);
-        break;
+        return new GalacticSearchAuto(SUB_DRIVE, SUB_JEVOIS, GALACTIC_SEARCH_CLASSIFIER, SUB_INTAKE, SUB_FEEDER, false);
+      case GALACTIC_SEARCH_PLANNED:
+        return new GalacticSearchAuto(SUB_DRIVE, SUB_JEVOIS, GALACTIC_SEARCH_CLASSIFIER, SUB_INTAKE, SUB_FEEDER, true);
       case AUTONAV_SLALOM:
-        currentAuto = new AutoNavAuto(SUB_DRIVE, Constants.AUTONAV_SLALOM_FILE);
-        break;
+        return new AutoNavAuto(SUB_DRIVE, Constants.AUTONAV_SLALOM_FILE);
       case AUTONAV_BOUNCE:
-        currentAuto = new AutoNavAuto(SUB_DRIVE, Constants.AUTONAV_BOUNCE_FILE);
-        break;
+        return new AutoNavAuto(SUB_DRIVE, Constants.AUTONAV_BOUNCE_FILE);
       case AUTONAV_BARREL:
-        currentAuto = new AutoNavAuto(SUB_DRIVE, Constants.AUTONAV_BARREL_FILE);
-        break;
+        return new AutoNavAuto(SUB_DRIVE, Constants.AUTONAV_BARREL_FILE);
       default:
-        currentAuto = new InitAuto(SUB_DRIVE, SUB_TURRET);
-        break;
-    }
-
-    autoCommand = currentAuto.getCommand();
-    autoCommand.schedule();
-
-    //start flywheel if necessary
-    if(currentAuto.requiresFlywheel()) {
-      if(Constants.AUTO_OVERREV_TURRET) {
-        driveFlywheelRPM.overrideRPM(Util.getAndSetDouble("FW Velocity Target", 6000) + (double) Constants.AUTO_OVERREV_EXTRA_RPM);
-      }
-
-      driveFlywheelRPM.schedule();
+        return new InitAuto(SUB_DRIVE, SUB_TURRET);
     }
   }
-  
+
   /**
    * Cancels the autonomous command.
    */
   public void cancelAuto() {
     if(currentAuto != null) {
-      if(autoCommand.isScheduled()) {
+      if(autoCommand != null && autoCommand.isScheduled()) {
         autoCommand.cancel();
       }
     } else {
@@ -367,6 +425,37 @@ public class RobotContainer {
     SmartDashboard.putString("Robot Position", getRobotPositionAndHeading().toString());
   }
 
+  /**
+   * Records every vision datagram to a new log while "Record Vision" is on, and posts how the recording is going.
+   */
+  private void updateVisionRecorder() {
+    boolean record = Util.getAndSetBoolean("Record Vision", false);
+    VisionRecorder recorder = VISION_REACTOR.getRecorder();
+    if(record && recorder == null) {
+      try {
+        java.nio.file.Path directory = Paths.get(Constants.VISION_LOG_DIRECTORY);
+        Files.createDirectories(directory);
+        java.nio.file.Path logFile = directory.resolve("vision-" + System.currentTimeMillis() + ".vlog");
+        recorder = new VisionRecorder(logFile);
+        VISION_REACTOR.setRecorder(recorder);
+        DriverStation.reportWarning("Recording vision to " + logFile, false);
+      } catch(IOException ex) {
+        DriverStation.reportError("Could not start the vision recorder!\n" + ex.getMessage(), false);
+        Preferences.getInstance().putBoolean("Record Vision", false); //do not try again every loop
+      }
+    } else if(!record && recorder != null) {
+      VISION_REACTOR.setRecorder(null);
+      recorder.close();
+      recorder = null;
+    }
+
+    SmartDashboard.putBoolean("Vision Recording", recorder != null);
+    if(recorder != null) {
+      SmartDashboard.putNumber("Vision Recorded", recorder.getRecorded());
+      SmartDashboard.putNumber("Vision Record Dropped", recorder.getDropped());
+    }
+  }
+
   /**
    * Use this method to define your button->command mappings.  Buttons can be created by
    * instantiating a {@link GenericHID} or one of its subclasses ({@link
@@ -453,6 +542,7 @@ public class RobotContainer {
     autoChooser.addOption("Judgement Auto", AutoMode.FLEX_TIME); 
     autoChooser.addOption("Traditional Judgement Auto", AutoMode.FLEX_TIME_TRADIATIONAL);
     autoChooser.addOption("Galactic Search", AutoMode.GALACTIC_SEARCH);
+    autoChooser.addOption("Galactic Search (Planned)", AutoMode.GALACTIC_SEARCH_PLANNED);
     autoChooser.addOption("Auto-Nav Slalom", AutoMode.AUTONAV_SLALOM);
     autoChooser.addOption("Auto-Nav Bounce", AutoMode.AUTONAV_BOUNCE);
     autoChooser.addOption("Auto-Nav Barrel", AutoMode.AUTONAV_BARREL);
@@ -7,74 +7,102 @@ package frc.robot.auto;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj2.command.Command;
 import frc.robot.Constants;
+import frc.robot.Robot;
 import frc.robot.commands.ConstantCommandDriveIntake;
 import frc.robot.commands.CyborgCommandEmulatePath;
 import frc.robot.subsystems.SubsystemDrive;
 import frc.robot.subsystems.SubsystemFeeder;
 import frc.robot.subsystems.SubsystemIntake;
+import frc.robot.enumeration.GalacticSearchPattern;
 import frc.robot.subsystems.SubsystemJevois;
+import frc.robot.util.GalacticSearchClassifier;
+import frc.robot.util.GalacticSearchPlanner;
+import frc.robot.util.Path;
+import frc.robot.util.PowerCellList;
 
 /** 
  * Does The Galactic Search Challenge. 
+ * Either drives the recorded path for the layout the classifier picked, or plans a path through the power cells the
+ * Jevois sees when auto starts. A plan that cannot be made falls back to the recorded path.
  */
 public class GalacticSearchAuto implements IAuto {
     private SubsystemDrive drivetrain;
     private SubsystemJevois jevois;
+    private GalacticSearchClassifier classifier;
     private CyborgCommandEmulatePath drivePath;
     private ConstantCommandDriveIntake driveIntake;
+    private boolean planPath;
 
     /**
      * Create a new GalacticSearchAuto.
      * @param drivetrain The drivetrain of the robot.
+     * @param jevois The Jevois, used if the classifier has not seen anything.
+     * @param classifier The classifier that has been watching the field while disabled.
+     * @param planPath True to plan a path from the power cells the Jevois sees instead of using a recorded one.
      */
-    public GalacticSearchAuto(SubsystemDrive drivetrain, SubsystemJevois jevois, SubsystemIntake intake, SubsystemFeeder feeder) {
+    public GalacticSearchAuto(SubsystemDrive drivetrain, SubsystemJevois jevois, GalacticSearchClassifier classifier, SubsystemIntake intake, SubsystemFeeder feeder, boolean planPath) {
         this.drivetrain = drivetrain;
         this.jevois = jevois;
+        this.classifier = classifier;
         this.driveIntake = new ConstantCommandDriveIntake(intake, feeder);
+        this.planPath = planPath;
     }
 
     /**
-     * Returns the command to schedule to run the auto.
+     * Returns the command to schedule to run the auto, or null if the layout on the field is not known.
      */
     public Command getCommand() {
-        // int ballsSeen = jevois.getPowerCells().size();
-        // if(ballsSeen < 2 || ballsSeen > 3) { //not valid read, error out driver station, thus not starting auto.
-        //     DriverStation.reportError("Invalid read!", true);
-        //     return null;
-        // }
-
-        int closeBalls = 0;
-        for(int i=0; i<jevois.getPowerCells().size(); i++) {
-            if(jevois.getPowerCells().get(i).getY() > 300) {
-                closeBalls++;
+        if(planPath) {
+            Path plannedPath = planPath();
+            if(plannedPath != null) {
+                drivePath = new CyborgCommandEmulatePath(drivetrain, plannedPath);
+                return drivePath.raceWith(driveIntake);
             }
         }
 
-        if(closeBalls >= 1) { // one of the front patterns
-            //for front patterns, look at the placement of the closest power cell to determine which path to run
-            int closestBallX = jevois.getPowerCells().get(0).getX();
-            if(closestBallX > -100) {
-                DriverStation.reportWarning("Set A Path 1", false);
-                drivePath = new CyborgCommandEmulatePath(drivetrain, Constants.GALACTIC_SEARCH_SET_A_PATH_1);
-            } else {
-                DriverStation.reportWarning("Set B Path 1", false);
-                drivePath = new CyborgCommandEmulatePath(drivetrain, Constants.GALACTIC_SEARCH_SET_B_PATH_1);
-            }
-        } else { //one of the back patterns. The JeVois cannot see the farthest ball because it is too small.
-            //for back patterns, look at the space between the power cells to determine which path to run
-            int distanceBetweenBalls = Math.abs(jevois.getPowerCells().get(0).getX() - jevois.getPowerCells().get(1).getX());
-            DriverStation.reportWarning("distance between balls: " + Integer.valueOf(distanceBetweenBalls).toString(), false);
-            if(distanceBetweenBalls > 250) {
-                DriverStation.reportWarning("Set A Path 2", false);
-                drivePath = new CyborgCommandEmulatePath(drivetrain, Constants.GALACTIC_SEARCH_SET_A_PATH_2);
-            } else {
-                DriverStation.reportWarning("Set B Path 2", false);
-                drivePath = new CyborgCommandEmulatePath(drivetrain, Constants.GALACTIC_SEARCH_SET_B_PATH_2);
-            }
+        //the classifier has been voting since the robot was disabled, so the answer is already there
+        GalacticSearchPattern pattern = classifier.getPattern();
+        if(pattern == null) {
+            DriverStation.reportWarning("Galactic Search classifier has no votes, using one frame.", false);
+            pattern = GalacticSearchClassifier.classify(jevois.getPowerCells());
+        } else if(!classifier.isConfident()) {
+            DriverStation.reportWarning("Galactic Search is only " + Math.round(classifier.getConfidence() * 100) + "% sure of the layout!", false);
+        }
+
+        if(pattern == null) { //not valid read, error out driver station, thus not starting auto.
+            DriverStation.reportError("Galactic Search could not tell which layout is on the field!", false);
+            return null;
         }
 
+        DriverStation.reportWarning(pattern.getName(), false);
+        drivePath = new CyborgCommandEmulatePath(drivetrain, pattern.getPathFile());
         return drivePath.raceWith(driveIntake);
-        // return null;
+    }
+
+    /**
+     * Plans a path through the power cells in the newest Jevois frame.
+     * @return The path, or null if it could not be planned.
+     */
+    private Path planPath() {
+        PowerCellList powerCells = jevois.getPowerCells();
+        if((System.nanoTime() - powerCells.getReceiveTimeNanos()) / 1000000 > Constants.GALACTIC_SEARCH_MAX_FRAME_AGE_MS) {
+            DriverStation.reportWarning("Galactic Search has no recent Jevois frame to plan with, using the recorded path.", false);
+            return null;
+        }
+
+        GalacticSearchPlanner planner = GalacticSearchPlanner.fromPreferences();
+        Path plannedPath = planner.plan(powerCells, Robot.getRobotContainer().getRobotPositionAndHeading());
+        planner.putStatistics();
+        if(plannedPath == null) {
+            DriverStation.reportWarning("Galactic Search could not plan a path (" + planner.getFailure() + "), using the recorded path.", false);
+            return null;
+        }
+
+        if(planner.getPlanMillis() > Constants.GALACTIC_SEARCH_MAX_PLAN_MS) {
+            DriverStation.reportWarning("Galactic Search planning took " + Math.round(planner.getPlanMillis()) + " ms, longer than a robot loop!", false);
+        }
+
+        return plannedPath;
     }
 
     /**
@@ -7,6 +7,7 @@
 
 package frc.robot.commands;
 
+import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.Joystick;
 import edu.wpi.first.wpilibj.GenericHID.RumbleType;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
@@ -16,6 +17,7 @@ import frc.robot.Robot;
 import frc.robot.subsystems.SubsystemReceiver;
 import frc.robot.subsystems.SubsystemTurret;
 import frc.robot.util.Util;
+import frc.robot.util.VisionFrame;
 
 public class CyborgCommandAlignTurret extends CommandBase {
   private SubsystemTurret turret;
@@ -24,13 +26,23 @@ public class CyborgCommandAlignTurret extends CommandBase {
     targetPreviouslySeen,
     endable,
     yawAligned,
-    pitchAligned;
+    pitchAligned,
+    useTracker,
+    latencyCompensation;
 
   private int offset;
 
   private long 
     lastAlignedTime,
-    alignedTime;
+    alignedTime,
+    alignStartTime;
+
+  //alignment quality, logged once per alignment
+  private double
+    initialYawError,
+    yawOvershoot;
+
+  private boolean alignmentLogged;
 
   /**
    * Creates a new CyborgCommandAlignTurret.
@@ -91,46 +103,76 @@ public class CyborgCommandAlignTurret extends CommandBase {
 
     turret.setPitchPIDF(pitchkP, pitchkI, pitchkD, pitchkF, pitchhighOutLimit, (int) pitchIZone);
 
+    //the tracker predicts the target to now, so latency compensation is only for raw frames
+    useTracker = Util.getAndSetBoolean("Align Use Tracker", true);
+    latencyCompensation = Util.getAndSetBoolean("Align Latency Compensation", true) && !useTracker;
+
     SmartDashboard.putBoolean("Aligning", true);
     targetPreviouslySeen = false;
     
     this.alignedTime = 0;
     this.lastAlignedTime = System.currentTimeMillis();
+    this.alignStartTime = 0;
+    this.initialYawError = 0;
+    this.yawOvershoot = 0;
+    this.alignmentLogged = false;
   }
 
   // Called every time the scheduler runs while the command is scheduled.
   @Override
   public void execute() {
     Joystick operator = Robot.getRobotContainer().getOperator(); //in case no target
+    VisionFrame frame = kiwilight.getLatestFrame(); //one packet for the whole loop
+    boolean targetSpotted;
+    double visionAngle;
+    double targetDistance;
+    if(useTracker) {
+      //filtered and predicted to now, so no latency compensation is needed
+      targetSpotted = kiwilight.targetTracked();
+      visionAngle = kiwilight.getTrackedHorizontalAngle();
+      targetDistance = kiwilight.getTrackedDistance();
+    } else {
+      targetSpotted = frame.isTargetSpotted(Constants.KIWILIGHT_MAX_FRAME_AGE_MS);
+      visionAngle = frame.getHorizontalAngle();
+      targetDistance = frame.getDistance();
+    }
 
-    double horizontalAngle = kiwilight.getHorizontalAngleToTarget() * -1;
+    double horizontalAngle = visionAngle * -1;
     horizontalAngle += offset;
     horizontalAngle *= Util.getAndSetDouble("Vision multiplier", 1);
 
     double horizontalPosition = turret.getYawPosition() * -1;
     double horizontalTicks = turret.getTotalYawTicks();
-    double targetDistance = kiwilight.getDistanceToTarget();
 
     //horizontal angle
-    if(kiwilight.targetSpotted()) {
+    if(targetSpotted) {
       double horizontalTicksPerDegree = horizontalTicks / (double) Constants.TURRET_YAW_DEGREES;
       double horizontalTicksToTurn = horizontalAngle * horizontalTicksPerDegree;
 
       SmartDashboard.putNumber("H Ticks To Turn", horizontalTicksToTurn);
       SmartDashboard.putNumber("Yaw Ticks To Turn", horizontalTicksToTurn);
 
-      double newTargetPosition = (turret.getYawPosition() * -1) + horizontalTicksToTurn;
+      //the angle was measured when the image was taken, so turn relative to where the turret was then
+      double referencePosition = horizontalPosition;
+      if(latencyCompensation) {
+        long captureTime = kiwilight.getCaptureTimeNanos(frame);
+        referencePosition = turret.getYawPositionAt(captureTime) * -1;
+      }
+
+      double newTargetPosition = referencePosition + horizontalTicksToTurn;
       turret.setYawPosition(newTargetPosition);
 
-      yawAligned = Math.abs(newTargetPosition - horizontalPosition) < Constants.TURRET_YAW_ALLOWABLE_ERROR;
+      double yawError = newTargetPosition - horizontalPosition;
+      yawAligned = Math.abs(yawError) < Constants.TURRET_YAW_ALLOWABLE_ERROR;
       SmartDashboard.putBoolean("Yaw Aligned", yawAligned);
+      trackOvershoot(yawError);
     } else {
       //disable motors
       turret.setYawPercentOutput(0);
     }
 
     //vertical angle
-    if(kiwilight.targetSpotted()) {
+    if(targetSpotted) {
       double newPitchPosition = turret.getPitchPosition();
       if(targetDistance > 5) {
         //use the cool parabola equation to calculate the pitch position
@@ -174,7 +216,7 @@ public class CyborgCommandAlignTurret extends CommandBase {
     }
     
     //rumble the operator controller if the target becomes spotted
-    if(!targetPreviouslySeen && kiwilight.targetSpotted()) {
+    if(!targetPreviouslySeen && targetSpotted) {
       new CyborgCommandRumble(operator, 500, RumbleType.kLeftRumble).schedule();
     }
 
@@ -185,11 +227,15 @@ public class CyborgCommandAlignTurret extends CommandBase {
       lastAlignedTime = System.currentTimeMillis();
     } else {
       alignedTime = 0;
+      lastAlignedTime = System.currentTimeMillis(); //so that the unstable time is not counted once stable again
     }
 
     SmartDashboard.putNumber("KiwiLight Aligned Time", alignedTime);
+    if(alignedTime > 250 && !alignmentLogged) {
+      logAlignment();
+    }
     
-    targetPreviouslySeen = kiwilight.targetSpotted();
+    targetPreviouslySeen = targetSpotted;
   }
 
   // Called once the command ends or is interrupted.
@@ -215,4 +261,37 @@ public class CyborgCommandAlignTurret extends CommandBase {
   private boolean stable() {
     return yawAligned && pitchAligned;
   }
+
+  /**
+   * Records how far the turret has gone past the target since the alignment started.
+   * @param yawError The current yaw error, in ticks.
+   */
+  private void trackOvershoot(double yawError) {
+    if(alignStartTime == 0) {
+      //first time the target is seen, the alignment starts now
+      alignStartTime = System.currentTimeMillis();
+      initialYawError = yawError;
+      return;
+    }
+
+    if(Math.signum(yawError) != Math.signum(initialYawError)) {
+      yawOvershoot = Math.max(yawOvershoot, Math.abs(yawError));
+    }
+  }
+
+  /**
+   * Posts and reports the time it took to become stable and the overshoot of the alignment.
+   */
+  private void logAlignment() {
+    long timeToStable = System.currentTimeMillis() - alignStartTime;
+    SmartDashboard.putNumber("Align Time To Stable", timeToStable);
+    SmartDashboard.putNumber("Align Yaw Overshoot", yawOvershoot);
+    DriverStation.reportWarning(
+      "Turret aligned in " + timeToStable + " ms with " + yawOvershoot + " ticks of overshoot" +
+      (useTracker ? " (tracked)" : (latencyCompensation ? " (latency compensated)" : "")),
+      false
+    );
+
+    alignmentLogged = true;
+  }
 }
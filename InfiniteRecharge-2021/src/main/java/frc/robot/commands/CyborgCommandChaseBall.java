@@ -14,6 +14,7 @@ import frc.robot.subsystems.SubsystemDrive;
 import frc.robot.subsystems.SubsystemFeeder;
 import frc.robot.subsystems.SubsystemIntake;
 import frc.robot.subsystems.SubsystemJevois;
+import frc.robot.util.PowerCellTracker;
 import frc.robot.util.Util;
 
 public class CyborgCommandChaseBall extends CommandBase {
@@ -22,6 +23,7 @@ public class CyborgCommandChaseBall extends CommandBase {
   private SubsystemIntake intake;
   private SubsystemFeeder feeder;
   private PIDController headingController;
+  private PowerCellTracker tracker;
   private boolean ballSpottedBefore;
 
   /** Creates a new CyborgCommandChaseBall. */
@@ -30,6 +32,7 @@ public class CyborgCommandChaseBall extends CommandBase {
     this.jevois = jevois;
     this.intake = intake;
     this.feeder = feeder;
+    this.tracker = jevois.getTracker();
     addRequirements(this.drivetrain);
   }
 
@@ -42,6 +45,7 @@ public class CyborgCommandChaseBall extends CommandBase {
     headingController = new PIDController(headingP, headingI, headingD);
     headingController.setSetpoint(0);
 
+    tracker.releaseLock();
     ballSpottedBefore = false;
 
     drivetrain.setRamps(Util.getAndSetDouble("Chase Ramp", 1));
@@ -55,10 +59,15 @@ public class CyborgCommandChaseBall extends CommandBase {
       leftPower = basePower,
       rightPower = basePower;
 
-    boolean spotted = jevois.ballSpotted();
+    //stay on one ball, even through frames where it is hidden or another ball looks closer.
+    //a new ball is only picked the loop after the last one is lost, so that losing it still runs the intake
+    boolean spotted = tracker.hasLockedTarget();
+    if(!spotted && !ballSpottedBefore) {
+      spotted = tracker.lockClosest() >= 0;
+    }
     if(spotted) {
       //calcuate power needed for heading correction
-      int headingChange = getAngleFromImagePosition(jevois.getHorizontalPosition());
+      int headingChange = getAngleFromImagePosition((int) tracker.getLockedX(System.nanoTime()));
       headingChange += Util.getAndSetDouble("Chase Offset", 10);
 
       double headingCorrection = headingController.calculate(headingChange);
@@ -69,7 +78,7 @@ public class CyborgCommandChaseBall extends CommandBase {
       rightPower = basePower - headingCorrection;
 
       SmartDashboard.putNumber("Chase Heading Correction", headingCorrection);
-    } else if(ballSpottedBefore) {
+    } else if(ballSpottedBefore) { //the locked ball has been gone for the whole coast time, so it is in the intake
       ConstantCommandDriveIntake driveIntake = new ConstantCommandDriveIntake(intake, feeder);
       CyborgCommandWait wait = new CyborgCommandWait(Constants.JEVOIS_SUCK_TIME);
       Command suck = driveIntake.raceWith(wait);
@@ -88,6 +97,7 @@ public class CyborgCommandChaseBall extends CommandBase {
     drivetrain.setLeftPercentOutput(0);
     drivetrain.setRightPercentOutput(0);
     drivetrain.setRamps();
+    tracker.releaseLock();
   }
 
   // Returns true when the command should end.
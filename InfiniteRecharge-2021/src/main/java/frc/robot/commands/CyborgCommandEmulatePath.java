@@ -5,10 +5,12 @@
 package frc.robot.commands;
 
 import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.CommandBase;
 import frc.robot.Constants;
 import frc.robot.Robot;
 import frc.robot.subsystems.SubsystemDrive;
+import frc.robot.util.CompiledPath;
 import frc.robot.util.PathRecorder;
 import frc.robot.util.Point2D;
 import frc.robot.util.Util;
@@ -17,10 +19,27 @@ import frc.robot.util.Path;
 public class CyborgCommandEmulatePath extends CommandBase {
   private SubsystemDrive drivetrain;
   private Path path;
+  private CompiledPath compiledPath;
+  private int
+    immediatePathSize,
+    pointsToSkip;
+  private double
+    positionalCorrectionDistance,
+    positionalCorrectionInhibitor,
+    overturn,
+    maxSpeed,
+    minSpeed,
+    straightSpeed,
+    coefficientOfFriction,
+    relocalizeBehind,
+    relocalizeAhead;
+  private boolean relocalize;
   private int currentPointIndex;
+  private double progressLength; //distance along the path of the spot closest to the robot, as of the last loop
   private boolean isForwards;
   private String pointsFilePath;
   private PathRecorder recorder;
+  private long startTime;
 
   /** Creates a new CyborgCommandEmulatePath. */
   public CyborgCommandEmulatePath(SubsystemDrive drivetrain, String filePath) {
@@ -35,18 +54,50 @@ public class CyborgCommandEmulatePath extends CommandBase {
     this(drivetrain, Constants.PATH_RECORD_LOCATION);
   }
 
+  /**
+   * Creates a new CyborgCommandEmulatePath that drives a path that is already in memory, like one planned when auto starts.
+   * @param drivetrain The drivetrain of the robot.
+   * @param path The path to drive.
+   */
+  public CyborgCommandEmulatePath(SubsystemDrive drivetrain, Path path) {
+    this(drivetrain, (String) null);
+    this.path = path;
+  }
+
   // Called when the command is initially scheduled.
   @Override
   public void initialize() {
     currentPointIndex = 1;
+    progressLength = 0;
+    startTime = System.nanoTime();
     recorder.init();
 
-    path = new Path(pointsFilePath);
-    if(!path.isValid()) {
+    if(pointsFilePath != null) {
+      path = Robot.getRobotContainer().getPathCache().get(pointsFilePath); //already read while disabled, unless the file changed
+    }
+
+    if(path == null || !path.isValid() || path.getPointCount() < 3) {
       DriverStation.reportError("CyborgCommandEmulatePath: Error parsing path! Will not emulate!", false);
+      compiledPath = null;
       return;
     }
 
+    compiledPath = path.compile(); //already compiled if it came from the path cache
+
+    //read once here instead of every loop
+    immediatePathSize             = Math.max((int) Util.getAndSetDouble("Emulate Immediate Path Size", 5), 1);
+    pointsToSkip                  = (int) Util.getAndSetDouble("Emulate Points to skip", 2);
+    positionalCorrectionDistance  = Util.getAndSetDouble("Emulate Positional Correction Distance", 24);
+    positionalCorrectionInhibitor = Util.getAndSetDouble("Emulate Positional Correction Inhibitor", 1);
+    overturn                      = Util.getAndSetDouble("Emulate Overturn", 1.2);
+    maxSpeed                      = Util.getAndSetDouble("Emulate Max Speed", 90);
+    minSpeed                      = Util.getAndSetDouble("Emulate Min Speed", 50);
+    straightSpeed                 = Util.getAndSetDouble("Emulate Straight Speed", 40); //when the points ahead make no turn at all
+    coefficientOfFriction         = Util.getAndSetDouble("Emulate Coefficient of Friction", 1); //defaults to the approximate CoF of rubber on concrete. No Unit.
+    relocalize                    = Util.getAndSetBoolean("Emulate Relocalize", true);
+    relocalizeBehind              = Util.getAndSetDouble("Emulate Relocalize Behind", Constants.EMULATE_RELOCALIZE_BEHIND);
+    relocalizeAhead               = Util.getAndSetDouble("Emulate Relocalize Ahead", Constants.EMULATE_RELOCALIZE_AHEAD);
+
     //update the PID Constants for heading.
     double 
       kP           = Util.getAndSetDouble("Drive Velocity kP", 0.0004),
@@ -60,29 +111,49 @@ public class CyborgCommandEmulatePath extends CommandBase {
     //drivetrain closed loop ramp
     drivetrain.setPIDRamp(Util.getAndSetDouble("Drive PID Ramp", 0.5));
     drivetrain.setPIDConstants(kP, kI, kD, kF, izone, outLimitLow, outLimitHigh);
-    isForwards = new Point2D(0, 0, 0).getHeadingTo(path.getPoints()[1]) < 90;
+    isForwards = compiledPath.getHeadingFrom(0, 0, 1) < 90;
   }
 
   // Called every time the scheduler runs while the command is scheduled.
   @Override
   public void execute() {
+    if(compiledPath == null) {
+      return; //path could not be read, isFinished() ends the command
+    }
+
     Point2D currentLocation = Robot.getRobotContainer().getRobotPositionAndHeading();
-    Point2D[] points = path.getPoints();
     recorder.recordPoint(currentLocation);
 
     if(!drivetrain.getNavXConnected()) {
       DriverStation.reportError("NAVX NOT CONNECTED! EMUALTE WILL NOT WORK!", true);
     }
 
+    double robotX = currentLocation.getX();
+    double robotY = currentLocation.getY();
+    double robotHeading = currentLocation.getHeading();
+    int pointCount = compiledPath.getPointCount();
+
+    //re-localize onto the closest spot on the path near where the robot was last loop, so that being bumped or cutting a corner does not lose the robot's place.
+    //only the part of the path around the last spot is searched, so paths that cross themselves do not send the robot to the wrong pass.
+    boolean relocalized = false;
+    if(relocalize) {
+      double closestLength = compiledPath.findClosestLength(robotX, robotY, progressLength - relocalizeBehind, progressLength + relocalizeAhead, Constants.EMULATE_RELOCALIZE_MAX_DISTANCE);
+      if(!Double.isNaN(closestLength)) {
+        progressLength = closestLength;
+        currentPointIndex = compiledPath.getSegmentAtLength(closestLength) + 1; //the point after the closest spot is the next one to reach
+        relocalized = true;
+      }
+    }
+
     //resolve the point that the robot is currently at and where we want to aim
-    if(currentPointIndex < points.length - 1) {
-      double currentDirection = forwardsify(currentLocation.getHeading());
+    if(currentPointIndex < pointCount - 1) {
+      double currentDirection = forwardsify(robotHeading);
       for(int limit=0; limit<Constants.EMULATE_POINT_SKIP_LIMIT; limit++) {
         //get the angle that the root needs to turn to acheive the point
-        double headingToNext = Math.abs(Util.getAngleToHeading(currentDirection, currentLocation.getHeadingTo(points[currentPointIndex])));
+        double headingToNext = Math.abs(Util.getAngleToHeading(currentDirection, compiledPath.getHeadingFrom(robotX, robotY, currentPointIndex)));
 
         //get a path that consists of future points. If they are straight, 
-        if(currentPointIndex < points.length - 1 && headingToNext >= 75) {
+        if(currentPointIndex < pointCount - 1 && headingToNext >= 75) {
           currentPointIndex++;
         } else {
           break;
@@ -90,44 +161,46 @@ public class CyborgCommandEmulatePath extends CommandBase {
       }
     }
 
-    currentPointIndex = (currentPointIndex > points.length - 2 ? points.length - 2 : currentPointIndex);
-    Point2D currentDestination = points[currentPointIndex + 1];
+    currentPointIndex = (currentPointIndex > pointCount - 2 ? pointCount - 2 : currentPointIndex);
+    if(!relocalized) {
+      progressLength = Math.max(progressLength, compiledPath.getLengthAt(currentPointIndex - 1)); //too far off the path to re-localize, so keep the search with the heading tests
+    }
 
     //figure out if we need to drive forwards or backwards to acheive the point
-    double headingToNextPoint = currentLocation.getHeadingTo(currentDestination);
-    double headingDifference = Util.getAngleToHeading(currentLocation.getHeading(), headingToNextPoint); 
+    double headingToNextPoint = compiledPath.getHeadingFrom(robotX, robotY, currentPointIndex + 1);
+    double headingDifference = Util.getAngleToHeading(robotHeading, headingToNextPoint); 
     this.isForwards = Math.abs(headingDifference) < 90;
 
-    //Resolve the path of points that are immediately ahead of the robot. This array will include the robot's location as the first point.
-    int immediatePathSize = (int) Util.getAndSetDouble("Emulate Immediate Path Size", 5);
-    int pointsToSkip = (int) Util.getAndSetDouble("Emulate Points to skip", 2);
-    Point2D[] nextPoints = getNextNPoints(points, currentPointIndex + pointsToSkip, immediatePathSize);
-    Point2D[] immediatePath = new Point2D[nextPoints.length + 1];
+    //Resolve the path of points that are immediately ahead of the robot: the robot's location, then points start through end of the path.
+    int start = Math.min(currentPointIndex + pointsToSkip, pointCount - 1);
+    int end = Math.min(start + immediatePathSize, pointCount) - 1;
 
-    //set first point to robot location, but the heading must be forwards trajectory.
-    immediatePath[0] = new Point2D(currentLocation.getX(), currentLocation.getY(), forwardsify(currentLocation.getHeading()));
-    for(int i=1; i<immediatePath.length; i++) {
-      immediatePath[i] = nextPoints[i - 1];
-    }
-    
     //get an "arc" that closely fits the path. The arc will be used to calculate the left and right velocities.
-    double immediateDistance = getDistanceOfPath(immediatePath); //unit: in
-    double immediateTurn = getTurnOfPath(immediatePath); //unit: degrees
-    double headingChange = Util.getAngleToHeading(immediatePath[1].getHeading(), immediatePath[immediatePath.length - 1].getHeading());
+    //the robot's heading must be its forwards trajectory. Past the first point, the distance and turn come straight from the compiled path.
+    double headingToStart = compiledPath.getHeadingFrom(robotX, robotY, start);
+    double immediateDistance = compiledPath.getDistanceFrom(robotX, robotY, start) + compiledPath.getLengthBetween(start, end); //unit: in
+    double immediateTurn = Util.getAngleToHeading(forwardsify(robotHeading), headingToStart); //unit: degrees
+    if(end > start) {
+      immediateTurn += Util.getAngleToHeading(headingToStart, compiledPath.getSegmentHeading(start));
+      immediateTurn += compiledPath.getTurnBetween(start + 1, end - 1);
+    }
+
+    double headingChange = Util.getAngleToHeading(compiledPath.getHeading(start), compiledPath.getHeading(end));
 
     //figure out if the robot should switch directions (forward to backward or vice versa) without changing heading.
     double turnToHeadingDifference = Math.abs(Util.getAngleToHeading(headingChange, immediateTurn));
     boolean shouldZeroTurn = turnToHeadingDifference > Constants.EMULATE_MAX_HEADING_TO_TURN_DIFFERENCE;    
 
     //add positional correction to heading by aiming for 2 points ahead of us
-    Point2D targetPoint = points[currentPointIndex + 2];
-    if(currentLocation.getDistanceFrom(targetPoint) > Util.getAndSetDouble("Emulate Positional Correction Distance", 24)) {
-      double positionalCorrection = Util.getAngleToHeading(forwardsify(currentLocation.getHeading()), currentLocation.getHeadingTo(targetPoint));
-      positionalCorrection *= currentLocation.getDistanceFrom(targetPoint) * Util.getAndSetDouble("Emulate Positional Correction Inhibitor", 1);
+    int targetIndex = Math.min(currentPointIndex + 2, pointCount - 1);
+    double distanceToTarget = compiledPath.getDistanceFrom(robotX, robotY, targetIndex);
+    if(distanceToTarget > positionalCorrectionDistance) {
+      double positionalCorrection = Util.getAngleToHeading(forwardsify(robotHeading), compiledPath.getHeadingFrom(robotX, robotY, targetIndex));
+      positionalCorrection *= distanceToTarget * positionalCorrectionInhibitor;
       immediateTurn += positionalCorrection;
     }
     
-    immediateTurn *= Util.getAndSetDouble("Emulate Overturn", 1.2);
+    immediateTurn *= overturn;
 
     //We found that the algorithm calculates a backwards turn to be half as much as a fowards turn, so we correct that here. When the season is over, we will find the actual reason that this happens.
     if(!isForwards) {
@@ -173,7 +246,7 @@ public class CyborgCommandEmulatePath extends CommandBase {
       drivetrain.setLeftVelocity(leftVelocity);
       drivetrain.setRightVelocity(rightVelocity);
     } else {
-      double baseVelocity = Util.getAndSetDouble("Emulate Max Speed", 40);
+      double baseVelocity = straightSpeed;
       if(!isForwards) {
         baseVelocity *= -1;
       }
@@ -191,9 +264,10 @@ public class CyborgCommandEmulatePath extends CommandBase {
     drivetrain.setRightPercentOutput(0);
     recorder.recordPoint(Robot.getRobotContainer().getRobotPositionAndHeading());
     recorder.closeFile();
+    SmartDashboard.putNumber("Emulate Driven Time", (System.nanoTime() - startTime) / 1000000000.0); //to compare with "Trajectory Driven Time"
 
     //report path to PathVisualizer
-    if(!pointsFilePath.equals(Constants.PATH_RECORD_LOCATION)) {
+    if(path != null && !Constants.PATH_RECORD_LOCATION.equals(pointsFilePath)) {
       //send target path to PathVisualizer if it is not the default points.txt (If it is the default path then it would already be in Visualizer right now because record)
       Robot.getRobotContainer().getPVHost().sendPath(path, "Desired Path");
     }
@@ -205,42 +279,9 @@ public class CyborgCommandEmulatePath extends CommandBase {
   // Returns true when the command should end.
   @Override
   public boolean isFinished() {
-    return currentPointIndex >= path.getPoints().length - Util.getAndSetDouble("Emulate Points to skip", 2) - 2; //command will finish when the last point is acheived.
+    return compiledPath == null || currentPointIndex >= compiledPath.getPointCount() - pointsToSkip - 2; //command will finish when the last point is acheived.
   }
 
-  /**
-   * Returns an "n" long array of points, starting at start.
-   * @param baseArray The array to create a sub-array from.
-   * @param start     The index to start the sub-array from.
-   * @param n         The length of the sub-array.
-   * @return An "n" long array of Point2D objects. May be shorter if forbidden indices exist (start + n > length).
-   */
-  private Point2D[] getNextNPoints(Point2D[] baseArray, int start, int n) {
-    int end = start + n;
-    end = (end > baseArray.length ? baseArray.length : end);
-
-    Point2D[] points = new Point2D[end - start];
-    for(int i=start; i<end; i++) {
-      points[i - start] = baseArray[i];
-    }
-
-    return points;
-  }
-
-  /**
-   * Returns the sum of the distance between all points of a path.
-   * @param path An array of points representing the path.
-   * @return The approximate distance of the path.
-   */
-  private double getDistanceOfPath(Point2D[] path) {
-    double distance = 0;
-    for(int i=0; i<path.length - 1; i++) {
-      distance += path[i].getDistanceFrom(path[i + 1]);
-    }
-
-    return distance;
-  }
-  
   /**
    * Converts a velocity in inches/sec to RPM.
    * @param ips A velocity in inches/sec
@@ -262,25 +303,6 @@ public class CyborgCommandEmulatePath extends CommandBase {
     return (velocitySetpoint > 1132 ? velocitySetpoint += (velocitySetpoint - 40) * 0.4 : velocitySetpoint); //1132 RPM ~= 45 in/sec TODO review this. The velocitySetpoint - 40 part may be wrong but its working as of right now
   }
 
-  /**
-   * Returns the average turn of a path.
-   * @param path An array of points representing the path.
-   * @return The average turn of the path in degrees.
-   */
-  private double getTurnOfPath(Point2D[] path) {
-    double turn = 0;
-    double lastHeading = path[0].getHeading();
-    for(int i=1; i<path.length; i++) {
-      double headingToPoint = path[i - 1].getHeadingTo(path[i]);
-      double correctionToPoint = Util.getAngleToHeading(lastHeading, headingToPoint);
-
-      turn += correctionToPoint;
-      lastHeading = headingToPoint;
-    }
-
-    return turn;
-  }
-  
   /**
    * Returns an angle corresponding to the direction that the robot is travelling in
    * @param angle Original angle.
@@ -296,14 +318,11 @@ public class CyborgCommandEmulatePath extends CommandBase {
    * @return The best speed for the turn in in/sec
    */
   private double calculateBestTangentialSpeed(double turnRadius) {
-    double maxSpeed = Util.getAndSetDouble("Emulate Max Speed", 90);
-    double minSpeed = Util.getAndSetDouble("Emulate Min Speed", 50);
     if(Double.isNaN(turnRadius)) {
       return maxSpeed;
     }
 
     //gather needed variables (coefficient of friction, normal force, and mass) and convert to SI units.
-    double coefficientOfFriction = Util.getAndSetDouble("Emulate Coefficient of Friction", 1); //defaults to the approximate CoF of rubber on concrete. No Unit.
     double normalForce = Util.poundForceToNewtons(Constants.ROBOT_WEIGHT_POUND_FORCE); //unit: N. There is no extra downwards force on the robot so Fn == Fg
     double robotMass   = Util.weightLBFToMassKG(Constants.ROBOT_WEIGHT_POUND_FORCE); //unit: kg
     double radius      = Math.abs(Util.inchesToMeters(turnRadius)); //unit: m. We can absolute value it because we dont care about the direction of the arc.
@@ -0,0 +1,232 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.commands;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.Constants;
+import frc.robot.Robot;
+import frc.robot.subsystems.SubsystemDrive;
+import frc.robot.util.CompiledPath;
+import frc.robot.util.Path;
+import frc.robot.util.PathRecorder;
+import frc.robot.util.Point2D;
+import frc.robot.util.TrajectoryGenerator;
+import frc.robot.util.TrajectorySegment;
+import frc.robot.util.Util;
+
+/**
+ * Drives a path by playing back a trajectory made by TrajectoryGenerator. The trajectory is made when the command is
+ * created (while disabled, when the auto is prepared) and made again when the auto starts only if the path file or the
+ * trajectory preferences changed since. Each loop the command looks up the segment for the time since it started, blends
+ * its wheel velocities with the segment before or after so they change smoothly, and turns the robot back towards the
+ * heading the path had there if it has drifted off it.
+ * Not on the auto chooser yet: with both wheels kept under the max velocity and acceleration, the trajectory is still
+ * slower than CyborgCommandEmulatePath, whose outside wheel goes well over them in turns.
+ */
+public class CyborgCommandFollowTrajectory extends CommandBase {
+  private SubsystemDrive drivetrain;
+  private String pointsFilePath;
+  private PathRecorder recorder;
+  private Path path;
+  private CompiledPath compiledPath;
+  private TrajectoryGenerator generator;
+  private TrajectorySegment[] trajectory;
+  private double[] segmentEndTimes; //seconds since the start that each segment ends at
+  private int currentSegment;
+  private long startTime;
+  private double headingCorrection; //in/sec added to one side and taken from the other per degree off the path's heading
+
+  /**
+   * Creates a new CyborgCommandFollowTrajectory.
+   * @param drivetrain The drivetrain of the robot.
+   * @param filePath The path file to drive.
+   */
+  public CyborgCommandFollowTrajectory(SubsystemDrive drivetrain, String filePath) {
+    this.drivetrain = drivetrain;
+    this.pointsFilePath = filePath;
+    this.recorder = new PathRecorder(Constants.EMULATE_RESULTS_FILE_PATH);
+    this.trajectory = new TrajectorySegment[0];
+    this.segmentEndTimes = new double[0];
+
+    if(Robot.getRobotContainer() != null) {
+      prepareTrajectory();
+    }
+
+    addRequirements(drivetrain);
+  }
+
+  // Called when the command is initially scheduled.
+  @Override
+  public void initialize() {
+    prepareTrajectory();
+    recorder.init();
+    currentSegment = 0;
+
+    //update the PID Constants for velocity.
+    double
+      kP           = Util.getAndSetDouble("Drive Velocity kP", 0.0004),
+      kI           = Util.getAndSetDouble("Drive Velocity kI", 0),
+      kD           = Util.getAndSetDouble("Drive Velocity kD", 0),
+      kF           = Util.getAndSetDouble("Drive Velocity kF", 0),
+      izone        = Util.getAndSetDouble("Drive Velocity IZone", 0),
+      outLimitLow  = Util.getAndSetDouble("Drive Velocity Out Limit Low", -1),
+      outLimitHigh = Util.getAndSetDouble("Drive Velocity Out Limit High", 1);
+
+    drivetrain.setPIDRamp(Util.getAndSetDouble("Drive PID Ramp", 0.5));
+    drivetrain.setPIDConstants(kP, kI, kD, kF, izone, outLimitLow, outLimitHigh);
+    headingCorrection = Util.getAndSetDouble("Trajectory Heading kP", Constants.TRAJECTORY_HEADING_KP);
+    startTime = System.nanoTime();
+  }
+
+  // Called every time the scheduler runs while the command is scheduled.
+  @Override
+  public void execute() {
+    Point2D currentLocation = Robot.getRobotContainer().getRobotPositionAndHeading();
+    recorder.recordPoint(currentLocation);
+    if(trajectory.length == 0) {
+      return; //path could not be read, isFinished() ends the command
+    }
+
+    //segments only ever move forward with time, so this is usually one comparison
+    double time = getTimeSinceStart();
+    while(currentSegment < trajectory.length - 1 && segmentEndTimes[currentSegment] <= time) {
+      currentSegment++;
+    }
+
+    double leftVelocity = getVelocityAt(time, true);
+    double rightVelocity = getVelocityAt(time, false);
+
+    //the heading the path had at this time, between the headings at the ends of the segment
+    double segmentTime = trajectory[currentSegment].getTime();
+    double fraction = (segmentTime > 0 ? Math.max(0, Math.min(1, 1 - (segmentEndTimes[currentSegment] - time) / segmentTime)) : 1);
+    double startHeading = compiledPath.getHeading(currentSegment);
+    double desiredHeading = startHeading + fraction * Util.getAngleToHeading(startHeading, compiledPath.getHeading(currentSegment + 1));
+
+    //same direction as the turns in the trajectory: positive speeds up the right wheels, forwards or backwards
+    double headingError = Util.getAngleToHeading(currentLocation.getHeading(), desiredHeading);
+    leftVelocity -= headingError * headingCorrection;
+    rightVelocity += headingError * headingCorrection;
+    SmartDashboard.putNumber("Trajectory Heading Error", headingError);
+
+    drivetrain.setLeftVelocity(curveVelocity(IPStoRPM(leftVelocity)));
+    drivetrain.setRightVelocity(curveVelocity(IPStoRPM(rightVelocity)));
+  }
+
+  // Called once the command ends or is interrupted.
+  @Override
+  public void end(boolean interrupted) {
+    drivetrain.setLeftPercentOutput(0);
+    drivetrain.setRightPercentOutput(0);
+    recorder.recordPoint(Robot.getRobotContainer().getRobotPositionAndHeading());
+    recorder.closeFile();
+    SmartDashboard.putNumber("Trajectory Driven Time", getTimeSinceStart());
+
+    //report path to PathVisualizer
+    if(path != null && !Constants.PATH_RECORD_LOCATION.equals(pointsFilePath)) {
+      Robot.getRobotContainer().getPVHost().sendPath(path, "Desired Path");
+    }
+
+    Path drivenPath = new Path(Constants.EMULATE_RESULTS_FILE_PATH);
+    Robot.getRobotContainer().getPVHost().sendPath(drivenPath, "Driven Path");
+  }
+
+  // Returns true when the command should end.
+  @Override
+  public boolean isFinished() {
+    return trajectory.length == 0 || getTimeSinceStart() >= segmentEndTimes[segmentEndTimes.length - 1];
+  }
+
+  /**
+   * Generates the trajectory, unless the path and the generator preferences are the same as the last time it was generated.
+   */
+  private void prepareTrajectory() {
+    Path cachedPath = Robot.getRobotContainer().getPathCache().get(pointsFilePath); //already read while disabled, unless the file changed
+    TrajectoryGenerator currentGenerator = TrajectoryGenerator.fromPreferences();
+    if(cachedPath == path && currentGenerator.equals(generator)) {
+      return;
+    }
+
+    path = cachedPath;
+    generator = currentGenerator;
+    if(path == null || !path.isValid()) {
+      DriverStation.reportError("CyborgCommandFollowTrajectory: Error parsing path! Will not follow!", false);
+      compiledPath = null;
+      trajectory = new TrajectorySegment[0];
+      segmentEndTimes = new double[0];
+      return;
+    }
+
+    long generateStart = System.nanoTime();
+    compiledPath = path.compile();
+    trajectory = generator.generate(compiledPath);
+    segmentEndTimes = new double[trajectory.length];
+    double time = 0;
+    for(int i=0; i<trajectory.length; i++) {
+      time += trajectory[i].getTime();
+      segmentEndTimes[i] = time;
+    }
+
+    SmartDashboard.putNumber("Trajectory Generate ms", (System.nanoTime() - generateStart) / 1000000.0);
+    SmartDashboard.putNumber("Trajectory Planned Time", time);
+  }
+
+  /**
+   * Returns a wheel velocity at a time. A segment's velocity is its average, so it is used at the middle of the segment
+   * and blended with the segment before or after it on either side. The robot is stopped at the start and the end.
+   * @param time Seconds since the start, in the current segment.
+   * @param left True for the left wheels, false for the right.
+   * @return The velocity in inches/sec.
+   */
+  private double getVelocityAt(double time, boolean left) {
+    TrajectorySegment segment = trajectory[currentSegment];
+    double middle = segmentEndTimes[currentSegment] - segment.getTime() / 2;
+    double velocity = (left ? segment.getLeftVelocity() : segment.getRightVelocity());
+
+    double otherTime, otherVelocity;
+    if(time < middle) {
+      TrajectorySegment before = (currentSegment > 0 ? trajectory[currentSegment - 1] : null);
+      otherTime = (before == null ? 0 : segmentEndTimes[currentSegment - 1] - before.getTime() / 2);
+      otherVelocity = (before == null ? 0 : (left ? before.getLeftVelocity() : before.getRightVelocity()));
+    } else {
+      TrajectorySegment after = (currentSegment < trajectory.length - 1 ? trajectory[currentSegment + 1] : null);
+      otherTime = (after == null ? segmentEndTimes[currentSegment] : segmentEndTimes[currentSegment + 1] - after.getTime() / 2);
+      otherVelocity = (after == null ? 0 : (left ? after.getLeftVelocity() : after.getRightVelocity()));
+    }
+
+    if(otherTime == middle) {
+      return velocity;
+    }
+
+    double fraction = Math.max(0, Math.min(1, (time - middle) / (otherTime - middle)));
+    return velocity + fraction * (otherVelocity - velocity);
+  }
+
+  /**
+   * Returns the time since the command started in seconds.
+   */
+  private double getTimeSinceStart() {
+    return (System.nanoTime() - startTime) / 1000000000.0;
+  }
+
+  /**
+   * Converts a velocity in inches/sec to RPM.
+   * @param ips A velocity in inches/sec
+   * @return A velocity in RPM that corresponds to the velocity in ips.
+   */
+  private double IPStoRPM(double ips) {
+    return ips * Constants.DRIVE_ROTATIONS_PER_INCH * 60; //rotations per second to rotations per minute
+  }
+
+  /**
+   * Increases a velocity setpoint the same way CyborgCommandEmulatePath does, so one set of PID constants works for both.
+   * @param velocitySetpoint The original velocity setpoint in RPM
+   * @return The curved velocity setpoint in RPM
+   */
+  private double curveVelocity(double velocitySetpoint) {
+    return (velocitySetpoint > 1132 ? velocitySetpoint + (velocitySetpoint - 40) * 0.4 : velocitySetpoint);
+  }
+}
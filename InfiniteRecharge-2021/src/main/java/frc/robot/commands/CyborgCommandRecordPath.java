@@ -40,8 +40,10 @@ public class CyborgCommandRecordPath extends CommandBase {
   @Override
   public void end(boolean interrupted) {
     recorder.closeFile();
-    Path newlyRecordedPath = new Path(Constants.PATH_RECORD_LOCATION);
-    Robot.getRobotContainer().getPVHost().sendPath(newlyRecordedPath, "Recorded Path");
+    Path newlyRecordedPath = Robot.getRobotContainer().getPathCache().get(Constants.PATH_RECORD_LOCATION); //also ready for the next emulate
+    if(newlyRecordedPath != null) {
+      Robot.getRobotContainer().getPVHost().sendPath(newlyRecordedPath, "Recorded Path");
+    }
   }
 
   // Returns true when the command should end.
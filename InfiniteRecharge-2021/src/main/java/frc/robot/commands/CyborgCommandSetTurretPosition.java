@@ -13,6 +13,7 @@ import frc.robot.Constants;
 import frc.robot.subsystems.SubsystemReceiver;
 import frc.robot.subsystems.SubsystemTurret;
 import frc.robot.util.Util;
+import frc.robot.util.VisionFrame;
 
 public class CyborgCommandSetTurretPosition extends CommandBase {
   private SubsystemTurret turret;
@@ -98,9 +99,10 @@ public class CyborgCommandSetTurretPosition extends CommandBase {
     boolean pitchStable = pitchError <= Constants.TURRET_PITCH_ALLOWABLE_ERROR;
 
     if(cancelable && kiwilight != null) {
+      VisionFrame frame = kiwilight.getLatestFrame(); //both angles from the same packet
       if(
-        kiwilight.getHorizontalAngleToTarget() < Constants.KIWILIGHT_SOFT_ALIGN_DEGREES &&
-        kiwilight.getVerticalAngleToTarget() < Constants.KIWILIGHT_SOFT_ALIGN_DEGREES
+        frame.getHorizontalAngle() < Constants.KIWILIGHT_SOFT_ALIGN_DEGREES &&
+        frame.getVerticalAngle() < Constants.KIWILIGHT_SOFT_ALIGN_DEGREES
       ) {
         DriverStation.reportWarning("SetTurretPosition overridden", false);
         return true;
@@ -18,6 +18,7 @@ public enum AutoMode {
     FLEX_TIME,
     FLEX_TIME_TRADIATIONAL,
     GALACTIC_SEARCH,
+    GALACTIC_SEARCH_PLANNED,
     AUTONAV_SLALOM,
     AUTONAV_BOUNCE,
     AUTONAV_BARREL
@@ -0,0 +1,33 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.enumeration;
+
+import frc.robot.Constants;
+
+/** 
+ * The four Galactic Search layouts, and the path that collects each one.
+ */
+public enum GalacticSearchPattern {
+    SET_A_PATH_1("Set A Path 1", Constants.GALACTIC_SEARCH_SET_A_PATH_1),
+    SET_A_PATH_2("Set A Path 2", Constants.GALACTIC_SEARCH_SET_A_PATH_2),
+    SET_B_PATH_1("Set B Path 1", Constants.GALACTIC_SEARCH_SET_B_PATH_1),
+    SET_B_PATH_2("Set B Path 2", Constants.GALACTIC_SEARCH_SET_B_PATH_2);
+
+    private String name;
+    private String pathFile;
+
+    GalacticSearchPattern(String name, String pathFile) {
+        this.name = name;
+        this.pathFile = pathFile;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getPathFile() {
+        return pathFile;
+    }
+}
@@ -4,72 +4,94 @@
 
 package frc.robot.subsystems;
 
-import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.SocketException;
-import java.util.ArrayList;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
 
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants;
-import frc.robot.util.PowerCell;
+import frc.robot.util.ClockSync;
+import frc.robot.util.PowerCellList;
+import frc.robot.util.PowerCellTracker;
+import frc.robot.util.Util;
+import frc.robot.util.VisionProtocol;
+import frc.robot.util.VisionReactor;
+import frc.robot.util.VisionSource;
+import frc.robot.util.VisionStreamStats;
 
 public class SubsystemJevois extends SubsystemBase {
-  private DatagramSocket jevois;
-  private ArrayList<PowerCell> powerCells;
-  private int powerCellsSpotted;
-  private String lastCompletedMessage;
-  private long lastUpdatedTime;
-
-  /** Creates a new SubsystemJevois. */
-  public SubsystemJevois() {
-    powerCells = new ArrayList<PowerCell>();
+  private VisionSource jevois;
+  private VisionStreamStats streamStats;
+  private ClockSync clockSync;
+
+  //double buffered: readers copy buffers[publishCount & 1] while the reactor thread fills the other one
+  private final PowerCellList[] buffers;
+  private volatile long publishCount;
+  private volatile int
+    powerCellsSpotted,
+    closestX;
+
+  private int textIndex; //reactor thread only, where parseNumber() is in a v1 packet
+
+  //robot thread only
+  private PowerCellList latestPowerCells;
+  private PowerCellTracker tracker;
+  private volatile long lastUpdatedTime;
+
+  /**
+   * Creates a new SubsystemJevois.
+   * @param reactor The reactor to receive Jevois packets on.
+   */
+  public SubsystemJevois(VisionReactor reactor) {
+    buffers = new PowerCellList[] { new PowerCellList(), new PowerCellList() };
+    publishCount = 0;
     powerCellsSpotted = 0;
-    lastCompletedMessage = "No Message!";
+    closestX = 0;
+    textIndex = 0;
+    latestPowerCells = new PowerCellList();
+    tracker = new PowerCellTracker();
     lastUpdatedTime = 0;
 
-    try {
-      jevois = new DatagramSocket(Constants.JEVOIS_PORT);
-
-      //run serial and parsing code in a separate thread
-      new Thread(
-        () -> {
-          while(true) {
-            try {
-              DatagramPacket packet = new DatagramPacket(new byte[Constants.JEVOIS_BYTES], Constants.JEVOIS_BYTES);
-              jevois.receive(packet);
-              String incomingData = new String(packet.getData());
-              lastUpdatedTime = System.currentTimeMillis();
-              update(incomingData);
-            } catch(IOException ex) {
-              DriverStation.reportError("Subsystem Jevois IOException", false);
-            }
-          }
-        }
-      ).start();
-    } catch(SocketException ex) {
-      DriverStation.reportError("Socket Exception", true);
-      DriverStation.reportError(ex.getMessage(), false);
-    }
+    streamStats = new VisionStreamStats("Jevois");
+    jevois = reactor.register("Jevois", Constants.JEVOIS_PORT, this::handlePacket);
+    clockSync = new ClockSync("Jevois", reactor, Constants.CLOCK_SYNC_JEVOIS_PORT, jevois);
+    streamStats.setClockSync(clockSync);
   }
 
   @Override
   public void periodic() {
-    SmartDashboard.putString("Jevois Data", lastCompletedMessage);
-    SmartDashboard.putNumber("Power cells spotted", powerCellsSpotted);
     SmartDashboard.putBoolean("Jevois Updated", updated());
 
-    //list y-coordinates of power cells in increasing order
-    String powerCellsString = "";
-    for(int i=0; i<powerCells.size(); i++) {
-      powerCellsString += powerCells.get(i).toString();
-      if(i < powerCells.size() - 1) {
-        powerCellsString += ", ";
-      }
+    tracker.setTuning(
+      Util.getAndSetDouble("Jevois Track Gate px", Constants.JEVOIS_TRACK_GATE_PIXELS),
+      Util.getAndSetDouble("Jevois Coast ms", Constants.JEVOIS_TRACK_COAST_MS),
+      Constants.JEVOIS_TRACK_RADIUS_WEIGHT,
+      Constants.JEVOIS_TRACK_POSITION_GAIN,
+      Constants.JEVOIS_TRACK_VELOCITY_GAIN
+    );
+
+    //list power cells from closest to furthest, only building the string when there is something new to show
+    long lastSequence = latestPowerCells.getSequence();
+    getPowerCells(latestPowerCells);
+    if(latestPowerCells.getSequence() != lastSequence) {
+      tracker.update(latestPowerCells);
+      SmartDashboard.putNumber("Power cells spotted", latestPowerCells.size());
+      SmartDashboard.putString("Power Cells", latestPowerCells.toString());
     }
-    SmartDashboard.putString("Power Cells", powerCellsString);
+
+    tracker.prune(System.nanoTime());
+    SmartDashboard.putNumber("Jevois Tracks", tracker.getTrackCount());
+    SmartDashboard.putNumber("Jevois Locked ID", tracker.getLockedId());
+    SmartDashboard.putBoolean("Jevois Locked Visible", tracker.isLockedTargetVisible());
+    SmartDashboard.putNumber("Jevois Locks Lost", tracker.getLocksLost());
+
+    if(jevois != null) {
+      jevois.putStatistics();
+    }
+    streamStats.putStatistics();
+    clockSync.update();
+    clockSync.putStatistics();
   }
 
   /**
@@ -84,19 +106,60 @@ public class SubsystemJevois extends SubsystemBase {
    * Returns the x-coordinate of the closest ball.
    * A return value of 0 indicates that the ball is exactly in the center of the screen,
    * a negative value indicates that the ball is left of center, and a positive value indicates 
-   * that the ball is right of center.
+   * that the ball is right of center. Also 0 if no ball is spotted.
    * @return The x coordinate of the closeset ball in pixels.
    */
   public int getHorizontalPosition() {
-    return powerCells.get(0).getX();
+    return closestX;
   }
 
   /**
-   * Returns an array of PowerCells that are listed in order of closest to furthest.
+   * Copies the power cells from the newest packet, listed in order of closest to furthest. Creates no objects,
+   * so callers that read the power cells every loop should keep one PowerCellList and pass it in each time.
+   * Every power cell in the copy came from the same packet, no matter what the reactor thread is doing.
+   * @param snapshot The list to copy into.
+   */
+  public void getPowerCells(PowerCellList snapshot) {
+    while(true) {
+      long count = publishCount;
+      snapshot.copyFrom(buffers[(int) (count & 1)]);
+      VarHandle.loadLoadFence();
+      if(publishCount == count) {
+        return; //nothing was published while copying, so the reactor thread never touched this buffer
+      }
+    }
+  }
+
+  /**
+   * Returns the tracker that follows power cells across frames. Updated in periodic(), so it must only be used
+   * from the robot thread. Lock a track with it to keep following the same ball.
+   */
+  public PowerCellTracker getTracker() {
+    return tracker;
+  }
+
+  /**
+   * Returns a copy of the power cells from the newest packet, listed in order of closest to furthest.
    * @return Some PowerCells.
    */
-  public ArrayList<PowerCell> getPowerCells() {
-    return powerCells;
+  public PowerCellList getPowerCells() {
+    PowerCellList snapshot = new PowerCellList();
+    getPowerCells(snapshot);
+    return snapshot;
+  }
+
+  /**
+   * Returns the loss, reordering and latency statistics of v2 Jevois packets.
+   */
+  public VisionStreamStats getStreamStats() {
+    return streamStats;
+  }
+
+  /**
+   * Returns the clock sync that lines the Jevois' clock up with the robot's.
+   */
+  public ClockSync getClockSync() {
+    return clockSync;
   }
 
   /**
@@ -108,68 +171,175 @@ public class SubsystemJevois extends SubsystemBase {
   }
 
   /**
-   * Parses incoming data into PowerCells.
-   * @param segments Formatted segments of data.
+   * Parses a Jevois packet. Called on the reactor thread.
+   * Accepts both the v1 text format and v2 binary packets.
+   * @param packet The packet.
+   * @param receiveTime System.nanoTime() when the packet was received.
+   * @return True if the packet was parsed, false if it was malformed.
    */
-  private void parseData(String[] segments) {
-    ArrayList<PowerCell> powerCellsList = new ArrayList<PowerCell>();
-    for(String segment : segments) {
-      if(!segment.isEmpty()) {
-        segment = segment.substring(segment.indexOf("[") + 1);
+  private boolean handlePacket(ByteBuffer packet, long receiveTime) {
+    lastUpdatedTime = System.currentTimeMillis();
+    if(VisionProtocol.isVersion2(packet)) {
+      return parseVersion2Packet(packet, receiveTime);
+    }
 
-        String[] data = segment.split(",");
-        try {
-          int x = (int) Double.parseDouble(data[0]);
-          int y = (int) Double.parseDouble(data[1]);
-          int radius = (int) Double.parseDouble(data[2]);
+    return parseText(packet.array(), packet.limit(), receiveTime);
+  }
 
-          int centeredX = x - (Constants.JEVOIS_RESOLUTION_X / 2);
+  /**
+   * Returns the buffer that is not being read, emptied and ready to fill. Called on the reactor thread.
+   */
+  private PowerCellList beginWrite() {
+    VarHandle.storeStoreFence(); //readers must see the last publish before any change to the buffer it retired
+    PowerCellList back = buffers[(int) ((publishCount + 1) & 1)];
+    back.clear();
+    return back;
+  }
 
-          //create a PowerCell and put it into the list
-          PowerCell newPowerCell = new PowerCell(centeredX, y, radius);
+  /**
+   * Makes a filled buffer the one readers copy from. Called on the reactor thread.
+   * @param back The buffer from beginWrite().
+   * @param receiveTime System.nanoTime() when the packet was received.
+   */
+  private void publish(PowerCellList back, long receiveTime) {
+    long count = publishCount + 1;
+    back.setSource(count, receiveTime);
+    closestX = (back.isEmpty() ? 0 : back.getX(0));
+    powerCellsSpotted = back.size();
+    publishCount = count;
+  }
 
-          if(powerCellsList.size() == 0 || powerCellsList.get(0).getY() < newPowerCell.getY()) {
-            powerCellsList.add(0, newPowerCell);
-            continue;
-          }
+  /**
+   * Parses a v1 text packet in place, without creating any objects.
+   * The packet is a list of power cells like [x,y,radius][x,y,radius]; with x measured from the left of the image.
+   * A power cell that cannot be parsed is reported and left out, and the rest are still used.
+   * @param packet The buffer holding the packet.
+   * @param length The number of bytes in the packet.
+   * @param receiveTime System.nanoTime() when the packet was received.
+   * @return True if every power cell was parsed, false otherwise.
+   */
+  private boolean parseText(byte[] packet, int length, long receiveTime) {
+    int end = 0;
+    while(end < length && packet[end] != ';') {
+      end++;
+    }
+
+    if(end >= length) {
+      return false;
+    }
 
-          //do insertion sort
-          boolean inserted = false;
-          for(int i=1; i<powerCellsList.size(); i++) {
-            if(powerCellsList.get(i - 1).getY() >= newPowerCell.getY() && powerCellsList.get(i).getY() <= newPowerCell.getY()) {
-              powerCellsList.add(i, newPowerCell);
-              inserted = true;
-              break;
-            }
-          }
+    PowerCellList back = beginWrite();
+    boolean parsed = true;
+    int segmentStart = 0;
+    while(segmentStart < end) {
+      int segmentEnd = segmentStart;
+      while(segmentEnd < end && packet[segmentEnd] != ']') {
+        segmentEnd++;
+      }
 
-          if(!inserted) {
-            powerCellsList.add(newPowerCell);
-          }
+      if(segmentEnd >= end && segmentStart == 0) {
+        break; //no power cells
+      }
 
-        } catch(NumberFormatException ex) {
-          DriverStation.reportError("SubsystemJevois could not parse data!", true);
+      if(segmentEnd > segmentStart) {
+        textIndex = segmentStart;
+        while(textIndex < segmentEnd && packet[textIndex] != '[') {
+          textIndex++;
+        }
+        textIndex = (textIndex < segmentEnd ? textIndex + 1 : segmentStart);
+
+        int x = parseNumber(packet, segmentEnd);
+        int y = (textIndex < segmentEnd && packet[textIndex++] == ',' ? parseNumber(packet, segmentEnd) : Integer.MIN_VALUE);
+        int radius = (textIndex < segmentEnd && packet[textIndex++] == ',' ? parseNumber(packet, segmentEnd) : Integer.MIN_VALUE);
+        if(x == Integer.MIN_VALUE || y == Integer.MIN_VALUE || radius == Integer.MIN_VALUE || (textIndex < segmentEnd && packet[textIndex] != ',')) {
+          DriverStation.reportError("SubsystemJevois could not parse data!", false);
+          parsed = false;
+        } else {
+          back.add(x - (Constants.JEVOIS_RESOLUTION_X / 2), y, radius);
         }
-      } 
+      }
+
+      segmentStart = segmentEnd + 1;
     }
 
-    powerCellsSpotted = powerCellsList.size();
-    powerCells = powerCellsList;
+    publish(back, receiveTime);
+    return parsed;
   }
 
   /**
-   * Updates powerCells based on the incoming data from the jevois
-   * @param incoming The most recent data on the jevois buffer.
+   * Reads a number from a v1 packet, starting at textIndex and leaving textIndex after it.
+   * Decimals are truncated, like casting to an int.
+   * @param packet The buffer holding the packet.
+   * @param end Where the number must end by.
+   * @return The number, or Integer.MIN_VALUE if there is no number.
    */
-  private void update(String incoming) {
-    incoming = incoming.substring(0, incoming.indexOf(";"));
-    
-    if(incoming.contains("]")) {
-      String[] segments = incoming.split("]");
-      parseData(segments);
-    } else {
-      powerCellsSpotted = 0;
-    }    
+  private int parseNumber(byte[] packet, int end) {
+    while(textIndex < end && (packet[textIndex] & 0xFF) <= ' ') {
+      textIndex++;
+    }
+
+    boolean negative = false;
+    if(textIndex < end && (packet[textIndex] == '-' || packet[textIndex] == '+')) {
+      negative = packet[textIndex] == '-';
+      textIndex++;
+    }
+
+    int value = 0;
+    int digits = 0;
+    boolean fraction = false;
+    for(; textIndex < end; textIndex++) {
+      byte next = packet[textIndex];
+      if(next >= '0' && next <= '9') {
+        if(!fraction && digits < 9) {
+          value = value * 10 + (next - '0');
+        }
+        digits++;
+      } else if(next == '.' && !fraction) {
+        fraction = true;
+      } else {
+        break;
+      }
+    }
+
+    while(textIndex < end && (packet[textIndex] & 0xFF) <= ' ') {
+      textIndex++;
+    }
+
+    if(digits == 0) {
+      return Integer.MIN_VALUE;
+    }
+
+    return (negative ? -value : value);
+  }
+
+  /**
+   * Parses a v2 Jevois packet into PowerCells. Late and duplicate packets are counted but not used,
+   * so they never replace newer data.
+   * @param packet The packet.
+   * @param receiveTime System.nanoTime() when the packet was received.
+   * @return True if the packet was parsed, false if it was malformed.
+   */
+  private boolean parseVersion2Packet(ByteBuffer packet, long receiveTime) {
+    if(!VisionProtocol.isValid(packet, VisionProtocol.STREAM_JEVOIS)) {
+      DriverStation.reportWarning("Malformed Jevois v2 packet!", false);
+      return false;
+    }
+
+    if(!streamStats.record(VisionProtocol.getSequence(packet), VisionProtocol.getCaptureTimeMicros(packet), receiveTime)) {
+      return true;
+    }
+
+    PowerCellList back = beginWrite();
+    int count = VisionProtocol.getCount(packet);
+    for(int i=0; i<count; i++) {
+      int centeredX = VisionProtocol.getJevoisField(packet, i, 0) - (Constants.JEVOIS_RESOLUTION_X / 2);
+      int y = VisionProtocol.getJevoisField(packet, i, 1);
+      int radius = VisionProtocol.getJevoisField(packet, i, 2);
+      back.add(centeredX, y, radius);
+    }
+
+    publish(back, receiveTime);
+    return true;
   }
 
   /**
@@ -179,19 +349,21 @@ public class SubsystemJevois extends SubsystemBase {
   private boolean testSort(String[] segments) {
     String str = "";
     for(String a : segments) {
-      str += a + ", ";
+      str += a + "]";
     }
 
     System.out.println("Organizing " + str);
-    parseData(segments);
+    byte[] packet = (str + ";").getBytes();
+    parseText(packet, packet.length, System.nanoTime());
+    PowerCellList powerCells = getPowerCells();
     
     String str2 = "";
     boolean decreasing = true;
     for(int i=0; i<powerCells.size(); i++) {
-      str2 += Integer.valueOf(powerCells.get(i).getY()).toString();
+      str2 += Integer.valueOf(powerCells.getY(i)).toString();
       
       if(i < powerCells.size() - 1) {
-        if(powerCells.get(i).getY() < powerCells.get(i + 1).getY()) {
+        if(powerCells.getY(i) < powerCells.getY(i + 1)) {
           decreasing = false;
         }
 
@@ -7,82 +7,131 @@
 
 package frc.robot.subsystems;
 
-import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.SocketException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.util.function.LongToDoubleFunction;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants;
+import frc.robot.util.ClockSync;
+import frc.robot.util.TargetTracker;
 import frc.robot.util.Util;
+import frc.robot.util.VisionFrame;
+import frc.robot.util.VisionProtocol;
+import frc.robot.util.VisionReactor;
+import frc.robot.util.VisionSource;
+import frc.robot.util.VisionStreamStats;
 
 /**
  * The thing that listens to the Pi.
  */
 public class SubsystemReceiver extends SubsystemBase {
-  private String latestSegment;
-  private double[] latestData;
+  private static final int FIELD_COUNT = 7;
+  private static final double[] DEFAULT_DATA = {-1, -1, -1, -1, -1, 180, 180};
+  private static final double[] POWERS_OF_TEN = {1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18};
 
   private Boolean inRange;
 
-  private DatagramSocket serverSocket;
-  private byte[]         receiveData;
+  private VisionSource source;
+  private VisionStreamStats streamStats;
+  private ClockSync clockSync;
+  private double[]     parsedData; //reactor thread only
 
-  private long latestTime;
+  //published by the reactor thread under a seqlock: odd while a packet is being written, +2 per packet
+  private volatile long writeSequence;
+  private double
+    targetX,
+    targetY,
+    targetWidth,
+    targetHeight,
+    targetDistance,
+    horizontalAngle,
+    verticalAngle;
+
+  private long
+    receiveTimeNanos,
+    captureTimeMicros;
+
+  private volatile VisionFrame latestFrame; //last frame handed out, reused until a new packet arrives
+  private long lastDashboardPacket; //robot thread only
+
+  //target tracking, robot thread only
+  private TargetTracker tracker;
+  private LongToDoubleFunction turretYawSource;
 
 
   /**
    * Creates a new SubsystemReceiver.
+   * @param reactor The reactor to receive KiwiLight packets on.
    */
-  public SubsystemReceiver() {
-    latestSegment = "-1,-1,-1,-1,-1,180,180";
-    latestData = new double[] {-1, -1, -1, -1, -1, 180, 180};
-    latestTime    = System.currentTimeMillis();
+  public SubsystemReceiver(VisionReactor reactor) {
+    parsedData = new double[FIELD_COUNT];
+    writeSequence = 0;
+    latestFrame = new VisionFrame(DEFAULT_DATA[0], DEFAULT_DATA[1], DEFAULT_DATA[2], DEFAULT_DATA[3], DEFAULT_DATA[4], DEFAULT_DATA[5], DEFAULT_DATA[6], System.nanoTime(), -1, 0);
+    lastDashboardPacket = -1;
+    tracker = new TargetTracker(
+      Constants.KIWILIGHT_TRACKER_BEARING_PROCESS_NOISE,
+      Constants.KIWILIGHT_TRACKER_BEARING_MEASUREMENT_NOISE,
+      Constants.KIWILIGHT_TRACKER_DISTANCE_PROCESS_NOISE,
+      Constants.KIWILIGHT_TRACKER_DISTANCE_MEASUREMENT_NOISE,
+      Constants.KIWILIGHT_TRACKER_INNOVATION_GATE
+    );
+    turretYawSource = null;
 
-    SmartDashboard.putString("RPi Data", latestSegment);
+    SmartDashboard.putString("RPi Data", "-1,-1,-1,-1,-1,180,180");
     SmartDashboard.putBoolean("Spotted", false);
     SmartDashboard.putBoolean("Updated", false);
     inRange = false;
 
-    try {
-      serverSocket = new DatagramSocket(3695);
-      receiveData  = new byte[1024];
-    } catch (SocketException e) { //thrown when a socket cannot be created
-      DriverStation.reportError("SOCKET EXCEPTION", true);
-    }
-
     // EXPECTED FORMAT OF INPUT STRING:
-    // :X,Y,H,D,A;
+    // :X,Y,W,H,D,HA,VA;
       // X = X-coordinate
       // Y = Y-coordinate
+      // W, H = Width and height of target
       // D = Distance from target
-      // A = Angle from center (positive = CW)
-
-    Thread listener = new Thread(() -> {
-      while(!Thread.interrupted()) {
-        try {
-          DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length); //create a new packet for the receiving data 
-          serverSocket.receive(receivePacket); //receive the packet from the Socket
-          String segment = new String(receivePacket.getData()).replaceAll("\\s+",""); //remove whitespace and place data in 'segment'
-          latestSegment = segment.substring(segment.indexOf(":") + 1, segment.indexOf(";")); // store segment without borders
-          latestTime = System.currentTimeMillis(); // add timestamp for stored segment
-          String formattedString = segment.substring(segment.indexOf(":") + 1, segment.indexOf(";"));
-          SmartDashboard.putString("RPi Data", formattedString); // put string on dashboard without borders
-          latestData = analyzeData(formattedString);
-
-        } catch (IOException e) { //thrown when the socket cannot receive the packet
-          DriverStation.reportError("IO EXCEPTION", true);
-        }
-      }
-    });
-    
-    listener.start();
+      // HA, VA = Horizontal and vertical angle from center (positive = CW)
+
+    // Or a v2 binary packet, see VisionProtocol
+
+    streamStats = new VisionStreamStats("KiwiLight");
+    source = reactor.register("KiwiLight", Constants.KIWILIGHT_PORT, this::handlePacket);
+    clockSync = new ClockSync("KiwiLight", reactor, Constants.CLOCK_SYNC_KIWILIGHT_PORT, source);
+    streamStats.setClockSync(clockSync);
   }
 
   @Override
   public void periodic() {
-    SmartDashboard.putBoolean("Spotted", targetSpotted());
-    SmartDashboard.putBoolean("Updated", getSecondsSinceUpdate() < 0.5);
+    VisionFrame frame = getLatestFrame();
+    if(frame.getSequence() != lastDashboardPacket) { //only build the string when there is something new to show
+      SmartDashboard.putString("RPi Data", frame.getTargetX() + "," + frame.getTargetY() + "," + frame.getTargetWidth() + "," + frame.getTargetHeight() + "," + frame.getDistance() + "," + frame.getHorizontalAngle() + "," + frame.getVerticalAngle());
+      lastDashboardPacket = frame.getSequence();
+      updateTracker(frame);
+    }
+
+    //drop the track if KiwiLight has not seen the target in a while
+    if(tracker.hasTarget() && (System.nanoTime() - tracker.getLastUpdateTime()) / 1000000 > Constants.KIWILIGHT_MAX_FRAME_AGE_MS) {
+      tracker.reset();
+    }
+
+    SmartDashboard.putBoolean("Tracking", tracker.hasTarget());
+    SmartDashboard.putNumber("Tracker Bearing Rate", tracker.getBearingRate());
+    SmartDashboard.putNumber("Tracker Bearing StdDev", tracker.getBearingStandardDeviation());
+    SmartDashboard.putNumber("Tracker Distance StdDev", tracker.getDistanceStandardDeviation());
+    SmartDashboard.putNumber("Tracker Innovation", tracker.getLastBearingInnovation());
+    SmartDashboard.putNumber("Tracker Innovation RMS", tracker.getBearingInnovationRMS());
+    SmartDashboard.putNumber("Tracker NIS", tracker.getMeanNormalizedInnovation());
+    SmartDashboard.putNumber("Tracker Resets", tracker.getResets());
+
+    if(source != null) {
+      source.putStatistics();
+    }
+    streamStats.putStatistics();
+    clockSync.update();
+    clockSync.putStatistics();
+
+    SmartDashboard.putBoolean("Spotted", frame.isTargetSpotted());
+    SmartDashboard.putBoolean("Updated", frame.getAgeMillis() < Constants.KIWILIGHT_MAX_FRAME_AGE_MS);
   }
 
   /**
@@ -92,7 +141,120 @@ public class SubsystemReceiver extends SubsystemBase {
    * @return true if the system is ready for a match, false otherwise.
    */
   public boolean getSystemIsGo() {
-    return getSecondsSinceUpdate() < 0.5;
+    return getLatestFrame().getAgeMillis() < Constants.KIWILIGHT_MAX_FRAME_AGE_MS;
+  }
+
+  /**
+   * Sets where the tracker gets the turret's yaw from. Bearings are tracked relative to the turret's base,
+   * so that turning the turret does not look like the target moving. If no source is set, bearings are
+   * tracked relative to the camera.
+   * @param turretYawSource Function returning the turret's yaw in degrees at a System.nanoTime(). Positive
+   * yaw must be the same direction that moves the horizontal angle to the target more positive.
+   */
+  public void setTurretYawSource(LongToDoubleFunction turretYawSource) {
+    this.turretYawSource = turretYawSource;
+  }
+
+  /**
+   * Returns the horizontal angle (degrees) to the target predicted to right now by the tracker,
+   * or 180 if the target is not being tracked.
+   */
+  public double getTrackedHorizontalAngle() {
+    if(!tracker.hasTarget()) {
+      return 180;
+    }
+
+    long now = System.nanoTime();
+    return tracker.getBearing(now) - getTurretYaw(now);
+  }
+
+  /**
+   * Returns the distance to the target predicted to right now by the tracker, or -1 if the target is not being tracked.
+   */
+  public double getTrackedDistance() {
+    if(!tracker.hasTarget()) {
+      return -1;
+    }
+
+    return tracker.getDistance(System.nanoTime());
+  }
+
+  /**
+   * Returns true if the tracker is following a target, false otherwise.
+   */
+  public boolean targetTracked() {
+    return tracker.hasTarget();
+  }
+
+  /**
+   * Returns the loss, reordering and latency statistics of v2 KiwiLight packets.
+   */
+  public VisionStreamStats getStreamStats() {
+    return streamStats;
+  }
+
+  /**
+   * Returns the clock sync that lines KiwiLight's clock up with the robot's.
+   */
+  public ClockSync getClockSync() {
+    return clockSync;
+  }
+
+  /**
+   * Returns when the image behind a frame was taken, as a System.nanoTime(). Uses the frame's capture time when
+   * the Pi's clock is synced, and otherwise assumes the packet took the "KiwiLight Latency ms" preference to arrive.
+   * @param frame The frame.
+   */
+  public long getCaptureTimeNanos(VisionFrame frame) {
+    if(frame.hasCaptureTime() && clockSync.isSynchronized()) {
+      return clockSync.toRobotTime(frame.getCaptureTimeMicros());
+    }
+
+    return frame.getReceiveTimeNanos() - (long) (Util.getAndSetDouble("KiwiLight Latency ms", Constants.KIWILIGHT_PIPELINE_LATENCY_MS) * 1000000);
+  }
+
+  /**
+   * Returns the target tracker, for its statistics.
+   */
+  public TargetTracker getTracker() {
+    return tracker;
+  }
+
+  /**
+   * Returns the data from the last packet the Pi sent. Every value in the frame came from the same packet,
+   * so callers that use more than one value should get one frame per loop instead of calling the getters below.
+   * Returns the same object until a new packet arrives.
+   */
+  public VisionFrame getLatestFrame() {
+    while(true) {
+      long sequence = writeSequence;
+      VisionFrame cached = latestFrame;
+      if(cached.getSequence() == sequence / 2 && (sequence & 1) == 0) {
+        return cached;
+      }
+
+      if((sequence & 1) == 0) {
+        double
+          x        = targetX,
+          y        = targetY,
+          width    = targetWidth,
+          height   = targetHeight,
+          distance = targetDistance,
+          horizontal = horizontalAngle,
+          vertical   = verticalAngle;
+
+        long receiveTime = receiveTimeNanos;
+        long captureTime = captureTimeMicros;
+        VarHandle.loadLoadFence(); //make sure the reads above happen before the sequence is checked again
+        if(writeSequence == sequence) { //nothing was written while we were reading
+          VisionFrame frame = new VisionFrame(x, y, width, height, distance, horizontal, vertical, receiveTime, captureTime, sequence / 2);
+          latestFrame = frame;
+          return frame;
+        }
+      }
+
+      Thread.onSpinWait(); //the reactor thread is in the middle of a packet; it only takes a few stores
+    }
   }
 
   /**
@@ -104,57 +266,58 @@ public class SubsystemReceiver extends SubsystemBase {
    *         {-1,-1,-1,-1} for no known location
    */
   public double[] getLatestData() {
-    return latestData;
+    VisionFrame frame = getLatestFrame();
+    return new double[] {frame.getTargetX(), frame.getTargetY(), frame.getTargetWidth(), frame.getTargetHeight(), frame.getDistance(), frame.getHorizontalAngle(), frame.getVerticalAngle()};
   }
 
   /**
    * Returns the width of the seen target in pixels, or -1 if no target is seen.
    */
   public double getTargetWidthPixels() {
-    return latestData[2];
+    return getLatestFrame().getTargetWidth();
   }
 
   /**
    * Returns the height of the seen target in pixels, or -1 if no target is seen.
    */
   public double getTargetHeightPixels() {
-    return latestData[3];
+    return getLatestFrame().getTargetHeight();
   }
 
   /**
    * Returns the distance of the camera to the target, or -1 if no target is seen.
    */
   public double getDistanceToTarget() {
-    return latestData[4];
+    return getLatestFrame().getDistance();
   }
 
   /**
    * Returns the horizontal angle (degrees) to the target, or 180 if no target is seen.
    */
   public double getHorizontalAngleToTarget() {
-    return latestData[5];
+    return getLatestFrame().getHorizontalAngle();
   }
 
   /**
    * Returns the vertical angle (degrees) to the target, or 180 if no target is seen.
    */
   public double getVerticalAngleToTarget() {
-    return latestData[6];
+    return getLatestFrame().getVerticalAngle();
   }
 
   /**
    * Returns true if a target is seen, false otherwise.
    */
   public boolean targetSpotted() {
-    return latestData[2] > -1;
+    return getLatestFrame().isTargetSpotted();
   }
 
   /**
-   * Returns the miliseconds since the pi sent the LastKnownLocation
-   * @return ms since last received UDP packet
+   * Returns the seconds since the pi sent the LastKnownLocation
+   * @return seconds since last received UDP packet, with millisecond precision or better.
    */
   public double getSecondsSinceUpdate() {
-    return Util.roundTo((double) ((System.currentTimeMillis() - latestTime) / 1000), 5);
+    return getLatestFrame().getAgeMillis() / 1000;
   }
 
   /**
@@ -176,30 +339,215 @@ public class SubsystemReceiver extends SubsystemBase {
   }
 
   /**
-   * Retrieves the last known pixel coordinates of the target
-   * @return [0] = X-coordinate (in pixels from left)
-   *         [1] = Y-coordinate (in pixels from bottom)
-   *         [2] = Distance (in inches)
-   *         [3] = Angle from center (in degrees; positive = CW)
-   *         {-1,-1,-1,-1} for no known location
+   * Parses and publishes a KiwiLight packet. Called on the reactor thread.
+   * Accepts both the v1 text format and v2 binary packets.
+   * @param packet The packet.
+   * @param receiveTime System.nanoTime() when the packet was received.
+   * @return True if the packet was parsed, false if it was malformed.
    */
-  private double[] analyzeData(String input) {
-    double[] newData = {-1, -1, -1, -1, -1, 180, 180};
-    String[] stringData = input.split(",");
+  private boolean handlePacket(ByteBuffer packet, long receiveTime) {
+    if(VisionProtocol.isVersion2(packet)) {
+      return handleVersion2Packet(packet, receiveTime);
+    }
 
-    if(stringData.length != newData.length) {
-      DriverStation.reportWarning("INPUT STRING IMPROPERLY FORMATTED!", true);
-      return newData;
+    if(parsePacket(packet.array(), packet.limit(), parsedData)) {
+      publish(parsedData, receiveTime, -1);
+      return true;
     }
 
-    try {
-      for(int i=0; i<stringData.length; i++) {
-        newData[i] = Double.parseDouble(stringData[i]);
+    DriverStation.reportWarning("INPUT STRING IMPROPERLY FORMATTED!", false);
+    publish(DEFAULT_DATA, receiveTime, -1);
+    return false;
+  }
+
+  /**
+   * Parses and publishes a v2 KiwiLight packet. Late and duplicate packets are counted but not published,
+   * so they never replace newer data.
+   * @param packet The packet.
+   * @param receiveTime System.nanoTime() when the packet was received.
+   * @return True if the packet was parsed, false if it was malformed.
+   */
+  private boolean handleVersion2Packet(ByteBuffer packet, long receiveTime) {
+    if(!VisionProtocol.isValid(packet, VisionProtocol.STREAM_KIWILIGHT)) {
+      DriverStation.reportWarning("Malformed KiwiLight v2 packet!", false);
+      return false;
+    }
+
+    long captureTime = VisionProtocol.getCaptureTimeMicros(packet);
+    if(!streamStats.record(VisionProtocol.getSequence(packet), captureTime, receiveTime)) {
+      return true;
+    }
+
+    if(VisionProtocol.getCount(packet) == 0) {
+      publish(DEFAULT_DATA, receiveTime, captureTime);
+      return true;
+    }
+
+    for(int i=0; i<FIELD_COUNT; i++) {
+      parsedData[i] = VisionProtocol.getKiwiLightField(packet, i);
+    }
+
+    publish(parsedData, receiveTime, captureTime);
+    return true;
+  }
+
+  /**
+   * Feeds a new frame to the tracker, with the latest tuning from the dashboard.
+   * @param frame The new frame.
+   */
+  private void updateTracker(VisionFrame frame) {
+    tracker.setTuning(
+      Util.getAndSetDouble("Tracker Bearing Process Noise", Constants.KIWILIGHT_TRACKER_BEARING_PROCESS_NOISE),
+      Util.getAndSetDouble("Tracker Bearing Measurement Noise", Constants.KIWILIGHT_TRACKER_BEARING_MEASUREMENT_NOISE),
+      Util.getAndSetDouble("Tracker Distance Process Noise", Constants.KIWILIGHT_TRACKER_DISTANCE_PROCESS_NOISE),
+      Util.getAndSetDouble("Tracker Distance Measurement Noise", Constants.KIWILIGHT_TRACKER_DISTANCE_MEASUREMENT_NOISE),
+      Util.getAndSetDouble("Tracker Innovation Gate", Constants.KIWILIGHT_TRACKER_INNOVATION_GATE)
+    );
+
+    if(frame.isTargetSpotted()) {
+      long captureTime = getCaptureTimeNanos(frame);
+      tracker.update(captureTime, frame.getHorizontalAngle() + getTurretYaw(captureTime), frame.getDistance());
+    } else {
+      tracker.reset();
+    }
+  }
+
+  /**
+   * Returns the turret's yaw in degrees at a time, or 0 if there is no turret yaw source.
+   * @param timeNanos The time, from System.nanoTime().
+   */
+  private double getTurretYaw(long timeNanos) {
+    return (turretYawSource == null ? 0 : turretYawSource.applyAsDouble(timeNanos));
+  }
+
+  /**
+   * Copies a set of fields into the published target data.
+   * @param data The fields, in packet order.
+   * @param receiveTime System.nanoTime() when the packet was received.
+   * @param captureTime When the image was taken, in microseconds since the epoch on the coprocessor's clock, or -1 if unknown.
+   */
+  private void publish(double[] data, long receiveTime, long captureTime) {
+    long sequence = writeSequence;
+    writeSequence = sequence + 1; //odd: readers wait until the packet is fully written
+    VarHandle.storeStoreFence();
+    targetX         = data[0];
+    targetY         = data[1];
+    targetWidth     = data[2];
+    targetHeight    = data[3];
+    targetDistance  = data[4];
+    horizontalAngle = data[5];
+    verticalAngle   = data[6];
+    receiveTimeNanos = receiveTime;
+    captureTimeMicros = captureTime;
+    writeSequence = sequence + 2;
+  }
+
+  /**
+   * Parses a KiwiLight packet in place, without creating any objects.
+   * The fields between ':' and ';' are read as comma separated numbers. Whitespace anywhere is ignored.
+   * @param packet The buffer holding the packet.
+   * @param length The number of bytes in the packet.
+   * @param output Where to put the FIELD_COUNT fields. Contents are undefined if parsing fails.
+   * @return True if exactly FIELD_COUNT numbers were found, false if the packet is malformed.
+   */
+  private static boolean parsePacket(byte[] packet, int length, double[] output) {
+    int index = 0;
+    while(index < length && packet[index] != ':') {
+      index++;
+    }
+    index = (index < length ? index + 1 : 0); //skip the ':', or start at the beginning if there is none
+
+    int field = 0;
+    while(index < length) {
+      //one field: [whitespace][-]digits[.digits][e[-]digits][whitespace] followed by ',' or ';'
+      while(index < length && isWhitespace(packet[index])) {
+        index++;
+      }
+
+      boolean negative = false;
+      if(index < length && (packet[index] == '-' || packet[index] == '+')) {
+        negative = packet[index] == '-';
+        index++;
+      }
+
+      long mantissa = 0;
+      int
+        digits = 0,
+        decimalPlaces = 0,
+        exponent = 0;
+
+      boolean fraction = false;
+      for(; index < length; index++) {
+        byte next = packet[index];
+        if(next >= '0' && next <= '9') {
+          if(digits < 18) { //more digits than a long can hold are beyond double precision anyway
+            mantissa = mantissa * 10 + (next - '0');
+            digits++;
+            if(fraction) {
+              decimalPlaces++;
+            }
+          } else if(!fraction) {
+            exponent++;
+          }
+        } else if(next == '.' && !fraction) {
+          fraction = true;
+        } else if(!isWhitespace(next)) {
+          break;
+        }
+      }
+
+      if(index < length && (packet[index] == 'e' || packet[index] == 'E')) {
+        index++;
+        boolean negativeExponent = false;
+        if(index < length && (packet[index] == '-' || packet[index] == '+')) {
+          negativeExponent = packet[index] == '-';
+          index++;
+        }
+
+        int explicitExponent = 0;
+        for(; index < length && packet[index] >= '0' && packet[index] <= '9'; index++) {
+          explicitExponent = Math.min(explicitExponent * 10 + (packet[index] - '0'), 1000);
+        }
+
+        exponent += (negativeExponent ? -explicitExponent : explicitExponent);
+      }
+
+      while(index < length && isWhitespace(packet[index])) {
+        index++;
+      }
+
+      if(digits == 0 || index >= length || field >= output.length) {
+        return false;
+      }
+
+      exponent -= decimalPlaces;
+      double value = mantissa;
+      if(exponent < 0) {
+        value = (-exponent < POWERS_OF_TEN.length ? value / POWERS_OF_TEN[-exponent] : value * Math.pow(10, exponent));
+      } else if(exponent > 0) {
+        value = (exponent < POWERS_OF_TEN.length ? value * POWERS_OF_TEN[exponent] : value * Math.pow(10, exponent));
+      }
+
+      output[field++] = (negative ? -value : value);
+      if(packet[index] == ';') {
+        return field == output.length;
+      }
+
+      if(packet[index] != ',') {
+        return false;
       }
-    } catch(Exception ex) {
-      DriverStation.reportWarning("PARSING DATA ERROR: " + ex.getMessage(), true);
+
+      index++;
     }
 
-    return newData;
+    return false; //ran out of packet before the ';'
+  }
+
+  /**
+   * Returns true if the byte is ASCII whitespace.
+   * @param character The byte to check.
+   */
+  private static boolean isWhitespace(byte character) {
+    return character == ' ' || character == '\t' || character == '\n' || character == '\r' || character == '\f' || character == 0x0B;
   }
-}
\ No newline at end of file
+}
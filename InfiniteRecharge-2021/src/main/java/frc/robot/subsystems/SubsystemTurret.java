@@ -16,6 +16,7 @@ import edu.wpi.first.wpilibj.Joystick;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants;
+import frc.robot.util.TurretHistory;
 import frc.robot.util.Util;
 import frc.robot.util.Xbox;
 
@@ -35,6 +36,8 @@ public class SubsystemTurret extends SubsystemBase {
   private boolean 
     pitchPositioningDisabled;
 
+  private TurretHistory history;
+
   /**
    * Creates a new SubsystemTurret.
    */
@@ -46,6 +49,7 @@ public class SubsystemTurret extends SubsystemBase {
     totalPitchTicks = Constants.DEFAULT_TURRET_PITCH_TICKS;
 
     pitchPositioningDisabled = false;
+    history = new TurretHistory(Constants.TURRET_HISTORY_SIZE);
 
     configureMotors();
   }
@@ -56,9 +60,12 @@ public class SubsystemTurret extends SubsystemBase {
   @Override
   public void periodic() {
     // This method will be called once per scheduler run
+    double yawPosition = getYawPosition();
+    double pitchPosition = getPitchPosition();
+    history.record(System.nanoTime(), yawPosition, pitchPosition);
 
-    SmartDashboard.putNumber("Yaw Position", turretYaw.getSensorCollection().getQuadraturePosition());
-    SmartDashboard.putNumber("Pitch Position", turretPitch.getSensorCollection().getQuadraturePosition());
+    SmartDashboard.putNumber("Yaw Position", yawPosition);
+    SmartDashboard.putNumber("Pitch Position", pitchPosition);
 
     SmartDashboard.putBoolean("Yaw Forward Limit", turretYaw.isFwdLimitSwitchClosed() == 1);
     SmartDashboard.putBoolean("Yaw Backward Limit", turretYaw.isRevLimitSwitchClosed() == 1);
@@ -225,6 +232,41 @@ public class SubsystemTurret extends SubsystemBase {
     return turretPitch.getSensorCollection().getQuadraturePosition();
   }
 
+  /**
+   * Returns the position of the yaw motor in ticks at an earlier time, interpolated from the positions recorded each loop.
+   * Falls back to the current position if the time is not in the history.
+   * @param timeNanos The time, from System.nanoTime().
+   */
+  public double getYawPositionAt(long timeNanos) {
+    if(history.covers(timeNanos)) {
+      return history.getYawAt(timeNanos);
+    }
+
+    return getYawPosition();
+  }
+
+  /**
+   * Returns the yaw of the turret in degrees at an earlier time. Increases in the same direction as the
+   * horizontal angle KiwiLight reports, so the two add up to a bearing that does not change as the turret turns.
+   * @param timeNanos The time, from System.nanoTime().
+   */
+  public double getYawDegreesAt(long timeNanos) {
+    return getYawPositionAt(timeNanos) * Constants.TURRET_YAW_DEGREES / getTotalYawTicks();
+  }
+
+  /**
+   * Returns the position of the pitch motor in ticks at an earlier time, interpolated from the positions recorded each loop.
+   * Falls back to the current position if the time is not in the history.
+   * @param timeNanos The time, from System.nanoTime().
+   */
+  public double getPitchPositionAt(long timeNanos) {
+    if(history.covers(timeNanos)) {
+      return history.getPitchAt(timeNanos);
+    }
+
+    return getPitchPosition();
+  }
+
   /**
    * Returns the Yaw motors right limit switches state (true for closed). 
    * NOTE: Right Limit is also the "zero" limit.
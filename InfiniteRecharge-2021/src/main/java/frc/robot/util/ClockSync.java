@@ -0,0 +1,266 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import frc.robot.Constants;
+
+/**
+ * Works out how a coprocessor's clock lines up with the robot's, so that its capture times can be used on the robot.
+ * Like NTP, the robot sends a ping stamped with its own time t0, the coprocessor stamps when it got the ping (t1) and
+ * when it answered (t2), and the robot stamps when the pong arrived (t3). Then
+ *  round trip = (t3 - t0) - (t2 - t1)
+ *  offset = ((t1 - t0) + (t2 - t3)) / 2
+ * The offset is only wrong by as much as the trip there and the trip back differ, and never by more than half the
+ * round trip, so the estimate is the offset of the fastest pong out of the last few. Pongs that sat in a queue
+ * somewhere are slow and get passed over, and pongs much slower than the fastest are counted as outliers.
+ * Pings go to the responder port on whatever address the coprocessor's vision packets come from, so nothing has to be
+ * configured, and nothing is sent until the coprocessor has sent something.
+ * Robot times are System.nanoTime(), so converted times can be used with VisionFrame and TurretHistory.
+ */
+public class ClockSync {
+    private final String name;
+    private final VisionSource peer;
+    private final VisionSource syncSource;
+    private final ByteBuffer ping;
+
+    //reactor thread only
+    private final long[]
+        sampleOffsets,
+        sampleRoundTrips;
+
+    private int
+        nextSample,
+        samples;
+
+    //robot thread only
+    private SocketAddress
+        peerAddress,
+        responderAddress;
+
+    private long lastPingTime;
+    private boolean sendFailed;
+
+    private volatile int pingSequence;
+    private volatile boolean hasOffset;
+    private volatile long
+        offsetMicros,
+        roundTripMicros,
+        jitterMicros,
+        lastSampleTime,
+        pingsSent,
+        pongsReceived,
+        outliers;
+
+    /**
+     * Creates a new ClockSync.
+     * @param name The name of the coprocessor, used on the dashboard.
+     * @param reactor The reactor to receive pongs on.
+     * @param localPort The robot's port to send pings from and receive pongs on.
+     * @param peer The coprocessor's vision source, which tells where to send pings. May be null, in which case nothing is synced.
+     */
+    public ClockSync(String name, VisionReactor reactor, int localPort, VisionSource peer) {
+        this.name = name;
+        this.peer = peer;
+        this.ping = ByteBuffer.allocate(VisionProtocol.HEADER_SIZE);
+        this.sampleOffsets = new long[Constants.CLOCK_SYNC_WINDOW];
+        this.sampleRoundTrips = new long[Constants.CLOCK_SYNC_WINDOW];
+        this.nextSample = 0;
+        this.samples = 0;
+        this.peerAddress = null;
+        this.responderAddress = null;
+        this.lastPingTime = System.nanoTime();
+        this.sendFailed = false;
+        this.pingSequence = 0;
+        this.hasOffset = false;
+        this.offsetMicros = 0;
+        this.roundTripMicros = 0;
+        this.jitterMicros = 0;
+        this.lastSampleTime = 0;
+        this.pingsSent = 0;
+        this.pongsReceived = 0;
+        this.outliers = 0;
+        this.syncSource = (peer == null ? null : reactor.register(name + " Clock", localPort, this::handlePong));
+    }
+
+    /**
+     * Sends a ping if one is due. Call periodically from the robot thread.
+     */
+    public void update() {
+        long now = System.nanoTime();
+        if(syncSource == null || (now - lastPingTime) / 1000000 < Constants.CLOCK_SYNC_PERIOD_MS) {
+            return;
+        }
+
+        SocketAddress sender = peer.getLastSender();
+        if(!(sender instanceof InetSocketAddress)) {
+            return; //coprocessor has not sent anything yet
+        }
+
+        if(!sender.equals(peerAddress)) {
+            peerAddress = sender;
+            responderAddress = new InetSocketAddress(((InetSocketAddress) sender).getAddress(), Constants.CLOCK_SYNC_RESPONDER_PORT);
+        }
+
+        lastPingTime = now;
+        int sequence = pingSequence;
+        ping.clear();
+        VisionProtocol.encodeClockPing(ping, sequence, System.nanoTime() / 1000);
+        pingSequence = sequence + 1; //before sending, in case the pong beats the send back
+        try {
+            syncSource.getChannel().send(ping, responderAddress);
+            pingsSent++;
+        } catch(IOException ex) {
+            if(!sendFailed) {
+                DriverStation.reportWarning(name + " could not send a clock ping: " + ex.getMessage(), false);
+                sendFailed = true;
+            }
+        }
+    }
+
+    /**
+     * Returns true if a good pong has arrived recently enough for toRobotTime() to be trusted.
+     */
+    public boolean isSynchronized() {
+        return hasOffset && (System.nanoTime() - lastSampleTime) / 1000000 < Constants.CLOCK_SYNC_TIMEOUT_MS;
+    }
+
+    /**
+     * Converts a time on the coprocessor's clock to the robot's.
+     * @param remoteTimeMicros A time in microseconds since the epoch on the coprocessor's clock.
+     * @return The same moment as a System.nanoTime() on the robot. Meaningless unless isSynchronized() is true.
+     */
+    public long toRobotTime(long remoteTimeMicros) {
+        return (remoteTimeMicros - offsetMicros) * 1000;
+    }
+
+    /**
+     * Returns how far the coprocessor's clock is ahead of the robot's wall clock, in milliseconds.
+     */
+    public double getWallClockOffsetMillis() {
+        long robotWallOffset = System.currentTimeMillis() * 1000 - System.nanoTime() / 1000;
+        return (offsetMicros - robotWallOffset) / 1000.0;
+    }
+
+    /**
+     * Returns the round trip of the pong the offset came from, in milliseconds. The offset is off by at most half of it.
+     */
+    public double getRoundTripMillis() {
+        return roundTripMicros / 1000.0;
+    }
+
+    /**
+     * Returns how much the offsets of recent good pongs spread around the estimate, in milliseconds.
+     */
+    public double getJitterMillis() {
+        return jitterMicros / 1000.0;
+    }
+
+    /**
+     * Returns the number of pings sent.
+     */
+    public long getPingsSent() {
+        return pingsSent;
+    }
+
+    /**
+     * Returns the number of valid pongs received, including outliers.
+     */
+    public long getPongsReceived() {
+        return pongsReceived;
+    }
+
+    /**
+     * Returns the number of pongs that were thrown out for taking too long.
+     */
+    public long getOutliers() {
+        return outliers;
+    }
+
+    /**
+     * Posts the sync quality to the dashboard under the name of the coprocessor.
+     */
+    public void putStatistics() {
+        SmartDashboard.putBoolean(name + " Clock Synced", isSynchronized());
+        SmartDashboard.putNumber(name + " Clock Offset ms", getWallClockOffsetMillis());
+        SmartDashboard.putNumber(name + " Clock RTT ms", getRoundTripMillis());
+        SmartDashboard.putNumber(name + " Clock Jitter ms", getJitterMillis());
+        SmartDashboard.putNumber(name + " Clock Outliers", getOutliers());
+    }
+
+    /**
+     * Handles a pong. Called by the reactor thread.
+     * @param packet The pong, from position to limit.
+     * @param receiveTimeNanos System.nanoTime() when the pong was received.
+     * @return True if the packet was a pong to a recent ping.
+     */
+    private boolean handlePong(ByteBuffer packet, long receiveTimeNanos) {
+        if(!VisionProtocol.isValid(packet, VisionProtocol.STREAM_CLOCK_PONG)) {
+            return false;
+        }
+
+        int age = pingSequence - VisionProtocol.getSequence(packet);
+        if(age <= 0 || age > Constants.CLOCK_SYNC_WINDOW) {
+            return false; //not an answer to any recent ping
+        }
+
+        long
+            t0 = VisionProtocol.getCaptureTimeMicros(packet),
+            t1 = VisionProtocol.getClockReceiveTimeMicros(packet),
+            t2 = VisionProtocol.getClockSendTimeMicros(packet),
+            t3 = receiveTimeNanos / 1000;
+
+        pongsReceived++;
+        long roundTrip = (t3 - t0) - (t2 - t1);
+        if(roundTrip < 0 || roundTrip > Constants.CLOCK_SYNC_MAX_ROUND_TRIP_MS * 1000L) {
+            outliers++;
+            return true;
+        }
+
+        sampleOffsets[nextSample] = ((t1 - t0) + (t2 - t3)) / 2;
+        sampleRoundTrips[nextSample] = roundTrip;
+        nextSample = (nextSample + 1) % sampleOffsets.length;
+        samples = Math.min(samples + 1, sampleOffsets.length);
+
+        //the fastest pong had the least time to be delayed one way more than the other
+        int best = 0;
+        for(int i=1; i<samples; i++) {
+            if(sampleRoundTrips[i] < sampleRoundTrips[best]) {
+                best = i;
+            }
+        }
+
+        long
+            bestOffset = sampleOffsets[best],
+            outlierRoundTrip = sampleRoundTrips[best] * 2 + 1000;
+
+        if(roundTrip > outlierRoundTrip) {
+            outliers++;
+        }
+
+        double squaredError = 0;
+        int goodSamples = 0;
+        for(int i=0; i<samples; i++) {
+            if(sampleRoundTrips[i] <= outlierRoundTrip) {
+                double error = sampleOffsets[i] - bestOffset;
+                squaredError += error * error;
+                goodSamples++;
+            }
+        }
+
+        offsetMicros = bestOffset;
+        roundTripMicros = sampleRoundTrips[best];
+        jitterMicros = (long) Math.sqrt(squaredError / goodSamples);
+        lastSampleTime = receiveTimeNanos;
+        hasOffset = true;
+        return true;
+    }
+}
@@ -0,0 +1,213 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+/**
+ * A Path laid out for following. Everything CyborgCommandEmulatePath needs about the points ahead of the robot is worked
+ * out once, when the path is loaded, and kept in plain arrays:
+ *  - the x, y, and heading of every point
+ *  - the distance along the path from the first point to every point
+ *  - the heading from every point to the next one
+ *  - a running sum of the turn at every point, so the turn through any run of points is one subtraction
+ * This way the length and turn of the points ahead cost the same no matter how many points are looked at.
+ * The segments between the points are also put in a PathSegmentGrid, so the spot on the path closest to the robot
+ * can be found without looking at the whole path.
+ * Like Path, a CompiledPath cannot be changed once it is made. Get one with Path.compile().
+ */
+public class CompiledPath {
+    private final double[]
+        x,
+        y,
+        heading,
+        lengthTo,       //distance along the path from point 0 to point i
+        segmentHeading, //heading from point i to point i + 1. The last point keeps the heading of the segment before it
+        turnSum;        //sum of the turns at points 0 through i - 1. One longer than the path
+
+    private final PathSegmentGrid segmentGrid;
+
+    /**
+     * Creates a new CompiledPath. Every point of the path must exist.
+     * @param path The path to compile.
+     */
+    public CompiledPath(Path path) {
+        int count = path.getPointCount();
+        x = new double[count];
+        y = new double[count];
+        heading = new double[count];
+        lengthTo = new double[count];
+        segmentHeading = new double[count];
+        turnSum = new double[count + 1];
+
+        for(int i=0; i<count; i++) {
+            Point2D point = path.getPoint(i);
+            x[i] = point.getX();
+            y[i] = point.getY();
+            heading[i] = point.getHeading();
+        }
+
+        for(int i=1; i<count; i++) {
+            double dx = x[i] - x[i - 1];
+            double dy = y[i] - y[i - 1];
+            lengthTo[i] = lengthTo[i - 1] + Math.sqrt(dx * dx + dy * dy);
+            segmentHeading[i - 1] = Math.toDegrees(Math.atan2(dy, dx));
+        }
+
+        if(count > 1) {
+            segmentHeading[count - 1] = segmentHeading[count - 2];
+        }
+
+        //the turn at a point is from the segment coming into it to the segment going out of it. The ends have no turn
+        for(int i=0; i<count; i++) {
+            double turn = (i > 0 && i < count - 1 ? Util.getAngleToHeading(segmentHeading[i - 1], segmentHeading[i]) : 0);
+            turnSum[i + 1] = turnSum[i] + turn;
+        }
+
+        segmentGrid = new PathSegmentGrid(x, y);
+    }
+
+    /**
+     * Returns the number of points in the path.
+     */
+    public int getPointCount() {
+        return x.length;
+    }
+
+    /**
+     * Returns the x coordinate of a point.
+     * @param index The index of the point.
+     */
+    public double getX(int index) {
+        return x[index];
+    }
+
+    /**
+     * Returns the y coordinate of a point.
+     * @param index The index of the point.
+     */
+    public double getY(int index) {
+        return y[index];
+    }
+
+    /**
+     * Returns the recorded heading of a point.
+     * @param index The index of the point.
+     */
+    public double getHeading(int index) {
+        return heading[index];
+    }
+
+    /**
+     * Returns the heading from a point to the next one, or of the last segment for the last point.
+     * @param index The index of the point.
+     */
+    public double getSegmentHeading(int index) {
+        return segmentHeading[index];
+    }
+
+    /**
+     * Returns the distance along the path between two points.
+     * @param from The index of the first point.
+     * @param to The index of the last point.
+     * @return The distance in inches. Negative if to is before from.
+     */
+    public double getLengthBetween(int from, int to) {
+        return lengthTo[to] - lengthTo[from];
+    }
+
+    /**
+     * Returns the total turn of the path at a run of points, where the turn at a point is the change in heading from the
+     * segment coming into it to the segment going out of it.
+     * @param first The index of the first point to count.
+     * @param last The index of the last point to count.
+     * @return The turn in degrees, or 0 if last is before first.
+     */
+    public double getTurnBetween(int first, int last) {
+        return (last < first ? 0 : turnSum[last + 1] - turnSum[first]);
+    }
+
+    /**
+     * Returns the distance along the path from the first point to a point.
+     * @param index The index of the point.
+     * @return The distance in inches.
+     */
+    public double getLengthAt(int index) {
+        return lengthTo[index];
+    }
+
+    /**
+     * Returns the total length of the path.
+     * @return The length in inches.
+     */
+    public double getLength() {
+        return (lengthTo.length > 0 ? lengthTo[lengthTo.length - 1] : 0);
+    }
+
+    /**
+     * Returns the segment that a distance along the path falls in. Segment i goes from point i to point i + 1.
+     * @param length The distance along the path in inches. Distances off either end give the first or last segment.
+     * @return The index of the segment.
+     */
+    public int getSegmentAtLength(double length) {
+        //binary search for the last point at or before the length
+        int low = 0;
+        int high = Math.max(lengthTo.length - 2, 0);
+        while(low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if(lengthTo[middle] <= length) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Finds the spot on part of the path that is closest to a location.
+     * @param px The x coordinate of the location.
+     * @param py The y coordinate of the location.
+     * @param fromLength Where the part of the path to search starts, as a distance along the path in inches.
+     * @param toLength Where the part of the path to search ends, as a distance along the path in inches.
+     * @param maxDistance Spots farther than this from the location are not returned.
+     * @return The distance along the path of the closest spot in inches, or NaN if no spot in that part of the path is within maxDistance.
+     */
+    public double findClosestLength(double px, double py, double fromLength, double toLength, double maxDistance) {
+        if(x.length < 2) {
+            return Double.NaN;
+        }
+
+        int segment = segmentGrid.findClosestSegment(px, py, getSegmentAtLength(fromLength), getSegmentAtLength(toLength), maxDistance);
+        if(segment < 0) {
+            return Double.NaN;
+        }
+
+        return lengthTo[segment] + segmentGrid.getFractionAlongSegment(px, py, segment) * (lengthTo[segment + 1] - lengthTo[segment]);
+    }
+
+    /**
+     * Returns the distance from a location to a point.
+     * @param fromX The x coordinate of the location.
+     * @param fromY The y coordinate of the location.
+     * @param index The index of the point.
+     * @return The distance in inches.
+     */
+    public double getDistanceFrom(double fromX, double fromY, int index) {
+        double dx = x[index] - fromX;
+        double dy = y[index] - fromY;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Returns the heading needed to point at a point from a location. Same as Point2D.getHeadingTo().
+     * @param fromX The x coordinate of the location.
+     * @param fromY The y coordinate of the location.
+     * @param index The index of the point.
+     * @return The heading in degrees.
+     */
+    public double getHeadingFrom(double fromX, double fromY, int index) {
+        return Math.toDegrees(Math.atan2(y[index] - fromY, x[index] - fromX));
+    }
+}
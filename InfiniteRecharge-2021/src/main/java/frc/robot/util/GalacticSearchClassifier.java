@@ -0,0 +1,180 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import frc.robot.Constants;
+import frc.robot.enumeration.GalacticSearchPattern;
+import frc.robot.subsystems.SubsystemJevois;
+
+/**
+ * Works out which Galactic Search layout is on the field while the robot is disabled, so the path is already picked
+ * when auto starts. Every new Jevois frame votes for a layout, and the layout with the most votes out of the last
+ * GALACTIC_SEARCH_VOTE_WINDOW frames wins, so one bad frame cannot change the answer.
+ * Frames that do not show enough power cells to decide abstain, which lowers the confidence instead of voting.
+ */
+public class GalacticSearchClassifier {
+    private static final GalacticSearchPattern[] PATTERNS = GalacticSearchPattern.values();
+    private static final int ABSTAIN = -1;
+
+    private final SubsystemJevois jevois;
+    private final PowerCellList frame;
+    private final int[]
+        votes, //ring of pattern ordinals, or ABSTAIN
+        tally;
+
+    private int
+        nextVote,
+        voteCount;
+
+    private long lastFrameTime;
+
+    /**
+     * Creates a new GalacticSearchClassifier.
+     * @param jevois The Jevois to get frames from.
+     */
+    public GalacticSearchClassifier(SubsystemJevois jevois) {
+        this.jevois = jevois;
+        this.frame = new PowerCellList();
+        this.votes = new int[Constants.GALACTIC_SEARCH_VOTE_WINDOW];
+        this.tally = new int[PATTERNS.length];
+        this.lastFrameTime = System.nanoTime();
+        reset();
+    }
+
+    /**
+     * Adds a vote for the newest Jevois frame, if there is a new one, and posts the result to the dashboard.
+     * Call periodically while disabled.
+     */
+    public void update() {
+        long lastSequence = frame.getSequence();
+        jevois.getPowerCells(frame);
+        long now = System.nanoTime();
+        if(frame.getSequence() != lastSequence) {
+            addVote(classify(frame));
+            lastFrameTime = now;
+        } else if((now - lastFrameTime) / 1000000 > Constants.GALACTIC_SEARCH_MAX_FRAME_AGE_MS) {
+            reset(); //the Jevois is not sending, so the old votes may not match what is on the field now
+            lastFrameTime = now;
+        }
+
+        GalacticSearchPattern pattern = getPattern();
+        SmartDashboard.putString("Galactic Search Pattern", (pattern == null ? "Unknown" : pattern.getName()));
+        SmartDashboard.putNumber("Galactic Search Confidence", getConfidence());
+        SmartDashboard.putBoolean("Galactic Search Confident", isConfident());
+    }
+
+    /**
+     * Throws out every vote.
+     */
+    public void reset() {
+        nextVote = 0;
+        voteCount = 0;
+        for(int i=0; i<tally.length; i++) {
+            tally[i] = 0;
+        }
+    }
+
+    /**
+     * Returns the layout with the most votes, or null if nothing has voted. Ties go to the layout voted for most recently.
+     */
+    public GalacticSearchPattern getPattern() {
+        int best = -1;
+        for(int i=0; i<tally.length; i++) {
+            if(tally[i] > 0 && (best < 0 || tally[i] > tally[best] || (tally[i] == tally[best] && isNewerVote(i, best)))) {
+                best = i;
+            }
+        }
+
+        return (best < 0 ? null : PATTERNS[best]);
+    }
+
+    /**
+     * Returns the fraction of the window that voted for the winning layout, from 0 to 1. Abstaining frames and a
+     * window that is not full yet both count against it.
+     */
+    public double getConfidence() {
+        GalacticSearchPattern pattern = getPattern();
+        return (pattern == null ? 0 : tally[pattern.ordinal()] / (double) votes.length);
+    }
+
+    /**
+     * Returns true if the winning layout has at least GALACTIC_SEARCH_MIN_CONFIDENCE of the window.
+     */
+    public boolean isConfident() {
+        return getConfidence() >= Constants.GALACTIC_SEARCH_MIN_CONFIDENCE;
+    }
+
+    /**
+     * Picks the layout that one frame shows.
+     * For near layouts, the closest power cell is in the near half of the field and its side says which set it is.
+     * For far layouts, the Jevois cannot see the farthest ball because it is too small, so the spacing of the two it
+     * can see says which set it is.
+     * @param powerCells The power cells in the frame, closest first.
+     * @return The layout, or null if the frame does not show enough power cells to tell.
+     */
+    public static GalacticSearchPattern classify(PowerCellList powerCells) {
+        if(powerCells.isEmpty()) {
+            return null;
+        }
+
+        if(powerCells.getY(0) > Util.getAndSetDouble("Galactic Search Close Y", Constants.GALACTIC_SEARCH_CLOSE_Y)) {
+            //closest ball is in the near half, so it is one of the path 1 layouts
+            boolean setA = powerCells.getX(0) > Util.getAndSetDouble("Galactic Search A1 Min X", Constants.GALACTIC_SEARCH_SET_A_PATH_1_MIN_X);
+            return (setA ? GalacticSearchPattern.SET_A_PATH_1 : GalacticSearchPattern.SET_B_PATH_1);
+        }
+
+        if(powerCells.size() < 2) {
+            return null;
+        }
+
+        int spacing = Math.abs(powerCells.getX(0) - powerCells.getX(1));
+        boolean setA = spacing > Util.getAndSetDouble("Galactic Search A2 Min Spacing", Constants.GALACTIC_SEARCH_SET_A_PATH_2_MIN_SPACING);
+        return (setA ? GalacticSearchPattern.SET_A_PATH_2 : GalacticSearchPattern.SET_B_PATH_2);
+    }
+
+    /**
+     * Adds a vote to the window, pushing out the oldest if it is full.
+     * @param pattern The layout voted for, or null to abstain.
+     */
+    private void addVote(GalacticSearchPattern pattern) {
+        if(voteCount == votes.length) {
+            int oldest = votes[nextVote];
+            if(oldest != ABSTAIN) {
+                tally[oldest]--;
+            }
+        } else {
+            voteCount++;
+        }
+
+        int vote = (pattern == null ? ABSTAIN : pattern.ordinal());
+        votes[nextVote] = vote;
+        if(vote != ABSTAIN) {
+            tally[vote]++;
+        }
+
+        nextVote = (nextVote + 1) % votes.length;
+    }
+
+    /**
+     * Returns true if the most recent vote for one layout is newer than the most recent vote for another.
+     * @param pattern The ordinal of the first layout.
+     * @param other The ordinal of the other layout.
+     */
+    private boolean isNewerVote(int pattern, int other) {
+        for(int age=1; age<=voteCount; age++) {
+            int vote = votes[(nextVote - age + votes.length) % votes.length];
+            if(vote == pattern) {
+                return true;
+            }
+
+            if(vote == other) {
+                return false;
+            }
+        }
+
+        return false;
+    }
+}
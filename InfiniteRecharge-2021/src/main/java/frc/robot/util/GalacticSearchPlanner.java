@@ -0,0 +1,368 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.util.Arrays;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import frc.robot.Constants;
+
+/**
+ * Plans a Galactic Search path from what the Jevois sees instead of picking a recorded one.
+ * The three closest power cells are placed on the field with a JevoisCameraModel, every order of picking them up is
+ * tried (there are only six), and the cheapest one is turned into a smooth curve that passes through each power cell
+ * and ends in the end zone. The curve is spaced out like a recorded path so CyborgCommandEmulatePath can drive it.
+ * Planning takes well under a millisecond, so it can happen in the loop that auto starts in.
+ * Power cells are only planned for if the Jevois finds them. With the default camera model a power cell more than about
+ * 265 inches ahead is smaller than the 5 pixel radius BallFinder.py looks for, so the third power cell of Set B Path 2
+ * (D10, 280 inches ahead) is never seen and that layout always falls back to the recorded path the classifier picks.
+ */
+public class GalacticSearchPlanner {
+    private static final int BALLS = 3;
+    private static final int[][] ORDERS = {
+        {0, 1, 2},
+        {0, 2, 1},
+        {1, 0, 2},
+        {1, 2, 0},
+        {2, 0, 1},
+        {2, 1, 0}
+    };
+
+    private final JevoisCameraModel camera;
+    private final double
+        endZoneDistance,
+        turnCost;
+
+    //the last plan, in inches from the start along and to the left of the way the robot faced
+    private final double[]
+        ballForward,
+        ballLeft,
+        waypointForward,
+        waypointLeft,
+        tangentForward,
+        tangentLeft;
+
+    private final int[] bestOrder;
+    private int ballsSeen;
+    private double
+        planMillis,
+        planLength,
+        tightestTurn;
+
+    private String failure;
+
+    /**
+     * Creates a new GalacticSearchPlanner.
+     * @param camera The model to place power cells with.
+     * @param endZoneDistance How far ahead of the start the end zone line is in inches.
+     * @param turnCost How many inches of driving one degree of turning is worth when picking the order.
+     */
+    public GalacticSearchPlanner(JevoisCameraModel camera, double endZoneDistance, double turnCost) {
+        this.camera = camera;
+        this.endZoneDistance = endZoneDistance;
+        this.turnCost = turnCost;
+        this.ballForward = new double[BALLS];
+        this.ballLeft = new double[BALLS];
+        this.waypointForward = new double[BALLS + 2];
+        this.waypointLeft = new double[BALLS + 2];
+        this.tangentForward = new double[BALLS + 2];
+        this.tangentLeft = new double[BALLS + 2];
+        this.bestOrder = new int[BALLS];
+        this.failure = "Nothing planned";
+    }
+
+    /**
+     * Creates a new GalacticSearchPlanner with the camera calibration and tuning on the dashboard.
+     */
+    public static GalacticSearchPlanner fromPreferences() {
+        return new GalacticSearchPlanner(
+            JevoisCameraModel.fromPreferences(),
+            Util.getAndSetDouble("Galactic Search End Zone Distance", Constants.GALACTIC_SEARCH_END_ZONE_DISTANCE),
+            Util.getAndSetDouble("Galactic Search Turn Cost", Constants.GALACTIC_SEARCH_TURN_COST)
+        );
+    }
+
+    /**
+     * Plans a path that picks up the three closest power cells and ends in the end zone.
+     * @param powerCells The power cells the Jevois sees, closest first.
+     * @param start Where the robot is, facing the end zone.
+     * @return The path, or null if there are not three power cells on the field to plan for. getFailure() says why.
+     */
+    public Path plan(PowerCellList powerCells, Point2D start) {
+        long startTime = System.nanoTime();
+        Path path = null;
+        if(locateBalls(powerCells)) {
+            orderBalls();
+            path = buildPath(start);
+            failure = null;
+        }
+
+        planMillis = (System.nanoTime() - startTime) / 1000000.0;
+        return path;
+    }
+
+    /**
+     * Returns why the last plan failed, or null if it worked.
+     */
+    public String getFailure() {
+        return failure;
+    }
+
+    /**
+     * Returns how many power cells on the field the last plan found, up to three.
+     */
+    public int getBallsSeen() {
+        return ballsSeen;
+    }
+
+    /**
+     * Returns how long the last plan took in milliseconds.
+     */
+    public double getPlanMillis() {
+        return planMillis;
+    }
+
+    /**
+     * Returns the length of the last planned path in inches.
+     */
+    public double getPlanLength() {
+        return planLength;
+    }
+
+    /**
+     * Returns the radius of the tightest turn in the last planned path in inches.
+     */
+    public double getTightestTurn() {
+        return tightestTurn;
+    }
+
+    /**
+     * Returns the position of a power cell in the last plan, in the order they are picked up.
+     * @param index Which power cell, 0 being the first picked up.
+     * @return The position as {forward, left} in inches from where the robot started.
+     */
+    public double[] getBall(int index) {
+        return new double[] { ballForward[bestOrder[index]], ballLeft[bestOrder[index]] };
+    }
+
+    /**
+     * Returns the length of the straight lines from the start through each power cell in the order the power cells were
+     * seen (closest first) and on to the end zone. This is the path a robot that just chases the closest power cell drives,
+     * for comparing with the planned order.
+     */
+    public double getClosestFirstLength() {
+        return getOrderCost(ORDERS[0], false);
+    }
+
+    /**
+     * Posts the last plan to the dashboard.
+     */
+    public void putStatistics() {
+        SmartDashboard.putBoolean("Galactic Search Planned", failure == null);
+        SmartDashboard.putString("Galactic Search Plan Failure", (failure == null ? "" : failure));
+        SmartDashboard.putNumber("Galactic Search Plan ms", planMillis);
+        SmartDashboard.putNumber("Galactic Search Plan Length", planLength);
+        SmartDashboard.putNumber("Galactic Search Tightest Turn", tightestTurn);
+    }
+
+    /**
+     * Places the closest three power cells that are on the field.
+     * @param powerCells The power cells the Jevois sees, closest first.
+     * @return True if three were found.
+     */
+    private boolean locateBalls(PowerCellList powerCells) {
+        ballsSeen = 0;
+        for(int i=0; i<powerCells.size() && ballsSeen < BALLS; i++) {
+            double[] position = camera.locate(powerCells.getX(i), powerCells.getY(i), powerCells.getRadius(i));
+            if(position == null || position[0] <= 0 || position[0] >= endZoneDistance || Math.abs(position[1]) > Constants.GALACTIC_SEARCH_MAX_BALL_LATERAL) {
+                continue; //too far to tell, or not on the field
+            }
+
+            ballForward[ballsSeen] = position[0];
+            ballLeft[ballsSeen] = position[1];
+            ballsSeen++;
+        }
+
+        if(ballsSeen < BALLS) {
+            failure = "Only found " + ballsSeen + " of " + BALLS + " power cells";
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Tries every order of picking up the power cells and keeps the cheapest.
+     */
+    private void orderBalls() {
+        int best = 0;
+        double bestCost = Double.POSITIVE_INFINITY;
+        for(int i=0; i<ORDERS.length; i++) {
+            double cost = getOrderCost(ORDERS[i], true);
+            if(cost < bestCost) {
+                bestCost = cost;
+                best = i;
+            }
+        }
+
+        System.arraycopy(ORDERS[best], 0, bestOrder, 0, BALLS);
+    }
+
+    /**
+     * Returns the cost of picking up the power cells in an order: the straight line distance from the start, through
+     * each power cell, straight on to the end zone, plus the turning on the way.
+     * @param order The indices of the power cells in the order they are picked up.
+     * @param includeTurns True to add the cost of turning.
+     * @return The cost in inches.
+     */
+    private double getOrderCost(int[] order, boolean includeTurns) {
+        double cost = 0;
+        double turn = 0;
+        double lastForward = 0;
+        double lastLeft = 0;
+        double lastHeading = 0;
+        for(int i=0; i<BALLS; i++) {
+            double forward = ballForward[order[i]] - lastForward;
+            double left = ballLeft[order[i]] - lastLeft;
+            double heading = Math.toDegrees(Math.atan2(left, forward));
+            cost += Math.sqrt(forward * forward + left * left);
+            turn += Math.abs(Util.getAngleToHeading(lastHeading, heading));
+            lastForward = ballForward[order[i]];
+            lastLeft = ballLeft[order[i]];
+            lastHeading = heading;
+        }
+
+        cost += endZoneDistance - lastForward;
+        turn += Math.abs(Util.getAngleToHeading(lastHeading, 0));
+        return cost + (includeTurns ? turn * turnCost : 0);
+    }
+
+    /**
+     * Turns the order into a curve through the power cells and samples it every PATH_RECORDER_DISTANCE_INTERVAL inches,
+     * like a recorded path.
+     * @param start Where the robot is, facing the end zone.
+     * @return The path.
+     */
+    private Path buildPath(Point2D start) {
+        int waypoints = BALLS + 2;
+        waypointForward[0] = 0;
+        waypointLeft[0] = 0;
+        for(int i=0; i<BALLS; i++) {
+            waypointForward[i + 1] = ballForward[bestOrder[i]];
+            waypointLeft[i + 1] = ballLeft[bestOrder[i]];
+        }
+        waypointForward[waypoints - 1] = endZoneDistance + Constants.GALACTIC_SEARCH_END_ZONE_OVERSHOOT;
+        waypointLeft[waypoints - 1] = waypointLeft[waypoints - 2];
+
+        //leave facing the end zone, pass each power cell in the direction from the one before to the one after, and arrive facing the end zone
+        tangentForward[0] = 1;
+        tangentLeft[0] = 0;
+        tangentForward[waypoints - 1] = 1;
+        tangentLeft[waypoints - 1] = 0;
+        for(int i=1; i<waypoints - 1; i++) {
+            double forward = waypointForward[i + 1] - waypointForward[i - 1];
+            double left = waypointLeft[i + 1] - waypointLeft[i - 1];
+            double length = Math.sqrt(forward * forward + left * left);
+            tangentForward[i] = (length > 0 ? forward / length : 1);
+            tangentLeft[i] = (length > 0 ? left / length : 0);
+        }
+
+        //first pass measures the curve so the second knows how many points to make
+        double spacing = Constants.PATH_RECORDER_DISTANCE_INTERVAL;
+        planLength = walkCurve(null, start, spacing);
+        Point2D[] points = new Point2D[(int) (planLength / spacing) + 2];
+        walkCurve(points, start, spacing);
+
+        int count = points.length;
+        while(count > 0 && points[count - 1] == null) {
+            count--;
+        }
+
+        return new Path(count < points.length ? Arrays.copyOf(points, count) : points);
+    }
+
+    /**
+     * Walks along the curve in small steps, dropping a point every spacing inches if there is somewhere to put it.
+     * Each leg is a cubic Hermite curve between two waypoints, with tangents as long as the leg, which keeps the curve
+     * from looping or going slack.
+     * @param points Where to put the points, or null to only measure the curve. The last point is the end of the curve.
+     * @param start Where the robot is, facing the end zone.
+     * @param spacing The distance between points in inches.
+     * @return The length of the curve in inches.
+     */
+    private double walkCurve(Point2D[] points, Point2D start, double spacing) {
+        double startHeading = Math.toRadians(start.getHeading());
+        double cos = Math.cos(startHeading);
+        double sin = Math.sin(startHeading);
+
+        double length = 0;
+        double nextPoint = spacing;
+        double lastForward = 0;
+        double lastLeft = 0;
+        int pointCount = 0;
+        tightestTurn = Double.POSITIVE_INFINITY;
+        if(points != null) {
+            points[pointCount++] = new Point2D(start.getX(), start.getY(), start.getHeading());
+        }
+
+        for(int leg=0; leg<waypointForward.length - 1; leg++) {
+            double dx = waypointForward[leg + 1] - waypointForward[leg];
+            double dy = waypointLeft[leg + 1] - waypointLeft[leg];
+            double chord = Math.sqrt(dx * dx + dy * dy);
+            double m0x = tangentForward[leg] * chord;
+            double m0y = tangentLeft[leg] * chord;
+            double m1x = tangentForward[leg + 1] * chord;
+            double m1y = tangentLeft[leg + 1] * chord;
+            double p0x = waypointForward[leg];
+            double p0y = waypointLeft[leg];
+            double p1x = waypointForward[leg + 1];
+            double p1y = waypointLeft[leg + 1];
+
+            //small enough steps that no two points land in the same step
+            int steps = Math.max(Constants.GALACTIC_SEARCH_PLAN_SAMPLES, (int) Math.ceil(4 * chord / spacing));
+            for(int step=1; step<=steps; step++) {
+                double t = step / (double) steps;
+                double t2 = t * t;
+                double t3 = t2 * t;
+
+                //hermite basis and its first two derivatives
+                double h00 = 2 * t3 - 3 * t2 + 1, h10 = t3 - 2 * t2 + t, h01 = -2 * t3 + 3 * t2, h11 = t3 - t2;
+                double d00 = 6 * t2 - 6 * t, d10 = 3 * t2 - 4 * t + 1, d01 = -6 * t2 + 6 * t, d11 = 3 * t2 - 2 * t;
+                double s00 = 12 * t - 6, s10 = 6 * t - 4, s01 = -12 * t + 6, s11 = 6 * t - 2;
+
+                double forward = h00 * p0x + h10 * m0x + h01 * p1x + h11 * m1x;
+                double left = h00 * p0y + h10 * m0y + h01 * p1y + h11 * m1y;
+                double velocityForward = d00 * p0x + d10 * m0x + d01 * p1x + d11 * m1x;
+                double velocityLeft = d00 * p0y + d10 * m0y + d01 * p1y + d11 * m1y;
+                double accelForward = s00 * p0x + s10 * m0x + s01 * p1x + s11 * m1x;
+                double accelLeft = s00 * p0y + s10 * m0y + s01 * p1y + s11 * m1y;
+
+                double speed = Math.sqrt(velocityForward * velocityForward + velocityLeft * velocityLeft);
+                double bend = Math.abs(velocityForward * accelLeft - velocityLeft * accelForward);
+                if(bend > 0) {
+                    tightestTurn = Math.min(tightestTurn, speed * speed * speed / bend);
+                }
+
+                double stepForward = forward - lastForward;
+                double stepLeft = left - lastLeft;
+                length += Math.sqrt(stepForward * stepForward + stepLeft * stepLeft);
+                lastForward = forward;
+                lastLeft = left;
+
+                boolean lastStep = leg == waypointForward.length - 2 && step == steps;
+                if(points != null && (length >= nextPoint || lastStep) && pointCount < points.length) {
+                    //rotate from the start's frame into the position tracker's
+                    double x = start.getX() + forward * cos - left * sin;
+                    double y = start.getY() + forward * sin + left * cos;
+                    double heading = start.getHeading() + Math.toDegrees(Math.atan2(velocityLeft, velocityForward));
+                    points[pointCount++] = new Point2D(x, y, heading);
+                    nextPoint += spacing;
+                }
+            }
+        }
+
+        return length;
+    }
+}
@@ -0,0 +1,154 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import frc.robot.Constants;
+
+/**
+ * Pinhole model of the Jevois, for finding where a power cell is from where it is in the image.
+ * The range comes from two places: the radius (a power cell is always the same size) and the y (a power cell always
+ * sits on the carpet). Each is weighed by how much a pixel of error moves it, so close power cells mostly use y and
+ * the radius takes over where y stops changing.
+ * Positions are relative to the robot: forward is the way the robot faces and left is 90 degrees CCW of that.
+ */
+public class JevoisCameraModel {
+    private final double
+        focalLength, //pixels
+        centerY,
+        height, //lens above the center of a power cell
+        pitch, //radians below level
+        forwardOffset,
+        leftOffset,
+        pixelError;
+
+    /**
+     * Creates a new JevoisCameraModel.
+     * @param horizontalFOV The horizontal field of view of the camera in degrees.
+     * @param cameraHeight The height of the lens above the carpet in inches.
+     * @param cameraPitch How far the camera is tipped down from level in degrees.
+     * @param forwardOffset How far ahead of the center of the robot the camera is in inches.
+     * @param leftOffset How far left of the center of the robot the camera is in inches.
+     * @param pixelError How far off a reported y or radius usually is in pixels.
+     */
+    public JevoisCameraModel(double horizontalFOV, double cameraHeight, double cameraPitch, double forwardOffset, double leftOffset, double pixelError) {
+        this.focalLength = (Constants.JEVOIS_RESOLUTION_X / 2.0) / Math.tan(Math.toRadians(horizontalFOV / 2));
+        this.centerY = Constants.JEVOIS_RESOLUTION_Y / 2.0;
+        this.height = cameraHeight - Constants.POWER_CELL_RADIUS;
+        this.pitch = Math.toRadians(cameraPitch);
+        this.forwardOffset = forwardOffset;
+        this.leftOffset = leftOffset;
+        this.pixelError = pixelError;
+    }
+
+    /**
+     * Creates a new JevoisCameraModel from the calibration on the dashboard.
+     */
+    public static JevoisCameraModel fromPreferences() {
+        return new JevoisCameraModel(
+            Util.getAndSetDouble("Jevois FOV", Constants.JEVOIS_HORIZONTAL_FOV),
+            Util.getAndSetDouble("Jevois Height", Constants.JEVOIS_CAMERA_HEIGHT),
+            Util.getAndSetDouble("Jevois Pitch", Constants.JEVOIS_CAMERA_PITCH),
+            Util.getAndSetDouble("Jevois Forward Offset", Constants.JEVOIS_CAMERA_FORWARD_OFFSET),
+            Util.getAndSetDouble("Jevois Left Offset", Constants.JEVOIS_CAMERA_LEFT_OFFSET),
+            Util.getAndSetDouble("Jevois Pixel Error", Constants.JEVOIS_PIXEL_ERROR)
+        );
+    }
+
+    /**
+     * Returns the angle from the middle of the image to a power cell, in degrees. Positive is left, like the robot's heading.
+     * @param x The x-coordinate of the power cell in pixels, where 0 is the center of the image.
+     */
+    public double getBearing(int x) {
+        return Math.toDegrees(Math.atan2(-x, focalLength));
+    }
+
+    /**
+     * Returns how far ahead of the camera a power cell is, from its y alone.
+     * @param y The y-coordinate of the power cell in pixels, where 0 is the top of the image.
+     * @return The distance in inches, or infinity if the power cell is at or above the horizon.
+     */
+    public double getDepthFromY(int y) {
+        double angle = pitch + Math.atan2(y - centerY, focalLength);
+        return (angle > 0 ? height / Math.tan(angle) : Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Returns how far ahead of the camera a power cell is, from its radius alone.
+     * @param x The x-coordinate of the power cell in pixels, where 0 is the center of the image.
+     * @param radius The radius of the power cell in pixels.
+     * @return The distance in inches, or infinity if the radius is not positive.
+     */
+    public double getDepthFromRadius(int x, int radius) {
+        if(radius <= 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        double slantRange = focalLength * Constants.POWER_CELL_RADIUS / radius;
+        double groundRange = Math.sqrt(Math.max(0, slantRange * slantRange - height * height));
+        return groundRange * Math.cos(Math.atan2(x, focalLength));
+    }
+
+    /**
+     * Returns how far ahead of the camera a power cell is, blending the depth from y with the depth from radius.
+     * @param x The x-coordinate of the power cell in pixels, where 0 is the center of the image.
+     * @param y The y-coordinate of the power cell in pixels, where 0 is the top of the image.
+     * @param radius The radius of the power cell in pixels.
+     * @return The distance in inches, or infinity if neither can tell.
+     */
+    public double getDepth(int x, int y, int radius) {
+        double fromY = getDepthFromY(y);
+        double fromRadius = getDepthFromRadius(x, radius);
+        if(Double.isInfinite(fromY) || Double.isInfinite(fromRadius)) {
+            return Math.min(fromY, fromRadius);
+        }
+
+        //how far one pixel of error moves each one
+        double angle = pitch + Math.atan2(y - centerY, focalLength);
+        double offCenter = y - centerY;
+        double yError = height / (Math.sin(angle) * Math.sin(angle)) * focalLength / (focalLength * focalLength + offCenter * offCenter) * pixelError;
+        double radiusError = fromRadius / radius * pixelError;
+
+        double yWeight = 1 / (yError * yError);
+        double radiusWeight = 1 / (radiusError * radiusError);
+        return (fromY * yWeight + fromRadius * radiusWeight) / (yWeight + radiusWeight);
+    }
+
+    /**
+     * Finds where a power cell is relative to the robot.
+     * @param x The x-coordinate of the power cell in pixels, where 0 is the center of the image.
+     * @param y The y-coordinate of the power cell in pixels, where 0 is the top of the image.
+     * @param radius The radius of the power cell in pixels.
+     * @return The position as {forward, left} in inches, or null if the power cell is too far to tell.
+     */
+    public double[] locate(int x, int y, int radius) {
+        double depth = getDepth(x, y, radius);
+        if(Double.isInfinite(depth)) {
+            return null;
+        }
+
+        double left = -depth * x / focalLength;
+        return new double[] { depth + forwardOffset, left + leftOffset };
+    }
+
+    /**
+     * Works out where a power cell at a spot relative to the robot shows up in the image. The opposite of locate().
+     * @param forward How far ahead of the center of the robot the power cell is in inches.
+     * @param left How far left of the center of the robot the power cell is in inches.
+     * @return The power cell as the Jevois would report it, or null if it is behind the camera.
+     */
+    public PowerCell project(double forward, double left) {
+        double depth = forward - forwardOffset;
+        if(depth <= 0) {
+            return null;
+        }
+
+        double lateral = left - leftOffset;
+        double x = -lateral * focalLength / depth;
+        double y = centerY + focalLength * Math.tan(Math.atan2(height, depth) - pitch);
+        double groundRange = Math.sqrt(depth * depth + lateral * lateral);
+        double radius = focalLength * Constants.POWER_CELL_RADIUS / Math.sqrt(groundRange * groundRange + height * height);
+        return new PowerCell((int) Math.round(x), (int) Math.round(y), (int) Math.round(radius));
+    }
+}
@@ -6,7 +6,9 @@ public enum MessageType {
     PATH("Path", 1),             //Path-[dir]:[path]
     DIRECTORY_REQUEST("Dir", 2), //Dir:[dir]
     LOAD("Load", 3),             //Load:[path]
-    SAVE("Save", 4);             //save-[path]:[file]
+    SAVE("Save", 4),             //save-[path]:[file]
+    POSITION_DELTA("Delta", 5),  //Delta:[dx],[dy],[dheading] in PV_POSITION_QUANTUM steps from the last position sent
+    HELLO("Hello", 6);           //Hello:[capability],[capability]...
 
     private final String code;
     private final int index;
@@ -52,4 +54,19 @@ public enum MessageType {
 
         return UNKNOWN;
     }
+
+    /**
+     * Returns a MessageType based on its index. Used by binary frames, which carry the index instead of the code.
+     * @param index A MessageType index.
+     * @return A MessageType corresponding to the index.
+     */
+    public static MessageType fromIndex(int index) {
+        for(MessageType type : MessageType.values()) {
+            if(type.getIndex() == index) {
+                return type;
+            }
+        }
+
+        return UNKNOWN;
+    }
 }
@@ -0,0 +1,125 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+/**
+ * Snapshot of the send queue of one PathVisualizer client, published by the PVHost I/O thread.
+ */
+public class PVClientStats {
+    private final String address;
+    private final int queuedFrames;
+    private final long
+        queuedBytes,
+        droppedPositions,
+        savedPositionBytes,
+        sentFrames,
+        sentBytes,
+        fileBytesSent,
+        fileBytesQueued,
+        savedBytes;
+
+    /**
+     * Creates a new PVClientStats.
+     * @param address The remote address of the client.
+     * @param queuedFrames Number of frames waiting to be sent.
+     * @param queuedBytes Number of bytes waiting to be sent.
+     * @param droppedPositions Number of position frames thrown out because the client was not keeping up.
+     * @param savedPositionBytes Number of bytes saved by sending the client delta positions instead of full ones.
+     * @param sentFrames Number of frames completely written to the client.
+     * @param sentBytes Number of bytes written to the client.
+     * @param fileBytesSent Number of file bytes written to the client by LOADs.
+     * @param fileBytesQueued Number of file bytes queued for the client by LOADs.
+     * @param savedBytes Number of bytes received for the SAVE in progress, or for the last one.
+     */
+    public PVClientStats(String address, int queuedFrames, long queuedBytes, long droppedPositions, long savedPositionBytes, long sentFrames, long sentBytes, long fileBytesSent, long fileBytesQueued, long savedBytes) {
+        this.address = address;
+        this.queuedFrames = queuedFrames;
+        this.queuedBytes = queuedBytes;
+        this.droppedPositions = droppedPositions;
+        this.savedPositionBytes = savedPositionBytes;
+        this.sentFrames = sentFrames;
+        this.sentBytes = sentBytes;
+        this.fileBytesSent = fileBytesSent;
+        this.fileBytesQueued = fileBytesQueued;
+        this.savedBytes = savedBytes;
+    }
+
+    /**
+     * Returns the remote address of the client.
+     */
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * Returns the number of frames waiting to be sent.
+     */
+    public int getQueuedFrames() {
+        return queuedFrames;
+    }
+
+    /**
+     * Returns the number of bytes waiting to be sent.
+     */
+    public long getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    /**
+     * Returns the number of position frames that were dropped because the client was not keeping up.
+     */
+    public long getDroppedPositions() {
+        return droppedPositions;
+    }
+
+    /**
+     * Returns the number of bytes saved by sending the client delta positions instead of full ones.
+     */
+    public long getSavedPositionBytes() {
+        return savedPositionBytes;
+    }
+
+    /**
+     * Returns the number of frames completely written to the client.
+     */
+    public long getSentFrames() {
+        return sentFrames;
+    }
+
+    /**
+     * Returns the number of bytes written to the client.
+     */
+    public long getSentBytes() {
+        return sentBytes;
+    }
+
+    /**
+     * Returns the number of file bytes written to the client by LOADs.
+     */
+    public long getFileBytesSent() {
+        return fileBytesSent;
+    }
+
+    /**
+     * Returns the number of file bytes queued for the client by LOADs. LOADs are complete when this equals getFileBytesSent().
+     */
+    public long getFileBytesQueued() {
+        return fileBytesQueued;
+    }
+
+    /**
+     * Returns the number of bytes received for the SAVE in progress, or for the last one.
+     */
+    public long getSavedBytes() {
+        return savedBytes;
+    }
+
+    /**
+     * Returns a short summary of the stats for the dashboard.
+     */
+    public String toString() {
+        return address + " queued: " + queuedFrames + " (" + queuedBytes + "B) dropped: " + droppedPositions + " sent: " + sentFrames + " load: " + fileBytesSent + "/" + fileBytesQueued + "B save: " + savedBytes + "B";
+    }
+}
@@ -0,0 +1,351 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import frc.robot.Constants;
+
+/**
+ * Body compression that a binary-framed PathVisualizer client can agree to in its HELLO.
+ * Once agreed, the body of every PATH, LOAD and SAVE message the host sends, and of every SAVE the client sends,
+ * starts with one byte naming the compression used for the rest of it. The sender picks whichever agreed
+ * compression makes the body smallest, or NONE.
+ * POINT_DELTA only works on path text. It stores each point as the zigzag varint difference from the one before,
+ * in PV_POSITION_QUANTUM steps, so it keeps x and y exactly as Point2D.toString() writes them but rounds headings.
+ */
+public enum PVCompression {
+    NONE((byte) 0, ""),
+    DEFLATE((byte) 1, Constants.PV_CAPABILITY_DEFLATE),
+    POINT_DELTA((byte) 2, Constants.PV_CAPABILITY_POINT_DELTA);
+
+    private final byte id;
+    private final String capability;
+
+    /**
+     * Creates a PVCompression.
+     * @param id The byte that starts bodies compressed this way.
+     * @param capability The HELLO capability that agrees to this compression.
+     */
+    PVCompression(byte id, String capability) {
+        this.id = id;
+        this.capability = capability;
+    }
+
+    /**
+     * Returns the byte that starts bodies compressed this way.
+     */
+    public byte getId() {
+        return id;
+    }
+
+    /**
+     * Returns the HELLO capability that agrees to this compression.
+     */
+    public String getCapability() {
+        return capability;
+    }
+
+    /**
+     * Returns true if bodies of the given message type are compressed once a compression is agreed.
+     * @param type The type of the message.
+     */
+    public static boolean appliesTo(MessageType type) {
+        return type == MessageType.PATH || type == MessageType.LOAD || type == MessageType.SAVE;
+    }
+
+    /**
+     * Returns the PVCompression that starts with the given byte.
+     * @param id The first byte of a compressed body.
+     * @return The matching PVCompression, or null if there is none.
+     */
+    public static PVCompression fromId(byte id) {
+        for(PVCompression compression : PVCompression.values()) {
+            if(compression.getId() == id) {
+                return compression;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Compresses a body with whichever of the allowed compressions makes it smallest.
+     * @param body The uncompressed body.
+     * @param allowed The compressions that the client agreed to.
+     * @return The compressed body, starting with the id of the compression used.
+     */
+    public static byte[] encodeBody(byte[] body, Collection<PVCompression> allowed) {
+        byte[] best = null;
+        for(PVCompression compression : allowed) {
+            byte[] encoded = compression.encode(body);
+            if(encoded != null && (best == null || encoded.length < best.length)) {
+                best = encoded;
+            }
+        }
+
+        if(best == null || best.length > body.length) {
+            best = NONE.encode(body);
+        }
+
+        return best;
+    }
+
+    /**
+     * Compresses a body this way.
+     * @param body The uncompressed body.
+     * @return The compressed body, starting with the id of this compression, or null if this compression cannot encode it.
+     */
+    public byte[] encode(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 2 + 16);
+        out.write(id);
+
+        switch(this) {
+            case DEFLATE: {
+                    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                    deflater.setInput(body);
+                    deflater.finish();
+                    byte[] chunk = new byte[4096];
+                    while(!deflater.finished()) {
+                        int length = deflater.deflate(chunk);
+                        out.write(chunk, 0, length);
+                    }
+                    deflater.end();
+                }
+                break;
+            case POINT_DELTA: {
+                    long
+                        lastX = 0,
+                        lastY = 0,
+                        lastHeading = 0;
+
+                    for(String line : new String(body, StandardCharsets.UTF_8).split("\n")) {
+                        Point2D point;
+                        try {
+                            point = Point2D.fromString(line.trim());
+                        } catch(NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+                            return null; //not a path
+                        }
+
+                        long x = Math.round(point.getX() / Constants.PV_POSITION_QUANTUM);
+                        long y = Math.round(point.getY() / Constants.PV_POSITION_QUANTUM);
+                        long heading = Math.round(point.getHeading() / Constants.PV_POSITION_QUANTUM);
+                        writeVarint(out, x - lastX);
+                        writeVarint(out, y - lastY);
+                        writeVarint(out, heading - lastHeading);
+                        lastX = x;
+                        lastY = y;
+                        lastHeading = heading;
+                    }
+                }
+                break;
+            default:
+                out.write(body, 0, body.length);
+                break;
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes a signed number as a zigzag varint: 7 bits per byte, high bit set on every byte but the last.
+     * @param out The stream to write to.
+     * @param value The number to write.
+     */
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        long zigzag = (value << 1) ^ (value >> 63); //small negative numbers become small positive ones
+        while((zigzag & ~0x7FL) != 0) {
+            out.write((int) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        out.write((int) zigzag);
+    }
+
+    /**
+     * Undoes encodeBody() on a body that may arrive in any number of pieces, writing the result to a channel as it goes.
+     * Used for SAVE bodies, which are streamed to disk.
+     */
+    public static class Decoder {
+        private final ByteBuffer output;
+        private final long[] point;
+        private PVCompression compression;
+        private Inflater inflater;
+        private byte[] input;
+        private int
+            componentIndex,
+            varintShift;
+
+        private long
+            varint,
+            lastX,
+            lastY,
+            lastHeading,
+            decodedBytes;
+
+        /**
+         * Creates a new Decoder for one body.
+         */
+        public Decoder() {
+            output = ByteBuffer.allocate(8192);
+            compression = null;
+            input = new byte[0];
+            point = new long[3];
+            componentIndex = 0;
+            varint = 0;
+            varintShift = 0;
+            decodedBytes = 0;
+        }
+
+        /**
+         * Decodes the next piece of the body.
+         * @param chunk The next piece. Consumed completely.
+         * @param out The channel to write the decoded bytes to.
+         * @throws IOException if the body is malformed or the write fails.
+         */
+        public void decode(ByteBuffer chunk, WritableByteChannel out) throws IOException {
+            if(compression == null) {
+                if(!chunk.hasRemaining()) {
+                    return;
+                }
+
+                compression = fromId(chunk.get());
+                if(compression == null) {
+                    throw new IOException("Body uses an unknown compression.");
+                }
+
+                if(compression == DEFLATE) {
+                    inflater = new Inflater();
+                }
+            }
+
+            switch(compression) {
+                case DEFLATE: {
+                        if(input.length < chunk.remaining()) {
+                            input = new byte[chunk.remaining()];
+                        }
+
+                        int length = chunk.remaining();
+                        chunk.get(input, 0, length);
+                        inflater.setInput(input, 0, length);
+                        try {
+                            while(!inflater.needsInput() && !inflater.finished()) {
+                                int inflated = inflater.inflate(output.array(), output.position(), output.remaining());
+                                output.position(output.position() + inflated);
+                                if(!output.hasRemaining()) {
+                                    drain(out);
+                                }
+                            }
+                        } catch(DataFormatException ex) {
+                            throw new IOException("Body is not valid deflate data.");
+                        }
+                    }
+                    break;
+                case POINT_DELTA: {
+                        while(chunk.hasRemaining()) {
+                            byte next = chunk.get();
+                            varint |= (long) (next & 0x7F) << varintShift;
+                            varintShift += 7;
+                            if((next & 0x80) != 0) {
+                                if(varintShift > 63) {
+                                    throw new IOException("Body contains an oversized varint.");
+                                }
+                                continue;
+                            }
+
+                            point[componentIndex++] = (varint >>> 1) ^ -(varint & 1);
+                            varint = 0;
+                            varintShift = 0;
+                            if(componentIndex == 3) {
+                                writePoint(out);
+                                componentIndex = 0;
+                            }
+                        }
+                    }
+                    break;
+                default: {
+                        decodedBytes += chunk.remaining();
+                        while(chunk.hasRemaining()) {
+                            out.write(chunk);
+                        }
+                    }
+                    break;
+            }
+        }
+
+        /**
+         * Writes out everything that is still buffered. Call once the whole body has been passed to decode().
+         * @param out The channel to write the decoded bytes to.
+         * @throws IOException if the body ended early or the write fails.
+         */
+        public void finish(WritableByteChannel out) throws IOException {
+            if(inflater != null) {
+                boolean complete = inflater.finished();
+                inflater.end();
+                inflater = null;
+                if(!complete) {
+                    throw new IOException("Deflate body ended early.");
+                }
+            }
+
+            if(componentIndex != 0 || varintShift != 0) {
+                throw new IOException("Point body ended in the middle of a point.");
+            }
+
+            drain(out);
+        }
+
+        /**
+         * Returns the number of decoded bytes written so far.
+         */
+        public long getDecodedBytes() {
+            return decodedBytes + output.position();
+        }
+
+        /**
+         * Adds a decoded point to the output as a line of path text.
+         * @param out The channel to write to if the output buffer fills up.
+         * @throws IOException if the write fails.
+         */
+        private void writePoint(WritableByteChannel out) throws IOException {
+            lastX += point[0];
+            lastY += point[1];
+            lastHeading += point[2];
+            Point2D decoded = new Point2D(
+                lastX * Constants.PV_POSITION_QUANTUM,
+                lastY * Constants.PV_POSITION_QUANTUM,
+                Util.roundTo(lastHeading * Constants.PV_POSITION_QUANTUM, 2)
+            );
+
+            byte[] line = (decoded.toString() + "\n").getBytes(StandardCharsets.UTF_8);
+            if(line.length > output.remaining()) {
+                drain(out);
+            }
+
+            output.put(line);
+        }
+
+        /**
+         * Writes the output buffer to the channel.
+         * @param out The channel to write to.
+         * @throws IOException if the write fails.
+         */
+        private void drain(WritableByteChannel out) throws IOException {
+            output.flip();
+            decodedBytes += output.remaining();
+            while(output.hasRemaining()) {
+                out.write(output);
+            }
+            output.clear();
+        }
+    }
+}
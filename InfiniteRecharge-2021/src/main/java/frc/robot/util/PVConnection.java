@@ -0,0 +1,429 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashSet;
+
+import frc.robot.Constants;
+
+/**
+ * A PathVisualizer client connected to the PVHost.
+ * All methods must be called from the PVHost I/O thread.
+ */
+public class PVConnection {
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final ArrayDeque<Outgoing>
+        positionFrames,
+        messageFrames;
+
+    private final PVMessageParser parser;
+    private final HashSet<String> capabilities;
+    private final EnumSet<PVCompression> compressions;
+    private final String address;
+    private PVMessageParser.Listener listener;
+    private Outgoing currentFrame;
+    private boolean
+        deltaPositions,
+        hasPositionReference;
+
+    private long
+        referenceX,
+        referenceY,
+        referenceHeading,
+        savedPositionBytes,
+        queuedBytes,
+        queuedMessageBytes,
+        droppedPositions,
+        sentFrames,
+        sentBytes,
+        fileBytesQueued,
+        fileBytesSent;
+
+    /**
+     * Creates a new PVConnection and registers it with the host's selector.
+     * @param channel The accepted client channel.
+     * @param selector The selector of the PVHost I/O thread.
+     * @throws IOException if the channel could not be configured.
+     */
+    public PVConnection(SocketChannel channel, Selector selector) throws IOException {
+        this.channel = channel;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.socket().setKeepAlive(true); //so that a laptop that vanishes without closing eventually frees its slot
+        key = channel.register(selector, SelectionKey.OP_READ, this);
+
+        positionFrames = new ArrayDeque<Outgoing>();
+        messageFrames = new ArrayDeque<Outgoing>();
+        parser = new PVMessageParser(Constants.SOCKET_BUFFER_SIZE);
+        capabilities = new HashSet<String>();
+        compressions = EnumSet.noneOf(PVCompression.class);
+        address = channel.getRemoteAddress().toString();
+        queuedBytes = 0;
+        queuedMessageBytes = 0;
+        droppedPositions = 0;
+        sentFrames = 0;
+        sentBytes = 0;
+        fileBytesQueued = 0;
+        fileBytesSent = 0;
+        deltaPositions = false;
+        hasPositionReference = false;
+        savedPositionBytes = 0;
+    }
+
+    /**
+     * Sets the listener that receives the messages this client sends.
+     * @param listener The listener to use.
+     */
+    public void setListener(PVMessageParser.Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Queues a reply to be written to the client, framed the way the client speaks.
+     * Replies are always queued because the client asked for them.
+     * @param message The message to send.
+     */
+    public void send(PVMessage message) {
+        queueMessageFrame(new Outgoing(encode(message)));
+    }
+
+    /**
+     * Encodes a message the way this client needs it: framed the way it speaks, with the body compressed if it agreed to that.
+     * @param message The message to encode.
+     * @return A flipped buffer containing the framed message.
+     */
+    public ByteBuffer encode(PVMessage message) {
+        if(compresses(message.getType())) {
+            message = new PVMessage(message.getType(), message.getSubjectInfo(), PVCompression.encodeBody(message.getBody(), compressions));
+        }
+
+        return getFraming().encode(message);
+    }
+
+    /**
+     * Returns a number that is the same for every client that encode() would give the same bytes for a message of the given type.
+     * Lets the host encode a broadcast once per distinct key instead of once per client.
+     * @param type The type of the message.
+     */
+    public int getEncodingKey(MessageType type) {
+        int key = getFraming().ordinal();
+        if(compresses(type)) {
+            for(PVCompression compression : compressions) {
+                key |= 2 << compression.ordinal();
+            }
+        }
+
+        return key;
+    }
+
+    /**
+     * Returns true if bodies of the given type are compressed for this client, and so start with a PVCompression id.
+     * @param type The type of the message.
+     */
+    public boolean compresses(MessageType type) {
+        return !compressions.isEmpty() && PVCompression.appliesTo(type);
+    }
+
+    /**
+     * Queues a reply whose body is the contents of a file. The file is sent with FileChannel.transferTo(),
+     * so it goes from the file system to the socket without ever being copied onto the heap.
+     * The connection takes ownership of the file and closes it once it has been sent.
+     * @param type The type of the reply.
+     * @param subjectInfo The subject info of the reply, or an empty string if there is none.
+     * @param file The file to send, opened for reading.
+     * @throws IOException if the size of the file could not be read.
+     */
+    public void sendFile(MessageType type, String subjectInfo, FileChannel file) throws IOException {
+        long size = file.size();
+        if(size > Integer.MAX_VALUE) {
+            file.close();
+            throw new IOException("File is too large to send.");
+        }
+
+        PVFraming framing = getFraming();
+        queueMessageFrame(new Outgoing(framing.encodeHead(type, subjectInfo, (int) size)));
+        queueMessageFrame(new Outgoing(file, size));
+        queueMessageFrame(new Outgoing(framing.encodeTail()));
+        fileBytesQueued += size;
+    }
+
+    /**
+     * Sets the capabilities that the client and host agreed on in the client's HELLO.
+     * @param capabilities The agreed capabilities, from the PV_CAPABILITY constants.
+     */
+    public void setCapabilities(Collection<String> capabilities) {
+        this.capabilities.clear();
+        this.capabilities.addAll(capabilities);
+        this.deltaPositions = hasCapability(Constants.PV_CAPABILITY_DELTA);
+        this.compressions.clear();
+        for(PVCompression compression : PVCompression.values()) {
+            if(compression != PVCompression.NONE && hasCapability(compression.getCapability())) {
+                this.compressions.add(compression);
+            }
+        }
+
+        this.hasPositionReference = false;
+    }
+
+    /**
+     * Returns true if the client and host agreed on the given capability.
+     * @param capability The capability to check, from the PV_CAPABILITY constants.
+     */
+    public boolean hasCapability(String capability) {
+        return capabilities.contains(capability);
+    }
+
+    /**
+     * Queues a position. Only the newest few positions are kept; if the queue is full the oldest one is dropped.
+     * Clients that understand deltas get the difference from the last position queued for them instead of the full frame.
+     * Their queue is never trimmed because every delta depends on the one before it, so when it fills up it is
+     * thrown out entirely and replaced by a full frame.
+     * @param frame The full position frame. Must be framed the way the client speaks, and not shared with other clients.
+     * @param x The X-coordinate of the position, in PV_POSITION_QUANTUM steps.
+     * @param y The Y-coordinate of the position, in PV_POSITION_QUANTUM steps.
+     * @param heading The heading of the position, in PV_POSITION_QUANTUM steps.
+     */
+    public void sendPosition(ByteBuffer frame, long x, long y, long heading) {
+        ByteBuffer queuedFrame = frame;
+        if(!deltaPositions) {
+            if(positionFrames.size() >= Constants.PV_CLIENT_POSITION_QUEUE_SIZE) {
+                queuedBytes -= positionFrames.pollFirst().remaining();
+                droppedPositions++;
+            }
+        } else if(positionFrames.size() >= Constants.PV_CLIENT_POSITION_QUEUE_SIZE) {
+            for(Outgoing droppedFrame : positionFrames) {
+                queuedBytes -= droppedFrame.remaining();
+            }
+
+            droppedPositions += positionFrames.size();
+            positionFrames.clear();
+        } else if(hasPositionReference) {
+            long
+                deltaX = x - referenceX,
+                deltaY = y - referenceY,
+                deltaHeading = heading - referenceHeading;
+
+            if(deltaX == 0 && deltaY == 0 && deltaHeading == 0) {
+                savedPositionBytes += frame.remaining(); //the client already has this position
+                return;
+            }
+
+            queuedFrame = getFraming().encode(new PVMessage(MessageType.POSITION_DELTA, deltaX + "," + deltaY + "," + deltaHeading));
+            savedPositionBytes += frame.remaining() - queuedFrame.remaining();
+        }
+
+        referenceX = x;
+        referenceY = y;
+        referenceHeading = heading;
+        hasPositionReference = true;
+
+        positionFrames.addLast(new Outgoing(queuedFrame));
+        queuedBytes += queuedFrame.remaining();
+        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Queues an encoded broadcast message frame, unless the client has stopped keeping up.
+     * @param frame The frame to send. Must be framed the way the client speaks, and not shared with other clients.
+     * @return True if the frame was queued, false if the client has more than PV_MAX_PENDING_BYTES of messages waiting and should be dropped.
+     */
+    public boolean sendMessage(ByteBuffer frame) {
+        if(queuedMessageBytes > Constants.PV_MAX_PENDING_BYTES) {
+            return false;
+        }
+
+        queueMessageFrame(new Outgoing(frame));
+        return true;
+    }
+
+    /**
+     * Writes as much queued data as the channel will take without blocking. Positions go ahead of other messages,
+     * but a frame that has started going out is always finished first.
+     * @throws IOException if the client has disconnected.
+     */
+    public void flush() throws IOException {
+        while(true) {
+            if(currentFrame == null) {
+                currentFrame = positionFrames.pollFirst();
+                if(currentFrame == null) {
+                    currentFrame = messageFrames.pollFirst();
+                    if(currentFrame == null) {
+                        break;
+                    }
+
+                    if(currentFrame.buffer != null) {
+                        queuedMessageBytes -= currentFrame.remaining();
+                    }
+                }
+            }
+
+            long written = currentFrame.writeTo(channel);
+            queuedBytes -= written;
+            sentBytes += written;
+            if(currentFrame.file != null) {
+                fileBytesSent += written;
+            }
+
+            if(currentFrame.remaining() > 0) {
+                return; //socket buffer is full. Keep OP_WRITE and try again when the selector says so
+            }
+
+            currentFrame.close();
+            currentFrame = null;
+            sentFrames++;
+        }
+
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    /**
+     * Reads whatever the client has sent and passes the messages in it to the listener.
+     * @return False if the client has closed the connection, true otherwise.
+     * @throws IOException if the read fails or the client sends a malformed frame.
+     */
+    public boolean read() throws IOException {
+        return parser.readFrom(channel, listener) >= 0;
+    }
+
+    /**
+     * Returns the framing that the client speaks. The original client speaks text and does not announce itself,
+     * so this is TEXT until the client sends something that says otherwise.
+     */
+    public PVFraming getFraming() {
+        return parser.getFraming();
+    }
+
+    /**
+     * Returns a snapshot of the client's send queue and counters.
+     * @param savedBytes The number of bytes received for the SAVE in progress, or for the last one. Tracked by the host.
+     * @return The stats of the client.
+     */
+    public PVClientStats getStats(long savedBytes) {
+        int queuedFrames = positionFrames.size() + messageFrames.size() + (currentFrame == null ? 0 : 1);
+        return new PVClientStats(address, queuedFrames, queuedBytes, droppedPositions, savedPositionBytes, sentFrames, sentBytes, fileBytesSent, fileBytesQueued, savedBytes);
+    }
+
+    /**
+     * Queues part of a message.
+     * File bodies do not count towards the pending message limit because they are not held in memory.
+     * @param frame The part to send.
+     */
+    private void queueMessageFrame(Outgoing frame) {
+        messageFrames.addLast(frame);
+        queuedBytes += frame.remaining();
+        if(frame.buffer != null) {
+            queuedMessageBytes += frame.remaining();
+        }
+
+        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Closes the connection, along with any files that were still waiting to be sent.
+     */
+    public void close() {
+        key.cancel();
+        try {
+            channel.close();
+        } catch(IOException ex) {
+            //the connection is being thrown away anyway
+        }
+
+        if(currentFrame != null) {
+            currentFrame.close();
+        }
+
+        for(Outgoing frame : messageFrames) {
+            frame.close();
+        }
+
+        messageFrames.clear();
+        positionFrames.clear();
+    }
+
+    /**
+     * One piece of data waiting to be written to the client. Either an encoded buffer or a region of a file.
+     */
+    private static class Outgoing {
+        private final ByteBuffer buffer;
+        private final FileChannel file;
+        private long
+            filePosition,
+            fileEnd;
+
+        /**
+         * Creates a new Outgoing that sends a buffer.
+         * @param buffer The flipped buffer to send.
+         */
+        public Outgoing(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.file = null;
+        }
+
+        /**
+         * Creates a new Outgoing that sends a file.
+         * @param file The file to send.
+         * @param size The number of bytes to send, starting at the beginning of the file.
+         */
+        public Outgoing(FileChannel file, long size) {
+            this.buffer = null;
+            this.file = file;
+            this.filePosition = 0;
+            this.fileEnd = size;
+        }
+
+        /**
+         * Writes as much as the channel will take without blocking.
+         * @param channel The channel to write to.
+         * @return The number of bytes written.
+         * @throws IOException if the write fails.
+         */
+        public long writeTo(SocketChannel channel) throws IOException {
+            if(buffer != null) {
+                return channel.write(buffer);
+            }
+
+            long written = file.transferTo(filePosition, fileEnd - filePosition, channel);
+            if(written == 0 && filePosition >= file.size()) {
+                throw new IOException("File was truncated while it was being sent."); //the frame length can no longer be honored
+            }
+
+            filePosition += written;
+            return written;
+        }
+
+        /**
+         * Returns the number of bytes left to send.
+         */
+        public long remaining() {
+            return (buffer != null ? buffer.remaining() : fileEnd - filePosition);
+        }
+
+        /**
+         * Closes the file, if this is a file.
+         */
+        public void close() {
+            if(file == null) {
+                return;
+            }
+
+            try {
+                file.close();
+            } catch(IOException ex) {
+                //nothing more will be read from it
+            }
+        }
+    }
+}
@@ -0,0 +1,295 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import frc.robot.Constants;
+
+/**
+ * In-memory index of the directories that PathVisualizer browses.
+ * The first request for a directory schedules a scan on the index thread. After that the directory is watched
+ * with a WatchService, and only the entries that change are read again, so answering a DIRECTORY_REQUEST
+ * never touches the disk on the thread that asks. Directories that cannot be watched are scanned again for every request.
+ */
+public class PVDirectoryIndex {
+    private final ConcurrentHashMap<String, Listing> listings;
+    private final ConcurrentLinkedQueue<String> requestedDirectories;
+    private final Set<String> queuedDirectories;
+    private final LinkedHashMap<WatchKey, IndexedDirectory> watchedDirectories; //index thread only. Oldest first, for eviction
+    private final Runnable updateListener;
+    private WatchService watchService;
+
+    /**
+     * Creates a new PVDirectoryIndex and starts its thread.
+     * @param updateListener Called from the index thread whenever a listing is created or changes.
+     */
+    public PVDirectoryIndex(Runnable updateListener) {
+        this.listings = new ConcurrentHashMap<String, Listing>();
+        this.requestedDirectories = new ConcurrentLinkedQueue<String>();
+        this.queuedDirectories = ConcurrentHashMap.newKeySet();
+        this.watchedDirectories = new LinkedHashMap<WatchKey, IndexedDirectory>();
+        this.updateListener = updateListener;
+
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+        } catch(IOException ex) {
+            watchService = null; //directories will still be listed, just scanned again for every request
+            DriverStation.reportWarning("PVDirectoryIndex could not create a WatchService. Listings will be rescanned on every request.", false);
+        }
+
+        Thread indexThread = new Thread(this::runIndexLoop, "PVHost Directory Index");
+        indexThread.setDaemon(true);
+        indexThread.start();
+    }
+
+    /**
+     * Returns the DIRECTORY_REQUEST reply for a directory, if it has been indexed.
+     * If it has not, the directory is scheduled to be indexed and the update listener will be called once it is.
+     * @param directory The directory to list.
+     * @param withStats True to include the path stats of each file.
+     * @return The entries of the directory, one per line, or null if the directory has not been indexed yet.
+     */
+    public String getListing(String directory, boolean withStats) {
+        String key = normalize(directory);
+        Listing listing = listings.get(key);
+        if(listing == null) {
+            if(queuedDirectories.add(key)) {
+                requestedDirectories.offer(key);
+            }
+
+            return null;
+        }
+
+        if(!listing.watched) {
+            listings.remove(key); //nothing will tell us when it changes, so the next request scans again
+        }
+
+        return (withStats ? listing.withStats : listing.plain);
+    }
+
+    /**
+     * Returns the metadata of an indexed file, or null if its directory has not been indexed.
+     * @param file The file to look up.
+     */
+    public PVPathInfo getPathInfo(String file) {
+        java.nio.file.Path path = java.nio.file.Path.of(normalize(file));
+        if(path.getParent() == null) {
+            return null;
+        }
+
+        Listing listing = listings.get(path.getParent().toString());
+        return (listing == null ? null : listing.entries.get(path.toString()));
+    }
+
+    /**
+     * Turns a requested directory into the key used for the index.
+     * @param directory The directory as requested.
+     * @return The absolute, normalized directory.
+     */
+    private static String normalize(String directory) {
+        return java.nio.file.Path.of(directory).toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Indexes requested directories and applies changes reported by the WatchService.
+     */
+    private void runIndexLoop() {
+        while(!Thread.currentThread().isInterrupted()) {
+            String directory;
+            while((directory = requestedDirectories.poll()) != null) {
+                if(!listings.containsKey(directory)) {
+                    indexDirectory(directory);
+                }
+
+                queuedDirectories.remove(directory);
+            }
+
+            if(watchService == null) {
+                try {
+                    Thread.sleep(Constants.PV_DIRECTORY_INDEX_POLL_MS);
+                } catch(InterruptedException ex) {
+                    return;
+                }
+
+                continue;
+            }
+
+            WatchKey key;
+            try {
+                key = watchService.poll(Constants.PV_DIRECTORY_INDEX_POLL_MS, TimeUnit.MILLISECONDS);
+            } catch(InterruptedException ex) {
+                return;
+            }
+
+            if(key != null) {
+                handleWatchEvents(key);
+            }
+        }
+    }
+
+    /**
+     * Scans a directory, reads the metadata of every entry in it, and starts watching it.
+     * @param directory The normalized directory to index.
+     */
+    private void indexDirectory(String directory) {
+        IndexedDirectory indexed = new IndexedDirectory(directory);
+        try(DirectoryStream<java.nio.file.Path> stream = Files.newDirectoryStream(java.nio.file.Path.of(directory))) {
+            for(java.nio.file.Path entry : stream) {
+                indexed.update(entry);
+            }
+        } catch(IOException ex) {
+            DriverStation.reportWarning("Tried to look in directory \"" + directory + "\" but encountered problems.", false);
+        }
+
+        if(watchService != null && Files.isDirectory(java.nio.file.Path.of(directory))) {
+            try {
+                WatchKey key = java.nio.file.Path.of(directory).register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                watchedDirectories.put(key, indexed);
+                indexed.watched = true;
+                evictOldestDirectories();
+            } catch(IOException ex) {
+                DriverStation.reportWarning("PVDirectoryIndex could not watch \"" + directory + "\".", false);
+            }
+        }
+
+        indexed.publish();
+    }
+
+    /**
+     * Applies the changes reported by a WatchKey to the listing of its directory.
+     * @param key The key that was signalled.
+     */
+    private void handleWatchEvents(WatchKey key) {
+        IndexedDirectory indexed = watchedDirectories.get(key);
+        if(indexed == null) {
+            key.cancel();
+            return;
+        }
+
+        java.nio.file.Path directory = java.nio.file.Path.of(indexed.directory);
+        boolean overflowed = false;
+        for(WatchEvent<?> event : key.pollEvents()) {
+            if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflowed = true;
+                continue;
+            }
+
+            indexed.update(directory.resolve((java.nio.file.Path) event.context()));
+        }
+
+        if(!key.reset() || overflowed) {
+            //the directory is gone or events were lost, so start over on the next request
+            watchedDirectories.remove(key);
+            key.cancel();
+            listings.remove(indexed.directory);
+            updateListener.run();
+        } else {
+            indexed.publish();
+        }
+    }
+
+    /**
+     * Stops watching the least recently indexed directories once more than PV_MAX_INDEXED_DIRECTORIES are watched.
+     */
+    private void evictOldestDirectories() {
+        Iterator<Map.Entry<WatchKey, IndexedDirectory>> iterator = watchedDirectories.entrySet().iterator();
+        while(watchedDirectories.size() > Constants.PV_MAX_INDEXED_DIRECTORIES && iterator.hasNext()) {
+            Map.Entry<WatchKey, IndexedDirectory> oldest = iterator.next();
+            oldest.getKey().cancel();
+            listings.remove(oldest.getValue().directory);
+            iterator.remove();
+        }
+    }
+
+    /**
+     * The entries of one directory, as maintained by the index thread.
+     */
+    private class IndexedDirectory {
+        private final String directory;
+        private final TreeMap<String, PVPathInfo> entries;
+        private boolean watched;
+
+        /**
+         * Creates a new IndexedDirectory with no entries.
+         * @param directory The normalized directory.
+         */
+        public IndexedDirectory(String directory) {
+            this.directory = directory;
+            this.entries = new TreeMap<String, PVPathInfo>();
+            this.watched = false;
+        }
+
+        /**
+         * Reads an entry again, or removes it if it no longer exists.
+         * @param entry The entry that changed.
+         */
+        public void update(java.nio.file.Path entry) {
+            String name = entry.toAbsolutePath().toString();
+            try {
+                entries.put(name, PVPathInfo.read(entry));
+            } catch(IOException ex) {
+                entries.remove(name); //deleted, or not readable. Either way PathVisualizer cannot use it
+            }
+        }
+
+        /**
+         * Renders the entries into an immutable listing that other threads can read.
+         */
+        public void publish() {
+            StringBuilder plain = new StringBuilder();
+            StringBuilder withStats = new StringBuilder();
+            for(PVPathInfo info : entries.values()) {
+                plain.append(info.toString(false)).append("\n");
+                withStats.append(info.toString(true)).append("\n");
+            }
+
+            listings.put(directory, new Listing(new TreeMap<String, PVPathInfo>(entries), plain.toString(), withStats.toString(), watched));
+            updateListener.run();
+        }
+    }
+
+    /**
+     * Immutable snapshot of a directory, shared with the threads that ask for it.
+     */
+    private static class Listing {
+        private final Map<String, PVPathInfo> entries;
+        private final String
+            plain,
+            withStats;
+
+        private final boolean watched;
+
+        /**
+         * Creates a new Listing.
+         * @param entries The metadata of each entry, by absolute path.
+         * @param plain The reply for clients that do not want path stats.
+         * @param withStats The reply for clients that want path stats.
+         * @param watched True if the directory is being watched. Unwatched listings are only used once.
+         */
+        public Listing(Map<String, PVPathInfo> entries, String plain, String withStats, boolean watched) {
+            this.entries = entries;
+            this.plain = plain;
+            this.withStats = withStats;
+            this.watched = watched;
+        }
+    }
+}
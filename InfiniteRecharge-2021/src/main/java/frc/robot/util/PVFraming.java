@@ -0,0 +1,99 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import frc.robot.Constants;
+
+/**
+ * Describes how PVMessages are laid out on the wire.
+ * TEXT is the original "[subject---info:::body]" format that the PathVisualizer client speaks.
+ * BINARY is a length-prefixed format:
+ *  [magic (1 byte)] [type index (1 byte)] [info length (2 bytes)] [body length (4 bytes)] [info] [body]
+ * The host decides which one a client speaks by looking at the first byte the client sends.
+ */
+public enum PVFraming {
+    TEXT,
+    BINARY;
+
+    /**
+     * Size of the header at the front of every binary frame.
+     */
+    public static final int BINARY_HEADER_SIZE = 8;
+
+    /**
+     * Encodes a message into a buffer that can be written straight to a channel.
+     * @param message The message to encode.
+     * @return A flipped buffer containing the framed message.
+     */
+    public ByteBuffer encode(PVMessage message) {
+        byte[] body = message.getBody();
+        ByteBuffer head = encodeHead(message.getType(), message.getSubjectInfo(), body.length);
+        ByteBuffer tail = encodeTail();
+        ByteBuffer frame = ByteBuffer.allocate(head.remaining() + body.length + tail.remaining());
+        frame.put(head);
+        frame.put(body);
+        frame.put(tail);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * Encodes everything that goes in front of a message body. Used with encodeTail() when
+     * the body is written to the channel from somewhere else, like a file.
+     * @param type The type of the message.
+     * @param subjectInfo The subject info of the message, or an empty string if there is none.
+     * @param bodyLength The number of bytes in the body.
+     * @return A flipped buffer containing the start of the frame.
+     */
+    public ByteBuffer encodeHead(MessageType type, String subjectInfo, int bodyLength) {
+        byte[] info = subjectInfo.getBytes(StandardCharsets.UTF_8);
+
+        switch(this) {
+            case BINARY: {
+                    ByteBuffer head = ByteBuffer.allocate(BINARY_HEADER_SIZE + info.length);
+                    head.put(Constants.PV_BINARY_MAGIC);
+                    head.put((byte) type.getIndex());
+                    head.putShort((short) info.length);
+                    head.putInt(bodyLength);
+                    head.put(info);
+                    head.flip();
+                    return head;
+                }
+            default: {
+                    String head = Constants.START_SEQUENCE + type.getCode();
+                    if(!subjectInfo.isEmpty()) {
+                        head += Constants.SUBJECT_SEQUENCE + subjectInfo;
+                    }
+                    head += Constants.SPLIT_SEQUENCE;
+                    return ByteBuffer.wrap(head.getBytes(StandardCharsets.UTF_8));
+                }
+        }
+    }
+
+    /**
+     * Encodes everything that goes behind a message body.
+     * @return A flipped buffer containing the end of the frame. Empty for binary frames.
+     */
+    public ByteBuffer encodeTail() {
+        switch(this) {
+            case BINARY:
+                return ByteBuffer.allocate(0);
+            default:
+                return ByteBuffer.wrap(Constants.END_SEQUENCE.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Determines the framing a client is using from the first byte that it sent.
+     * @param firstByte The first byte received from the client.
+     * @return BINARY if the byte is the binary magic number, TEXT otherwise.
+     */
+    public static PVFraming detect(byte firstByte) {
+        return (firstByte == Constants.PV_BINARY_MAGIC ? BINARY : TEXT);
+    }
+}
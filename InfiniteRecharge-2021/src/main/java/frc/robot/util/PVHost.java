@@ -5,206 +5,433 @@
 package frc.robot.util;
 
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketException;
-import java.net.SocketTimeoutException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import frc.robot.Constants;
 
-/** 
+/**
  * Robot code host for the PathVisualizer application.
+ * All socket work is done by a separate I/O thread that uses a Selector, so nothing a client does
+ * can stall the robot loop. The robot loop only places positions and messages on lock-free queues.
+ * Up to PV_MAX_CLIENTS clients may be connected at once. Positions and paths are sent to all of them,
+ * each through its own bounded send queue, so a slow client does not hold up the others.
  */
 public class PVHost {
-    private ServerSocket serverSocket;
-    private Socket clientSocket;
-    private boolean connected;
-    private String currentData;
+    private static final List<String> HOST_CAPABILITIES = List.of(Constants.PV_CAPABILITY_DELTA, Constants.PV_CAPABILITY_PATH_STATS, Constants.PV_CAPABILITY_DEFLATE, Constants.PV_CAPABILITY_POINT_DELTA);
+    private static final List<String> BINARY_ONLY_CAPABILITIES = List.of(Constants.PV_CAPABILITY_DEFLATE, Constants.PV_CAPABILITY_POINT_DELTA); //compressed bodies could contain the text END_SEQUENCE
+
+    private final ConcurrentLinkedQueue<Point2D> outgoingPositions;
+    private final ConcurrentLinkedQueue<PVMessage> outgoingMessages;
+    private final HashMap<PVConnection, ClientSession> clients;
+    private final PVPositionFilter positionFilter;
+    private final PVDirectoryIndex directoryIndex;
+    private volatile Selector selector; //also read by the directory index thread to wake the I/O thread
+    private ServerSocketChannel serverChannel;
+    private long lastStatsTime;
+    private volatile int clientCount;
+    private volatile List<PVClientStats> clientStats;
+    private volatile int positionFrameBytes;
+    private List<PVClientStats> publishedClientStats;
+    private long
+        skippedPositionBytes,
+        lastSavedPositionBytes,
+        lastPublishTime;
 
     /**
      * Creates a new PVHost. It will listen for connections on the specified port.
      * @param port The port that the host will operate on. The port you enter in PathVisualizer should match the one passed here.
      */
     public PVHost(int port) {
+        outgoingPositions = new ConcurrentLinkedQueue<Point2D>();
+        outgoingMessages = new ConcurrentLinkedQueue<PVMessage>();
+        clients = new HashMap<PVConnection, ClientSession>();
+        positionFilter = new PVPositionFilter();
+        directoryIndex = new PVDirectoryIndex(this::wakeIOThread);
+        lastStatsTime = 0;
+        clientCount = 0;
+        clientStats = Collections.emptyList();
+        publishedClientStats = null;
+        positionFrameBytes = 0;
+        skippedPositionBytes = 0;
+        lastSavedPositionBytes = 0;
+        lastPublishTime = System.currentTimeMillis();
+
         try {
-            serverSocket = new ServerSocket(port);
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.configureBlocking(false);
+            serverChannel.bind(new InetSocketAddress(port));
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
         } catch(IOException ex) {
-            DriverStation.reportError("PVHost could not create a ServerSocket!\n" + ex.getMessage(), true);
+            DriverStation.reportError("PVHost could not create a ServerSocketChannel!\n" + ex.getMessage(), true);
+            return;
         }
 
-        attemptToConnectSocket();
+        Thread ioThread = new Thread(this::runIOLoop, "PVHost I/O");
+        ioThread.setDaemon(true);
+        ioThread.start();
     }
 
     /**
-     * Sends the specified robot position to the PathVisualizer client.
+     * Sends the specified robot position to the PathVisualizer clients, and puts the client stats on the dashboard when they change.
+     * Positions that PVPositionFilter rejects are not sent at all. The rest are only queued here; they are encoded
+     * and written by the I/O thread, so this returns immediately.
      * @param robotPosition The current robot position.
      */
     public void update(Point2D robotPosition) {
-        String message = composeMessage(MessageType.POSITION, robotPosition.toString());
-        sendMessage(message);
-        handleIncomingMessages();
+        long now = System.currentTimeMillis();
+        if(clientCount > 0) {
+            if(positionFilter.shouldSend(robotPosition, now)) {
+                outgoingPositions.offer(robotPosition);
+            } else {
+                skippedPositionBytes += positionFrameBytes;
+            }
+        }
+
+        List<PVClientStats> stats = clientStats;
+        if(stats != publishedClientStats) {
+            long savedPositionBytes = skippedPositionBytes;
+            StringBuilder statsString = new StringBuilder();
+            for(PVClientStats clientStat : stats) {
+                statsString.append(clientStat.toString()).append("\n");
+                savedPositionBytes += clientStat.getSavedPositionBytes();
+            }
+
+            double elapsedSeconds = Math.max(now - lastPublishTime, 1) / 1000.0;
+            double savedBytesPerSecond = Math.max(savedPositionBytes - lastSavedPositionBytes, 0) / elapsedSeconds; //dropped clients take their counts with them
+            lastSavedPositionBytes = savedPositionBytes;
+            lastPublishTime = now;
+
+            SmartDashboard.putNumber("PV Clients", stats.size());
+            SmartDashboard.putString("PV Client Stats", statsString.toString());
+            SmartDashboard.putNumber("PV Positions Skipped", positionFilter.getSkippedPositions());
+            SmartDashboard.putNumber("PV Position Bytes Saved/s", savedBytesPerSecond);
+            publishedClientStats = stats;
+        }
     }
 
     /**
-     * Sends a path to the PathVisualizer client for viewing.
+     * Sends a path to the PathVisualizer clients for viewing.
      * @param path The Path to send.
      * @param name The name of the path. Will appear on the manifest with that name.
      */
     public void sendPath(Path path, String name) {
         if(path.isValid()) {
-            String message = composeMessage(MessageType.PATH, name, path.toString());
-            sendMessage(message);
+            queueMessage(new PVMessage(MessageType.PATH, name, path.toString()));
         } else {
             DriverStation.reportError("PVHost could not send a path because it was invalid!", false);
         }
     }
 
     /**
-     * Attempts to connect the host to the client.
-     * This method starts a new Thread, so it will return immediately, but the socket may not be connected.
-     * Use this.connected to check if the client is connected.
+     * Returns true if a PathVisualizer client is connected, false otherwise.
      */
-    private void attemptToConnectSocket() {
-        connected = false;
-        new Thread(
-            () -> {
-                try {
-                    clientSocket = serverSocket.accept();
-                    connected = true;
-                } catch(IOException ex) {
-                    DriverStation.reportError("PVHost could not connect to client!\n" + ex.getMessage(), true);
+    public boolean isConnected() {
+        return clientCount > 0;
+    }
+
+    /**
+     * Returns the send queue stats of every connected client, as of the last time the I/O thread published them.
+     */
+    public List<PVClientStats> getClientStats() {
+        return clientStats;
+    }
+
+    /**
+     * Queues a message for the I/O thread to send, and wakes the I/O thread up so that it goes out right away.
+     * @param message The message to send.
+     */
+    private void queueMessage(PVMessage message) {
+        if(clientCount > 0) {
+            outgoingMessages.offer(message);
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Body of the I/O thread. Accepts clients, reads and handles their messages, and writes queued messages.
+     */
+    private void runIOLoop() {
+        while(!Thread.currentThread().isInterrupted()) {
+            try {
+                selector.select(Constants.PV_SELECT_TIMEOUT_MS);
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while(keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if(!key.isValid()) {
+                        continue;
+                    }
+
+                    if(key.isAcceptable()) {
+                        acceptClient();
+                        continue;
+                    }
+
+                    PVConnection connection = (PVConnection) key.attachment();
+                    if(key.isReadable()) {
+                        handleIncomingMessages(connection);
+                    }
+
+                    if(key.isValid() && key.isWritable()) {
+                        flushClient(connection);
+                    }
                 }
+
+                sendQueuedMessages();
+                answerDirectoryRequests();
+                publishClientStats();
+            } catch(IOException ex) {
+                DriverStation.reportError("PVHost I/O thread encountered a problem!\n" + ex.getMessage(), true);
             }
-        ).start();
+        }
     }
 
-    private void redoConnection() {
-        //likely due to the client disconnecting. Terminate connection and try to get it going again
+    /**
+     * Accepts a pending client connection, unless the host already has as many clients as it allows.
+     */
+    private void acceptClient() {
         try {
-            clientSocket.close();
-        } catch(IOException ex2) {
-            DriverStation.reportError("PVHost could not close client socket!\n" + ex2.getMessage(), true);
+            SocketChannel channel = serverChannel.accept();
+            if(channel == null) {
+                return;
+            }
+
+            if(clients.size() >= Constants.PV_MAX_CLIENTS) {
+                DriverStation.reportWarning("PVHost refused a client because " + Constants.PV_MAX_CLIENTS + " are already connected.", false);
+                channel.close();
+                return;
+            }
+
+            PVConnection connection = new PVConnection(channel, selector);
+            ClientSession session = new ClientSession(connection);
+            connection.setListener(session);
+            clients.put(connection, session);
+            clientCount = clients.size();
+        } catch(IOException ex) {
+            DriverStation.reportError("PVHost could not connect to client!\n" + ex.getMessage(), true);
+        }
+    }
+
+    /**
+     * Terminates a connection, likely due to the client disconnecting. The host keeps listening for new ones.
+     * @param connection The connection to drop.
+     */
+    private void dropClient(PVConnection connection) {
+        connection.close();
+        ClientSession session = clients.remove(connection);
+        if(session != null) {
+            session.abortSave();
         }
 
-        attemptToConnectSocket();
+        clientCount = clients.size();
+        if(clientCount == 0) {
+            outgoingPositions.clear();
+            outgoingMessages.clear();
+        }
     }
 
     /**
-     * Sends a message to the client. The message should be formatted using composeMessage().
-     * @param message The message to send (should be formatted).
+     * Writes pending data to a client.
+     * @param connection The client to write to.
      */
-    private void sendMessage(String message) {
-        if(connected) {
-            try {
-                clientSocket.getOutputStream().write(message.getBytes());
-            } catch(SocketException ex) {
-                redoConnection();
-            } catch(IOException ex) {
-                DriverStation.reportError("PVHost could not send message!\n" + ex.getMessage(), true);
-            }
+    private void flushClient(PVConnection connection) {
+        try {
+            connection.flush();
+        } catch(IOException ex) {
+            dropClient(connection);
         }
     }
 
     /**
-     * Receives messages from the client and handles them.
+     * Fans everything the robot loop queued out to the client connections.
+     * Each message is encoded once per distinct framing and compression, and every client gets its own view of the encoded frame.
+     * Only the newest position is sent because older ones have already been superseded.
      */
-    private void handleIncomingMessages() {
-        if(!connected) {
+    private void sendQueuedMessages() {
+        Point2D latestPosition = null;
+        Point2D position;
+        while((position = outgoingPositions.poll()) != null) {
+            latestPosition = position;
+        }
+
+        if(clients.isEmpty()) {
+            outgoingMessages.clear();
             return;
         }
 
-        try {
-            //add previously received data to currentData.
-            if(clientSocket.getInputStream().available() < 1) {
-                return;
-            }
+        if(latestPosition != null) {
+            //quantized once here so that every delta client measures from the same grid
+            long x = Math.round(latestPosition.getX() / Constants.PV_POSITION_QUANTUM);
+            long y = Math.round(latestPosition.getY() / Constants.PV_POSITION_QUANTUM);
+            long heading = Math.round(latestPosition.getHeading() / Constants.PV_POSITION_QUANTUM);
 
-            byte[] buffer = new byte[Constants.SOCKET_BUFFER_SIZE];
-            clientSocket.getInputStream().read(buffer);
-            currentData += new String(buffer);
-
-            //parse data and look for messages.
-            //message formatted as such: "[start sequence] [subject] [subject sequence if there is one] [subject contents if applicable] [split sequence] [contents of message] [end sequence]"
-            while(currentData.indexOf(Constants.START_SEQUENCE) > -1 && currentData.indexOf(Constants.END_SEQUENCE) > -1) {
-                int
-                    startSequenceIndex = currentData.indexOf(Constants.START_SEQUENCE),
-                    endSequenceIndex = currentData.indexOf(Constants.END_SEQUENCE);
-                    
-                String relavantData = currentData.substring(startSequenceIndex, endSequenceIndex);
-                currentData = currentData.substring(endSequenceIndex + 1);
-
-                String[] completedMessages = relavantData.split(Constants.END_SEQUENCE);
-                for(int i=0; i<completedMessages.length; i++) {
-                    String completedMessage = completedMessages[i];
-
-                    int splitSequenceIndex = completedMessage.indexOf(Constants.SPLIT_SEQUENCE);
-                    if(splitSequenceIndex > -1) { //now it is defintely a full message
-                        String subject = completedMessage.substring(0, splitSequenceIndex);
-                        String message = completedMessage.substring(splitSequenceIndex + Constants.SPLIT_SEQUENCE.length());
-                        String extraInfo = "";
-
-                        if(subject.startsWith(Constants.START_SEQUENCE)) {
-                            subject = subject.substring(Constants.START_SEQUENCE.length()); //substring off "("
-                        }
+            HashMap<Integer, ByteBuffer> frames = new HashMap<Integer, ByteBuffer>();
+            PVMessage positionMessage = new PVMessage(MessageType.POSITION, latestPosition.toString());
+            int frameBytes = 0;
+            for(PVConnection connection : clients.keySet()) {
+                ByteBuffer frame = getFrame(frames, connection, positionMessage);
+                frameBytes += frame.remaining();
+                connection.sendPosition(frame, x, y, heading);
+            }
 
-                        if(subject.contains(Constants.SUBJECT_SEQUENCE)) {
-                            extraInfo = subject.substring(subject.indexOf(Constants.SUBJECT_SEQUENCE) + Constants.SUBJECT_SEQUENCE.length());
-                        }
+            positionFrameBytes = frameBytes; //what one full position costs across all clients, for counting the bytes skipped positions save
+        }
 
-                        handleMessage(subject, message, extraInfo);
-                    }
+        ArrayList<PVConnection> stalledClients = new ArrayList<PVConnection>();
+        PVMessage message;
+        while((message = outgoingMessages.poll()) != null) {
+            HashMap<Integer, ByteBuffer> frames = new HashMap<Integer, ByteBuffer>();
+            for(PVConnection connection : clients.keySet()) {
+                if(!connection.sendMessage(getFrame(frames, connection, message)) && !stalledClients.contains(connection)) {
+                    stalledClients.add(connection);
                 }
             }
-        } catch(SocketException ex) {
-            redoConnection(); //SocketExceptions are usually caused by the host disconnecting or some other comms problem.
-        } catch(SocketTimeoutException ex) { //to stop if from printing a stack trace every time the read times out
+        }
+
+        for(PVConnection connection : stalledClients) {
+            DriverStation.reportWarning("PVHost dropped a PathVisualizer client that stopped reading.", false);
+            dropClient(connection);
+        }
+    }
+
+    /**
+     * Returns a client's own view of a message encoded the way it needs, encoding it only the first time that encoding is needed.
+     * @param frames Cache of encoded frames, by PVConnection encoding key.
+     * @param connection The client that the frame is for.
+     * @param message The message to encode.
+     * @return A view of the encoded frame that only one client may use.
+     */
+    private ByteBuffer getFrame(HashMap<Integer, ByteBuffer> frames, PVConnection connection, PVMessage message) {
+        int key = connection.getEncodingKey(message.getType());
+        ByteBuffer frame = frames.get(key);
+        if(frame == null) {
+            frame = connection.encode(message);
+            frames.put(key, frame);
+        }
+
+        return frame.duplicate();
+    }
+
+    /**
+     * Answers the DIRECTORY_REQUESTs that were waiting for the directory index.
+     */
+    private void answerDirectoryRequests() {
+        for(ClientSession session : clients.values()) {
+            session.answerDirectoryRequests();
+        }
+    }
+
+    /**
+     * Wakes the I/O thread up so that it handles new work right away instead of at the end of its select timeout.
+     */
+    private void wakeIOThread() {
+        if(selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Publishes a snapshot of every client's stats for the robot loop to read, once every PV_STATS_PERIOD_MS.
+     */
+    private void publishClientStats() {
+        long now = System.currentTimeMillis();
+        if(now - lastStatsTime < Constants.PV_STATS_PERIOD_MS) {
+            return;
+        }
+
+        ArrayList<PVClientStats> stats = new ArrayList<PVClientStats>();
+        for(PVConnection connection : clients.keySet()) {
+            stats.add(connection.getStats(clients.get(connection).getSavedBytes()));
+        }
+
+        clientStats = Collections.unmodifiableList(stats);
+        lastStatsTime = now;
+    }
+
+    /**
+     * Receives messages from a client and handles them.
+     * @param connection The client that has data available.
+     */
+    private void handleIncomingMessages(PVConnection connection) {
+        try {
+            if(!connection.read()) {
+                dropClient(connection); //end of stream, the client closed the connection
+            }
         } catch(IOException ex) {
-            DriverStation.reportError("PVHost could not read the client data!", true);
+            dropClient(connection); //IOExceptions are usually caused by the client disconnecting or some other comms problem.
         }
     }
 
     /**
-     * Handles a singular message.
-     * @param subject The subject of the message in string form.
-     * @param message The body of the message.
+     * Handles a singular message. Runs on the I/O thread, so file access here does not hold up the robot loop.
+     * SAVE messages are not handled here because their bodies are streamed to disk by the ClientSession.
+     * @param connection The client that sent the message. Replies go back to it.
+     * @param messageType The type of the message.
+     * @param subjectInfo The subject info of the message.
+     * @param body The body of the message. Only valid until this method returns.
      */
-    private void handleMessage(String subject, String message, String extraInfo) {
-        MessageType messageType = MessageType.fromString(subject);
+    private void handleMessage(PVConnection connection, MessageType messageType, String subjectInfo, ByteBuffer body) {
         switch(messageType) {
-            case DIRECTORY_REQUEST: { //return a message with all contents of the directory separated by newlines
-                    String[] paths = Util.getFilesInDirectory(message, true);
-                    String returnMessage = "";
-                    for(String path : paths) {
-                        returnMessage += path + "\n";
+            case DIRECTORY_REQUEST: { //return a message with all contents of the directory separated by newlines, once the index has them
+                    clients.get(connection).requestDirectory(StandardCharsets.UTF_8.decode(body).toString());
+                }
+                break;
+            case HELLO: { //client lists what it understands, host answers with what it will use
+                    ArrayList<String> agreedCapabilities = new ArrayList<String>();
+                    for(String capability : StandardCharsets.UTF_8.decode(body).toString().split(",")) {
+                        capability = capability.trim();
+                        boolean framingAllows = connection.getFraming() == PVFraming.BINARY || !BINARY_ONLY_CAPABILITIES.contains(capability);
+                        if(HOST_CAPABILITIES.contains(capability) && framingAllows && !agreedCapabilities.contains(capability)) {
+                            agreedCapabilities.add(capability);
+                        }
                     }
 
-                    sendMessage(composeMessage(MessageType.DIRECTORY_REQUEST, returnMessage));
+                    connection.setCapabilities(agreedCapabilities);
+                    connection.send(new PVMessage(MessageType.HELLO, String.join(",", agreedCapabilities)));
                 }
                 break;
             case LOAD: {
-                    if(!Files.exists(java.nio.file.Path.of(message))) {
-                        sendMessage(composeMessage(MessageType.LOAD, "ERR"));
+                    java.nio.file.Path filePath = java.nio.file.Path.of(StandardCharsets.UTF_8.decode(body).toString());
+                    if(!Files.exists(filePath)) {
+                        connection.send(new PVMessage(MessageType.LOAD, "ERR"));
                         break;
                     }
 
                     try {
-                        sendMessage(composeMessage(MessageType.LOAD, Files.readString(java.nio.file.Path.of(message))));
-                    } catch(IOException ex) {
-                        sendMessage(composeMessage(MessageType.LOAD, "ERR"));
-                    }
-                }
-                break;
-            case SAVE: {
-                    String fileContents = message;
-                    java.nio.file.Path filePath = java.nio.file.Path.of(extraInfo);
-
-                    try {
-                        Files.writeString(filePath, fileContents);
-                        sendMessage(composeMessage(MessageType.SAVE, extraInfo, "OK"));
+                        if(PathFile.isBinary(filePath.toString())) {
+                            //PathVisualizer only reads text paths
+                            Path path = new Path(filePath.toString());
+                            connection.send(path.isValid() ? new PVMessage(MessageType.LOAD, "", path.toString()) : new PVMessage(MessageType.LOAD, "ERR"));
+                        } else if(connection.compresses(MessageType.LOAD)) {
+                            connection.send(new PVMessage(MessageType.LOAD, "", Files.readAllBytes(filePath))); //has to pass through the heap to be compressed
+                        } else {
+                            //the file goes straight from disk to the socket instead of being read onto the heap
+                            connection.sendFile(MessageType.LOAD, "", FileChannel.open(filePath, StandardOpenOption.READ));
+                        }
                     } catch(IOException ex) {
-                        sendMessage(composeMessage(MessageType.SAVE, extraInfo, "ERR"));
+                        connection.send(new PVMessage(MessageType.LOAD, "ERR"));
                     }
                 }
                 break;
@@ -215,21 +442,220 @@ public class PVHost {
     }
 
     /**
-     * Formats a message into a format that the client can read.
-     * @param subject The subject of the message. Should be "Pos" if sending a position, or "Path-[pathname] if sending a path."
-     * @param message The body of the message.
+     * Receives the messages of one client from its parser.
+     * Small bodies are handed to handleMessage() as views straight out of the parser. SAVE bodies are written
+     * to the file as they arrive, so a large path never has to be held in memory.
      */
-    private String composeMessage(MessageType subject, String message) {
-        return Constants.START_SEQUENCE + subject.getCode() + Constants.SPLIT_SEQUENCE + message + Constants.END_SEQUENCE;
-    }
+    private class ClientSession implements PVMessageParser.Listener {
+        private final PVConnection connection;
+        private final ByteBuffer assembledBody;
+        private final ArrayDeque<String> pendingDirectories;
+        private boolean assembling;
+        private boolean bodyTooLarge;
+        private FileChannel saveChannel;
+        private java.nio.file.Path saveTempFile;
+        private PVCompression.Decoder saveDecoder;
+        private boolean saveFailed;
+        private long savedBytes;
 
-    /**
-     * Formats a message into a format that the client can read.
-     * @param subject The subject of the message. Should be "Pos" if sending a position, or "Path-[pathname] if sending a path."
-     * @param subjectInfo additional information needed for the client to carry out the task depicted by the message.
-     * @param message The body of the message.
-     */
-    private String composeMessage(MessageType subject, String subjectInfo, String message) {
-        return Constants.START_SEQUENCE + subject.getCode() + Constants.SUBJECT_SEQUENCE + subjectInfo + Constants.SPLIT_SEQUENCE + message + Constants.END_SEQUENCE;
+        /**
+         * Creates a new ClientSession.
+         * @param connection The client that the session belongs to.
+         */
+        public ClientSession(PVConnection connection) {
+            this.connection = connection;
+            this.assembledBody = ByteBuffer.allocate(Constants.PV_MAX_INLINE_BODY_SIZE);
+            this.pendingDirectories = new ArrayDeque<String>();
+            this.assembling = false;
+            this.bodyTooLarge = false;
+            this.saveFailed = false;
+            this.savedBytes = 0;
+        }
+
+        @Override
+        public void bodyChunkReceived(MessageType type, String subjectInfo, ByteBuffer chunk) {
+            if(type == MessageType.SAVE) {
+                writeSaveChunk(subjectInfo, chunk);
+                return;
+            }
+
+            //the body of a regular message arrived in pieces, so it has to be copied together
+            assembling = true;
+            if(chunk.remaining() > assembledBody.remaining()) {
+                bodyTooLarge = true;
+            } else {
+                assembledBody.put(chunk);
+            }
+        }
+
+        @Override
+        public void messageReceived(MessageType type, String subjectInfo, ByteBuffer body) {
+            if(type == MessageType.SAVE) {
+                writeSaveChunk(subjectInfo, body);
+                finishSave(subjectInfo);
+                return;
+            }
+
+            if(!assembling) {
+                handleMessage(connection, type, subjectInfo, body);
+                return;
+            }
+
+            bodyChunkReceived(type, subjectInfo, body);
+            if(bodyTooLarge) {
+                DriverStation.reportError("PVHost dropped a \"" + type.getCode() + "\" message because its body was too large!", false);
+            } else {
+                assembledBody.flip();
+                handleMessage(connection, type, subjectInfo, assembledBody);
+            }
+
+            assembledBody.clear();
+            assembling = false;
+            bodyTooLarge = false;
+        }
+
+        /**
+         * Queues a DIRECTORY_REQUEST and answers it right away if the directory is already indexed.
+         * @param directory The directory to list.
+         */
+        public void requestDirectory(String directory) {
+            pendingDirectories.addLast(directory);
+            answerDirectoryRequests();
+        }
+
+        /**
+         * Answers queued DIRECTORY_REQUESTs in the order they arrived, stopping at the first one that is not indexed yet.
+         */
+        public void answerDirectoryRequests() {
+            while(!pendingDirectories.isEmpty()) {
+                String listing = directoryIndex.getListing(pendingDirectories.peekFirst(), connection.hasCapability(Constants.PV_CAPABILITY_PATH_STATS));
+                if(listing == null) {
+                    return;
+                }
+
+                pendingDirectories.pollFirst();
+                connection.send(new PVMessage(MessageType.DIRECTORY_REQUEST, listing));
+            }
+        }
+
+        /**
+         * Returns the number of bytes received for the SAVE in progress, or for the last one.
+         */
+        public long getSavedBytes() {
+            return savedBytes;
+        }
+
+        /**
+         * Throws out a SAVE that was in progress when the client went away. The file being saved over is left untouched.
+         */
+        public void abortSave() {
+            saveDecoder = null;
+            closeSaveChannel();
+            deleteSaveTempFile();
+            saveFailed = false;
+        }
+
+        /**
+         * Writes part of a SAVE body to a temporary file next to the target, creating it if this is the first part.
+         * @param file The file being saved.
+         * @param chunk The part of the body to write.
+         */
+        private void writeSaveChunk(String file, ByteBuffer chunk) {
+            if(saveFailed) {
+                return;
+            }
+
+            try {
+                if(saveChannel == null) {
+                    java.nio.file.Path directory = java.nio.file.Path.of(file).toAbsolutePath().getParent();
+                    saveTempFile = Files.createTempFile(directory, ".pvsave", ".tmp"); //same directory, so the rename at the end stays on one file system
+                    saveChannel = FileChannel.open(saveTempFile, StandardOpenOption.WRITE);
+                    saveDecoder = (connection.compresses(MessageType.SAVE) ? new PVCompression.Decoder() : null);
+                    savedBytes = 0;
+                }
+
+                if(saveDecoder != null) {
+                    saveDecoder.decode(chunk, saveChannel);
+                    savedBytes = saveDecoder.getDecodedBytes();
+                } else {
+                    while(chunk.hasRemaining()) {
+                        savedBytes += saveChannel.write(chunk);
+                    }
+                }
+            } catch(IOException ex) {
+                saveFailed = true;
+                closeSaveChannel();
+                deleteSaveTempFile();
+            }
+        }
+
+        /**
+         * Closes the temporary file, renames it over the target, and tells the client whether the SAVE worked.
+         * Readers of the target see either the old file or the new one, never half of one.
+         * @param file The file that was saved.
+         */
+        private void finishSave(String file) {
+            if(saveDecoder != null && saveChannel != null && !saveFailed) {
+                try {
+                    saveDecoder.finish(saveChannel);
+                    savedBytes = saveDecoder.getDecodedBytes();
+                } catch(IOException ex) {
+                    saveFailed = true;
+                }
+            }
+
+            saveDecoder = null;
+            closeSaveChannel();
+            if(!saveFailed && saveTempFile != null) {
+                try {
+                    Files.move(saveTempFile, java.nio.file.Path.of(file), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    saveTempFile = null;
+                } catch(IOException ex) {
+                    saveFailed = true;
+                }
+            }
+
+            deleteSaveTempFile();
+            if(saveFailed) {
+                DriverStation.reportError("PVHost could not save \"" + file + "\"!", false);
+            }
+
+            connection.send(new PVMessage(MessageType.SAVE, file, (saveFailed ? "ERR" : "OK")));
+            saveFailed = false;
+        }
+
+        /**
+         * Deletes the temporary file of a SAVE that did not finish, if there is one.
+         */
+        private void deleteSaveTempFile() {
+            if(saveTempFile == null) {
+                return;
+            }
+
+            try {
+                Files.deleteIfExists(saveTempFile);
+            } catch(IOException ex) {
+                //a leftover temp file is harmless
+            }
+
+            saveTempFile = null;
+        }
+
+        /**
+         * Closes the file being saved, if there is one.
+         */
+        private void closeSaveChannel() {
+            if(saveChannel == null) {
+                return;
+            }
+
+            try {
+                saveChannel.close();
+            } catch(IOException ex) {
+                saveFailed = true;
+            }
+
+            saveChannel = null;
+        }
     }
 }
@@ -0,0 +1,83 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A single message passed between the robot and the PathVisualizer client.
+ * A PVMessage does not know how it is framed on the wire; that is handled by PVFraming.
+ */
+public class PVMessage {
+    private final MessageType type;
+    private final String subjectInfo;
+    private final byte[] body;
+
+    /**
+     * Creates a new PVMessage.
+     * @param type The type of the message.
+     * @param subjectInfo Additional information needed to carry out the message (for example, the file of a SAVE). May be empty.
+     * @param body The body of the message.
+     */
+    public PVMessage(MessageType type, String subjectInfo, byte[] body) {
+        this.type = type;
+        this.subjectInfo = subjectInfo;
+        this.body = body;
+    }
+
+    /**
+     * Creates a new PVMessage with a text body.
+     * @param type The type of the message.
+     * @param subjectInfo Additional information needed to carry out the message. May be empty.
+     * @param body The body of the message.
+     */
+    public PVMessage(MessageType type, String subjectInfo, String body) {
+        this(type, subjectInfo, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates a new PVMessage with a text body and no subject info.
+     * @param type The type of the message.
+     * @param body The body of the message.
+     */
+    public PVMessage(MessageType type, String body) {
+        this(type, "", body);
+    }
+
+    /**
+     * Returns the type of the message.
+     */
+    public MessageType getType() {
+        return type;
+    }
+
+    /**
+     * Returns the subject info of the message, or an empty String if there is none.
+     */
+    public String getSubjectInfo() {
+        return subjectInfo;
+    }
+
+    /**
+     * Returns true if the message carries subject info, false otherwise.
+     */
+    public boolean hasSubjectInfo() {
+        return !subjectInfo.isEmpty();
+    }
+
+    /**
+     * Returns the raw body of the message.
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * Returns the body of the message as a String.
+     */
+    public String getBodyString() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+}
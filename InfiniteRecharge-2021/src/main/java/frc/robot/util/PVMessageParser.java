@@ -0,0 +1,430 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ScatteringByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import frc.robot.Constants;
+
+/**
+ * Incremental parser for PathVisualizer traffic, speaking either PVFraming.
+ * Bytes are read straight into a reusable direct ring buffer and every byte is scanned exactly once,
+ * so parsing is linear in the amount of data no matter how large a message is.
+ * Bodies are handed to the listener as read-only views into the ring. A body that would not fit in the
+ * ring is handed over in chunks as it arrives, so memory use stays bounded even for multi-megabyte SAVEs.
+ */
+public class PVMessageParser {
+    /**
+     * Receives messages found by the parser. The buffers passed to the listener are views into the
+     * parser's ring and are only valid until the callback returns.
+     */
+    public interface Listener {
+        /**
+         * Called with the front part of a body that is too large to keep in the ring.
+         * @param type The type of the message being received.
+         * @param subjectInfo The subject info of the message being received.
+         * @param chunk The next part of the body.
+         */
+        public void bodyChunkReceived(MessageType type, String subjectInfo, ByteBuffer chunk);
+
+        /**
+         * Called when a message is complete. If bodyChunkReceived() was not called for this message, body is the entire body.
+         * @param type The type of the message.
+         * @param subjectInfo The subject info of the message, or an empty String if there is none.
+         * @param body The rest of the body.
+         */
+        public void messageReceived(MessageType type, String subjectInfo, ByteBuffer body);
+    }
+
+    private enum State {
+        DETECT,
+        SEEK_START,
+        SUBJECT,
+        BODY,
+        BINARY_HEADER,
+        BINARY_INFO,
+        BINARY_BODY
+    }
+
+    private static final byte[]
+        START   = Constants.START_SEQUENCE.getBytes(StandardCharsets.UTF_8),
+        END     = Constants.END_SEQUENCE.getBytes(StandardCharsets.UTF_8),
+        SPLIT   = Constants.SPLIT_SEQUENCE.getBytes(StandardCharsets.UTF_8),
+        SUBJECT = Constants.SUBJECT_SEQUENCE.getBytes(StandardCharsets.UTF_8);
+
+    private static final int[]
+        START_FAILURE = failureTable(START),
+        END_FAILURE   = failureTable(END),
+        SPLIT_FAILURE = failureTable(SPLIT);
+
+    private final ByteBuffer ring;
+    private final ByteBuffer[] readViews;
+    private final ByteBuffer bodyView;
+    private final int capacity;
+    private final byte[] subject;
+    private final byte[] header;
+
+    private State state;
+    private PVFraming framing;
+    private long
+        readCount, //bytes released by the parser
+        scanCount, //bytes looked at by the parser
+        writeCount, //bytes put into the ring
+        bodyStart;
+
+    private int
+        subjectLength,
+        headerLength,
+        matched, //how much of the sequence currently being searched for has been seen
+        endMatched,
+        binaryInfoLength,
+        binaryBodyRemaining;
+
+    private MessageType messageType;
+    private String messageInfo;
+
+    /**
+     * Creates a new PVMessageParser.
+     * @param capacity The size of the ring buffer in bytes.
+     */
+    public PVMessageParser(int capacity) {
+        this.capacity = capacity;
+        ring = ByteBuffer.allocateDirect(capacity);
+        readViews = new ByteBuffer[] { ring.duplicate(), ring.duplicate() };
+        bodyView = ring.asReadOnlyBuffer();
+        subject = new byte[Constants.PV_MAX_SUBJECT_LENGTH];
+        header = new byte[PVFraming.BINARY_HEADER_SIZE];
+
+        state = State.DETECT;
+        framing = PVFraming.TEXT;
+        readCount = 0;
+        scanCount = 0;
+        writeCount = 0;
+    }
+
+    /**
+     * Reads whatever is available from a channel and passes every message found to the listener.
+     * @param channel The channel to read from. Should be non-blocking.
+     * @param listener Receives the messages.
+     * @return The number of bytes read, or -1 if the channel has reached end-of-stream.
+     * @throws IOException if the read fails or a malformed binary frame is received.
+     */
+    public long readFrom(ScatteringByteChannel channel, Listener listener) throws IOException {
+        //set up the free part of the ring as (at most) two buffers so that one read fills it even when it wraps
+        int free = capacity - (int) (writeCount - readCount);
+        int writeIndex = (int) (writeCount % capacity);
+        int firstLength = Math.min(free, capacity - writeIndex);
+        readViews[0].limit(writeIndex + firstLength).position(writeIndex);
+        readViews[1].limit(free - firstLength).position(0);
+
+        long bytesRead = channel.read(readViews);
+        if(bytesRead > 0) {
+            writeCount += bytesRead;
+            parse(listener);
+        }
+
+        return bytesRead;
+    }
+
+    /**
+     * Returns the framing that the parser has detected, which is TEXT until the first byte arrives.
+     */
+    public PVFraming getFraming() {
+        return framing;
+    }
+
+    /**
+     * Scans all unscanned bytes in the ring.
+     * @param listener Receives the messages.
+     * @throws IOException if a malformed binary frame is found.
+     */
+    private void parse(Listener listener) throws IOException {
+        while(scanCount < writeCount) {
+            switch(state) {
+                case DETECT: {
+                        framing = PVFraming.detect(ring.get(index(scanCount)));
+                        state = (framing == PVFraming.BINARY ? State.BINARY_HEADER : State.SEEK_START);
+                        headerLength = 0;
+                        matched = 0;
+                    }
+                    break;
+                case SEEK_START: {
+                        matched = advanceMatch(START, START_FAILURE, matched, ring.get(index(scanCount++)));
+                        if(matched == START.length) {
+                            state = State.SUBJECT;
+                            subjectLength = 0;
+                            matched = 0;
+                            endMatched = 0;
+                        }
+                    }
+                    break;
+                case SUBJECT: {
+                        byte b = ring.get(index(scanCount++));
+                        endMatched = advanceMatch(END, END_FAILURE, endMatched, b);
+                        if(endMatched == END.length || subjectLength == subject.length) {
+                            //a message with no split sequence, or junk. Throw it out and look for the next one
+                            state = State.SEEK_START;
+                            matched = 0;
+                            break;
+                        }
+
+                        subject[subjectLength++] = b;
+                        matched = advanceMatch(SPLIT, SPLIT_FAILURE, matched, b);
+                        if(matched == SPLIT.length) {
+                            parseSubject(subjectLength - SPLIT.length);
+                            state = State.BODY;
+                            bodyStart = scanCount;
+                            endMatched = 0;
+                        }
+                    }
+                    break;
+                case BODY: {
+                        endMatched = advanceMatch(END, END_FAILURE, endMatched, ring.get(index(scanCount++)));
+                        if(endMatched == END.length) {
+                            deliverBody(listener, bodyStart, scanCount - END.length, true);
+                            state = State.SEEK_START;
+                            matched = 0;
+                        }
+                    }
+                    break;
+                case BINARY_HEADER: {
+                        header[headerLength++] = ring.get(index(scanCount++));
+                        if(headerLength == header.length) {
+                            startBinaryFrame(listener);
+                        }
+                    }
+                    break;
+                case BINARY_INFO: {
+                        subject[subjectLength++] = ring.get(index(scanCount++));
+                        if(subjectLength == binaryInfoLength) {
+                            messageInfo = new String(subject, 0, subjectLength, StandardCharsets.UTF_8);
+                            startBinaryBody(listener);
+                        }
+                    }
+                    break;
+                case BINARY_BODY: {
+                        //binary bodies have a known length, so they can be skipped over in bulk
+                        int take = (int) Math.min(binaryBodyRemaining, writeCount - scanCount);
+                        scanCount += take;
+                        binaryBodyRemaining -= take;
+                        if(binaryBodyRemaining == 0) {
+                            finishBinaryFrame(listener);
+                        }
+                    }
+                    break;
+            }
+        }
+
+        release(listener);
+    }
+
+    /**
+     * Frees the bytes that the parser no longer needs, spilling part of a large body to the listener if necessary.
+     * @param listener Receives spilled body chunks.
+     */
+    private void release(Listener listener) {
+        if(state == State.BODY || state == State.BINARY_BODY) {
+            //bytes that might be the start of an end sequence have to stay in the ring
+            long spillEnd = scanCount - (state == State.BODY ? endMatched : 0);
+            if(spillEnd - bodyStart > capacity / 2) {
+                deliverBody(listener, bodyStart, spillEnd, false);
+                bodyStart = spillEnd;
+            }
+
+            readCount = bodyStart;
+        } else {
+            readCount = scanCount;
+        }
+
+        if(readCount == writeCount) {
+            //ring is empty, so line it back up with the start of the buffer. This keeps most bodies from wrapping
+            long aligned = ((writeCount + capacity - 1) / capacity) * capacity;
+            readCount = aligned;
+            scanCount = aligned;
+            writeCount = aligned;
+            bodyStart = aligned;
+        }
+    }
+
+    /**
+     * Splits the received subject into the message type and subject info.
+     * @param length The length of the subject, not including the split sequence.
+     */
+    private void parseSubject(int length) {
+        int subjectSequenceIndex = indexOf(subject, length, SUBJECT);
+        int codeLength = (subjectSequenceIndex > -1 ? subjectSequenceIndex : length);
+        messageType = MessageType.fromString(new String(subject, 0, codeLength, StandardCharsets.UTF_8));
+        messageInfo = "";
+        if(subjectSequenceIndex > -1) {
+            int infoStart = subjectSequenceIndex + SUBJECT.length;
+            messageInfo = new String(subject, infoStart, length - infoStart, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Reads the binary header that was just received.
+     * @param listener Receives the message if it is empty.
+     * @throws IOException if the header is malformed.
+     */
+    private void startBinaryFrame(Listener listener) throws IOException {
+        ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+        if(headerBuffer.get() != Constants.PV_BINARY_MAGIC) {
+            throw new IOException("Bad PathVisualizer frame magic!");
+        }
+
+        messageType = MessageType.fromIndex(headerBuffer.get());
+        binaryInfoLength = headerBuffer.getShort() & 0xFFFF;
+        binaryBodyRemaining = headerBuffer.getInt();
+        if(binaryInfoLength > subject.length) {
+            throw new IOException("PathVisualizer frame subject info is too long!");
+        }
+
+        if(binaryBodyRemaining < 0 || binaryBodyRemaining > Constants.PV_MAX_FRAME_SIZE) {
+            throw new IOException("PathVisualizer frame is too large! (" + binaryBodyRemaining + " bytes)");
+        }
+
+        subjectLength = 0;
+        if(binaryInfoLength > 0) {
+            state = State.BINARY_INFO;
+        } else {
+            messageInfo = "";
+            startBinaryBody(listener);
+        }
+    }
+
+    /**
+     * Moves on to the body of a binary frame once its subject info has been received.
+     * @param listener Receives the message if it has no body.
+     */
+    private void startBinaryBody(Listener listener) {
+        state = State.BINARY_BODY;
+        bodyStart = scanCount;
+        if(binaryBodyRemaining == 0) {
+            finishBinaryFrame(listener);
+        }
+    }
+
+    /**
+     * Delivers a completed binary frame and gets ready for the next header.
+     * @param listener Receives the message.
+     */
+    private void finishBinaryFrame(Listener listener) {
+        deliverBody(listener, bodyStart, scanCount, true);
+        state = State.BINARY_HEADER;
+        headerLength = 0;
+    }
+
+    /**
+     * Hands the part of the ring between two counts to the listener as one or two views.
+     * @param listener Receives the body.
+     * @param from Count of the first byte.
+     * @param to Count after the last byte.
+     * @param finished True if this is the end of the message, false if it is a chunk of a larger body.
+     */
+    private void deliverBody(Listener listener, long from, long to, boolean finished) {
+        int fromIndex = index(from);
+        int length = (int) (to - from);
+        if(fromIndex + length > capacity) {
+            //the body wraps around the end of the ring. Hand over the front part first
+            int firstLength = capacity - fromIndex;
+            listener.bodyChunkReceived(messageType, messageInfo, view(fromIndex, firstLength));
+            fromIndex = 0;
+            length -= firstLength;
+        }
+
+        ByteBuffer rest = view(fromIndex, length);
+        if(finished) {
+            listener.messageReceived(messageType, messageInfo, rest);
+        } else {
+            listener.bodyChunkReceived(messageType, messageInfo, rest);
+        }
+    }
+
+    /**
+     * Returns the reusable read-only view, positioned over part of the ring.
+     * @param index Index of the first byte.
+     * @param length Number of bytes.
+     */
+    private ByteBuffer view(int index, int length) {
+        bodyView.limit(index + length).position(index);
+        return bodyView;
+    }
+
+    /**
+     * Converts a byte count into an index in the ring.
+     * @param count A byte count.
+     */
+    private int index(long count) {
+        return (int) (count % capacity);
+    }
+
+    /**
+     * Advances a match against a byte sequence by one byte. Uses a KMP failure table so that no byte has to be looked at twice.
+     * @param sequence The sequence being searched for.
+     * @param failure The failure table of the sequence.
+     * @param matched How many bytes of the sequence have been matched so far.
+     * @param b The next byte.
+     * @return How many bytes of the sequence are matched after the byte.
+     */
+    private static int advanceMatch(byte[] sequence, int[] failure, int matched, byte b) {
+        if(matched == sequence.length) {
+            matched = failure[matched - 1];
+        }
+
+        while(matched > 0 && sequence[matched] != b) {
+            matched = failure[matched - 1];
+        }
+
+        return (sequence[matched] == b ? matched + 1 : 0);
+    }
+
+    /**
+     * Builds the KMP failure table for a sequence.
+     * @param sequence The sequence.
+     * @return Table where entry i is the length of the longest proper prefix of sequence[0..i] that is also a suffix of it.
+     */
+    private static int[] failureTable(byte[] sequence) {
+        int[] failure = new int[sequence.length];
+        int length = 0;
+        for(int i=1; i<sequence.length; i++) {
+            while(length > 0 && sequence[i] != sequence[length]) {
+                length = failure[length - 1];
+            }
+
+            if(sequence[i] == sequence[length]) {
+                length++;
+            }
+
+            failure[i] = length;
+        }
+
+        return failure;
+    }
+
+    /**
+     * Finds a sequence in the front of an array.
+     * @param data The array to search.
+     * @param length How much of the array to search.
+     * @param sequence The sequence to find.
+     * @return The index of the first occurence of the sequence, or -1 if it is not found.
+     */
+    private static int indexOf(byte[] data, int length, byte[] sequence) {
+        for(int i=0; i<=length - sequence.length; i++) {
+            int n = 0;
+            while(n < sequence.length && data[i + n] == sequence[n]) {
+                n++;
+            }
+
+            if(n == sequence.length) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
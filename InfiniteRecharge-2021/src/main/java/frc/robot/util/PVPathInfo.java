@@ -0,0 +1,204 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Metadata of one entry in a directory indexed by PVDirectoryIndex.
+ * For files this includes stats of the path in the file, so that PathVisualizer can show them without a LOAD.
+ */
+public class PVPathInfo {
+    private final String file;
+    private final boolean directory;
+    private final long lastModified;
+    private final int pointCount;
+    private final double
+        length,
+        minX,
+        minY,
+        maxX,
+        maxY;
+
+    /**
+     * Creates a new PVPathInfo.
+     * @param file The absolute path of the entry.
+     * @param directory True if the entry is a directory.
+     * @param lastModified The time the entry was last modified, in milliseconds since the epoch.
+     * @param pointCount The number of points in the path.
+     * @param length The total distance between consecutive points of the path.
+     * @param minX The smallest X-coordinate in the path.
+     * @param minY The smallest Y-coordinate in the path.
+     * @param maxX The largest X-coordinate in the path.
+     * @param maxY The largest Y-coordinate in the path.
+     */
+    public PVPathInfo(String file, boolean directory, long lastModified, int pointCount, double length, double minX, double minY, double maxX, double maxY) {
+        this.file = file;
+        this.directory = directory;
+        this.lastModified = lastModified;
+        this.pointCount = pointCount;
+        this.length = length;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    /**
+     * Reads an entry from disk and computes its metadata. Lines that are not points are skipped.
+     * @param file The entry to read.
+     * @return The metadata of the entry.
+     * @throws IOException if the entry could not be read.
+     */
+    public static PVPathInfo read(java.nio.file.Path file) throws IOException {
+        String name = file.toAbsolutePath().toString();
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        if(Files.isDirectory(file)) {
+            return new PVPathInfo(name, true, lastModified, 0, 0, 0, 0, 0, 0);
+        }
+
+        int pointCount = 0;
+        double
+            length = 0,
+            minX = 0,
+            minY = 0,
+            maxX = 0,
+            maxY = 0,
+            lastX = 0,
+            lastY = 0;
+
+        if(PathFile.isBinary(name)) {
+            Path path = new Path(name);
+            for(int i=0; i<path.getPointCount(); i++) {
+                Point2D point = path.getPoint(i);
+                minX = (i == 0 ? point.getX() : Math.min(minX, point.getX()));
+                minY = (i == 0 ? point.getY() : Math.min(minY, point.getY()));
+                maxX = (i == 0 ? point.getX() : Math.max(maxX, point.getX()));
+                maxY = (i == 0 ? point.getY() : Math.max(maxY, point.getY()));
+            }
+
+            return new PVPathInfo(name, false, lastModified, path.getPointCount(), path.getLength(), minX, minY, maxX, maxY);
+        }
+
+        try(BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                Point2D point;
+                try {
+                    point = Point2D.fromString(line);
+                } catch(NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+                    continue;
+                }
+
+                double x = point.getX();
+                double y = point.getY();
+                if(pointCount == 0) {
+                    minX = maxX = x;
+                    minY = maxY = y;
+                } else {
+                    length += Math.hypot(x - lastX, y - lastY);
+                    minX = Math.min(minX, x);
+                    minY = Math.min(minY, y);
+                    maxX = Math.max(maxX, x);
+                    maxY = Math.max(maxY, y);
+                }
+
+                lastX = x;
+                lastY = y;
+                pointCount++;
+            }
+        } catch(MalformedInputException ex) {
+            //not a text file, so not a path. Report it as a file without points
+        }
+
+        return new PVPathInfo(name, false, lastModified, pointCount, length, minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Returns the absolute path of the entry.
+     */
+    public String getFile() {
+        return file;
+    }
+
+    /**
+     * Returns true if the entry is a directory, false if it is a file.
+     */
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the time the entry was last modified, in milliseconds since the epoch.
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Returns the number of points in the path.
+     */
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    /**
+     * Returns the total distance between consecutive points of the path.
+     */
+    public double getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the smallest X-coordinate in the path.
+     */
+    public double getMinX() {
+        return minX;
+    }
+
+    /**
+     * Returns the smallest Y-coordinate in the path.
+     */
+    public double getMinY() {
+        return minY;
+    }
+
+    /**
+     * Returns the largest X-coordinate in the path.
+     */
+    public double getMaxX() {
+        return maxX;
+    }
+
+    /**
+     * Returns the largest Y-coordinate in the path.
+     */
+    public double getMaxY() {
+        return maxY;
+    }
+
+    /**
+     * Returns the entry in the format of a DIRECTORY_REQUEST reply line.
+     * Format: [file]:dir or [file]:file, followed by :[points],[length],[minX],[minY],[maxX],[maxY],[lastModified] if withStats is true.
+     * @param withStats True to include the path stats.
+     * @return The entry as one line, without the newline.
+     */
+    public String toString(boolean withStats) {
+        if(directory) {
+            return file + ":dir";
+        }
+
+        String line = file + ":file";
+        if(withStats) {
+            line += ":" + pointCount + "," + Util.roundTo(length, 2) + "," + Util.roundTo(minX, 2) + "," + Util.roundTo(minY, 2) + "," + Util.roundTo(maxX, 2) + "," + Util.roundTo(maxY, 2) + "," + lastModified;
+        }
+
+        return line;
+    }
+}
@@ -0,0 +1,64 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import frc.robot.Constants;
+
+/**
+ * Decides which robot positions are worth sending to PathVisualizer.
+ * A position is sent if it is at least "PV Position Min Interval" ms after the last one sent, and the robot has moved
+ * at least "PV Position Min Distance" inches or turned at least "PV Position Min Heading" degrees since then.
+ * A parked robot still sends a position every PV_POSITION_KEEPALIVE_MS so that new clients find it.
+ * Used only from the robot loop.
+ */
+public class PVPositionFilter {
+    private Point2D lastSentPosition;
+    private long
+        lastSentTime,
+        skippedPositions;
+
+    /**
+     * Creates a new PVPositionFilter.
+     */
+    public PVPositionFilter() {
+        lastSentPosition = null;
+        lastSentTime = 0;
+        skippedPositions = 0;
+    }
+
+    /**
+     * Returns true if the position should be sent, and remembers it as the last one sent if so.
+     * @param position The current robot position.
+     * @param now The current time, in milliseconds.
+     * @return True if the position should be sent, false if it should be skipped.
+     */
+    public boolean shouldSend(Point2D position, long now) {
+        if(lastSentPosition != null) {
+            long elapsed = now - lastSentTime;
+            if(elapsed < Util.getAndSetDouble("PV Position Min Interval", Constants.PV_POSITION_MIN_INTERVAL_MS)) {
+                skippedPositions++;
+                return false;
+            }
+
+            boolean moved = position.getDistanceFrom(lastSentPosition) >= Util.getAndSetDouble("PV Position Min Distance", Constants.PV_POSITION_MIN_DISTANCE);
+            boolean turned = Math.abs(position.getHeading() - lastSentPosition.getHeading()) >= Util.getAndSetDouble("PV Position Min Heading", Constants.PV_POSITION_MIN_HEADING);
+            if(!moved && !turned && elapsed < Constants.PV_POSITION_KEEPALIVE_MS) {
+                skippedPositions++;
+                return false;
+            }
+        }
+
+        lastSentPosition = position;
+        lastSentTime = now;
+        return true;
+    }
+
+    /**
+     * Returns the number of positions that have been skipped.
+     */
+    public long getSkippedPositions() {
+        return skippedPositions;
+    }
+}
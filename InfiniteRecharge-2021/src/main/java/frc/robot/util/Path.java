@@ -5,58 +5,119 @@
 package frc.robot.util;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 
 import edu.wpi.first.wpilibj.DriverStation;
 
 /**
  * Represents a Path that can be rendered on the screen.
+ * A Path cannot be changed once it is made, so one Path can be handed to any number of commands, and to other threads.
+ * A Path never holds a null point: a file that is not all points makes a Path with no points.
  */
 public class Path {
-    private Point2D[] points;
-    private boolean valid;
+    private final Point2D[] points;
+    private final boolean valid;
+    private volatile CompiledPath compiled; //made the first time it is asked for
 
     /**
-     * Creates a new path from the given file path.
+     * Creates a new path from the given file path. The file can be a text or binary path file; see PathFile.
+     * If any part of the file is not a point, the Path has no points and is not valid.
      * @param file The path to the file to read from.
-     * @param color The color of the path.
      */
     public Path(String file) {
-        this.valid = false;
-        try {
-            String fileContents = Files.readString(java.nio.file.Path.of(file));
-            String[] pointStrings = fileContents.split("\n");
-            points = new Point2D[pointStrings.length];
-            for(int i=0; i<pointStrings.length; i++) {
-                Point2D newPoint = Point2D.fromString(pointStrings[i]);
-                if(newPoint != null) {
-                    points[i] = newPoint;
-                }
-            }
+        this(file, true);
+    }
 
-            valid = true;
-        } catch (IOException ex) {
-            ex.printStackTrace();
-        } catch (NumberFormatException ex) {
-            DriverStation.reportError("Path: Invalid File!", true);
+    /**
+     * Creates a new path from the given file path, like Path(String).
+     * @param file The path to the file to read from.
+     * @param report True to report a file that could not be read to the driver station.
+     */
+    public Path(String file, boolean report) {
+        Point2D[] readPoints = new Point2D[0];
+        boolean readValid = false;
+        try(FileChannel channel = FileChannel.open(java.nio.file.Path.of(file), StandardOpenOption.READ)) {
+            MappedByteBuffer contents = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            readPoints = (PathFile.isBinary(contents) ? PathFile.readBinary(contents) : PathFile.readText(StandardCharsets.UTF_8.decode(contents).toString()));
+            readValid = readPoints.length > 0;
+            if(!readValid && report) {
+                DriverStation.reportError("Path: " + file + " has no points!", false);
+            }
+        } catch (IOException | InternalError ex) { //InternalError: the file got shorter while it was mapped
+            readPoints = new Point2D[0];
+            if(report) {
+                DriverStation.reportError("Path: Invalid File! " + file + ": " + ex.getMessage(), false);
+            }
         }
+
+        this.points = readPoints;
+        this.valid = readValid;
     }
 
     /**
      * Creates a new Path.
-     * @param points An array of points describing the path.
-     * @param color The color of the path.
+     * @param points An array of points describing the path. None of them can be null.
      */
     public Path(Point2D[] points) {
-        this.points = points;
+        this.points = points.clone();
+        for(Point2D point : this.points) {
+            if(point == null) {
+                throw new IllegalArgumentException("A Path cannot have a null point");
+            }
+        }
+
         this.valid = true;
     }
 
     /**
-     * Returns the Path's points.
+     * Returns a copy of the Path's points. Use getPoint() to look at points without copying them.
      */
     public Point2D[] getPoints() {
-        return points;
+        return points.clone();
+    }
+
+    /**
+     * Returns the number of points in the Path.
+     */
+    public int getPointCount() {
+        return points.length;
+    }
+
+    /**
+     * Returns one of the Path's points.
+     * @param index The index of the point, 0 being the start of the Path.
+     */
+    public Point2D getPoint(int index) {
+        return points[index];
+    }
+
+    /**
+     * Returns the Path laid out for following. It is made the first time this is called and kept, so call this where
+     * the Path is loaded rather than where it is driven.
+     */
+    public CompiledPath compile() {
+        CompiledPath result = compiled;
+        if(result == null) {
+            result = new CompiledPath(this);
+            compiled = result; //two threads may both make one, they are the same
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the distance from point to point along the whole Path in inches.
+     */
+    public double getLength() {
+        double length = 0;
+        for(int i=1; i<points.length; i++) {
+            length += points[i - 1].getDistanceFrom(points[i]);
+        }
+
+        return length;
     }
 
     /**
@@ -71,11 +132,11 @@ public class Path {
      * @return The string representation of the Path.
      */
     public String toString() {
-        String pathString = "";
+        StringBuilder pathString = new StringBuilder(points.length * 24);
         for(Point2D point : points) {
-            pathString += point.toString() + "\n";
+            pathString.append(point.toString()).append("\n");
         }
 
-        return pathString;
+        return pathString.toString();
     }
 }
@@ -0,0 +1,263 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * Keeps the auto path files read and parsed, so that an auto does not have to read its paths in the loop it starts in.
+ * The files are loaded on the cache's own thread as soon as it is created, and are then watched with a WatchService and
+ * loaded again whenever they change. get() still checks the file's size and modified time before handing a path out,
+ * which costs one stat instead of a parse, and catches a file that changed just before the watch noticed.
+ * Files that are not in the list given to the constructor, like the path being recorded, are cached the first time
+ * they are asked for and are not watched; get() finds out they changed the next time they are asked for.
+ * Every cached path is also compiled (see CompiledPath) when it is loaded.
+ */
+public class PathCache {
+    private final ConcurrentHashMap<String, CachedPath> paths;
+    private final Set<String> preloadedFiles;
+    private volatile boolean preloaded;
+    private volatile long
+        reloads, //cache thread only
+        hits, //robot thread only
+        misses,
+        lastMissNanos;
+
+    /**
+     * Creates a new PathCache and starts loading the files on its thread.
+     * @param files The path files to load and watch.
+     */
+    public PathCache(String... files) {
+        this.paths = new ConcurrentHashMap<String, CachedPath>();
+        this.preloadedFiles = new HashSet<String>();
+        for(String file : files) {
+            preloadedFiles.add(normalize(file));
+        }
+
+        this.preloaded = false;
+        Thread cacheThread = new Thread(this::runCacheLoop, "Path Cache");
+        cacheThread.setDaemon(true);
+        cacheThread.start();
+    }
+
+    /**
+     * Returns the path in a file, reading it now only if it is not cached or the file has changed since it was.
+     * @param file The path file.
+     * @return The path, or null if the file does not exist or is not a usable path.
+     */
+    public Path get(String file) {
+        String key = normalize(file);
+        CachedPath cached = paths.get(key);
+        if(cached != null && cached.isCurrent(key)) {
+            hits++;
+            return cached.path;
+        }
+
+        long startTime = System.nanoTime();
+        cached = load(key, true);
+        paths.put(key, cached);
+        misses++;
+        lastMissNanos = System.nanoTime() - startTime;
+        return cached.path;
+    }
+
+    /**
+     * Returns true once every file given to the constructor has been loaded once.
+     */
+    public boolean isPreloaded() {
+        return preloaded;
+    }
+
+    /**
+     * Returns the number of get() calls that were answered from the cache.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of get() calls that had to read the file.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of times a changed file was loaded again by the cache thread.
+     */
+    public long getReloads() {
+        return reloads;
+    }
+
+    /**
+     * Posts the cache statistics to the dashboard.
+     */
+    public void putStatistics() {
+        SmartDashboard.putBoolean("Path Cache Preloaded", preloaded);
+        SmartDashboard.putNumber("Path Cache Hits", hits);
+        SmartDashboard.putNumber("Path Cache Misses", misses);
+        SmartDashboard.putNumber("Path Cache Reloads", reloads);
+        SmartDashboard.putNumber("Path Cache Last Miss ms", lastMissNanos / 1000000.0);
+    }
+
+    /**
+     * Turns a file name into the key used for the cache.
+     * @param file The file as asked for.
+     * @return The absolute, normalized file.
+     */
+    private static String normalize(String file) {
+        return java.nio.file.Path.of(file).toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Reads and checks a path file.
+     * @param file The normalized path file.
+     * @param report True to report a file that is not a usable path to the driver station.
+     * @return The cache entry, whose path is null if the file does not exist or is not usable.
+     */
+    private static CachedPath load(String file, boolean report) {
+        java.nio.file.Path location = java.nio.file.Path.of(file);
+        BasicFileAttributes attributes;
+        try {
+            //before reading, so a write that lands while reading makes the entry look old instead of new
+            attributes = Files.readAttributes(location, BasicFileAttributes.class);
+        } catch(IOException ex) {
+            return new CachedPath(null, -1, -1); //missing files are normal, not every path is recorded on every robot
+        }
+
+        Path path;
+        try {
+            path = new Path(file, report);
+        } catch(RuntimeException ex) {
+            path = null; //caught halfway through being written
+        }
+
+        if(!isUsable(path)) {
+            if(report) {
+                DriverStation.reportWarning("PathCache: " + file + " is not a usable path!", false);
+            }
+            path = null;
+        } else {
+            path.compile(); //here instead of when an auto starts
+        }
+
+        return new CachedPath(path, attributes.lastModifiedTime().toMillis(), attributes.size());
+    }
+
+    /**
+     * Returns true if a path can be emulated: it was read and has enough points to aim at.
+     * @param path The path to check.
+     */
+    private static boolean isUsable(Path path) {
+        return path != null && path.isValid() && path.getPointCount() >= 3;
+    }
+
+    /**
+     * Loads every file, then reloads files as the WatchService reports changes to them.
+     */
+    private void runCacheLoop() {
+        for(String file : preloadedFiles) {
+            paths.put(file, load(file, true));
+        }
+        preloaded = true;
+
+        try(WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            Set<java.nio.file.Path> watchedDirectories = new HashSet<java.nio.file.Path>();
+            for(String file : preloadedFiles) {
+                java.nio.file.Path directory = java.nio.file.Path.of(file).getParent();
+                if(directory != null && Files.isDirectory(directory) && watchedDirectories.add(directory)) {
+                    directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                }
+            }
+
+            while(!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                java.nio.file.Path directory = (java.nio.file.Path) key.watchable();
+                for(WatchEvent<?> event : key.pollEvents()) {
+                    if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        for(String file : preloadedFiles) {
+                            reload(file);
+                        }
+                        continue;
+                    }
+
+                    String file = directory.resolve((java.nio.file.Path) event.context()).toString();
+                    if(preloadedFiles.contains(file)) {
+                        reload(file);
+                    }
+                }
+
+                key.reset();
+            }
+        } catch(IOException ex) {
+            DriverStation.reportWarning("PathCache could not watch the path files. Changed files will be read when they are used.", false);
+        } catch(InterruptedException ex) {
+            return;
+        }
+    }
+
+    /**
+     * Loads a file again if it changed since it was cached. Called from the cache thread.
+     * @param file The normalized path file.
+     */
+    private void reload(String file) {
+        CachedPath cached = paths.get(file);
+        if(cached != null && cached.isCurrent(file)) {
+            return; //one write can make several events
+        }
+
+        //not reported, the file may still be being written. get() reports it if it is still bad when it is used
+        paths.put(file, load(file, false));
+        reloads++;
+    }
+
+    /**
+     * A parsed path and the state of the file it came from.
+     */
+    private static class CachedPath {
+        private final Path path;
+        private final long
+            modifiedMillis,
+            size;
+
+        /**
+         * Creates a new CachedPath.
+         * @param path The path, or null if the file is missing or not usable.
+         * @param modifiedMillis When the file was last modified, or -1 if it is missing.
+         * @param size The size of the file in bytes, or -1 if it is missing.
+         */
+        private CachedPath(Path path, long modifiedMillis, long size) {
+            this.path = path;
+            this.modifiedMillis = modifiedMillis;
+            this.size = size;
+        }
+
+        /**
+         * Returns true if the file is the same as when it was cached.
+         * @param file The normalized path file.
+         */
+        private boolean isCurrent(String file) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(java.nio.file.Path.of(file), BasicFileAttributes.class);
+                return attributes.lastModifiedTime().toMillis() == modifiedMillis && attributes.size() == size;
+            } catch(IOException ex) {
+                return size < 0; //still missing
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import frc.robot.Constants;
+
+/**
+ * Reads and writes binary path files. Every number is big-endian.
+ *  Header (16 bytes):
+ *   0  magic          2 bytes, PATH_FILE_MAGIC_0 and PATH_FILE_MAGIC_1, which can never start a text path
+ *   2  version        1 byte, PATH_FILE_VERSION
+ *   3  units          1 byte, UNITS_INCHES or UNITS_METERS
+ *   4  precision      1 byte, PRECISION_FLOAT or PRECISION_DOUBLE: the size of each value in bytes
+ *   5  reserved       3 bytes, 0
+ *   8  count          4 bytes, number of points
+ *  12  checksum       4 bytes, CRC32 of everything after the header
+ *  Then three columns of count values each: every x, then every y, then every heading (always in degrees).
+ * Reading a file checks every one of these before any point is made, so a file that reads is a whole, usable path.
+ * Text paths are the original format: one x,y,heading line per point, in inches and degrees.
+ */
+public class PathFile {
+    public static final int HEADER_SIZE = 16;
+
+    public static final byte
+        UNITS_INCHES = 0,
+        UNITS_METERS = 1,
+        PRECISION_FLOAT = 4,
+        PRECISION_DOUBLE = 8;
+
+    private static final int
+        VERSION_OFFSET = 2,
+        UNITS_OFFSET = 3,
+        PRECISION_OFFSET = 4,
+        COUNT_OFFSET = 8,
+        CHECKSUM_OFFSET = 12,
+        COLUMNS = 3;
+
+    /**
+     * Returns true if the file starts with the binary path magic bytes.
+     * @param contents The file, from position to limit.
+     */
+    public static boolean isBinary(ByteBuffer contents) {
+        return
+            contents.remaining() >= 2 &&
+            contents.get(contents.position()) == Constants.PATH_FILE_MAGIC_0 &&
+            contents.get(contents.position() + 1) == Constants.PATH_FILE_MAGIC_1;
+    }
+
+    /**
+     * Returns true if a file is a binary path file. Only reads the first two bytes.
+     * @param file The file to check.
+     * @throws IOException if the file could not be read.
+     */
+    public static boolean isBinary(String file) throws IOException {
+        try(FileChannel channel = FileChannel.open(java.nio.file.Path.of(file), StandardOpenOption.READ)) {
+            ByteBuffer start = ByteBuffer.allocate(2);
+            while(start.hasRemaining() && channel.read(start) >= 0) {
+                //read until two bytes or the end of the file
+            }
+
+            start.flip();
+            return isBinary(start);
+        }
+    }
+
+    /**
+     * Reads the points out of a binary path file.
+     * @param contents The whole file, from position to limit. Usually a MappedByteBuffer.
+     * @return The points, in inches and degrees.
+     * @throws IOException if the file is not a whole, valid binary path.
+     */
+    public static Point2D[] readBinary(ByteBuffer contents) throws IOException {
+        if(!isBinary(contents) || contents.remaining() < HEADER_SIZE) {
+            throw new IOException("not a binary path file");
+        }
+
+        int start = contents.position();
+        int version = contents.get(start + VERSION_OFFSET);
+        int units = contents.get(start + UNITS_OFFSET);
+        int precision = contents.get(start + PRECISION_OFFSET);
+        int count = contents.getInt(start + COUNT_OFFSET);
+        if(version != Constants.PATH_FILE_VERSION) {
+            throw new IOException("binary path version " + version + " is not supported");
+        }
+
+        if(units != UNITS_INCHES && units != UNITS_METERS) {
+            throw new IOException("unknown units " + units);
+        }
+
+        if(precision != PRECISION_FLOAT && precision != PRECISION_DOUBLE) {
+            throw new IOException("unknown precision " + precision);
+        }
+
+        long expectedSize = HEADER_SIZE + (long) count * COLUMNS * precision;
+        if(count < 0 || contents.remaining() != expectedSize) {
+            throw new IOException("header says " + count + " points (" + expectedSize + " bytes) but the file is " + contents.remaining() + " bytes");
+        }
+
+        ByteBuffer columns = contents.duplicate();
+        columns.position(start + HEADER_SIZE);
+        CRC32 crc = new CRC32();
+        crc.update(columns);
+        if((int) crc.getValue() != contents.getInt(start + CHECKSUM_OFFSET)) {
+            throw new IOException("checksum does not match, the file is damaged");
+        }
+
+        double scale = (units == UNITS_METERS ? Util.metersToInches(1) : 1);
+        int xStart = start + HEADER_SIZE;
+        int yStart = xStart + count * precision;
+        int headingStart = yStart + count * precision;
+        Point2D[] points = new Point2D[count];
+        for(int i=0; i<count; i++) {
+            int offset = i * precision;
+            double x = getValue(contents, xStart + offset, precision) * scale;
+            double y = getValue(contents, yStart + offset, precision) * scale;
+            double heading = getValue(contents, headingStart + offset, precision);
+            if(!Double.isFinite(x) || !Double.isFinite(y) || !Double.isFinite(heading)) {
+                throw new IOException("point " + i + " is not a number");
+            }
+
+            points[i] = new Point2D(x, y, heading);
+        }
+
+        return points;
+    }
+
+    /**
+     * Reads the points out of a text path file. Blank lines are skipped; any other line that is not a point fails the whole file.
+     * @param contents The text of the file.
+     * @return The points.
+     * @throws IOException if a line is not a point.
+     */
+    public static Point2D[] readText(String contents) throws IOException {
+        String[] lines = contents.split("\n");
+        Point2D[] points = new Point2D[lines.length];
+        int count = 0;
+        for(int i=0; i<lines.length; i++) {
+            String line = lines[i].trim();
+            if(line.isEmpty()) {
+                continue;
+            }
+
+            Point2D point;
+            try {
+                point = Point2D.fromString(line);
+            } catch(NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+                throw new IOException("line " + (i + 1) + " is not a point: \"" + line + "\"");
+            }
+
+            if(!Double.isFinite(point.getX()) || !Double.isFinite(point.getY()) || !Double.isFinite(point.getHeading())) {
+                throw new IOException("line " + (i + 1) + " is not a number: \"" + line + "\"");
+            }
+
+            points[count++] = point;
+        }
+
+        if(count < points.length) {
+            Point2D[] trimmed = new Point2D[count];
+            System.arraycopy(points, 0, trimmed, 0, count);
+            return trimmed;
+        }
+
+        return points;
+    }
+
+    /**
+     * Writes a path as a binary path file, in inches. The file is replaced all at once, so nothing reading it ever sees half a file.
+     * @param path The path to write.
+     * @param file The file to write to.
+     * @param precision PRECISION_FLOAT or PRECISION_DOUBLE.
+     * @throws IOException if the file could not be written.
+     */
+    public static void writeBinary(Path path, String file, byte precision) throws IOException {
+        if(precision != PRECISION_FLOAT && precision != PRECISION_DOUBLE) {
+            throw new IllegalArgumentException("Precision must be PRECISION_FLOAT or PRECISION_DOUBLE");
+        }
+
+        int count = path.getPointCount();
+        ByteBuffer contents = ByteBuffer.allocate(HEADER_SIZE + count * COLUMNS * precision);
+        contents.put(Constants.PATH_FILE_MAGIC_0);
+        contents.put(Constants.PATH_FILE_MAGIC_1);
+        contents.put(Constants.PATH_FILE_VERSION);
+        contents.put(UNITS_INCHES);
+        contents.put(precision);
+        contents.put(new byte[3]);
+        contents.putInt(count);
+        contents.putInt(0); //checksum, filled in below
+
+        for(int column=0; column<COLUMNS; column++) {
+            for(int i=0; i<count; i++) {
+                Point2D point = path.getPoint(i);
+                double value = (column == 0 ? point.getX() : (column == 1 ? point.getY() : point.getHeading()));
+                if(precision == PRECISION_FLOAT) {
+                    contents.putFloat((float) value);
+                } else {
+                    contents.putDouble(value);
+                }
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(contents.array(), HEADER_SIZE, contents.capacity() - HEADER_SIZE);
+        contents.putInt(CHECKSUM_OFFSET, (int) crc.getValue());
+        contents.flip();
+        replace(file, contents);
+    }
+
+    /**
+     * Writes a path as a text path file. The file is replaced all at once, so nothing reading it ever sees half a file.
+     * @param path The path to write.
+     * @param file The file to write to.
+     * @throws IOException if the file could not be written.
+     */
+    public static void writeText(Path path, String file) throws IOException {
+        replace(file, ByteBuffer.wrap(path.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Reads one value out of a column.
+     * @param contents The file.
+     * @param index Where the value is.
+     * @param precision PRECISION_FLOAT or PRECISION_DOUBLE.
+     */
+    private static double getValue(ByteBuffer contents, int index, int precision) {
+        return (precision == PRECISION_FLOAT ? contents.getFloat(index) : contents.getDouble(index));
+    }
+
+    /**
+     * Replaces a file with new contents by writing them next to it and moving them over it.
+     * @param file The file to replace.
+     * @param contents The new contents, from position to limit.
+     * @throws IOException if the file could not be written.
+     */
+    private static void replace(String file, ByteBuffer contents) throws IOException {
+        java.nio.file.Path target = java.nio.file.Path.of(file).toAbsolutePath();
+        java.nio.file.Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while(contents.hasRemaining()) {
+                channel.write(contents);
+            }
+        }
+
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
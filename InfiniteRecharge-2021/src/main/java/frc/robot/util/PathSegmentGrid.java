@@ -0,0 +1,231 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import frc.robot.Constants;
+
+/**
+ * A uniform grid over the segments of a path, for finding the segment closest to the robot without looking at every
+ * segment. Every cell lists the segments whose bounding boxes touch it. A search starts at the robot's cell and looks at
+ * rings of cells around it, stopping as soon as no farther ring can hold anything closer, so it only ever looks at the
+ * segments near the robot no matter how long the path is.
+ * The cell lists are kept in two flat arrays: the segments of cell c are cellSegments[cellStart[c]] up to
+ * cellSegments[cellStart[c + 1]]. Made by CompiledPath, and like it, cannot be changed once it is made.
+ */
+public class PathSegmentGrid {
+    private final double[]
+        x,
+        y;
+
+    private final double
+        minX,
+        minY,
+        cellSize;
+
+    private final int
+        columns,
+        rows;
+
+    private final int[]
+        cellStart,
+        cellSegments;
+
+    /**
+     * Creates a new PathSegmentGrid. Segment i goes from point i to point i + 1.
+     * @param x The x coordinates of the points. Not copied, must not be changed.
+     * @param y The y coordinates of the points. Not copied, must not be changed.
+     */
+    PathSegmentGrid(double[] x, double[] y) {
+        this.x = x;
+        this.y = y;
+
+        double lowX = Double.MAX_VALUE, lowY = Double.MAX_VALUE, highX = -Double.MAX_VALUE, highY = -Double.MAX_VALUE;
+        for(int i=0; i<x.length; i++) {
+            lowX = Math.min(lowX, x[i]);
+            lowY = Math.min(lowY, y[i]);
+            highX = Math.max(highX, x[i]);
+            highY = Math.max(highY, y[i]);
+        }
+
+        if(x.length == 0) {
+            lowX = lowY = highX = highY = 0;
+        }
+
+        //cells get bigger on huge paths so the grid stays a reasonable size
+        double size = Constants.EMULATE_SEGMENT_GRID_CELL_SIZE;
+        while(((long) ((highX - lowX) / size) + 1) * ((long) ((highY - lowY) / size) + 1) > Constants.EMULATE_SEGMENT_GRID_MAX_CELLS) {
+            size *= 2;
+        }
+
+        this.minX = lowX;
+        this.minY = lowY;
+        this.cellSize = size;
+        this.columns = (int) ((highX - lowX) / size) + 1;
+        this.rows = (int) ((highY - lowY) / size) + 1;
+
+        //count the segments in each cell, then fill them in
+        int segments = Math.max(x.length - 1, 0);
+        cellStart = new int[columns * rows + 1];
+        for(int segment=0; segment<segments; segment++) {
+            for(int row=getFirstRow(segment); row<=getLastRow(segment); row++) {
+                for(int column=getFirstColumn(segment); column<=getLastColumn(segment); column++) {
+                    cellStart[row * columns + column + 1]++;
+                }
+            }
+        }
+
+        for(int cell=0; cell<columns * rows; cell++) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+
+        cellSegments = new int[cellStart[columns * rows]];
+        int[] filled = cellStart.clone();
+        for(int segment=0; segment<segments; segment++) {
+            for(int row=getFirstRow(segment); row<=getLastRow(segment); row++) {
+                for(int column=getFirstColumn(segment); column<=getLastColumn(segment); column++) {
+                    cellSegments[filled[row * columns + column]++] = segment;
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the segment closest to a location, out of a run of segments.
+     * @param px The x coordinate of the location.
+     * @param py The y coordinate of the location.
+     * @param firstSegment The first segment that can be returned.
+     * @param lastSegment The last segment that can be returned.
+     * @param maxDistance Segments farther than this from the location are not returned.
+     * @return The index of the closest segment, or -1 if none of the segments are within maxDistance.
+     */
+    public int findClosestSegment(double px, double py, int firstSegment, int lastSegment, double maxDistance) {
+        int centerColumn = getColumn(px);
+        int centerRow = getRow(py);
+        int maxRing = Math.min((int) Math.ceil(maxDistance / cellSize) + 1, Math.max(columns, rows));
+
+        int closest = -1;
+        double closestDistanceSquared = maxDistance * maxDistance;
+        for(int ring=0; ring<=maxRing; ring++) {
+            //everything in this ring and farther out is at least this far away
+            double ringDistance = (ring - 1) * cellSize;
+            if(ring > 0 && ringDistance * ringDistance > closestDistanceSquared) {
+                break;
+            }
+
+            for(int row=centerRow - ring; row<=centerRow + ring; row++) {
+                if(row < 0 || row >= rows) {
+                    continue;
+                }
+
+                //only the edge of the ring, the inside was already searched
+                boolean edgeRow = (row == centerRow - ring || row == centerRow + ring);
+                int columnStep = (edgeRow || ring == 0 ? 1 : 2 * ring);
+                for(int column=centerColumn - ring; column<=centerColumn + ring; column+=columnStep) {
+                    if(column < 0 || column >= columns) {
+                        continue;
+                    }
+
+                    int cell = row * columns + column;
+                    for(int i=cellStart[cell]; i<cellStart[cell + 1]; i++) {
+                        int segment = cellSegments[i];
+                        if(segment < firstSegment || segment > lastSegment) {
+                            continue;
+                        }
+
+                        double distanceSquared = getDistanceSquaredToSegment(px, py, segment);
+                        if(distanceSquared < closestDistanceSquared || (distanceSquared == closestDistanceSquared && segment < closest)) {
+                            closest = segment;
+                            closestDistanceSquared = distanceSquared;
+                        }
+                    }
+                }
+            }
+        }
+
+        return closest;
+    }
+
+    /**
+     * Returns how far along a segment the point on it closest to a location is.
+     * @param px The x coordinate of the location.
+     * @param py The y coordinate of the location.
+     * @param segment The index of the segment.
+     * @return 0 at the start of the segment through 1 at the end of it.
+     */
+    public double getFractionAlongSegment(double px, double py, int segment) {
+        double dx = x[segment + 1] - x[segment];
+        double dy = y[segment + 1] - y[segment];
+        double lengthSquared = dx * dx + dy * dy;
+        if(lengthSquared == 0) {
+            return 0;
+        }
+
+        double fraction = ((px - x[segment]) * dx + (py - y[segment]) * dy) / lengthSquared;
+        return (fraction < 0 ? 0 : (fraction > 1 ? 1 : fraction));
+    }
+
+    /**
+     * Returns the square of the distance from a location to the closest point on a segment.
+     * @param px The x coordinate of the location.
+     * @param py The y coordinate of the location.
+     * @param segment The index of the segment.
+     */
+    public double getDistanceSquaredToSegment(double px, double py, int segment) {
+        double fraction = getFractionAlongSegment(px, py, segment);
+        double dx = x[segment] + fraction * (x[segment + 1] - x[segment]) - px;
+        double dy = y[segment] + fraction * (y[segment + 1] - y[segment]) - py;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Returns the first column of the grid that a segment's bounding box touches.
+     * @param segment The index of the segment.
+     */
+    private int getFirstColumn(int segment) {
+        return getColumn(Math.min(x[segment], x[segment + 1]));
+    }
+
+    /**
+     * Returns the last column of the grid that a segment's bounding box touches.
+     * @param segment The index of the segment.
+     */
+    private int getLastColumn(int segment) {
+        return getColumn(Math.max(x[segment], x[segment + 1]));
+    }
+
+    /**
+     * Returns the first row of the grid that a segment's bounding box touches.
+     * @param segment The index of the segment.
+     */
+    private int getFirstRow(int segment) {
+        return getRow(Math.min(y[segment], y[segment + 1]));
+    }
+
+    /**
+     * Returns the last row of the grid that a segment's bounding box touches.
+     * @param segment The index of the segment.
+     */
+    private int getLastRow(int segment) {
+        return getRow(Math.max(y[segment], y[segment + 1]));
+    }
+
+    /**
+     * Returns the column of the grid that an x coordinate is in, or the closest one if it is off the grid.
+     * @param px The x coordinate.
+     */
+    private int getColumn(double px) {
+        int column = (int) Math.floor((px - minX) / cellSize);
+        return (column < 0 ? 0 : (column >= columns ? columns - 1 : column));
+    }
+
+    /**
+     * Returns the row of the grid that a y coordinate is in, or the closest one if it is off the grid.
+     * @param py The y coordinate.
+     */
+    private int getRow(double py) {
+        int row = (int) Math.floor((py - minY) / cellSize);
+        return (row < 0 ? 0 : (row >= rows ? rows - 1 : row));
+    }
+}
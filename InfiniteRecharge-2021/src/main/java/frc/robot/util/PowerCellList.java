@@ -0,0 +1,193 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import frc.robot.Constants;
+
+/**
+ * The power cells the Jevois saw in one packet, sorted from closest to furthest (largest y first).
+ * Stored as parallel arrays with a fixed capacity, so filling, sorting and copying a list never creates objects.
+ * If more power cells are added than fit, the furthest ones are left out.
+ * Not thread safe; SubsystemJevois hands each reader its own copy.
+ */
+public class PowerCellList {
+    private final int[]
+        x,
+        y,
+        radius;
+
+    private int size;
+    private long
+        sequence,
+        receiveTimeNanos;
+
+    /**
+     * Creates a new, empty PowerCellList that holds Constants.JEVOIS_MAX_POWER_CELLS power cells.
+     */
+    public PowerCellList() {
+        this(Constants.JEVOIS_MAX_POWER_CELLS);
+    }
+
+    /**
+     * Creates a new, empty PowerCellList.
+     * @param capacity The most power cells the list can hold.
+     */
+    public PowerCellList(int capacity) {
+        x = new int[capacity];
+        y = new int[capacity];
+        radius = new int[capacity];
+        size = 0;
+        sequence = 0;
+        receiveTimeNanos = 0;
+    }
+
+    /**
+     * Empties the list.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Adds a power cell in sorted order.
+     * @param cellX The x-coordinate of the center of the power cell in pixels, where 0 is the center of the image.
+     * @param cellY The y-coordinate of the center of the power cell in pixels, where 0 is the top of the image.
+     * @param cellRadius The radius of the power cell in pixels.
+     */
+    public void add(int cellX, int cellY, int cellRadius) {
+        //after the last cell with a y at least as large, so that ties keep the order they arrived in
+        int index = size;
+        while(index > 0 && y[index - 1] < cellY) {
+            index--;
+        }
+
+        if(index >= x.length) {
+            return; //further than every cell in a full list
+        }
+
+        int moved = Math.min(size, x.length - 1) - index;
+        System.arraycopy(x, index, x, index + 1, moved);
+        System.arraycopy(y, index, y, index + 1, moved);
+        System.arraycopy(radius, index, radius, index + 1, moved);
+        x[index] = cellX;
+        y[index] = cellY;
+        radius[index] = cellRadius;
+        size = Math.min(size + 1, x.length);
+    }
+
+    /**
+     * Makes this list a copy of another.
+     * @param other The list to copy. Must not be larger than this list's capacity.
+     */
+    public void copyFrom(PowerCellList other) {
+        int count = Math.min(other.size, x.length);
+        System.arraycopy(other.x, 0, x, 0, count);
+        System.arraycopy(other.y, 0, y, 0, count);
+        System.arraycopy(other.radius, 0, radius, 0, count);
+        size = count;
+        sequence = other.sequence;
+        receiveTimeNanos = other.receiveTimeNanos;
+    }
+
+    /**
+     * Returns the number of power cells in the list.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns true if the list has no power cells.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the x-coordinate of a power cell in pixels. 0 is the center of the image.
+     * @param index The index of the power cell, 0 being the closest.
+     */
+    public int getX(int index) {
+        checkIndex(index);
+        return x[index];
+    }
+
+    /**
+     * Returns the y-coordinate of a power cell in pixels. 0 is the top of the image.
+     * @param index The index of the power cell, 0 being the closest.
+     */
+    public int getY(int index) {
+        checkIndex(index);
+        return y[index];
+    }
+
+    /**
+     * Returns the radius of a power cell in pixels.
+     * @param index The index of the power cell, 0 being the closest.
+     */
+    public int getRadius(int index) {
+        checkIndex(index);
+        return radius[index];
+    }
+
+    /**
+     * Returns a power cell as a PowerCell object. Creates an object, so prefer getX(), getY() and getRadius() in loops.
+     * @param index The index of the power cell, 0 being the closest.
+     */
+    public PowerCell get(int index) {
+        checkIndex(index);
+        return new PowerCell(x[index], y[index], radius[index]);
+    }
+
+    /**
+     * Returns the number of the packet the list came from. Counts up by one for every packet that changed the list.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns System.nanoTime() when the packet the list came from was received.
+     */
+    public long getReceiveTimeNanos() {
+        return receiveTimeNanos;
+    }
+
+    /**
+     * Sets where the list came from.
+     * @param sequence The number of the packet.
+     * @param receiveTimeNanos System.nanoTime() when the packet was received.
+     */
+    public void setSource(long sequence, long receiveTimeNanos) {
+        this.sequence = sequence;
+        this.receiveTimeNanos = receiveTimeNanos;
+    }
+
+    /**
+     * Returns a string representation of the list.
+     * @return String formatted as [x, y, radius], [x, y, radius], ...
+     */
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for(int i=0; i<size; i++) {
+            if(i > 0) {
+                builder.append(", ");
+            }
+            builder.append("[").append(x[i]).append(", ").append(y[i]).append(", ").append(radius[i]).append("]");
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Throws if an index is not in the list.
+     * @param index The index to check.
+     */
+    private void checkIndex(int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Power cell " + index + " requested, but only " + size + " in the list");
+        }
+    }
+}
@@ -0,0 +1,461 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import frc.robot.Constants;
+
+/**
+ * Follows power cells seen by the Jevois from frame to frame, so that each ball keeps the same ID while it is in view.
+ * Every frame, each track is moved to where its velocity says it should be, and then the closest pair of track and
+ * power cell (by x, y and radius) is matched, then the next closest, and so on until no pair is within the gate.
+ * Matched tracks are pulled toward their power cell with an alpha-beta filter, unmatched power cells start new tracks,
+ * and tracks that go unseen for longer than the coast time are dropped.
+ * One track can be locked, so that a command can follow the same ball even when another looks closer for a frame or
+ * the ball is hidden for a moment. Positions are in pixels, with x measured from the center of the image.
+ * Not thread safe; SubsystemJevois updates it on the robot thread.
+ */
+public class PowerCellTracker {
+    private final int[]
+        ids,
+        hits;
+
+    private final double[]
+        x,
+        y,
+        radius,
+        xVelocity,
+        yVelocity;
+
+    private final long[]
+        createdTime,
+        lastUpdateTime,
+        lastSeenTime;
+
+    private final boolean[]
+        seen,
+        trackMatched,
+        detectionMatched;
+
+    private int
+        count,
+        nextId,
+        lockedId,
+        lockedIndex;
+
+    private long
+        coastNanos,
+        locksLost;
+
+    private double
+        gatePixels,
+        radiusWeight,
+        positionGain,
+        velocityGain;
+
+    /**
+     * Creates a new PowerCellTracker with the default tuning.
+     */
+    public PowerCellTracker() {
+        int capacity = Constants.JEVOIS_MAX_TRACKS;
+        ids = new int[capacity];
+        hits = new int[capacity];
+        x = new double[capacity];
+        y = new double[capacity];
+        radius = new double[capacity];
+        xVelocity = new double[capacity];
+        yVelocity = new double[capacity];
+        createdTime = new long[capacity];
+        lastUpdateTime = new long[capacity];
+        lastSeenTime = new long[capacity];
+        seen = new boolean[capacity];
+        trackMatched = new boolean[capacity];
+        detectionMatched = new boolean[Constants.JEVOIS_MAX_POWER_CELLS];
+        count = 0;
+        nextId = 1;
+        lockedId = -1;
+        lockedIndex = -1;
+        locksLost = 0;
+
+        setTuning(
+            Constants.JEVOIS_TRACK_GATE_PIXELS,
+            Constants.JEVOIS_TRACK_COAST_MS,
+            Constants.JEVOIS_TRACK_RADIUS_WEIGHT,
+            Constants.JEVOIS_TRACK_POSITION_GAIN,
+            Constants.JEVOIS_TRACK_VELOCITY_GAIN
+        );
+    }
+
+    /**
+     * Changes the tuning of the tracker.
+     * @param gatePixels How far a power cell can be from where a track expected it and still be matched to it.
+     * @param coastMillis How long a track is kept, and its position predicted, after its power cell was last seen.
+     * @param radiusWeight How much a difference in radius counts compared to the same difference in position.
+     * @param positionGain Alpha, how far a track moves toward its matched power cell, from 0 to 1.
+     * @param velocityGain Beta, how much of the miss is put into the track's velocity, from 0 to 1.
+     */
+    public void setTuning(double gatePixels, double coastMillis, double radiusWeight, double positionGain, double velocityGain) {
+        this.gatePixels = gatePixels;
+        this.coastNanos = (long) (coastMillis * 1000000);
+        this.radiusWeight = radiusWeight;
+        this.positionGain = positionGain;
+        this.velocityGain = velocityGain;
+    }
+
+    /**
+     * Adds a frame of power cells to the tracks.
+     * @param detections The power cells in the frame. Its receive time is used as the time of the frame.
+     */
+    public void update(PowerCellList detections) {
+        long time = detections.getReceiveTimeNanos();
+        for(int i=0; i<count; i++) {
+            predict(i, time);
+            trackMatched[i] = false;
+        }
+
+        int detectionCount = Math.min(detections.size(), detectionMatched.length);
+        for(int j=0; j<detectionCount; j++) {
+            detectionMatched[j] = false;
+        }
+
+        //greedy nearest neighbour: match the closest pair, then the next closest, until nothing is inside the gate
+        double gate = gatePixels * gatePixels;
+        while(true) {
+            int
+                bestTrack = -1,
+                bestDetection = -1;
+
+            double bestCost = gate;
+            for(int i=0; i<count; i++) {
+                if(trackMatched[i]) {
+                    continue;
+                }
+
+                for(int j=0; j<detectionCount; j++) {
+                    if(detectionMatched[j]) {
+                        continue;
+                    }
+
+                    double
+                        dx = detections.getX(j) - x[i],
+                        dy = detections.getY(j) - y[i],
+                        dr = (detections.getRadius(j) - radius[i]) * radiusWeight,
+                        cost = dx * dx + dy * dy + dr * dr;
+
+                    if(cost < bestCost) {
+                        bestCost = cost;
+                        bestTrack = i;
+                        bestDetection = j;
+                    }
+                }
+            }
+
+            if(bestTrack < 0) {
+                break;
+            }
+
+            correct(bestTrack, detections.getX(bestDetection), detections.getY(bestDetection), detections.getRadius(bestDetection), time);
+            trackMatched[bestTrack] = true;
+            detectionMatched[bestDetection] = true;
+        }
+
+        for(int i=0; i<count; i++) {
+            seen[i] = trackMatched[i];
+        }
+
+        for(int j=0; j<detectionCount; j++) {
+            if(!detectionMatched[j] && count < ids.length) {
+                startTrack(detections.getX(j), detections.getY(j), detections.getRadius(j), time);
+            }
+        }
+
+        prune(time);
+    }
+
+    /**
+     * Drops tracks that have not been seen for longer than the coast time.
+     * @param now The current System.nanoTime().
+     */
+    public void prune(long now) {
+        for(int i=count - 1; i>=0; i--) {
+            if(now - lastSeenTime[i] > coastNanos) {
+                removeTrack(i);
+            }
+        }
+    }
+
+    /**
+     * Drops every track and the lock.
+     */
+    public void reset() {
+        count = 0;
+        releaseLock();
+    }
+
+    /**
+     * Locks onto the closest (lowest in the image) track that has been seen in enough frames and was seen in the
+     * latest one. Keeps the current lock if there is one.
+     * @return The ID of the locked track, or -1 if there is nothing to lock onto.
+     */
+    public int lockClosest() {
+        if(hasLockedTarget()) {
+            return lockedId;
+        }
+
+        int closest = -1;
+        for(int i=0; i<count; i++) {
+            if(seen[i] && hits[i] >= Constants.JEVOIS_TRACK_CONFIRM_HITS && (closest < 0 || y[i] > y[closest])) {
+                closest = i;
+            }
+        }
+
+        if(closest >= 0) {
+            lockedId = ids[closest];
+            lockedIndex = closest;
+        }
+
+        return lockedId;
+    }
+
+    /**
+     * Stops following the locked track.
+     */
+    public void releaseLock() {
+        lockedId = -1;
+        lockedIndex = -1;
+    }
+
+    /**
+     * Returns true if a track is locked and has been seen within the coast time.
+     */
+    public boolean hasLockedTarget() {
+        return lockedIndex >= 0;
+    }
+
+    /**
+     * Returns the ID of the locked track, or -1 if there is none.
+     */
+    public int getLockedId() {
+        return lockedId;
+    }
+
+    /**
+     * Returns true if the locked track's power cell was in the latest frame, false if it is coasting or there is no lock.
+     */
+    public boolean isLockedTargetVisible() {
+        return hasLockedTarget() && seen[lockedIndex];
+    }
+
+    /**
+     * Returns the x-coordinate of the locked track predicted to a time, or 0 if there is no lock.
+     * @param now The time to predict to, from System.nanoTime().
+     */
+    public double getLockedX(long now) {
+        return (hasLockedTarget() ? x[lockedIndex] + xVelocity[lockedIndex] * getPredictionSeconds(lockedIndex, now) : 0);
+    }
+
+    /**
+     * Returns the y-coordinate of the locked track predicted to a time, or 0 if there is no lock.
+     * @param now The time to predict to, from System.nanoTime().
+     */
+    public double getLockedY(long now) {
+        return (hasLockedTarget() ? y[lockedIndex] + yVelocity[lockedIndex] * getPredictionSeconds(lockedIndex, now) : 0);
+    }
+
+    /**
+     * Returns the radius of the locked track, or 0 if there is no lock.
+     */
+    public double getLockedRadius() {
+        return (hasLockedTarget() ? radius[lockedIndex] : 0);
+    }
+
+    /**
+     * Returns the number of times a locked track was dropped because it was not seen within the coast time.
+     */
+    public long getLocksLost() {
+        return locksLost;
+    }
+
+    /**
+     * Returns the number of tracks.
+     */
+    public int getTrackCount() {
+        return count;
+    }
+
+    /**
+     * Returns the ID of a track. IDs are never reused.
+     * @param index The index of the track, from 0 to getTrackCount() - 1. Indexes change when tracks are dropped.
+     */
+    public int getTrackId(int index) {
+        return ids[index];
+    }
+
+    /**
+     * Returns the x-coordinate of a track as of the latest frame.
+     * @param index The index of the track.
+     */
+    public double getTrackX(int index) {
+        return x[index];
+    }
+
+    /**
+     * Returns the y-coordinate of a track as of the latest frame.
+     * @param index The index of the track.
+     */
+    public double getTrackY(int index) {
+        return y[index];
+    }
+
+    /**
+     * Returns the smoothed radius of a track.
+     * @param index The index of the track.
+     */
+    public double getTrackRadius(int index) {
+        return radius[index];
+    }
+
+    /**
+     * Returns the smoothed horizontal velocity of a track, in pixels per second.
+     * @param index The index of the track.
+     */
+    public double getTrackXVelocity(int index) {
+        return xVelocity[index];
+    }
+
+    /**
+     * Returns the smoothed vertical velocity of a track, in pixels per second.
+     * @param index The index of the track.
+     */
+    public double getTrackYVelocity(int index) {
+        return yVelocity[index];
+    }
+
+    /**
+     * Returns how many frames a track's power cell has been matched in, counting the one that started it.
+     * @param index The index of the track.
+     */
+    public int getTrackHits(int index) {
+        return hits[index];
+    }
+
+    /**
+     * Returns how long ago a track was started, in milliseconds.
+     * @param index The index of the track.
+     * @param now The current System.nanoTime().
+     */
+    public double getTrackAgeMillis(int index, long now) {
+        return (now - createdTime[index]) / 1000000.0;
+    }
+
+    /**
+     * Returns true if a track's power cell was in the latest frame.
+     * @param index The index of the track.
+     */
+    public boolean isTrackVisible(int index) {
+        return seen[index];
+    }
+
+    /**
+     * Moves a track to where its velocity puts it at a time.
+     * @param index The index of the track.
+     * @param time The time to move it to.
+     */
+    private void predict(int index, long time) {
+        double dt = (time - lastUpdateTime[index]) / 1E9;
+        if(dt <= 0) {
+            return;
+        }
+
+        x[index] += xVelocity[index] * dt;
+        y[index] += yVelocity[index] * dt;
+        lastUpdateTime[index] = time;
+    }
+
+    /**
+     * Pulls a predicted track toward the power cell matched to it.
+     * @param index The index of the track.
+     * @param cellX The x-coordinate of the power cell.
+     * @param cellY The y-coordinate of the power cell.
+     * @param cellRadius The radius of the power cell.
+     * @param time The time of the frame.
+     */
+    private void correct(int index, int cellX, int cellY, int cellRadius, long time) {
+        double
+            xMiss = cellX - x[index],
+            yMiss = cellY - y[index],
+            dt = (time - lastSeenTime[index]) / 1E9;
+
+        x[index] += positionGain * xMiss;
+        y[index] += positionGain * yMiss;
+        if(dt > 0) {
+            xVelocity[index] += velocityGain * xMiss / dt;
+            yVelocity[index] += velocityGain * yMiss / dt;
+        }
+
+        radius[index] += positionGain * (cellRadius - radius[index]);
+        lastSeenTime[index] = time;
+        hits[index]++;
+    }
+
+    /**
+     * Starts a track at a power cell that no track was matched to.
+     * @param cellX The x-coordinate of the power cell.
+     * @param cellY The y-coordinate of the power cell.
+     * @param cellRadius The radius of the power cell.
+     * @param time The time of the frame.
+     */
+    private void startTrack(int cellX, int cellY, int cellRadius, long time) {
+        int index = count++;
+        ids[index] = nextId++;
+        hits[index] = 1;
+        x[index] = cellX;
+        y[index] = cellY;
+        radius[index] = cellRadius;
+        xVelocity[index] = 0;
+        yVelocity[index] = 0;
+        createdTime[index] = time;
+        lastUpdateTime[index] = time;
+        lastSeenTime[index] = time;
+        seen[index] = true;
+    }
+
+    /**
+     * Drops a track by moving the last track into its place.
+     * @param index The index of the track.
+     */
+    private void removeTrack(int index) {
+        if(index == lockedIndex) {
+            releaseLock();
+            locksLost++;
+        }
+
+        int last = --count;
+        if(index != last) {
+            ids[index] = ids[last];
+            hits[index] = hits[last];
+            x[index] = x[last];
+            y[index] = y[last];
+            radius[index] = radius[last];
+            xVelocity[index] = xVelocity[last];
+            yVelocity[index] = yVelocity[last];
+            createdTime[index] = createdTime[last];
+            lastUpdateTime[index] = lastUpdateTime[last];
+            lastSeenTime[index] = lastSeenTime[last];
+            seen[index] = seen[last];
+            if(lockedIndex == last) {
+                lockedIndex = index;
+            }
+        }
+    }
+
+    /**
+     * Returns how far past a track's latest frame to predict it, capped at the coast time.
+     * @param index The index of the track.
+     * @param now The time to predict to.
+     */
+    private double getPredictionSeconds(int index, long now) {
+        return Math.max(Math.min(now - lastUpdateTime[index], coastNanos), 0) / 1E9;
+    }
+}
@@ -0,0 +1,306 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+/**
+ * Kalman filter that tracks the bearing and distance of the vision target between KiwiLight packets.
+ * Bearing and distance each get a constant-velocity model (value and rate, with a 2x2 covariance), so the
+ * estimate can be predicted forward to any time, and noise in one packet does not go straight to the turret.
+ * Bearings should be measured from something that does not move with the turret, so that turning the turret
+ * does not look like the target moving.
+ * Measurements whose innovation is outside of the gate restart the filter on the new measurement, which is
+ * what happens when KiwiLight switches to a different target.
+ */
+public class TargetTracker {
+    private final ConstantVelocityFilter
+        bearing,
+        distance;
+
+    private double
+        bearingProcessNoise,
+        bearingMeasurementNoise,
+        distanceProcessNoise,
+        distanceMeasurementNoise,
+        innovationGate;
+
+    private boolean initialized;
+    private long lastUpdateTime;
+
+    //innovation statistics
+    private long
+        updates,
+        resets;
+
+    private double
+        lastBearingInnovation,
+        bearingInnovationSquaredSum,
+        bearingNormalizedInnovationSum;
+
+    /**
+     * Creates a new TargetTracker.
+     * @param bearingProcessNoise How quickly the bearing rate can change, as an acceleration variance in (deg/s^2)^2.
+     * @param bearingMeasurementNoise Variance of a measured bearing, in deg^2.
+     * @param distanceProcessNoise How quickly the distance rate can change, as an acceleration variance in (in/s^2)^2.
+     * @param distanceMeasurementNoise Variance of a measured distance, in in^2.
+     * @param innovationGate Number of standard deviations a bearing can be from the prediction before the filter restarts.
+     */
+    public TargetTracker(double bearingProcessNoise, double bearingMeasurementNoise, double distanceProcessNoise, double distanceMeasurementNoise, double innovationGate) {
+        bearing = new ConstantVelocityFilter();
+        distance = new ConstantVelocityFilter();
+        setTuning(bearingProcessNoise, bearingMeasurementNoise, distanceProcessNoise, distanceMeasurementNoise, innovationGate);
+        initialized = false;
+        resetStatistics();
+    }
+
+    /**
+     * Changes the noise values of the filter. Takes effect on the next update.
+     * @param bearingProcessNoise How quickly the bearing rate can change, as an acceleration variance in (deg/s^2)^2.
+     * @param bearingMeasurementNoise Variance of a measured bearing, in deg^2.
+     * @param distanceProcessNoise How quickly the distance rate can change, as an acceleration variance in (in/s^2)^2.
+     * @param distanceMeasurementNoise Variance of a measured distance, in in^2.
+     * @param innovationGate Number of standard deviations a bearing can be from the prediction before the filter restarts.
+     */
+    public void setTuning(double bearingProcessNoise, double bearingMeasurementNoise, double distanceProcessNoise, double distanceMeasurementNoise, double innovationGate) {
+        this.bearingProcessNoise = bearingProcessNoise;
+        this.bearingMeasurementNoise = bearingMeasurementNoise;
+        this.distanceProcessNoise = distanceProcessNoise;
+        this.distanceMeasurementNoise = distanceMeasurementNoise;
+        this.innovationGate = innovationGate;
+    }
+
+    /**
+     * Adds a measurement of the target.
+     * @param timeNanos System.nanoTime() when the measurement was taken. Must not be before the last measurement.
+     * @param measuredBearing The bearing to the target, in degrees.
+     * @param measuredDistance The distance to the target, in inches.
+     */
+    public void update(long timeNanos, double measuredBearing, double measuredDistance) {
+        if(!initialized) {
+            restart(timeNanos, measuredBearing, measuredDistance);
+            return;
+        }
+
+        double dt = Math.max(0, (timeNanos - lastUpdateTime) / 1E9);
+        bearing.predict(dt, bearingProcessNoise);
+        distance.predict(dt, distanceProcessNoise);
+
+        double innovation = measuredBearing - bearing.value;
+        double innovationVariance = bearing.valueVariance + bearingMeasurementNoise;
+        double normalizedInnovation = innovation * innovation / innovationVariance;
+        if(normalizedInnovation > innovationGate * innovationGate) {
+            //too far from where the target should be, probably a different target
+            resets++;
+            restart(timeNanos, measuredBearing, measuredDistance);
+            return;
+        }
+
+        bearing.correct(measuredBearing, bearingMeasurementNoise);
+        distance.correct(measuredDistance, distanceMeasurementNoise);
+        lastUpdateTime = timeNanos;
+
+        updates++;
+        lastBearingInnovation = innovation;
+        bearingInnovationSquaredSum += innovation * innovation;
+        bearingNormalizedInnovationSum += normalizedInnovation;
+    }
+
+    /**
+     * Forgets the target. The next measurement starts a new track.
+     */
+    public void reset() {
+        initialized = false;
+    }
+
+    /**
+     * Returns true if the tracker has a target.
+     */
+    public boolean hasTarget() {
+        return initialized;
+    }
+
+    /**
+     * Returns the time of the last measurement, from System.nanoTime().
+     */
+    public long getLastUpdateTime() {
+        return lastUpdateTime;
+    }
+
+    /**
+     * Returns the estimated bearing to the target at the given time, in degrees.
+     * @param timeNanos The time to predict to, from System.nanoTime().
+     */
+    public double getBearing(long timeNanos) {
+        return bearing.value + bearing.rate * secondsSinceUpdate(timeNanos);
+    }
+
+    /**
+     * Returns the estimated rate that the bearing is changing, in degrees per second.
+     */
+    public double getBearingRate() {
+        return bearing.rate;
+    }
+
+    /**
+     * Returns the standard deviation of the bearing estimate as of the last measurement, in degrees.
+     */
+    public double getBearingStandardDeviation() {
+        return Math.sqrt(bearing.valueVariance);
+    }
+
+    /**
+     * Returns the estimated distance to the target at the given time, in inches.
+     * @param timeNanos The time to predict to, from System.nanoTime().
+     */
+    public double getDistance(long timeNanos) {
+        return distance.value + distance.rate * secondsSinceUpdate(timeNanos);
+    }
+
+    /**
+     * Returns the estimated rate that the distance is changing, in inches per second.
+     */
+    public double getDistanceRate() {
+        return distance.rate;
+    }
+
+    /**
+     * Returns the standard deviation of the distance estimate as of the last measurement, in inches.
+     */
+    public double getDistanceStandardDeviation() {
+        return Math.sqrt(distance.valueVariance);
+    }
+
+    /**
+     * Returns the number of measurements that updated the filter since the statistics were reset.
+     */
+    public long getUpdates() {
+        return updates;
+    }
+
+    /**
+     * Returns the number of times a measurement was outside of the gate since the statistics were reset.
+     */
+    public long getResets() {
+        return resets;
+    }
+
+    /**
+     * Returns the difference between the last measured bearing and the predicted one, in degrees.
+     */
+    public double getLastBearingInnovation() {
+        return lastBearingInnovation;
+    }
+
+    /**
+     * Returns the root mean square of the bearing innovations since the statistics were reset, in degrees.
+     */
+    public double getBearingInnovationRMS() {
+        return (updates == 0 ? 0 : Math.sqrt(bearingInnovationSquaredSum / updates));
+    }
+
+    /**
+     * Returns the mean normalized innovation squared of the bearing since the statistics were reset.
+     * Should be close to 1 when the noise values are right. Much larger means the filter trusts itself too much,
+     * much smaller means it trusts the measurements too much.
+     */
+    public double getMeanNormalizedInnovation() {
+        return (updates == 0 ? 0 : bearingNormalizedInnovationSum / updates);
+    }
+
+    /**
+     * Clears the innovation statistics.
+     */
+    public void resetStatistics() {
+        updates = 0;
+        resets = 0;
+        lastBearingInnovation = 0;
+        bearingInnovationSquaredSum = 0;
+        bearingNormalizedInnovationSum = 0;
+    }
+
+    /**
+     * Starts a new track at a measurement, with no rate and the covariance of a single measurement.
+     * @param timeNanos System.nanoTime() when the measurement was taken.
+     * @param measuredBearing The bearing to the target, in degrees.
+     * @param measuredDistance The distance to the target, in inches.
+     */
+    private void restart(long timeNanos, double measuredBearing, double measuredDistance) {
+        bearing.reset(measuredBearing, bearingMeasurementNoise);
+        distance.reset(measuredDistance, distanceMeasurementNoise);
+        lastUpdateTime = timeNanos;
+        initialized = true;
+    }
+
+    /**
+     * Returns the time between the last measurement and the given time, in seconds.
+     * @param timeNanos The time, from System.nanoTime().
+     */
+    private double secondsSinceUpdate(long timeNanos) {
+        return (initialized ? (timeNanos - lastUpdateTime) / 1E9 : 0);
+    }
+
+    /**
+     * One dimensional Kalman filter with a value and a rate, driven by white noise acceleration.
+     */
+    private static class ConstantVelocityFilter {
+        private static final double INITIAL_RATE_VARIANCE = 1E4; //nothing is known about the rate of a new track
+
+        private double
+            value,
+            rate,
+            valueVariance,
+            covariance,
+            rateVariance;
+
+        /**
+         * Starts the filter at a value.
+         * @param initialValue The first measured value.
+         * @param measurementNoise The variance of the measurement.
+         */
+        public void reset(double initialValue, double measurementNoise) {
+            value = initialValue;
+            rate = 0;
+            valueVariance = measurementNoise;
+            covariance = 0;
+            rateVariance = INITIAL_RATE_VARIANCE;
+        }
+
+        /**
+         * Moves the estimate forward in time.
+         * @param dt The time to move forward, in seconds.
+         * @param processNoise The acceleration variance.
+         */
+        public void predict(double dt, double processNoise) {
+            value += rate * dt;
+
+            //P = F P F' + Q, with F = [1 dt; 0 1] and Q from white noise acceleration
+            double dt2 = dt * dt;
+            valueVariance += 2 * dt * covariance + dt2 * rateVariance + processNoise * dt2 * dt2 / 4;
+            covariance += dt * rateVariance + processNoise * dt2 * dt / 2;
+            rateVariance += processNoise * dt2;
+        }
+
+        /**
+         * Corrects the estimate with a measurement of the value.
+         * @param measurement The measured value.
+         * @param measurementNoise The variance of the measurement.
+         */
+        public void correct(double measurement, double measurementNoise) {
+            double innovation = measurement - value;
+            double innovationVariance = valueVariance + measurementNoise;
+            double valueGain = valueVariance / innovationVariance;
+            double rateGain = covariance / innovationVariance;
+
+            value += valueGain * innovation;
+            rate += rateGain * innovation;
+
+            //P = (I - K H) P
+            double newValueVariance = (1 - valueGain) * valueVariance;
+            double newCovariance = (1 - valueGain) * covariance;
+            rateVariance -= rateGain * covariance;
+            valueVariance = newValueVariance;
+            covariance = newCovariance;
+        }
+    }
+}
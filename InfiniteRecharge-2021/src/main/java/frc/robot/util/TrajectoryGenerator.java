@@ -0,0 +1,246 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import frc.robot.Constants;
+
+/**
+ * Turns a path into a trajectory: one TrajectorySegment per pair of points, with the wheel velocities to drive it at
+ * and how long it takes. Made once, when the path is loaded, so CyborgCommandFollowTrajectory only has to play it back.
+ * The max velocity and acceleration are for each wheel, not the middle of the robot, since the outside wheel of a turn
+ * goes faster than the middle. The speed at every point is first limited by:
+ *  - the max velocity, for the outside wheel
+ *  - the speed the wheels can turn at without sliding, from the same friction model CyborgCommandEmulatePath uses
+ *  - 0 at both ends of the path, and wherever the robot changes between driving forwards and backwards
+ * A forward pass then keeps both wheels from speeding up faster than the max acceleration, and a backward pass keeps them
+ * from slowing down faster than that, so the robot is already slow when it gets to a tight turn instead of braking in it.
+ * Turns are measured with the robot's recorded heading, so driving backwards needs nothing special.
+ */
+public class TrajectoryGenerator {
+    private static final double VELOCITY_TOLERANCE = 1E-6; //in/sec, changes smaller than this do not need another pass
+
+    private final double
+        maxVelocity,
+        maxAcceleration,
+        coefficientOfFriction;
+
+    /**
+     * Creates a new TrajectoryGenerator.
+     * @param maxVelocity The fastest either wheel can go in inches/sec.
+     * @param maxAcceleration The fastest either wheel can speed up or slow down in inches/sec^2.
+     * @param coefficientOfFriction The coefficient of friction between the wheels and the floor.
+     */
+    public TrajectoryGenerator(double maxVelocity, double maxAcceleration, double coefficientOfFriction) {
+        this.maxVelocity = maxVelocity;
+        this.maxAcceleration = maxAcceleration;
+        this.coefficientOfFriction = coefficientOfFriction;
+    }
+
+    /**
+     * Creates a TrajectoryGenerator with the limits from the preferences.
+     */
+    public static TrajectoryGenerator fromPreferences() {
+        return new TrajectoryGenerator(
+            Util.getAndSetDouble("Trajectory Max Velocity", Constants.TRAJECTORY_MAX_VELOCITY),
+            Util.getAndSetDouble("Trajectory Max Acceleration", Constants.TRAJECTORY_MAX_ACCELERATION),
+            Util.getAndSetDouble("Emulate Coefficient of Friction", 1)
+        );
+    }
+
+    /**
+     * Generates the trajectory for a path.
+     * @param path The path to drive.
+     * @return One segment for each pair of points, in order. Empty if the path has less than two points.
+     */
+    public TrajectorySegment[] generate(CompiledPath path) {
+        int count = path.getPointCount();
+        if(count < 2) {
+            return new TrajectorySegment[0];
+        }
+
+        //running sum of the robot's turn, so the curvature around every point is one subtraction
+        double[] turnSum = new double[count];
+        for(int i=1; i<count; i++) {
+            turnSum[i] = turnSum[i - 1] + Util.getAngleToHeading(path.getHeading(i - 1), path.getHeading(i));
+        }
+
+        //curvature (radians per inch, positive to the left) averaged over the points around each point
+        int window = Constants.TRAJECTORY_CURVATURE_WINDOW;
+        double[] curvature = new double[count];
+        for(int i=0; i<count; i++) {
+            int first = Math.max(i - window, 0);
+            int last = Math.min(i + window, count - 1);
+            double length = path.getLengthBetween(first, last);
+            curvature[i] = (length > 0 ? Math.toRadians(turnSum[last] - turnSum[first]) / length : 0);
+        }
+
+        //direction of each segment. Segments with no length keep the direction of the one before
+        boolean[] forwards = new boolean[count - 1];
+        for(int i=0; i<count - 1; i++) {
+            if(path.getLengthBetween(i, i + 1) > 0) {
+                forwards[i] = Math.abs(Util.getAngleToHeading(path.getHeading(i), path.getSegmentHeading(i))) < 90;
+            } else {
+                forwards[i] = (i > 0 ? forwards[i - 1] : true);
+            }
+        }
+
+        //speed limit at each point
+        double[] velocity = new double[count];
+        for(int i=1; i<count - 1; i++) {
+            velocity[i] = (forwards[i - 1] == forwards[i] ? getVelocityLimit(curvature[i]) : 0);
+        }
+
+        //how fast each wheel goes for each inch/sec of the middle of the robot
+        double halfWidth = Constants.DRIVETRAIN_WHEEL_BASE_WIDTH / 2;
+        double[] leftScale = new double[count];
+        double[] rightScale = new double[count];
+        for(int i=0; i<count; i++) {
+            leftScale[i] = Math.abs(1 - curvature[i] * halfWidth);
+            rightScale[i] = Math.abs(1 + curvature[i] * halfWidth);
+        }
+
+        //going into or out of a turn speeds one wheel up and slows the other down, so slowing the robot for one wheel can
+        //leave the other speeding up too fast. The passes only ever lower speeds, so they are repeated until they settle
+        boolean changed = true;
+        for(int pass=0; changed && pass<Constants.TRAJECTORY_MAX_PASSES; pass++) {
+            changed = false;
+
+            //forward pass: neither wheel speeds up faster than the max acceleration
+            for(int i=1; i<count; i++) {
+                double distance = path.getLengthBetween(i - 1, i);
+                double reachable = Math.min(
+                    getReachableVelocity(velocity[i - 1], leftScale[i - 1], leftScale[i], distance),
+                    getReachableVelocity(velocity[i - 1], rightScale[i - 1], rightScale[i], distance)
+                );
+
+                if(reachable < velocity[i] - VELOCITY_TOLERANCE) {
+                    velocity[i] = reachable;
+                    changed = true;
+                }
+            }
+
+            //backward pass: neither wheel slows down faster than the max acceleration
+            for(int i=count - 2; i>=0; i--) {
+                double distance = path.getLengthBetween(i, i + 1);
+                double reachable = Math.min(
+                    getReachableVelocity(velocity[i + 1], leftScale[i + 1], leftScale[i], distance),
+                    getReachableVelocity(velocity[i + 1], rightScale[i + 1], rightScale[i], distance)
+                );
+
+                if(reachable < velocity[i] - VELOCITY_TOLERANCE) {
+                    velocity[i] = reachable;
+                    changed = true;
+                }
+            }
+        }
+
+        TrajectorySegment[] trajectory = new TrajectorySegment[count - 1];
+        for(int i=0; i<count - 1; i++) {
+            double distance = path.getLengthBetween(i, i + 1);
+            double time;
+            if(distance == 0) {
+                time = 0;
+            } else if(velocity[i] + velocity[i + 1] > 0) {
+                time = 2 * distance / (velocity[i] + velocity[i + 1]); //constant acceleration between the points
+            } else {
+                time = 2 * Math.sqrt(distance / maxAcceleration); //stopped at both ends, speed up then slow down
+            }
+
+            double segmentCurvature = (curvature[i] + curvature[i + 1]) / 2;
+            double direction = (forwards[i] ? 1 : -1);
+            double leftVelocity, rightVelocity;
+            if(velocity[i] + velocity[i + 1] > 0) {
+                //average of the wheel speeds at the ends, so neither wheel is over the max velocity in the segment
+                leftVelocity = (velocity[i] * (direction - curvature[i] * halfWidth) + velocity[i + 1] * (direction - curvature[i + 1] * halfWidth)) / 2;
+                rightVelocity = (velocity[i] * (direction + curvature[i] * halfWidth) + velocity[i + 1] * (direction + curvature[i + 1] * halfWidth)) / 2;
+            } else {
+                double speed = (time > 0 ? distance / time : 0);
+                double turnVelocity = segmentCurvature * speed * halfWidth; //how much faster the outside wheel goes
+                leftVelocity = direction * speed - turnVelocity;
+                rightVelocity = direction * speed + turnVelocity;
+            }
+
+            trajectory[i] = new TrajectorySegment(leftVelocity, rightVelocity, distance, Math.toDegrees(segmentCurvature * distance), forwards[i], time);
+        }
+
+        return trajectory;
+    }
+
+    /**
+     * Returns how long a trajectory takes to drive.
+     * @param trajectory The trajectory.
+     * @return The time in seconds.
+     */
+    public static double getTime(TrajectorySegment[] trajectory) {
+        double time = 0;
+        for(TrajectorySegment segment : trajectory) {
+            time += segment.getTime();
+        }
+
+        return time;
+    }
+
+    /**
+     * Returns the fastest the robot can go along a curve, by the max velocity of the outside wheel and by friction.
+     * @param curvature The curvature in radians per inch.
+     * @return The speed of the middle of the robot in inches/sec.
+     */
+    public double getVelocityLimit(double curvature) {
+        double outsideScale = 1 + Math.abs(curvature) * Constants.DRIVETRAIN_WHEEL_BASE_WIDTH / 2;
+        return Math.min(maxVelocity / outsideScale, getFrictionLimit(curvature, coefficientOfFriction));
+    }
+
+    /**
+     * Returns the fastest the middle of the robot can go at a point without one wheel changing speed faster than the max
+     * acceleration since a point next to it.
+     * @param fromVelocity The speed of the middle of the robot at the point next to it in inches/sec.
+     * @param fromScale The wheel's speed per inch/sec of the middle of the robot at the point next to it.
+     * @param toScale The wheel's speed per inch/sec of the middle of the robot at the point.
+     * @param distance The distance between the points along the middle of the robot in inches.
+     * @return The speed in inches/sec.
+     */
+    private double getReachableVelocity(double fromVelocity, double fromScale, double toScale, double distance) {
+        if(toScale == 0) {
+            return Double.POSITIVE_INFINITY; //the wheel stands still however fast the robot goes
+        }
+
+        double fromWheel = fromVelocity * fromScale;
+        double wheelDistance = distance * (fromScale + toScale) / 2;
+        return Math.sqrt(fromWheel * fromWheel + 2 * maxAcceleration * wheelDistance) / toScale;
+    }
+
+    /**
+     * Returns the fastest the robot can go around a curve without sliding. Same model as CyborgCommandEmulatePath.
+     * @param curvature The curvature in radians per inch.
+     * @param coefficientOfFriction The coefficient of friction between the wheels and the floor.
+     * @return The speed in inches/sec, or infinity if the path is straight.
+     */
+    public static double getFrictionLimit(double curvature, double coefficientOfFriction) {
+        if(curvature == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        //formula: v = sqrt( (r * CoF * Fn) / m )
+        double normalForce = Util.poundForceToNewtons(Constants.ROBOT_WEIGHT_POUND_FORCE); //unit: N
+        double robotMass   = Util.weightLBFToMassKG(Constants.ROBOT_WEIGHT_POUND_FORCE); //unit: kg
+        double radius      = Util.inchesToMeters(1 / Math.abs(curvature)); //unit: m
+        return Util.metersToInches(Math.sqrt((radius * coefficientOfFriction * normalForce) / robotMass));
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if(!(other instanceof TrajectoryGenerator)) {
+            return false;
+        }
+
+        TrajectoryGenerator generator = (TrajectoryGenerator) other;
+        return maxVelocity == generator.maxVelocity && maxAcceleration == generator.maxAcceleration && coefficientOfFriction == generator.coefficientOfFriction;
+    }
+
+    @Override
+    public int hashCode() {
+        return Double.hashCode(maxVelocity) * 31 * 31 + Double.hashCode(maxAcceleration) * 31 + Double.hashCode(coefficientOfFriction);
+    }
+}
@@ -12,7 +12,8 @@ public class TrajectorySegment {
         leftVelocity,
         rightVelocity,
         distance,
-        turn;
+        turn,
+        time;
 
     private boolean isForwards;
 
@@ -23,11 +24,25 @@ public class TrajectorySegment {
      * @param distance The distance that the segment drivetrain covers.
      */    
     public TrajectorySegment(double leftVelocity, double rightVelocity, double distance, double turn, boolean isForwards) {
+        this(leftVelocity, rightVelocity, distance, turn, isForwards, getTimeAtVelocity(distance, (Math.abs(leftVelocity) + Math.abs(rightVelocity)) / 2));
+    }
+
+    /**
+     * Creates a new TrajectorySegment that takes a known amount of time.
+     * @param leftVelocity The velocity of the left drivetrain wheels in inches/sec.
+     * @param rightVelocity The velocity of the right drivetrain wheels in inches/sec.
+     * @param distance The distance that the segment drivetrain covers in inches.
+     * @param turn The angle that the robot turns through in degrees.
+     * @param isForwards True if the robot drives forwards through the segment.
+     * @param time How long the segment takes in seconds.
+     */
+    public TrajectorySegment(double leftVelocity, double rightVelocity, double distance, double turn, boolean isForwards, double time) {
         this.leftVelocity = leftVelocity;
         this.rightVelocity = rightVelocity;
         this.distance = distance;
         this.turn = turn;
         this.isForwards = isForwards;
+        this.time = time;
     }
 
     /**
@@ -58,10 +73,27 @@ public class TrajectorySegment {
         return turn;
     }
 
+    /**
+     * Returns how long the robot takes to drive the segment in seconds.
+     */
+    public double getTime() {
+        return time;
+    }
+
     /**
      * Returns true if the robot will drive forwards through the path, false otherwise.
      */
     public boolean getIsForwards() {
         return isForwards;
     }
+
+    /**
+     * Returns how long it takes to cover a distance at a velocity.
+     * @param distance The distance.
+     * @param velocity The velocity.
+     * @return The time, or 0 if the velocity is 0.
+     */
+    private static double getTimeAtVelocity(double distance, double velocity) {
+        return (velocity == 0 ? 0 : Math.abs(distance / velocity));
+    }
 }
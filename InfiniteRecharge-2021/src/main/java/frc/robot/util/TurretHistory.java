@@ -0,0 +1,142 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+/**
+ * Ring buffer of turret yaw and pitch encoder samples, indexed by System.nanoTime().
+ * Lets aiming code ask where the turret was when a camera frame was taken.
+ * Samples must be recorded in time order. Nothing is allocated after construction.
+ */
+public class TurretHistory {
+    private final long[] times;
+    private final double[]
+        yaws,
+        pitches;
+
+    private int
+        newest,
+        size;
+
+    /**
+     * Creates a new TurretHistory.
+     * @param capacity The number of samples to keep.
+     */
+    public TurretHistory(int capacity) {
+        times = new long[capacity];
+        yaws = new double[capacity];
+        pitches = new double[capacity];
+        newest = -1;
+        size = 0;
+    }
+
+    /**
+     * Records a sample, replacing the oldest one if the buffer is full.
+     * @param timeNanos System.nanoTime() when the positions were read.
+     * @param yaw The yaw position, in ticks.
+     * @param pitch The pitch position, in ticks.
+     */
+    public void record(long timeNanos, double yaw, double pitch) {
+        newest = (newest + 1) % times.length;
+        times[newest] = timeNanos;
+        yaws[newest] = yaw;
+        pitches[newest] = pitch;
+        if(size < times.length) {
+            size++;
+        }
+    }
+
+    /**
+     * Forgets all samples.
+     */
+    public void clear() {
+        newest = -1;
+        size = 0;
+    }
+
+    /**
+     * Returns the number of samples currently held.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns true if the given time is between the oldest and newest samples.
+     * @param timeNanos The time to check, from System.nanoTime().
+     */
+    public boolean covers(long timeNanos) {
+        return size > 0 && timeNanos - times[index(0)] >= 0 && times[newest] - timeNanos >= 0;
+    }
+
+    /**
+     * Returns the yaw position at the given time, interpolated between the samples around it.
+     * Times outside of the buffer return the oldest or newest sample.
+     * @param timeNanos The time, from System.nanoTime().
+     * @return The yaw position in ticks, or NaN if nothing has been recorded.
+     */
+    public double getYawAt(long timeNanos) {
+        return interpolate(yaws, timeNanos);
+    }
+
+    /**
+     * Returns the pitch position at the given time, interpolated between the samples around it.
+     * Times outside of the buffer return the oldest or newest sample.
+     * @param timeNanos The time, from System.nanoTime().
+     * @return The pitch position in ticks, or NaN if nothing has been recorded.
+     */
+    public double getPitchAt(long timeNanos) {
+        return interpolate(pitches, timeNanos);
+    }
+
+    /**
+     * Interpolates one of the value arrays at a time.
+     * @param values The values to interpolate.
+     * @param timeNanos The time, from System.nanoTime().
+     * @return The interpolated value, or NaN if nothing has been recorded.
+     */
+    private double interpolate(double[] values, long timeNanos) {
+        if(size == 0) {
+            return Double.NaN;
+        }
+
+        if(timeNanos - times[index(0)] <= 0) {
+            return values[index(0)];
+        }
+
+        if(timeNanos - times[newest] >= 0) {
+            return values[newest];
+        }
+
+        //binary search for the first sample at or after the time. Times are compared by difference so nanoTime() wrapping does not matter
+        int low = 0;
+        int high = size - 1;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(times[index(middle)] - timeNanos < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        int after = index(low);
+        int before = index(low - 1);
+        double span = times[after] - times[before];
+        if(span <= 0) {
+            return values[after];
+        }
+
+        double fraction = (timeNanos - times[before]) / span;
+        return values[before] + (values[after] - values[before]) * fraction;
+    }
+
+    /**
+     * Returns the array index of the nth oldest sample.
+     * @param n The position of the sample, where 0 is the oldest.
+     */
+    private int index(int n) {
+        return (newest - size + 1 + n + times.length) % times.length;
+    }
+}
@@ -155,7 +155,17 @@ public class Util {
 		double angle2 = angle1 - 360;
 		double angle3 = angle1 + 360;
 
-		return closestToZero(new double[] {angle1, angle2, angle3});
+		//same choice as closestToZero(), without making an array. This runs several times per point every loop
+		double closest = angle1;
+		if(Math.abs(angle2) < Math.abs(closest)) {
+			closest = angle2;
+		}
+
+		if(Math.abs(angle3) < Math.abs(closest)) {
+			closest = angle3;
+		}
+
+		return closest;
 	}
 
 	/**
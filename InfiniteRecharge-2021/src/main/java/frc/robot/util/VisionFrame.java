@@ -0,0 +1,152 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+/**
+ * Immutable snapshot of one KiwiLight packet. Every value in a frame came from the same packet,
+ * so aiming code should get one frame per loop and read everything from it.
+ */
+public class VisionFrame {
+    private final double
+        targetX,
+        targetY,
+        targetWidth,
+        targetHeight,
+        distance,
+        horizontalAngle,
+        verticalAngle;
+
+    private final long
+        receiveTimeNanos,
+        captureTimeMicros,
+        sequence;
+
+    /**
+     * Creates a new VisionFrame.
+     * @param targetX X-coordinate of the target, in pixels, or -1 if no target is seen.
+     * @param targetY Y-coordinate of the target, in pixels, or -1 if no target is seen.
+     * @param targetWidth Width of the target, in pixels, or -1 if no target is seen.
+     * @param targetHeight Height of the target, in pixels, or -1 if no target is seen.
+     * @param distance Distance to the target, in inches, or -1 if no target is seen.
+     * @param horizontalAngle Horizontal angle to the target, in degrees, or 180 if no target is seen.
+     * @param verticalAngle Vertical angle to the target, in degrees, or 180 if no target is seen.
+     * @param receiveTimeNanos System.nanoTime() when the packet was received.
+     * @param captureTimeMicros When the image was taken, in microseconds since the epoch on the coprocessor's clock, or -1 if the packet did not say.
+     * @param sequence Number of packets received up to and including this one. 0 if no packet has been received.
+     */
+    public VisionFrame(double targetX, double targetY, double targetWidth, double targetHeight, double distance, double horizontalAngle, double verticalAngle, long receiveTimeNanos, long captureTimeMicros, long sequence) {
+        this.targetX = targetX;
+        this.targetY = targetY;
+        this.targetWidth = targetWidth;
+        this.targetHeight = targetHeight;
+        this.distance = distance;
+        this.horizontalAngle = horizontalAngle;
+        this.verticalAngle = verticalAngle;
+        this.receiveTimeNanos = receiveTimeNanos;
+        this.captureTimeMicros = captureTimeMicros;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Returns the X-coordinate of the target in pixels, or -1 if no target is seen.
+     */
+    public double getTargetX() {
+        return targetX;
+    }
+
+    /**
+     * Returns the Y-coordinate of the target in pixels, or -1 if no target is seen.
+     */
+    public double getTargetY() {
+        return targetY;
+    }
+
+    /**
+     * Returns the width of the target in pixels, or -1 if no target is seen.
+     */
+    public double getTargetWidth() {
+        return targetWidth;
+    }
+
+    /**
+     * Returns the height of the target in pixels, or -1 if no target is seen.
+     */
+    public double getTargetHeight() {
+        return targetHeight;
+    }
+
+    /**
+     * Returns the distance to the target in inches, or -1 if no target is seen.
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * Returns the horizontal angle to the target in degrees, or 180 if no target is seen.
+     */
+    public double getHorizontalAngle() {
+        return horizontalAngle;
+    }
+
+    /**
+     * Returns the vertical angle to the target in degrees, or 180 if no target is seen.
+     */
+    public double getVerticalAngle() {
+        return verticalAngle;
+    }
+
+    /**
+     * Returns true if a target was seen in this frame, false otherwise.
+     */
+    public boolean isTargetSpotted() {
+        return targetWidth > -1;
+    }
+
+    /**
+     * Returns System.nanoTime() when the packet was received.
+     */
+    public long getReceiveTimeNanos() {
+        return receiveTimeNanos;
+    }
+
+    /**
+     * Returns when the image was taken, in microseconds since the epoch on the coprocessor's clock,
+     * or -1 if the packet did not say. Only v2 packets carry a capture time.
+     */
+    public long getCaptureTimeMicros() {
+        return captureTimeMicros;
+    }
+
+    /**
+     * Returns true if the packet carried the time that its image was taken.
+     */
+    public boolean hasCaptureTime() {
+        return captureTimeMicros >= 0;
+    }
+
+    /**
+     * Returns the number of packets received up to and including this one. 0 if no packet has been received.
+     * Two frames with the same sequence are the same packet.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns how long ago the packet was received, in milliseconds.
+     */
+    public double getAgeMillis() {
+        return (System.nanoTime() - receiveTimeNanos) / 1000000.0;
+    }
+
+    /**
+     * Returns true if a target was seen in this frame and the frame is newer than the given age.
+     * @param maxAgeMillis The oldest a frame may be, in milliseconds.
+     */
+    public boolean isTargetSpotted(double maxAgeMillis) {
+        return isTargetSpotted() && getAgeMillis() <= maxAgeMillis;
+    }
+}
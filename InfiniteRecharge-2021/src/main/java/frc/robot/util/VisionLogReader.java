@@ -0,0 +1,135 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import frc.robot.Constants;
+
+/**
+ * Reads a log written by VisionRecorder, one datagram at a time.
+ * A log that ends in the middle of a record, like one from a robot that lost power, is read up to the last whole record.
+ */
+public class VisionLogReader {
+    private final ByteBuffer log;
+    private final long startTimeMicros;
+
+    private int port;
+
+    private long timeNanos;
+    private ByteBuffer packet;
+
+    /**
+     * Opens a log.
+     * @param path The log file.
+     * @throws IOException if the file could not be read or is not a vision log.
+     */
+    public VisionLogReader(java.nio.file.Path path) throws IOException {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            log = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if(log.remaining() < VisionRecorder.FILE_HEADER_SIZE || log.getInt() != VisionRecorder.FILE_MAGIC) {
+            throw new IOException(path + " is not a vision log.");
+        }
+
+        byte version = log.get();
+        if(version != VisionRecorder.FILE_VERSION) {
+            throw new IOException(path + " is version " + version + " of the vision log format, which is not supported.");
+        }
+
+        startTimeMicros = log.getLong();
+        timeNanos = 0;
+        port = -1;
+        packet = null;
+    }
+
+    /**
+     * Returns the wall clock time of the first record, in microseconds since the epoch.
+     */
+    public long getStartTimeMicros() {
+        return startTimeMicros;
+    }
+
+    /**
+     * Moves to the next datagram.
+     * @return True if there was another datagram, false at the end of the log.
+     */
+    public boolean next() {
+        if(log.remaining() < VisionRecorder.RECORD_HEADER_SIZE) {
+            return false;
+        }
+
+        int recordStart = log.position();
+        long deltaMicros = log.getInt() & 0xFFFFFFFFL;
+        int nextPort = log.getShort() & 0xFFFF;
+        int length = log.getShort() & 0xFFFF;
+        if(log.remaining() < length) {
+            log.position(recordStart); //cut off mid-record
+            return false;
+        }
+
+        ByteBuffer nextPacket = log.slice();
+        nextPacket.limit(length);
+        log.position(log.position() + length);
+
+        timeNanos += deltaMicros * 1000;
+        port = nextPort;
+        packet = nextPacket;
+        return true;
+    }
+
+    /**
+     * Returns the port the current datagram arrived on.
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Returns when the current datagram arrived, in nanoseconds since the first record.
+     */
+    public long getTimeNanos() {
+        return timeNanos;
+    }
+
+    /**
+     * Returns the current datagram, from position to limit. Read only, and not backed by an array.
+     */
+    public ByteBuffer getPacket() {
+        return packet.duplicate();
+    }
+
+    /**
+     * Feeds every remaining datagram from one port to a handler, with its recorded receive time, as fast as possible.
+     * Nothing about the run depends on the machine, so the handler sees exactly the same input every time.
+     * Each datagram is copied into an array-backed buffer first, like the ones VisionReactor hands out.
+     * @param port The port to replay.
+     * @param handler The handler to feed.
+     * @param startTimeNanos The receive time to give the first record; the rest are offset from it.
+     * @return The number of datagrams the handler rejected.
+     */
+    public int replay(int port, VisionReactor.PacketHandler handler, long startTimeNanos) {
+        ByteBuffer copy = ByteBuffer.allocate(Constants.VISION_MAX_PACKET_SIZE);
+        int failures = 0;
+        while(next()) {
+            if(this.port != port) {
+                continue;
+            }
+
+            copy.clear();
+            copy.put(getPacket());
+            copy.flip();
+            if(!handler.handlePacket(copy, startTimeNanos + timeNanos)) {
+                failures++;
+            }
+        }
+
+        return failures;
+    }
+}
@@ -0,0 +1,228 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import frc.robot.Constants;
+
+/**
+ * Reads and writes version 2 vision packets. Every number is big-endian.
+ *  Header (18 bytes):
+ *   0  magic          2 bytes, VISION_PROTOCOL_MAGIC_0 and VISION_PROTOCOL_MAGIC_1
+ *   2  version        1 byte, VISION_PROTOCOL_VERSION
+ *   3  stream         1 byte, STREAM_KIWILIGHT or STREAM_JEVOIS
+ *   4  sequence       4 bytes, counts up by one per packet and wraps around
+ *   8  capture time   8 bytes, microseconds since the epoch on the coprocessor's clock when the image was taken
+ *  16  count          2 bytes, number of records that follow
+ *  KiwiLight records: 7 floats, in the same order as the v1 text (X, Y, W, H, D, HA, VA). 0 records means no target.
+ *  Jevois records: 3 shorts (x, y, radius), in pixels with x measured from the left of the image like the v1 text.
+ *  Clock pings: no records. The capture time field holds the robot's send time.
+ *  Clock pongs: the ping's header with the stream changed, then the coprocessor's receive and send times (8 bytes each),
+ *   in microseconds since the epoch on the coprocessor's clock.
+ * Version 1 packets are the original text formats, which the subsystems still accept.
+ */
+public class VisionProtocol {
+    public static final int HEADER_SIZE = 18;
+
+    public static final byte
+        STREAM_KIWILIGHT = 1,
+        STREAM_JEVOIS = 2,
+        STREAM_CLOCK_PING = 3,
+        STREAM_CLOCK_PONG = 4;
+
+    public static final int
+        KIWILIGHT_FIELDS = 7,
+        KIWILIGHT_RECORD_SIZE = KIWILIGHT_FIELDS * 4,
+        JEVOIS_FIELDS = 3,
+        JEVOIS_RECORD_SIZE = JEVOIS_FIELDS * 2,
+        CLOCK_PONG_SIZE = HEADER_SIZE + 16;
+
+    private static final int
+        VERSION_OFFSET = 2,
+        STREAM_OFFSET = 3,
+        SEQUENCE_OFFSET = 4,
+        CAPTURE_TIME_OFFSET = 8,
+        COUNT_OFFSET = 16;
+
+    /**
+     * Returns true if the packet starts with the v2 magic bytes.
+     * @param packet The packet, from position to limit.
+     */
+    public static boolean isVersion2(ByteBuffer packet) {
+        return
+            packet.remaining() >= 2 &&
+            packet.get(packet.position()) == Constants.VISION_PROTOCOL_MAGIC_0 &&
+            packet.get(packet.position() + 1) == Constants.VISION_PROTOCOL_MAGIC_1;
+    }
+
+    /**
+     * Returns true if the packet is a complete v2 packet of the given stream.
+     * @param packet The packet, from position to limit.
+     * @param stream The stream the packet should belong to.
+     */
+    public static boolean isValid(ByteBuffer packet, byte stream) {
+        if(!isVersion2(packet) || packet.remaining() < HEADER_SIZE) {
+            return false;
+        }
+
+        int start = packet.position();
+        if(packet.get(start + VERSION_OFFSET) != Constants.VISION_PROTOCOL_VERSION || packet.get(start + STREAM_OFFSET) != stream) {
+            return false;
+        }
+
+        switch(stream) {
+            case STREAM_CLOCK_PING:
+                return packet.remaining() == HEADER_SIZE;
+            case STREAM_CLOCK_PONG:
+                return packet.remaining() == CLOCK_PONG_SIZE;
+            default:
+                int recordSize = (stream == STREAM_KIWILIGHT ? KIWILIGHT_RECORD_SIZE : JEVOIS_RECORD_SIZE);
+                return packet.remaining() == HEADER_SIZE + getCount(packet) * recordSize;
+        }
+    }
+
+    /**
+     * Returns the sequence number of a v2 packet.
+     * @param packet The packet, from position to limit.
+     */
+    public static int getSequence(ByteBuffer packet) {
+        return packet.order(ByteOrder.BIG_ENDIAN).getInt(packet.position() + SEQUENCE_OFFSET);
+    }
+
+    /**
+     * Returns the capture time of a v2 packet, in microseconds since the epoch on the coprocessor's clock.
+     * @param packet The packet, from position to limit.
+     */
+    public static long getCaptureTimeMicros(ByteBuffer packet) {
+        return packet.order(ByteOrder.BIG_ENDIAN).getLong(packet.position() + CAPTURE_TIME_OFFSET);
+    }
+
+    /**
+     * Returns the number of records in a v2 packet.
+     * @param packet The packet, from position to limit.
+     */
+    public static int getCount(ByteBuffer packet) {
+        return packet.order(ByteOrder.BIG_ENDIAN).getShort(packet.position() + COUNT_OFFSET) & 0xFFFF;
+    }
+
+    /**
+     * Returns a field of a KiwiLight record.
+     * @param packet The packet, from position to limit.
+     * @param field The index of the field, in v1 text order.
+     */
+    public static double getKiwiLightField(ByteBuffer packet, int field) {
+        return packet.order(ByteOrder.BIG_ENDIAN).getFloat(packet.position() + HEADER_SIZE + field * 4);
+    }
+
+    /**
+     * Returns a field of a Jevois record.
+     * @param packet The packet, from position to limit.
+     * @param record The index of the record.
+     * @param field 0 for x, 1 for y, 2 for radius.
+     */
+    public static int getJevoisField(ByteBuffer packet, int record, int field) {
+        return packet.order(ByteOrder.BIG_ENDIAN).getShort(packet.position() + HEADER_SIZE + record * JEVOIS_RECORD_SIZE + field * 2);
+    }
+
+    /**
+     * Returns the time a clock pong's ping was received by the coprocessor, in microseconds since the epoch on its clock.
+     * @param packet The pong, from position to limit.
+     */
+    public static long getClockReceiveTimeMicros(ByteBuffer packet) {
+        return packet.order(ByteOrder.BIG_ENDIAN).getLong(packet.position() + HEADER_SIZE);
+    }
+
+    /**
+     * Returns the time a clock pong was sent by the coprocessor, in microseconds since the epoch on its clock.
+     * @param packet The pong, from position to limit.
+     */
+    public static long getClockSendTimeMicros(ByteBuffer packet) {
+        return packet.order(ByteOrder.BIG_ENDIAN).getLong(packet.position() + HEADER_SIZE + 8);
+    }
+
+    /**
+     * Writes a v2 KiwiLight packet. This is the reference encoder for coprocessors and stand-in senders.
+     * @param out The buffer to write to, starting at its position. Left flipped, ready to send.
+     * @param sequence The sequence number of the packet.
+     * @param captureTimeMicros When the image was taken, in microseconds since the epoch.
+     * @param data The seven fields in v1 text order, or null if no target is seen.
+     */
+    public static void encodeKiwiLight(ByteBuffer out, int sequence, long captureTimeMicros, double[] data) {
+        int count = (data == null ? 0 : 1);
+        putHeader(out, STREAM_KIWILIGHT, sequence, captureTimeMicros, count);
+        for(int i=0; i<count * KIWILIGHT_FIELDS; i++) {
+            out.putFloat((float) data[i]);
+        }
+
+        out.flip();
+    }
+
+    /**
+     * Writes a v2 Jevois packet. This is the reference encoder for coprocessors and stand-in senders.
+     * @param out The buffer to write to, starting at its position. Left flipped, ready to send.
+     * @param sequence The sequence number of the packet.
+     * @param captureTimeMicros When the image was taken, in microseconds since the epoch.
+     * @param x The x-coordinates of the power cells, in pixels from the left of the image.
+     * @param y The y-coordinates of the power cells, in pixels from the top of the image.
+     * @param radius The radii of the power cells, in pixels.
+     * @param count The number of power cells to write.
+     */
+    public static void encodeJevois(ByteBuffer out, int sequence, long captureTimeMicros, int[] x, int[] y, int[] radius, int count) {
+        putHeader(out, STREAM_JEVOIS, sequence, captureTimeMicros, count);
+        for(int i=0; i<count; i++) {
+            out.putShort((short) x[i]);
+            out.putShort((short) y[i]);
+            out.putShort((short) radius[i]);
+        }
+
+        out.flip();
+    }
+
+    /**
+     * Writes a clock ping.
+     * @param out The buffer to write to, starting at its position. Left flipped, ready to send.
+     * @param sequence The sequence number of the ping.
+     * @param sendTimeMicros The robot's time when the ping is sent, in microseconds.
+     */
+    public static void encodeClockPing(ByteBuffer out, int sequence, long sendTimeMicros) {
+        putHeader(out, STREAM_CLOCK_PING, sequence, sendTimeMicros, 0);
+        out.flip();
+    }
+
+    /**
+     * Writes the pong that answers a clock ping. This is the reference encoder for coprocessors and stand-in responders.
+     * @param out The buffer to write to, starting at its position. Left flipped, ready to send.
+     * @param ping The ping being answered, from position to limit. Not modified.
+     * @param receiveTimeMicros When the ping was received, in microseconds since the epoch on the coprocessor's clock.
+     * @param sendTimeMicros When the pong is sent, in microseconds since the epoch on the coprocessor's clock.
+     */
+    public static void encodeClockPong(ByteBuffer out, ByteBuffer ping, long receiveTimeMicros, long sendTimeMicros) {
+        putHeader(out, STREAM_CLOCK_PONG, getSequence(ping), getCaptureTimeMicros(ping), 0);
+        out.putLong(receiveTimeMicros);
+        out.putLong(sendTimeMicros);
+        out.flip();
+    }
+
+    /**
+     * Writes a v2 header.
+     * @param out The buffer to write to.
+     * @param stream The stream of the packet.
+     * @param sequence The sequence number of the packet.
+     * @param captureTimeMicros When the image was taken, in microseconds since the epoch.
+     * @param count The number of records that will follow.
+     */
+    private static void putHeader(ByteBuffer out, byte stream, int sequence, long captureTimeMicros, int count) {
+        out.order(ByteOrder.BIG_ENDIAN);
+        out.put(Constants.VISION_PROTOCOL_MAGIC_0);
+        out.put(Constants.VISION_PROTOCOL_MAGIC_1);
+        out.put(Constants.VISION_PROTOCOL_VERSION);
+        out.put(stream);
+        out.putInt(sequence);
+        out.putLong(captureTimeMicros);
+        out.putShort((short) count);
+    }
+}
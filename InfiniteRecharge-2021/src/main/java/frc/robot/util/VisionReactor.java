@@ -0,0 +1,236 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import frc.robot.Constants;
+
+/**
+ * One thread that receives the UDP packets of every vision coprocessor. Each coprocessor gets a non-blocking
+ * DatagramChannel on its port, all registered with one Selector, and a PacketHandler that parses its packets.
+ * Packets are received into one buffer that is reused for every packet, so nothing is allocated per packet.
+ */
+public class VisionReactor {
+    /**
+     * Parses the packets of one coprocessor. Called on the reactor thread.
+     */
+    public interface PacketHandler {
+        /**
+         * Handles a packet.
+         * @param packet The packet, from position to limit. Only valid during the call; copy anything that is kept.
+         * @param receiveTimeNanos System.nanoTime() when the packet was received.
+         * @return True if the packet was parsed, false if it was malformed.
+         */
+        public boolean handlePacket(ByteBuffer packet, long receiveTimeNanos);
+    }
+
+    private final ConcurrentLinkedQueue<VisionSource> pendingSources;
+    private final ByteBuffer receiveBuffer;
+    private volatile List<VisionSource> sources;
+    private volatile VisionRecorder recorder;
+    private Selector selector;
+    private Thread reactorThread;
+
+    /**
+     * Creates a new VisionReactor and starts its thread.
+     */
+    public VisionReactor() {
+        pendingSources = new ConcurrentLinkedQueue<VisionSource>();
+        receiveBuffer = ByteBuffer.allocate(Constants.VISION_MAX_PACKET_SIZE); //heap buffer so parsers can use the array
+        sources = Collections.emptyList();
+        recorder = null;
+
+        try {
+            selector = Selector.open();
+        } catch(IOException ex) {
+            DriverStation.reportError("VisionReactor could not open a Selector!\n" + ex.getMessage(), true);
+            return;
+        }
+
+        reactorThread = new Thread(this::runReactorLoop, "Vision Reactor");
+        reactorThread.setDaemon(true);
+        reactorThread.start();
+    }
+
+    /**
+     * Starts listening for a coprocessor's packets.
+     * @param name The name of the coprocessor, used on the dashboard.
+     * @param port The port the coprocessor sends to.
+     * @param handler The parser for the coprocessor's packets.
+     * @return The new source, for its statistics, or null if the port could not be opened.
+     */
+    public VisionSource register(String name, int port, PacketHandler handler) {
+        if(selector == null) {
+            return null;
+        }
+
+        DatagramChannel channel;
+        try {
+            channel = DatagramChannel.open();
+            channel.configureBlocking(false);
+            channel.bind(new InetSocketAddress(port));
+        } catch(IOException ex) {
+            DriverStation.reportError("VisionReactor could not open port " + port + " for " + name + "!\n" + ex.getMessage(), true);
+            return null;
+        }
+
+        VisionSource source = new VisionSource(name, port, channel, handler);
+        pendingSources.offer(source); //registered by the reactor thread, so that register() never waits on select()
+        selector.wakeup();
+        return source;
+    }
+
+    /**
+     * Returns the sources being listened to.
+     */
+    public List<VisionSource> getSources() {
+        return sources;
+    }
+
+    /**
+     * Starts or stops recording every datagram received.
+     * @param recorder The recorder to give datagrams to, or null to stop recording. Closing the old recorder is up to the caller.
+     */
+    public void setRecorder(VisionRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Returns the recorder datagrams are given to, or null if they are not being recorded.
+     */
+    public VisionRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * Stops the reactor thread and closes every channel.
+     */
+    public void close() {
+        if(reactorThread == null) {
+            return;
+        }
+
+        reactorThread.interrupt();
+        selector.wakeup();
+        try {
+            reactorThread.join(Constants.VISION_SELECT_TIMEOUT_MS * 2);
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        for(VisionSource source : sources) {
+            closeQuietly(source);
+        }
+
+        VisionSource pending;
+        while((pending = pendingSources.poll()) != null) {
+            closeQuietly(pending);
+        }
+
+        try {
+            selector.close();
+        } catch(IOException ex) {
+            DriverStation.reportWarning("VisionReactor could not close its Selector.", false);
+        }
+    }
+
+    /**
+     * Body of the reactor thread. Registers new sources and drains every channel that has packets waiting.
+     */
+    private void runReactorLoop() {
+        while(!Thread.currentThread().isInterrupted()) {
+            try {
+                registerPendingSources();
+                selector.select(Constants.VISION_SELECT_TIMEOUT_MS);
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while(keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if(key.isValid() && key.isReadable()) {
+                        receivePackets((VisionSource) key.attachment());
+                    }
+                }
+            } catch(IOException ex) {
+                DriverStation.reportError("VisionReactor thread encountered a problem!\n" + ex.getMessage(), true);
+            }
+        }
+    }
+
+    /**
+     * Registers sources added by register() with the selector.
+     * @throws IOException if a channel could not be registered.
+     */
+    private void registerPendingSources() throws IOException {
+        VisionSource source;
+        while((source = pendingSources.poll()) != null) {
+            source.getChannel().register(selector, SelectionKey.OP_READ, source);
+
+            ArrayList<VisionSource> newSources = new ArrayList<VisionSource>(sources);
+            newSources.add(source);
+            sources = Collections.unmodifiableList(newSources);
+        }
+    }
+
+    /**
+     * Receives and handles every packet waiting on a source's channel.
+     * @param source The source to receive from.
+     * @throws IOException if the receive fails.
+     */
+    private void receivePackets(VisionSource source) throws IOException {
+        while(true) {
+            receiveBuffer.clear();
+            SocketAddress sender = source.getChannel().receive(receiveBuffer);
+            if(sender == null) {
+                return; //no more packets
+            }
+
+            long receiveTime = System.nanoTime();
+            receiveBuffer.flip();
+
+            VisionRecorder currentRecorder = recorder;
+            if(currentRecorder != null) {
+                currentRecorder.record(source.getPort(), receiveTime, receiveBuffer);
+            }
+
+            boolean parsed;
+            try {
+                parsed = source.getHandler().handlePacket(receiveBuffer, receiveTime);
+            } catch(RuntimeException ex) {
+                //one bad packet must not stop every other coprocessor
+                DriverStation.reportWarning(source.getName() + " parser threw " + ex, false);
+                parsed = false;
+            }
+
+            source.recordPacket(receiveTime, sender, parsed);
+        }
+    }
+
+    /**
+     * Closes a source's channel, ignoring failures.
+     * @param source The source to close.
+     */
+    private void closeQuietly(VisionSource source) {
+        try {
+            source.getChannel().close();
+        } catch(IOException ex) {
+            DriverStation.reportWarning("VisionReactor could not close port " + source.getPort() + ".", false);
+        }
+    }
+}
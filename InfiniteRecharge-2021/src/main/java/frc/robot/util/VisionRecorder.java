@@ -0,0 +1,197 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import frc.robot.Constants;
+
+/**
+ * Writes every vision datagram that VisionReactor receives into a log that VisionLogReader can read back.
+ *  File header (13 bytes): magic "VLOG", format version (1 byte), wall clock time of the first record in epoch microseconds (8 bytes)
+ *  Each record: microseconds since the previous record (4 bytes), port (2 bytes), length (2 bytes), then the datagram.
+ * Every number is big-endian. The reactor thread copies datagrams into a pool of chunks and a writer thread writes full
+ * chunks to disk, so recording never waits on the disk and allocates nothing per datagram. If the disk falls far
+ * enough behind that every chunk is full, datagrams are dropped and counted. Closing hands the last chunk and a marker
+ * to the writer thread, which writes what is left and closes the file on its own, so close() never waits on the disk.
+ */
+public class VisionRecorder {
+    public static final int
+        FILE_MAGIC = 0x564C4F47, //"VLOG"
+        FILE_HEADER_SIZE = 13,
+        RECORD_HEADER_SIZE = 8;
+
+    public static final byte FILE_VERSION = 1;
+
+    private static final ByteBuffer CLOSE_MARKER = ByteBuffer.allocate(0); //queued after the last chunk
+
+    private final FileChannel file;
+    private final ArrayBlockingQueue<ByteBuffer>
+        emptyChunks,
+        fullChunks;
+
+    //guarded by this
+    private ByteBuffer currentChunk;
+    private boolean
+        started,
+        closed;
+
+    private long lastRecordTime;
+
+    private volatile long
+        recorded,
+        dropped,
+        bytesWritten;
+
+    /**
+     * Creates a new VisionRecorder and starts its writer thread.
+     * @param path The file to write. Replaced if it exists.
+     * @throws IOException if the file could not be opened.
+     */
+    public VisionRecorder(java.nio.file.Path path) throws IOException {
+        file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        emptyChunks = new ArrayBlockingQueue<ByteBuffer>(Constants.VISION_RECORDER_CHUNKS);
+        fullChunks = new ArrayBlockingQueue<ByteBuffer>(Constants.VISION_RECORDER_CHUNKS + 1); //every chunk and the close marker
+        for(int i=1; i<Constants.VISION_RECORDER_CHUNKS; i++) {
+            emptyChunks.add(ByteBuffer.allocate(Constants.VISION_RECORDER_CHUNK_SIZE));
+        }
+
+        currentChunk = ByteBuffer.allocate(Constants.VISION_RECORDER_CHUNK_SIZE);
+        started = false;
+        closed = false;
+        recorded = 0;
+        dropped = 0;
+        bytesWritten = 0;
+
+        Thread writerThread = new Thread(this::runWriterLoop, "Vision Recorder");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Adds a datagram to the log. Called by the reactor thread.
+     * @param port The port the datagram arrived on.
+     * @param receiveTimeNanos System.nanoTime() when the datagram was received.
+     * @param packet The datagram, from position to limit. Must be backed by an array. Not modified.
+     */
+    public synchronized void record(int port, long receiveTimeNanos, ByteBuffer packet) {
+        if(closed) {
+            return;
+        }
+
+        if(!started) {
+            //the header goes at the front of the first chunk
+            currentChunk.putInt(FILE_MAGIC);
+            currentChunk.put(FILE_VERSION);
+            currentChunk.putLong(System.currentTimeMillis() * 1000);
+            lastRecordTime = receiveTimeNanos;
+            started = true;
+        }
+
+        int length = packet.remaining();
+        if(currentChunk.remaining() < RECORD_HEADER_SIZE + length) {
+            ByteBuffer nextChunk = emptyChunks.poll();
+            if(nextChunk == null) {
+                dropped++; //the writer is behind; time stays relative to the last record that made it in
+                return;
+            }
+
+            currentChunk.flip();
+            fullChunks.add(currentChunk);
+            currentChunk = nextChunk;
+        }
+
+        long deltaMicros = Math.min((receiveTimeNanos - lastRecordTime) / 1000, 0xFFFFFFFFL);
+        currentChunk.putInt((int) deltaMicros);
+        currentChunk.putShort((short) port);
+        currentChunk.putShort((short) length);
+        currentChunk.put(packet.array(), packet.arrayOffset() + packet.position(), length);
+        lastRecordTime += deltaMicros * 1000; //so that rounding errors do not add up over a long log
+        recorded++;
+    }
+
+    /**
+     * Stops recording. The writer thread writes everything recorded so far and closes the file afterwards; this does
+     * not wait for it.
+     */
+    public synchronized void close() {
+        if(closed) {
+            return;
+        }
+
+        closed = true;
+        currentChunk.flip();
+        fullChunks.add(currentChunk);
+        fullChunks.add(CLOSE_MARKER);
+    }
+
+    /**
+     * Returns the number of datagrams recorded.
+     */
+    public long getRecorded() {
+        return recorded;
+    }
+
+    /**
+     * Returns the number of datagrams dropped because the disk could not keep up.
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Returns the number of bytes written to the file.
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Body of the writer thread. Writes full chunks in order until it reaches the close marker, then closes the file.
+     */
+    private void runWriterLoop() {
+        while(true) {
+            ByteBuffer chunk;
+            try {
+                chunk = fullChunks.take();
+            } catch(InterruptedException ex) {
+                closeFile();
+                return;
+            }
+
+            if(chunk == CLOSE_MARKER) {
+                closeFile();
+                return;
+            }
+
+            try {
+                while(chunk.hasRemaining()) {
+                    bytesWritten += file.write(chunk);
+                }
+            } catch(IOException ex) {
+                DriverStation.reportError("VisionRecorder could not write to its file!\n" + ex.getMessage(), false);
+            }
+
+            chunk.clear();
+            emptyChunks.offer(chunk);
+        }
+    }
+
+    /**
+     * Closes the file. Called by the writer thread when it stops.
+     */
+    private void closeFile() {
+        try {
+            file.close();
+        } catch(IOException ex) {
+            DriverStation.reportWarning("VisionRecorder could not close its file.", false);
+        }
+    }
+}
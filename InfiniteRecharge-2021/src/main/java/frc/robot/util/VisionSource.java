@@ -0,0 +1,176 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.net.SocketAddress;
+import java.nio.channels.DatagramChannel;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * A coprocessor that VisionReactor listens to, and the statistics of the packets it has sent.
+ * Statistics are updated by the reactor thread and can be read from any thread.
+ */
+public class VisionSource {
+    private static final long RATE_WINDOW_NANOS = 1000000000L;
+
+    private final String name;
+    private final int port;
+    private final DatagramChannel channel;
+    private final VisionReactor.PacketHandler handler;
+
+    //reactor thread only
+    private long
+        windowStart,
+        windowPackets,
+        lastInterarrival;
+
+    private volatile long
+        packets,
+        parseFailures,
+        lastPacketTime;
+
+    private volatile double
+        packetRate,
+        jitterMillis;
+
+    private volatile SocketAddress lastSender;
+
+    /**
+     * Creates a new VisionSource.
+     * @param name The name of the coprocessor, used on the dashboard.
+     * @param port The port the coprocessor sends to.
+     * @param channel The channel bound to the port.
+     * @param handler The parser for the coprocessor's packets.
+     */
+    VisionSource(String name, int port, DatagramChannel channel, VisionReactor.PacketHandler handler) {
+        this.name = name;
+        this.port = port;
+        this.channel = channel;
+        this.handler = handler;
+        this.windowStart = System.nanoTime();
+        this.windowPackets = 0;
+        this.lastInterarrival = -1;
+        this.packets = 0;
+        this.parseFailures = 0;
+        this.lastPacketTime = 0;
+        this.packetRate = 0;
+        this.jitterMillis = 0;
+        this.lastSender = null;
+    }
+
+    /**
+     * Returns the name of the coprocessor.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the port the coprocessor sends to.
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Returns the number of packets received.
+     */
+    public long getPackets() {
+        return packets;
+    }
+
+    /**
+     * Returns the number of packets that the parser rejected.
+     */
+    public long getParseFailures() {
+        return parseFailures;
+    }
+
+    /**
+     * Returns the packets received per second over the last second, or 0 if nothing has arrived in the last second.
+     */
+    public double getPacketRate() {
+        if(packets == 0 || System.nanoTime() - lastPacketTime > RATE_WINDOW_NANOS) {
+            return 0;
+        }
+
+        return packetRate;
+    }
+
+    /**
+     * Returns how much the time between packets varies, in milliseconds. Smoothed like RTP interarrival jitter.
+     */
+    public double getJitterMillis() {
+        return jitterMillis;
+    }
+
+    /**
+     * Returns the address the newest packet came from, or null if nothing has arrived.
+     */
+    public SocketAddress getLastSender() {
+        return lastSender;
+    }
+
+    /**
+     * Posts the statistics to the dashboard under the name of the coprocessor.
+     */
+    public void putStatistics() {
+        SmartDashboard.putNumber(name + " Packet Rate", getPacketRate());
+        SmartDashboard.putNumber(name + " Jitter ms", getJitterMillis());
+        SmartDashboard.putNumber(name + " Parse Failures", getParseFailures());
+    }
+
+    /**
+     * Returns the channel bound to the port.
+     */
+    DatagramChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Returns the parser for the coprocessor's packets.
+     */
+    VisionReactor.PacketHandler getHandler() {
+        return handler;
+    }
+
+    /**
+     * Records a received packet. Called by the reactor thread.
+     * @param receiveTimeNanos System.nanoTime() when the packet was received.
+     * @param sender The address the packet came from.
+     * @param parsed True if the parser accepted the packet.
+     */
+    void recordPacket(long receiveTimeNanos, SocketAddress sender, boolean parsed) {
+        if(packets > 0) {
+            long interarrival = receiveTimeNanos - lastPacketTime;
+            if(lastInterarrival >= 0) {
+                double difference = Math.abs(interarrival - lastInterarrival) / 1000000.0;
+                jitterMillis += (difference - jitterMillis) / 16;
+            }
+
+            lastInterarrival = interarrival;
+        }
+
+        windowPackets++;
+        long windowLength = receiveTimeNanos - windowStart;
+        if(windowLength >= RATE_WINDOW_NANOS) {
+            packetRate = windowPackets * 1E9 / windowLength;
+            windowPackets = 0;
+            windowStart = receiveTimeNanos;
+        }
+
+        if(!parsed) {
+            parseFailures++;
+        }
+
+        if(!sender.equals(lastSender)) {
+            lastSender = sender;
+        }
+
+        lastPacketTime = receiveTimeNanos;
+        packets++;
+    }
+}
@@ -0,0 +1,214 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * Loss, reordering, duplication and latency of a v2 vision stream, worked out from its sequence numbers and capture times.
+ * Recorded by the reactor thread and readable from any thread.
+ * Latency is the robot's receive time minus the coprocessor's capture time. Once a ClockSync has lined the clocks up the
+ * capture time is converted to the robot's clock first, so the latency is the true one. Before that it is only true when
+ * the two wall clocks agree, but the minimum is still useful, because changes in it show changes in delay.
+ * A sequence number that jumps back by WINDOW or more is taken as the coprocessor or its vision program restarting and
+ * counting from 0 again, so the stream starts over from that packet instead of treating everything after it as late.
+ */
+public class VisionStreamStats {
+    private static final int WINDOW = 64; //sequences that late packets are checked against
+
+    private final String name;
+    private volatile ClockSync clockSync;
+
+    //reactor thread only
+    private boolean started;
+    private int highestSequence;
+    private long receivedWindow; //bit n is set if highestSequence - n was received
+
+    private volatile long
+        received,
+        lost,
+        reordered,
+        duplicates,
+        restarts;
+
+    private volatile double
+        lastLatencyMillis,
+        averageLatencyMillis,
+        minimumLatencyMillis;
+
+    /**
+     * Creates a new VisionStreamStats.
+     * @param name The name of the stream, used on the dashboard.
+     */
+    public VisionStreamStats(String name) {
+        this.name = name;
+        this.clockSync = null;
+        this.started = false;
+        this.highestSequence = 0;
+        this.receivedWindow = 0;
+        this.received = 0;
+        this.lost = 0;
+        this.reordered = 0;
+        this.duplicates = 0;
+        this.restarts = 0;
+        this.lastLatencyMillis = 0;
+        this.averageLatencyMillis = 0;
+        this.minimumLatencyMillis = Double.MAX_VALUE;
+    }
+
+    /**
+     * Sets the clock sync used to convert capture times to the robot's clock.
+     * @param clockSync The coprocessor's clock sync, or null to compare against the robot's wall clock.
+     */
+    public void setClockSync(ClockSync clockSync) {
+        this.clockSync = clockSync;
+    }
+
+    /**
+     * Records a packet.
+     * @param sequence The sequence number of the packet.
+     * @param captureTimeMicros The capture time of the packet, in microseconds since the epoch on the coprocessor's clock.
+     * @param receiveTimeNanos System.nanoTime() when the packet was received.
+     * @return True if the packet is the newest one so far, false if it is late or a duplicate and should not replace newer data.
+     */
+    public boolean record(int sequence, long captureTimeMicros, long receiveTimeNanos) {
+        if(started && sequence - highestSequence <= -WINDOW) {
+            //too far back to be late, the sender started over
+            started = false;
+            restarts++;
+        }
+
+        if(!started) {
+            started = true;
+            highestSequence = sequence;
+            receivedWindow = 1;
+            received++;
+            recordLatency(captureTimeMicros, receiveTimeNanos);
+            return true;
+        }
+
+        int difference = sequence - highestSequence; //int arithmetic so that wrapping sequences still compare right
+        if(difference > 0) {
+            lost += difference - 1;
+            receivedWindow = (difference >= WINDOW ? 0 : receivedWindow << difference) | 1;
+            highestSequence = sequence;
+            received++;
+            recordLatency(captureTimeMicros, receiveTimeNanos);
+            return true;
+        }
+
+        int age = -difference;
+        if(age < WINDOW && (receivedWindow & (1L << age)) != 0) {
+            duplicates++;
+            return false;
+        }
+
+        //late: it was counted as lost when a newer packet arrived first
+        if(age < WINDOW) {
+            receivedWindow |= 1L << age;
+            lost--;
+        }
+
+        reordered++;
+        received++;
+        return false;
+    }
+
+    /**
+     * Returns the number of packets received, not counting duplicates.
+     */
+    public long getReceived() {
+        return received;
+    }
+
+    /**
+     * Returns the number of packets that never arrived.
+     */
+    public long getLost() {
+        return lost;
+    }
+
+    /**
+     * Returns the number of packets that arrived after a newer one.
+     */
+    public long getReordered() {
+        return reordered;
+    }
+
+    /**
+     * Returns the number of packets that were received more than once.
+     */
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Returns the number of times the sender started its sequence numbers over.
+     */
+    public long getRestarts() {
+        return restarts;
+    }
+
+    /**
+     * Returns the fraction of packets lost, from 0 to 1.
+     */
+    public double getLossFraction() {
+        long total = received + lost;
+        return (total == 0 ? 0 : (double) lost / total);
+    }
+
+    /**
+     * Returns the latency of the newest packet, in milliseconds.
+     */
+    public double getLastLatencyMillis() {
+        return lastLatencyMillis;
+    }
+
+    /**
+     * Returns the smoothed latency, in milliseconds.
+     */
+    public double getAverageLatencyMillis() {
+        return averageLatencyMillis;
+    }
+
+    /**
+     * Returns the lowest latency seen, in milliseconds, or 0 if no packet has been received.
+     */
+    public double getMinimumLatencyMillis() {
+        return (received == 0 ? 0 : minimumLatencyMillis);
+    }
+
+    /**
+     * Posts the statistics to the dashboard under the name of the stream.
+     */
+    public void putStatistics() {
+        SmartDashboard.putNumber(name + " Lost", getLost());
+        SmartDashboard.putNumber(name + " Reordered", getReordered());
+        SmartDashboard.putNumber(name + " Duplicates", getDuplicates());
+        SmartDashboard.putNumber(name + " Restarts", getRestarts());
+        SmartDashboard.putNumber(name + " Latency ms", getAverageLatencyMillis());
+        SmartDashboard.putNumber(name + " Min Latency ms", getMinimumLatencyMillis());
+    }
+
+    /**
+     * Records the latency of the newest packet.
+     * @param captureTimeMicros The capture time of the packet, on the coprocessor's clock.
+     * @param receiveTimeNanos System.nanoTime() when the packet was received.
+     */
+    private void recordLatency(long captureTimeMicros, long receiveTimeNanos) {
+        ClockSync clock = clockSync;
+        double latency;
+        if(clock != null && clock.isSynchronized()) {
+            latency = (receiveTimeNanos - clock.toRobotTime(captureTimeMicros)) / 1000000.0;
+        } else {
+            long receiveTimeMicros = System.currentTimeMillis() * 1000 - (System.nanoTime() - receiveTimeNanos) / 1000;
+            latency = (receiveTimeMicros - captureTimeMicros) / 1000.0;
+        }
+
+        averageLatencyMillis = (received == 1 ? latency : averageLatencyMillis + (latency - averageLatencyMillis) / 16);
+        minimumLatencyMillis = Math.min(minimumLatencyMillis, latency);
+        lastLatencyMillis = latency;
+    }
+}
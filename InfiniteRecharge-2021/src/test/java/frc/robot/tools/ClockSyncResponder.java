@@ -0,0 +1,127 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.tools;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Random;
+
+import frc.robot.Constants;
+import frc.robot.util.VisionProtocol;
+
+/**
+ * Stand-in for the clock sync responder that runs on each coprocessor. Answers every clock ping with a pong stamped
+ * with its own clock, using VisionProtocol as the reference encoder. The clock can be set ahead of the real one, and
+ * some pongs can be held back, to check that the robot finds the offset and ignores slow pongs.
+ *  java -cp <test runtime classpath> frc.robot.tools.ClockSyncResponder [clock offset ms] [delay fraction] [max delay ms]
+ */
+public class ClockSyncResponder implements Runnable {
+    private final DatagramChannel channel;
+    private final long
+        clockBaseMicros,
+        maxDelayNanos;
+
+    private final double delayFraction;
+    private final Random random;
+    private final ByteBuffer
+        ping,
+        pong;
+
+    private volatile long answered;
+
+    /**
+     * Creates a new ClockSyncResponder, listening on the responder port.
+     * @param clockOffsetMillis How far ahead of the real time the responder's clock runs.
+     * @param delayFraction Fraction of pongs to hold back, like a busy network or coprocessor.
+     * @param maxDelayMillis The longest a pong is held back.
+     * @throws IOException if the port could not be opened.
+     */
+    public ClockSyncResponder(double clockOffsetMillis, double delayFraction, double maxDelayMillis) throws IOException {
+        this.channel = DatagramChannel.open();
+        this.channel.bind(new InetSocketAddress(Constants.CLOCK_SYNC_RESPONDER_PORT));
+        this.clockBaseMicros = System.currentTimeMillis() * 1000 - System.nanoTime() / 1000 + (long) (clockOffsetMillis * 1000);
+        this.maxDelayNanos = (long) (maxDelayMillis * 1000000);
+        this.delayFraction = delayFraction;
+        this.random = new Random(0); //same delays every run
+        this.ping = ByteBuffer.allocate(Constants.VISION_MAX_PACKET_SIZE);
+        this.pong = ByteBuffer.allocate(VisionProtocol.CLOCK_PONG_SIZE);
+        this.answered = 0;
+    }
+
+    /**
+     * Runs the responder until it is killed.
+     * @param args Optional clock offset, delay fraction and maximum delay.
+     * @throws Exception if the port could not be opened.
+     */
+    public static void main(String[] args) throws Exception {
+        double offset = (args.length > 0 ? Double.parseDouble(args[0]) : 0);
+        double delayFraction = (args.length > 1 ? Double.parseDouble(args[1]) : 0);
+        double maxDelay = (args.length > 2 ? Double.parseDouble(args[2]) : 20);
+
+        System.out.println("Answering clock pings on port " + Constants.CLOCK_SYNC_RESPONDER_PORT + " with the clock " + offset + " ms ahead");
+        new ClockSyncResponder(offset, delayFraction, maxDelay).run();
+    }
+
+    /**
+     * Answers pings until the thread is interrupted or the channel is closed.
+     */
+    @Override
+    public void run() {
+        while(!Thread.currentThread().isInterrupted()) {
+            try {
+                ping.clear();
+                SocketAddress robot = channel.receive(ping);
+                long receiveTime = now();
+                ping.flip();
+                if(!VisionProtocol.isValid(ping, VisionProtocol.STREAM_CLOCK_PING)) {
+                    continue;
+                }
+
+                pong.clear();
+                VisionProtocol.encodeClockPong(pong, ping, receiveTime, now());
+                if(random.nextDouble() < delayFraction) {
+                    //held back after stamping, like a pong stuck in a queue on the way back
+                    long delay = (long) (random.nextDouble() * maxDelayNanos);
+                    Thread.sleep(delay / 1000000, (int) (delay % 1000000));
+                }
+
+                channel.send(pong, robot);
+                answered++;
+            } catch(IOException ex) {
+                return; //closed
+            } catch(InterruptedException ex) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of pings answered.
+     */
+    public long getAnswered() {
+        return answered;
+    }
+
+    /**
+     * Stops answering pings.
+     */
+    public void close() {
+        try {
+            channel.close();
+        } catch(IOException ex) {
+            //already closed
+        }
+    }
+
+    /**
+     * Returns the responder's time, in microseconds since the epoch.
+     */
+    private long now() {
+        return clockBaseMicros + System.nanoTime() / 1000;
+    }
+}
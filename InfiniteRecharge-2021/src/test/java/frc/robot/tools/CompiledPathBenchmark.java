@@ -0,0 +1,165 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.tools;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import frc.robot.util.CompiledPath;
+import frc.robot.util.Path;
+import frc.robot.util.Point2D;
+import frc.robot.util.Util;
+
+/**
+ * Times working out the distance and turn of the points ahead of the robot the way CyborgCommandEmulatePath.execute()
+ * used to (copying the points into an array and walking it) against reading them from a CompiledPath, for several
+ * "Emulate Immediate Path Size" settings, and counts the bytes each allocates. CompiledPathTest checks that both give
+ * the same answers.
+ *  java -cp <test runtime classpath> frc.robot.tools.CompiledPathBenchmark [points]
+ */
+public class CompiledPathBenchmark {
+    private static final int
+        ROUNDS = 200000,
+        POINTS_TO_SKIP = 2;
+
+    private static final int[] IMMEDIATE_PATH_SIZES = { 5, 20, 80, 320 };
+
+    private static double sink; //keeps the JIT from dropping the work
+
+    /**
+     * Runs the benchmark.
+     * @param args Optional number of points in the path.
+     */
+    public static void main(String[] args) {
+        int pointCount = (args.length > 0 ? Integer.parseInt(args[0]) : 2000);
+        Point2D[] points = new Point2D[pointCount];
+        for(int i=0; i<pointCount; i++) {
+            double x = i * 1.5;
+            double y = 40 * Math.sin(i / 30.0);
+            double heading = Math.toDegrees(Math.atan2(40 / 30.0 * Math.cos(i / 30.0), 1.5));
+            points[i] = new Point2D(x, y, heading);
+        }
+
+        Path path = new Path(points);
+        long compileStart = System.nanoTime();
+        CompiledPath compiledPath = path.compile();
+        double compileMillis = (System.nanoTime() - compileStart) / 1000000.0;
+
+        System.out.println(String.format("Compiled path benchmark: %d points, compiled in %.3f ms", pointCount, compileMillis));
+        for(int size : IMMEDIATE_PATH_SIZES) {
+            long[] oldTimes = new long[ROUNDS];
+            long oldBytes = getAllocatedBytes();
+            for(int round=0; round<ROUNDS; round++) {
+                int index = 1 + round % (pointCount - 3);
+                Point2D robot = points[index]; //not a new point, so only the method's own allocation is counted
+                long start = System.nanoTime();
+                double[] old = runOld(points, robot, index, size);
+                sink += old[0] + old[1];
+                oldTimes[round] = System.nanoTime() - start;
+            }
+            oldBytes = getAllocatedBytes() - oldBytes;
+
+            long[] compiledTimes = new long[ROUNDS];
+            long compiledBytes = getAllocatedBytes();
+            for(int round=0; round<ROUNDS; round++) {
+                int index = 1 + round % (pointCount - 3);
+                double robotX = compiledPath.getX(index);
+                double robotY = compiledPath.getY(index);
+                double robotHeading = compiledPath.getHeading(index);
+                long start = System.nanoTime();
+                sink += getCompiledDistance(compiledPath, robotX, robotY, index, size) + getCompiledTurn(compiledPath, robotX, robotY, robotHeading, index, size);
+                compiledTimes[round] = System.nanoTime() - start;
+            }
+            compiledBytes = getAllocatedBytes() - compiledBytes;
+
+            Arrays.sort(oldTimes);
+            Arrays.sort(compiledTimes);
+            System.out.println(String.format("  size %3d: old median %6.0f ns, %5.0f bytes/loop | compiled median %4.0f ns, %3.0f bytes/loop",
+                size, (double) oldTimes[ROUNDS / 2], (double) oldBytes / ROUNDS, (double) compiledTimes[ROUNDS / 2], (double) compiledBytes / ROUNDS));
+        }
+
+        if(sink == 42) {
+            System.out.println();
+        }
+    }
+
+    /**
+     * Works out the distance and turn of the points ahead the way execute() used to.
+     * @param points The path.
+     * @param robot Where the robot is.
+     * @param index The current point index.
+     * @param size The immediate path size.
+     * @return The distance and the turn.
+     */
+    private static double[] runOld(Point2D[] points, Point2D robot, int index, int size) {
+        int start = Math.min(index + POINTS_TO_SKIP, points.length - 1);
+        int end = Math.min(start + size, points.length);
+        Point2D[] immediatePath = new Point2D[end - start + 1];
+        immediatePath[0] = new Point2D(robot.getX(), robot.getY(), robot.getHeading());
+        for(int i=start; i<end; i++) {
+            immediatePath[i - start + 1] = points[i];
+        }
+
+        double distance = 0;
+        for(int i=0; i<immediatePath.length - 1; i++) {
+            distance += immediatePath[i].getDistanceFrom(immediatePath[i + 1]);
+        }
+
+        double turn = 0;
+        double lastHeading = immediatePath[0].getHeading();
+        for(int i=1; i<immediatePath.length; i++) {
+            double headingToPoint = immediatePath[i - 1].getHeadingTo(immediatePath[i]);
+            turn += Util.getAngleToHeading(lastHeading, headingToPoint);
+            lastHeading = headingToPoint;
+        }
+
+        return new double[] { distance, turn };
+    }
+
+    /**
+     * Works out the distance of the points ahead the way execute() does now.
+     * @param path The compiled path.
+     * @param robotX The x coordinate of the robot.
+     * @param robotY The y coordinate of the robot.
+     * @param index The current point index.
+     * @param size The immediate path size.
+     * @return The distance in inches.
+     */
+    private static double getCompiledDistance(CompiledPath path, double robotX, double robotY, int index, int size) {
+        int start = Math.min(index + POINTS_TO_SKIP, path.getPointCount() - 1);
+        int end = Math.min(start + size, path.getPointCount()) - 1;
+        return path.getDistanceFrom(robotX, robotY, start) + path.getLengthBetween(start, end);
+    }
+
+    /**
+     * Works out the turn of the points ahead the way execute() does now.
+     * @param path The compiled path.
+     * @param robotX The x coordinate of the robot.
+     * @param robotY The y coordinate of the robot.
+     * @param robotHeading The heading of the robot.
+     * @param index The current point index.
+     * @param size The immediate path size.
+     * @return The turn in degrees.
+     */
+    private static double getCompiledTurn(CompiledPath path, double robotX, double robotY, double robotHeading, int index, int size) {
+        int start = Math.min(index + POINTS_TO_SKIP, path.getPointCount() - 1);
+        int end = Math.min(start + size, path.getPointCount()) - 1;
+        double headingToStart = path.getHeadingFrom(robotX, robotY, start);
+        double turn = Util.getAngleToHeading(robotHeading, headingToStart);
+        if(end > start) {
+            turn += Util.getAngleToHeading(headingToStart, path.getSegmentHeading(start));
+            turn += path.getTurnBetween(start + 1, end - 1);
+        }
+
+        return turn;
+    }
+
+    /**
+     * Returns the bytes this thread has allocated so far.
+     */
+    private static long getAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+}
@@ -0,0 +1,156 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.tools;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import frc.robot.Constants;
+import frc.robot.enumeration.GalacticSearchPattern;
+import frc.robot.util.GalacticSearchPlanner;
+import frc.robot.util.JevoisCameraModel;
+import frc.robot.util.Path;
+import frc.robot.util.Point2D;
+import frc.robot.util.PowerCell;
+import frc.robot.util.PowerCellList;
+
+/**
+ * Times GalacticSearchPlanner on each of the four layouts and compares the planned paths with the recorded ones.
+ * The layouts are put in front of a pretend Jevois with the default camera model, with some noise on every pixel, so
+ * the planner sees what the real camera would (including not seeing power cells that are too small to find).
+ *  java -cp <test runtime classpath> frc.robot.tools.GalacticSearchPlannerBenchmark [recorded path directory] [FOV] [pixel noise]
+ */
+public class GalacticSearchPlannerBenchmark {
+    private static final int
+        WARMUP_PLANS = 5000,
+        TIMED_PLANS = 20000,
+        JEVOIS_MIN_RADIUS = 5; //smallest circle BallFinder.py looks for
+
+    //power cells for each layout, as {forward, left} in inches from the center of a robot in the middle of the start zone
+    private static final double[][][] LAYOUTS = {
+        {{70, 0}, {130, -30}, {160, 60}}, //Set A Path 1: C3, D5, A6
+        {{160, -60}, {190, 30}, {250, 0}}, //Set A Path 2: E6, B7, C9
+        {{70, 30}, {130, -30}, {190, 30}}, //Set B Path 1: B3, D5, B7
+        {{160, -30}, {220, 30}, {280, -30}} //Set B Path 2: D6, B8, D10
+    };
+
+    /**
+     * Runs the benchmark.
+     * @param args Optional directory with the recorded paths, camera FOV, and pixel noise.
+     */
+    public static void main(String[] args) {
+        String directory = (args.length > 0 ? args[0] : "/home/lvuser");
+        double fov = (args.length > 1 ? Double.parseDouble(args[1]) : Constants.JEVOIS_HORIZONTAL_FOV);
+        double noise = (args.length > 2 ? Double.parseDouble(args[2]) : 1);
+
+        JevoisCameraModel camera = new JevoisCameraModel(fov, Constants.JEVOIS_CAMERA_HEIGHT, Constants.JEVOIS_CAMERA_PITCH, Constants.JEVOIS_CAMERA_FORWARD_OFFSET, Constants.JEVOIS_CAMERA_LEFT_OFFSET, Constants.JEVOIS_PIXEL_ERROR);
+        GalacticSearchPlanner planner = new GalacticSearchPlanner(camera, Constants.GALACTIC_SEARCH_END_ZONE_DISTANCE, Constants.GALACTIC_SEARCH_TURN_COST);
+        Point2D start = new Point2D(0, 0, 0);
+        Random random = new Random(0); //same noise every run
+
+        System.out.println("Galactic Search planner benchmark: " + fov + " degree FOV, " + noise + " px noise, " + TIMED_PLANS + " timed plans per layout");
+        GalacticSearchPattern[] patterns = GalacticSearchPattern.values();
+        for(int layout=0; layout<LAYOUTS.length; layout++) {
+            PowerCellList powerCells = seeLayout(camera, LAYOUTS[layout], random, noise);
+            System.out.println();
+            System.out.println(patterns[layout].getName() + ": Jevois sees " + powerCells);
+
+            Path path = planner.plan(powerCells, start);
+            if(path == null) {
+                System.out.println("  not planned: " + planner.getFailure() + ", auto would use the recorded path");
+                printRecorded(directory, patterns[layout]);
+                continue;
+            }
+
+            //timing
+            for(int i=0; i<WARMUP_PLANS; i++) {
+                planner.plan(powerCells, start);
+            }
+
+            long[] times = new long[TIMED_PLANS];
+            for(int i=0; i<TIMED_PLANS; i++) {
+                long planStart = System.nanoTime();
+                planner.plan(powerCells, start);
+                times[i] = System.nanoTime() - planStart;
+            }
+            Arrays.sort(times);
+
+            double worstError = 0;
+            StringBuilder order = new StringBuilder();
+            for(int i=0; i<3; i++) {
+                double[] ball = planner.getBall(i);
+                worstError = Math.max(worstError, getClosestDistance(LAYOUTS[layout], ball));
+                order.append(String.format(" (%.0f, %.0f)", ball[0], ball[1]));
+            }
+
+            System.out.println("  order:" + order + ", worst position error " + String.format("%.1f", worstError) + " in");
+            System.out.println(String.format("  plan time: median %.1f us, 99%% %.1f us, max %.1f us (robot loop is %.0f ms)",
+                times[TIMED_PLANS / 2] / 1000.0, times[TIMED_PLANS * 99 / 100] / 1000.0, times[TIMED_PLANS - 1] / 1000.0, Constants.GALACTIC_SEARCH_MAX_PLAN_MS));
+            System.out.println(String.format("  planned path: %d points, %.1f in long, tightest turn %.1f in, closest-first straight lines %.1f in",
+                path.getPoints().length, planner.getPlanLength(), planner.getTightestTurn(), planner.getClosestFirstLength()));
+            printRecorded(directory, patterns[layout]);
+        }
+    }
+
+    /**
+     * Makes the frame the Jevois would send for a layout.
+     * @param camera The camera model to project the power cells with.
+     * @param layout The power cells, as {forward, left} in inches.
+     * @param random Where the noise comes from.
+     * @param noise Standard deviation of the noise on each pixel value.
+     * @return The power cells the Jevois can find.
+     */
+    private static PowerCellList seeLayout(JevoisCameraModel camera, double[][] layout, Random random, double noise) {
+        PowerCellList powerCells = new PowerCellList();
+        for(double[] ball : layout) {
+            PowerCell seen = camera.project(ball[0], ball[1]);
+            if(seen == null) {
+                continue;
+            }
+
+            int x = seen.getX() + (int) Math.round(random.nextGaussian() * noise);
+            int y = seen.getY() + (int) Math.round(random.nextGaussian() * noise);
+            int radius = seen.getRadius() + (int) Math.round(random.nextGaussian() * noise);
+            boolean inImage = Math.abs(x) < Constants.JEVOIS_RESOLUTION_X / 2 && y >= 0 && y < Constants.JEVOIS_RESOLUTION_Y;
+            if(inImage && radius >= JEVOIS_MIN_RADIUS) {
+                powerCells.add(x, y, radius);
+            }
+        }
+
+        powerCells.setSource(1, System.nanoTime());
+        return powerCells;
+    }
+
+    /**
+     * Prints the length of the recorded path for a layout, if it can be found.
+     * @param directory The directory the recorded paths are in.
+     * @param pattern The layout.
+     */
+    private static void printRecorded(String directory, GalacticSearchPattern pattern) {
+        File file = new File(directory, new File(pattern.getPathFile()).getName());
+        if(!file.isFile()) {
+            System.out.println("  recorded path: " + file + " not found");
+            return;
+        }
+
+        Path recorded = new Path(file.getPath());
+        System.out.println(String.format("  recorded path: %d points, %.1f in long", recorded.getPoints().length, recorded.getLength()));
+    }
+
+    /**
+     * Returns the distance from a planned power cell to the closest real one.
+     * @param layout The real power cells, as {forward, left} in inches.
+     * @param ball The planned power cell, as {forward, left} in inches.
+     */
+    private static double getClosestDistance(double[][] layout, double[] ball) {
+        double closest = Double.POSITIVE_INFINITY;
+        for(double[] real : layout) {
+            closest = Math.min(closest, Math.hypot(real[0] - ball[0], real[1] - ball[1]));
+        }
+
+        return closest;
+    }
+}
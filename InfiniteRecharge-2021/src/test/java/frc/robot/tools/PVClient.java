@@ -0,0 +1,367 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.tools;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import frc.robot.Constants;
+import frc.robot.util.MessageType;
+import frc.robot.util.PVCompression;
+import frc.robot.util.PVFraming;
+import frc.robot.util.PVMessage;
+import frc.robot.util.PVMessageParser;
+import frc.robot.util.Point2D;
+
+/**
+ * Headless stand-in for the PathVisualizer application. Speaks the same protocol as the GUI, in either framing,
+ * so PVHost can be exercised without it. Used by PVHostBenchmark, and can also be run by hand:
+ *  java -cp <test runtime classpath> frc.robot.tools.PVClient [host] [port] [text|binary] [script file]
+ * Script lines (or stdin lines, if there is no script) are one command each:
+ *  hello [capabilities]    dir [directory]    load [file]    save [file] [local file]
+ *  path                    watch [seconds]    quit
+ */
+public class PVClient implements PVMessageParser.Listener {
+    private final SocketChannel channel;
+    private final PVFraming framing;
+    private final PVMessageParser parser;
+    private final LinkedBlockingQueue<PVMessage> replies;
+    private final ByteArrayOutputStream assembledBody;
+    private volatile List<String> capabilities;
+    private volatile Point2D lastPosition;
+    private volatile long
+        positionsReceived,
+        messagesReceived,
+        bytesReceived;
+
+    private long
+        referenceX,
+        referenceY,
+        referenceHeading;
+
+    /**
+     * Creates a new PVClient and connects it to a PVHost.
+     * @param host The address of the host.
+     * @param port The port of the host.
+     * @param framing The framing to speak.
+     * @throws IOException if the host could not be reached.
+     */
+    public PVClient(String host, int port, PVFraming framing) throws IOException {
+        this.channel = SocketChannel.open(new InetSocketAddress(host, port));
+        this.channel.socket().setTcpNoDelay(true);
+        this.framing = framing;
+        this.parser = new PVMessageParser(Constants.SOCKET_BUFFER_SIZE);
+        this.replies = new LinkedBlockingQueue<PVMessage>();
+        this.assembledBody = new ByteArrayOutputStream();
+        this.capabilities = List.of();
+        this.lastPosition = null;
+        this.positionsReceived = 0;
+        this.messagesReceived = 0;
+        this.bytesReceived = 0;
+
+        Thread readThread = new Thread(this::runReadLoop, "PVClient Reader");
+        readThread.setDaemon(true);
+        readThread.start();
+    }
+
+    /**
+     * Sends a HELLO and waits for the host to answer with the capabilities it agreed to.
+     * @param requested The capabilities to ask for, separated by commas.
+     * @param timeoutMs How long to wait for the answer.
+     * @return The agreed capabilities.
+     * @throws IOException if the host did not answer.
+     */
+    public List<String> hello(String requested, long timeoutMs) throws IOException {
+        PVMessage reply = request(new PVMessage(MessageType.HELLO, requested), timeoutMs);
+        String agreed = reply.getBodyString();
+        capabilities = (agreed.isEmpty() ? List.of() : Arrays.asList(agreed.split(",")));
+        return capabilities;
+    }
+
+    /**
+     * Sends a message and waits for the reply of the same type. Broadcasts that arrive first, like PATHs, are skipped.
+     * @param message The message to send.
+     * @param timeoutMs How long to wait for the reply.
+     * @return The reply, with its body already decompressed.
+     * @throws IOException if the send failed or no reply came in time.
+     */
+    public PVMessage request(PVMessage message, long timeoutMs) throws IOException {
+        send(message);
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while(true) {
+            PVMessage reply = awaitReply(Math.max(deadline - System.currentTimeMillis(), 1));
+            if(reply.getType() == message.getType()) {
+                return reply;
+            }
+        }
+    }
+
+    /**
+     * Sends a message without waiting for anything. SAVE bodies are compressed if the host agreed to that.
+     * @param message The message to send.
+     * @throws IOException if the send failed.
+     */
+    public void send(PVMessage message) throws IOException {
+        if(message.getType() == MessageType.SAVE && compresses()) {
+            message = new PVMessage(message.getType(), message.getSubjectInfo(), PVCompression.encodeBody(message.getBody(), getCompressions()));
+        }
+
+        ByteBuffer frame = framing.encode(message);
+        synchronized(channel) {
+            while(frame.hasRemaining()) {
+                channel.write(frame);
+            }
+        }
+    }
+
+    /**
+     * Waits for the next reply that is not a position, such as a PATH broadcast or the answer to a request.
+     * @param timeoutMs How long to wait.
+     * @return The reply, with its body already decompressed.
+     * @throws IOException if no reply came in time.
+     */
+    public PVMessage awaitReply(long timeoutMs) throws IOException {
+        try {
+            PVMessage reply = replies.poll(timeoutMs, TimeUnit.MILLISECONDS);
+            if(reply == null) {
+                throw new IOException("PVHost did not reply within " + timeoutMs + " ms.");
+            }
+
+            return reply;
+        } catch(InterruptedException ex) {
+            throw new IOException("Interrupted while waiting for PVHost.");
+        }
+    }
+
+    /**
+     * Returns the last robot position received, with deltas applied, or null if none has been received.
+     */
+    public Point2D getLastPosition() {
+        return lastPosition;
+    }
+
+    /**
+     * Returns the number of positions received, full or delta.
+     */
+    public long getPositionsReceived() {
+        return positionsReceived;
+    }
+
+    /**
+     * Returns the number of messages received, including positions.
+     */
+    public long getMessagesReceived() {
+        return messagesReceived;
+    }
+
+    /**
+     * Returns the number of bytes received.
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * Returns the framing this client speaks.
+     */
+    public PVFraming getFraming() {
+        return framing;
+    }
+
+    /**
+     * Disconnects from the host.
+     */
+    public void close() {
+        try {
+            channel.close();
+        } catch(IOException ex) {
+            //already gone
+        }
+    }
+
+    @Override
+    public void bodyChunkReceived(MessageType type, String subjectInfo, ByteBuffer chunk) {
+        byte[] bytes = new byte[chunk.remaining()];
+        chunk.get(bytes);
+        assembledBody.write(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public void messageReceived(MessageType type, String subjectInfo, ByteBuffer body) {
+        bodyChunkReceived(type, subjectInfo, body);
+        byte[] bytes = assembledBody.toByteArray();
+        assembledBody.reset();
+        messagesReceived++;
+
+        switch(type) {
+            case POSITION: {
+                    Point2D position = Point2D.fromString(new String(bytes, StandardCharsets.UTF_8));
+                    referenceX = Math.round(position.getX() / Constants.PV_POSITION_QUANTUM);
+                    referenceY = Math.round(position.getY() / Constants.PV_POSITION_QUANTUM);
+                    referenceHeading = Math.round(position.getHeading() / Constants.PV_POSITION_QUANTUM);
+                    lastPosition = position;
+                    positionsReceived++;
+                }
+                break;
+            case POSITION_DELTA: {
+                    String[] delta = new String(bytes, StandardCharsets.UTF_8).split(",");
+                    referenceX += Long.parseLong(delta[0]);
+                    referenceY += Long.parseLong(delta[1]);
+                    referenceHeading += Long.parseLong(delta[2]);
+                    lastPosition = new Point2D(referenceX * Constants.PV_POSITION_QUANTUM, referenceY * Constants.PV_POSITION_QUANTUM, referenceHeading * Constants.PV_POSITION_QUANTUM);
+                    positionsReceived++;
+                }
+                break;
+            default: {
+                    if(compresses() && PVCompression.appliesTo(type)) {
+                        bytes = decompress(bytes);
+                    }
+
+                    replies.offer(new PVMessage(type, subjectInfo, bytes));
+                }
+                break;
+        }
+    }
+
+    /**
+     * Reads from the host until the connection closes.
+     */
+    private void runReadLoop() {
+        try {
+            long read;
+            while((read = parser.readFrom(channel, this)) >= 0) {
+                bytesReceived += read;
+            }
+        } catch(IOException ex) {
+            //connection closed
+        }
+    }
+
+    /**
+     * Returns true if the host agreed to compress bodies for this client.
+     */
+    private boolean compresses() {
+        return !getCompressions().isEmpty();
+    }
+
+    /**
+     * Returns the compressions that the host agreed to.
+     */
+    private List<PVCompression> getCompressions() {
+        ArrayList<PVCompression> compressions = new ArrayList<PVCompression>();
+        for(PVCompression compression : PVCompression.values()) {
+            if(compression != PVCompression.NONE && capabilities.contains(compression.getCapability())) {
+                compressions.add(compression);
+            }
+        }
+
+        return compressions;
+    }
+
+    /**
+     * Decompresses a body that starts with a PVCompression id.
+     * @param body The compressed body.
+     * @return The decompressed body, or the body as it is if it could not be decompressed.
+     */
+    private byte[] decompress(byte[] body) {
+        try {
+            ByteArrayOutputStream decoded = new ByteArrayOutputStream(body.length * 2);
+            PVCompression.Decoder decoder = new PVCompression.Decoder();
+            decoder.decode(ByteBuffer.wrap(body), Channels.newChannel(decoded));
+            decoder.finish(Channels.newChannel(decoded));
+            return decoded.toByteArray();
+        } catch(IOException ex) {
+            System.out.println("Could not decompress body: " + ex.getMessage());
+            return body;
+        }
+    }
+
+    /**
+     * Runs a scripted session against a PVHost.
+     * @param args Optional host, port, framing and script file.
+     * @throws IOException if the host could not be reached or a file could not be read.
+     * @throws InterruptedException if interrupted while watching.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String host = (args.length > 0 ? args[0] : "localhost");
+        int port = (args.length > 1 ? Integer.parseInt(args[1]) : Constants.PV_PORT);
+        PVFraming framing = (args.length > 2 && args[2].equalsIgnoreCase("binary") ? PVFraming.BINARY : PVFraming.TEXT);
+        BufferedReader script = (args.length > 3 ? Files.newBufferedReader(java.nio.file.Path.of(args[3])) : new BufferedReader(new InputStreamReader(System.in)));
+        final long timeoutMs = 5000;
+
+        PVClient client = new PVClient(host, port, framing);
+        String line;
+        while((line = script.readLine()) != null) {
+            String[] command = line.trim().split("\\s+", 3);
+            if(command[0].isEmpty() || command[0].startsWith("#")) {
+                continue;
+            }
+
+            long start = System.nanoTime();
+            try {
+                switch(command[0].toLowerCase()) {
+                    case "hello": {
+                            System.out.println("agreed: " + client.hello((command.length > 1 ? command[1] : ""), timeoutMs));
+                        }
+                        break;
+                    case "dir": {
+                            System.out.print(client.request(new PVMessage(MessageType.DIRECTORY_REQUEST, command[1]), timeoutMs).getBodyString());
+                        }
+                        break;
+                    case "load": {
+                            PVMessage reply = client.request(new PVMessage(MessageType.LOAD, command[1]), timeoutMs);
+                            System.out.println("loaded " + reply.getBody().length + " bytes");
+                        }
+                        break;
+                    case "save": {
+                            byte[] body = Files.readAllBytes(java.nio.file.Path.of(command[2]));
+                            System.out.println("save: " + client.request(new PVMessage(MessageType.SAVE, command[1], body), timeoutMs).getBodyString());
+                        }
+                        break;
+                    case "path": {
+                            PVMessage path = client.awaitReply(timeoutMs);
+                            System.out.println(path.getType() + " \"" + path.getSubjectInfo() + "\": " + path.getBody().length + " bytes");
+                        }
+                        break;
+                    case "watch": {
+                            long until = System.currentTimeMillis() + (long) (Double.parseDouble(command[1]) * 1000);
+                            long positionsBefore = client.getPositionsReceived();
+                            while(System.currentTimeMillis() < until) {
+                                System.out.println("position: " + client.getLastPosition());
+                                Thread.sleep(250);
+                            }
+                            System.out.println((client.getPositionsReceived() - positionsBefore) + " positions received");
+                        }
+                        break;
+                    case "quit":
+                        client.close();
+                        return;
+                    default:
+                        System.out.println("Unknown command \"" + command[0] + "\"");
+                        continue;
+                }
+            } catch(IOException | ArrayIndexOutOfBoundsException ex) {
+                System.out.println(command[0] + " failed: " + ex.getMessage());
+            }
+
+            System.out.println(String.format("(%.2f ms)", (System.nanoTime() - start) / 1E6));
+        }
+
+        client.close();
+    }
+}
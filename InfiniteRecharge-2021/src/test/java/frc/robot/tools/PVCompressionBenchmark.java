@@ -0,0 +1,146 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import frc.robot.Constants;
+import frc.robot.util.PVCompression;
+import frc.robot.util.Point2D;
+
+/**
+ * Measures how well each PVCompression does on path files, and how long it takes to encode them.
+ * Meant to be run on the roboRIO, whose CPU is what the host has to encode with:
+ *  java -cp <test runtime classpath> frc.robot.tools.PVCompressionBenchmark [iterations] [path files...]
+ * With no files it uses the AutoNav paths, or a generated path if those are not there.
+ */
+public class PVCompressionBenchmark {
+    private static final int DEFAULT_ITERATIONS = 50;
+
+    /**
+     * Runs the benchmark.
+     * @param args Optional iteration count, followed by optional path files.
+     * @throws IOException if a path file could not be read.
+     */
+    public static void main(String[] args) throws IOException {
+        int iterations = DEFAULT_ITERATIONS;
+        ArrayList<String> files = new ArrayList<String>(Arrays.asList(args));
+        if(!files.isEmpty() && files.get(0).matches("\\d+")) {
+            iterations = Integer.parseInt(files.remove(0));
+        }
+
+        if(files.isEmpty()) {
+            for(String file : new String[] { Constants.AUTONAV_SLALOM_FILE, Constants.AUTONAV_BOUNCE_FILE, Constants.AUTONAV_BARREL_FILE }) {
+                if(Files.exists(java.nio.file.Path.of(file))) {
+                    files.add(file);
+                }
+            }
+        }
+
+        System.out.println(String.format("%-28s %-12s %10s %10s %8s %12s %12s", "path", "compression", "raw (B)", "sent (B)", "ratio", "encode (us)", "decode ok"));
+        if(files.isEmpty()) {
+            benchmark("generated (3000 points)", generatePath(3000), iterations);
+        } else {
+            for(String file : files) {
+                benchmark(java.nio.file.Path.of(file).getFileName().toString(), Files.readAllBytes(java.nio.file.Path.of(file)), iterations);
+            }
+        }
+    }
+
+    /**
+     * Encodes a body with every compression and prints the results.
+     * @param name The name to print for the body.
+     * @param body The uncompressed body.
+     * @param iterations The number of times to encode it with each compression.
+     * @throws IOException if decoding fails unexpectedly.
+     */
+    private static void benchmark(String name, byte[] body, int iterations) throws IOException {
+        for(PVCompression compression : PVCompression.values()) {
+            byte[] encoded = compression.encode(body);
+            if(encoded == null) {
+                System.out.println(String.format("%-28s %-12s %10d %10s", name, compression, body.length, "n/a"));
+                continue;
+            }
+
+            for(int i=0; i<iterations; i++) {
+                compression.encode(body); //warm up the JIT so the timed runs measure the steady state
+            }
+
+            long start = System.nanoTime();
+            for(int i=0; i<iterations; i++) {
+                encoded = compression.encode(body);
+            }
+            double encodeMicros = (System.nanoTime() - start) / 1000.0 / iterations;
+
+            System.out.println(String.format("%-28s %-12s %10d %10d %8.2f %12.1f %12s", name, compression, body.length, encoded.length, (double) body.length / encoded.length, encodeMicros, decodes(compression, body, encoded)));
+        }
+    }
+
+    /**
+     * Returns true if the encoded body decodes back to the original. POINT_DELTA only has to keep the number of
+     * points and the coordinates to the nearest PV_POSITION_QUANTUM.
+     * @param compression The compression that was used.
+     * @param body The uncompressed body.
+     * @param encoded The encoded body.
+     * @throws IOException if decoding fails.
+     */
+    private static boolean decodes(PVCompression compression, byte[] body, byte[] encoded) throws IOException {
+        ByteArrayOutputStream decodedStream = new ByteArrayOutputStream();
+        PVCompression.Decoder decoder = new PVCompression.Decoder();
+        decoder.decode(ByteBuffer.wrap(encoded), Channels.newChannel(decodedStream));
+        decoder.finish(Channels.newChannel(decodedStream));
+        byte[] decoded = decodedStream.toByteArray();
+
+        if(compression != PVCompression.POINT_DELTA) {
+            return Arrays.equals(body, decoded);
+        }
+
+        String[] originalLines = new String(body, StandardCharsets.UTF_8).split("\n");
+        String[] decodedLines = new String(decoded, StandardCharsets.UTF_8).split("\n");
+        if(originalLines.length != decodedLines.length) {
+            return false;
+        }
+
+        for(int i=0; i<originalLines.length; i++) {
+            Point2D original = Point2D.fromString(originalLines[i].trim());
+            Point2D copy = Point2D.fromString(decodedLines[i]);
+            double tolerance = Constants.PV_POSITION_QUANTUM / 2 + 1E-9;
+            if(Math.abs(original.getX() - copy.getX()) > tolerance || Math.abs(original.getY() - copy.getY()) > tolerance || Math.abs(original.getHeading() - copy.getHeading()) > tolerance) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Generates path text that looks like a recording: a winding course sampled every few inches, with unrounded headings.
+     * @param points The number of points to generate.
+     * @return The path text.
+     */
+    private static byte[] generatePath(int points) {
+        StringBuilder path = new StringBuilder();
+        double
+            x = 30,
+            y = 90,
+            heading = 0;
+
+        for(int i=0; i<points; i++) {
+            heading += 4 * Math.sin(i / 40.0);
+            x += Constants.PATH_RECORDER_DISTANCE_INTERVAL * Math.cos(Math.toRadians(heading));
+            y += Constants.PATH_RECORDER_DISTANCE_INTERVAL * Math.sin(Math.toRadians(heading));
+            path.append(new Point2D(x, y, heading).toString()).append("\n");
+        }
+
+        return path.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,271 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.tools;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import frc.robot.Constants;
+import frc.robot.util.MessageType;
+import frc.robot.util.PVFraming;
+import frc.robot.util.PVHost;
+import frc.robot.util.PVMessage;
+import frc.robot.util.Path;
+import frc.robot.util.Point2D;
+
+/**
+ * Regression benchmark for the PVHost transport. Starts a PVHost on loopback, drives it from a simulated 50 Hz
+ * robot loop, and connects PVClients that request directories, LOADs and SAVEs as fast as the host answers.
+ * Reports round-trip latency, messages per second, and how long the robot loop spent inside PVHost calls.
+ *  java -cp <test runtime classpath> frc.robot.tools.PVHostBenchmark [seconds] [clients] [port]
+ */
+public class PVHostBenchmark {
+    private static final int
+        ROBOT_LOOP_PERIOD_MS = 20,
+        PATH_BROADCAST_PERIOD_LOOPS = 50, //one PATH every second, like a driver flipping through recordings
+        BENCHMARK_PATH_POINTS = 2000;
+
+    private static final long REPLY_TIMEOUT_MS = 5000;
+
+    /**
+     * Runs the benchmark.
+     * @param args Optional duration in seconds, client count, and port.
+     * @throws Exception if the host or clients could not be set up.
+     */
+    public static void main(String[] args) throws Exception {
+        int seconds = (args.length > 0 ? Integer.parseInt(args[0]) : 10);
+        int clientCount = Math.min((args.length > 1 ? Integer.parseInt(args[1]) : 3), Constants.PV_MAX_CLIENTS);
+        int port = (args.length > 2 ? Integer.parseInt(args[2]) : Constants.PV_PORT);
+
+        java.nio.file.Path directory = Files.createTempDirectory("pvbench");
+        java.nio.file.Path pathFile = directory.resolve("path.txt");
+        Files.write(pathFile, generatePath(BENCHMARK_PATH_POINTS));
+        Path path = new Path(pathFile.toString());
+
+        PVHost host = new PVHost(port);
+        ClientRunner[] runners = new ClientRunner[clientCount];
+        for(int i=0; i<clientCount; i++) {
+            //alternate between the original text client and a binary client that asks for everything
+            PVFraming framing = (i % 2 == 0 ? PVFraming.TEXT : PVFraming.BINARY);
+            String capabilities = (framing == PVFraming.BINARY ? "delta,stats,deflate,pointdelta" : "");
+            runners[i] = new ClientRunner(new PVClient("localhost", port, framing), capabilities, directory);
+        }
+
+        Thread.sleep(100); //let the host accept everyone before the clock starts
+        for(ClientRunner runner : runners) {
+            runner.start();
+        }
+
+        Samples
+            updateTimes = new Samples(),
+            sendPathTimes = new Samples();
+
+        int overruns = 0;
+        long start = System.nanoTime();
+        long end = start + seconds * 1000000000L;
+        long nextLoop = start;
+        for(int loop = 0; System.nanoTime() < end; loop++) {
+            double t = loop * ROBOT_LOOP_PERIOD_MS / 1000.0;
+            Point2D position = new Point2D(100 + 60 * Math.cos(t / 2), 100 + 60 * Math.sin(t / 2), Math.toDegrees(t / 2) + 90);
+
+            long callStart = System.nanoTime();
+            host.update(position);
+            updateTimes.add(System.nanoTime() - callStart);
+
+            if(loop % PATH_BROADCAST_PERIOD_LOOPS == 0) {
+                callStart = System.nanoTime();
+                host.sendPath(path, "bench");
+                sendPathTimes.add(System.nanoTime() - callStart);
+            }
+
+            nextLoop += ROBOT_LOOP_PERIOD_MS * 1000000L;
+            long sleepNanos = nextLoop - System.nanoTime();
+            if(sleepNanos > 0) {
+                Thread.sleep(sleepNanos / 1000000, (int) (sleepNanos % 1000000));
+            } else {
+                overruns++;
+            }
+        }
+
+        double elapsedSeconds = (System.nanoTime() - start) / 1E9;
+        for(ClientRunner runner : runners) {
+            runner.stopAndJoin();
+        }
+
+        System.out.println("PVHost benchmark: " + clientCount + " clients, " + String.format("%.1f", elapsedSeconds) + " s, " + BENCHMARK_PATH_POINTS + "-point path broadcast every " + PATH_BROADCAST_PERIOD_LOOPS + " loops");
+        System.out.println();
+        System.out.println("Robot loop time spent in PVHost (us):");
+        System.out.println("  update()     " + updateTimes.summarize());
+        System.out.println("  sendPath()   " + sendPathTimes.summarize());
+        System.out.println("  loop overruns: " + overruns);
+        System.out.println();
+
+        for(int i=0; i<runners.length; i++) {
+            ClientRunner runner = runners[i];
+            PVClient client = runner.client;
+            System.out.println("Client " + i + " (" + client.getFraming() + (runner.capabilities.isEmpty() ? "" : ", " + runner.capabilities) + "):");
+            System.out.println(String.format("  received %.1f msgs/s, %.1f positions/s, %.1f KB/s", client.getMessagesReceived() / elapsedSeconds, client.getPositionsReceived() / elapsedSeconds, client.getBytesReceived() / 1024.0 / elapsedSeconds));
+            System.out.println(String.format("  %.1f requests/s, %d failed", runner.requests / elapsedSeconds, runner.failures));
+            System.out.println("  Dir RTT (us)  " + runner.dirTimes.summarize());
+            System.out.println("  Load RTT (us) " + runner.loadTimes.summarize());
+            System.out.println("  Save RTT (us) " + runner.saveTimes.summarize());
+            client.close();
+        }
+
+        System.exit(0);
+    }
+
+    /**
+     * Generates path text like a recording: a winding course sampled every few inches.
+     * @param points The number of points to generate.
+     * @return The path text.
+     */
+    private static byte[] generatePath(int points) {
+        StringBuilder path = new StringBuilder();
+        double
+            x = 30,
+            y = 90,
+            heading = 0;
+
+        for(int i=0; i<points; i++) {
+            heading += 4 * Math.sin(i / 40.0);
+            x += Constants.PATH_RECORDER_DISTANCE_INTERVAL * Math.cos(Math.toRadians(heading));
+            y += Constants.PATH_RECORDER_DISTANCE_INTERVAL * Math.sin(Math.toRadians(heading));
+            path.append(new Point2D(x, y, heading).toString()).append("\n");
+        }
+
+        return path.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Thread that makes one client cycle through DIRECTORY_REQUEST, LOAD and SAVE requests, timing each one.
+     */
+    private static class ClientRunner extends Thread {
+        private final PVClient client;
+        private final String capabilities;
+        private final java.nio.file.Path directory;
+        private final Samples
+            dirTimes,
+            loadTimes,
+            saveTimes;
+
+        private volatile boolean running;
+        private int
+            requests,
+            failures;
+
+        /**
+         * Creates a new ClientRunner.
+         * @param client The client to drive.
+         * @param capabilities The capabilities to ask for in the client's HELLO, or an empty string to not say hello.
+         * @param directory The directory to list, load from, and save to.
+         */
+        public ClientRunner(PVClient client, String capabilities, java.nio.file.Path directory) {
+            super("PVHostBenchmark Client");
+            setDaemon(true);
+            this.client = client;
+            this.capabilities = capabilities;
+            this.directory = directory;
+            this.dirTimes = new Samples();
+            this.loadTimes = new Samples();
+            this.saveTimes = new Samples();
+            this.running = true;
+            this.requests = 0;
+            this.failures = 0;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if(!capabilities.isEmpty()) {
+                    client.hello(capabilities, REPLY_TIMEOUT_MS);
+                }
+            } catch(IOException ex) {
+                failures++;
+            }
+
+            String pathFile = directory.resolve("path.txt").toString();
+            byte[] saveBody = generatePath(200);
+            for(int cycle = 0; running; cycle++) {
+                timeRequest(new PVMessage(MessageType.DIRECTORY_REQUEST, directory.toString()), dirTimes);
+                timeRequest(new PVMessage(MessageType.LOAD, pathFile), loadTimes);
+                timeRequest(new PVMessage(MessageType.SAVE, directory.resolve("save" + (cycle % 4) + "-" + getId() + ".txt").toString(), saveBody), saveTimes);
+            }
+        }
+
+        /**
+         * Sends a request and records how long the reply took.
+         * @param message The request to send.
+         * @param times Where to record the round trip time.
+         */
+        private void timeRequest(PVMessage message, Samples times) {
+            long start = System.nanoTime();
+            try {
+                client.request(message, REPLY_TIMEOUT_MS);
+                times.add(System.nanoTime() - start);
+                requests++;
+            } catch(IOException ex) {
+                failures++;
+            }
+        }
+
+        /**
+         * Stops the requests and waits for the one in flight to finish.
+         * @throws InterruptedException if interrupted while waiting.
+         */
+        public void stopAndJoin() throws InterruptedException {
+            running = false;
+            join(REPLY_TIMEOUT_MS);
+        }
+    }
+
+    /**
+     * Collects durations and summarizes them.
+     */
+    private static class Samples {
+        private long[] samples;
+        private int count;
+
+        /**
+         * Creates a new, empty Samples.
+         */
+        public Samples() {
+            samples = new long[1024];
+            count = 0;
+        }
+
+        /**
+         * Records a duration.
+         * @param nanos The duration, in nanoseconds.
+         */
+        public synchronized void add(long nanos) {
+            if(count == samples.length) {
+                samples = Arrays.copyOf(samples, count * 2);
+            }
+
+            samples[count++] = nanos;
+        }
+
+        /**
+         * Returns the count, mean, median, 99th percentile and maximum of the durations, in microseconds.
+         */
+        public synchronized String summarize() {
+            if(count == 0) {
+                return "no samples";
+            }
+
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            long total = 0;
+            for(long sample : sorted) {
+                total += sample;
+            }
+
+            return String.format("n=%d avg=%.1f p50=%.1f p99=%.1f max=%.1f", count, total / 1000.0 / count, sorted[count / 2] / 1000.0, sorted[Math.min(count - 1, (int) (count * 0.99))] / 1000.0, sorted[count - 1] / 1000.0);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.tools;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import frc.robot.util.Path;
+import frc.robot.util.PathCache;
+import frc.robot.util.Point2D;
+
+/**
+ * Measures how much time the PathCache takes out of starting an auto. Writes a set of path files the size of the
+ * robot's, then times reading one the way CyborgCommandEmulatePath.initialize() used to against getting it from the
+ * cache, and how long the cache thread takes to reload a changed file. PathCacheTest checks what the cache hands out.
+ *  java -cp <test runtime classpath> frc.robot.tools.PathCacheBenchmark [files] [points per file]
+ */
+public class PathCacheBenchmark {
+    private static final int
+        ROUNDS = 200,
+        WATCH_WAIT_MS = 2000;
+
+    /**
+     * Runs the benchmark.
+     * @param args Optional number of files and points per file.
+     * @throws Exception if the files could not be written.
+     */
+    public static void main(String[] args) throws Exception {
+        int fileCount = (args.length > 0 ? Integer.parseInt(args[0]) : 15);
+        int pointCount = (args.length > 1 ? Integer.parseInt(args[1]) : 800);
+
+        java.nio.file.Path directory = Files.createTempDirectory("pathcache");
+        String[] files = new String[fileCount];
+        for(int i=0; i<fileCount; i++) {
+            files[i] = directory.resolve("path" + i + ".txt").toString();
+            writePath(files[i], pointCount, i);
+        }
+
+        System.out.println("Path cache benchmark: " + fileCount + " files of " + pointCount + " points in " + directory);
+
+        //reading in the loop auto starts in, like before
+        long[] readTimes = new long[ROUNDS];
+        for(int round=0; round<ROUNDS; round++) {
+            long start = System.nanoTime();
+            new Path(files[round % fileCount]);
+            readTimes[round] = System.nanoTime() - start;
+        }
+        Arrays.sort(readTimes);
+
+        //from the cache
+        long preloadStart = System.nanoTime();
+        PathCache cache = new PathCache(files);
+        while(!cache.isPreloaded()) {
+            Thread.sleep(1);
+        }
+        double preloadMillis = (System.nanoTime() - preloadStart) / 1000000.0;
+
+        long[] cacheTimes = new long[ROUNDS];
+        for(int round=0; round<ROUNDS; round++) {
+            long start = System.nanoTime();
+            cache.get(files[round % fileCount]);
+            cacheTimes[round] = System.nanoTime() - start;
+        }
+        Arrays.sort(cacheTimes);
+
+        System.out.println(String.format("  preload on the cache thread: %.1f ms for all files", preloadMillis));
+        System.out.println(String.format("  read in initialize(): median %.3f ms, max %.3f ms", readTimes[ROUNDS / 2] / 1000000.0, readTimes[ROUNDS - 1] / 1000000.0));
+        System.out.println(String.format("  get() from the cache: median %.3f ms, max %.3f ms (%d hits, %d misses)", cacheTimes[ROUNDS / 2] / 1000000.0, cacheTimes[ROUNDS - 1] / 1000000.0, cache.getHits(), cache.getMisses()));
+        System.out.println(String.format("  removed from auto start: %.3f ms per path", (readTimes[ROUNDS / 2] - cacheTimes[ROUNDS / 2]) / 1000000.0));
+
+        //change a file, like editing an auto path, and time how long the cache thread takes to have it
+        long reloadsBefore = cache.getReloads();
+        long changeTime = System.nanoTime(); //the cache can see the file change before the write returns
+        writePath(files[0], pointCount + 10, 100);
+        while(cache.getReloads() == reloadsBefore && (System.nanoTime() - changeTime) / 1000000 < WATCH_WAIT_MS) {
+            Thread.sleep(1);
+        }
+
+        if(cache.getReloads() > reloadsBefore) {
+            System.out.println(String.format("  changed file: reloaded by the cache thread %.1f ms after the write started", (System.nanoTime() - changeTime) / 1000000.0));
+        } else {
+            System.out.println("  changed file: not reloaded within " + WATCH_WAIT_MS + " ms, get() reads it instead");
+        }
+
+        for(String file : files) {
+            Files.deleteIfExists(java.nio.file.Path.of(file));
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    /**
+     * Writes a wavy path file in the recorder's format.
+     * @param file The file to write.
+     * @param pointCount The number of points.
+     * @param seed Changes the shape of the path.
+     * @throws IOException if the file could not be written.
+     */
+    private static void writePath(String file, int pointCount, int seed) throws IOException {
+        StringBuilder builder = new StringBuilder(pointCount * 24);
+        for(int i=0; i<pointCount; i++) {
+            double x = i * 3;
+            double y = 30 * Math.sin(i / 20.0 + seed);
+            double heading = Math.toDegrees(Math.atan2(1.5 * Math.cos(i / 20.0 + seed), 3));
+            builder.append(new Point2D(x, y, heading).toString()).append("\n");
+        }
+
+        Files.writeString(java.nio.file.Path.of(file), builder.toString());
+    }
+}
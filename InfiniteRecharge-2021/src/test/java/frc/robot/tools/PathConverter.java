@@ -0,0 +1,50 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.tools;
+
+import frc.robot.util.Path;
+import frc.robot.util.PathFile;
+
+/**
+ * Converts path files between the text and binary formats. The input can be either format.
+ *  java -cp <test runtime classpath> frc.robot.tools.PathConverter [input] [output] [text|float|double]
+ */
+public class PathConverter {
+
+    /**
+     * Converts one file.
+     * @param args The input file, output file, and format to write.
+     * @throws Exception if the output could not be written.
+     */
+    public static void main(String[] args) throws Exception {
+        if(args.length < 3) {
+            System.out.println("Usage: PathConverter [input] [output] [text|float|double]");
+            return;
+        }
+
+        Path path = new Path(args[0]);
+        if(!path.isValid()) {
+            System.out.println(args[0] + " is not a valid path, nothing written");
+            System.exit(1);
+        }
+
+        switch(args[2]) {
+            case "text":
+                PathFile.writeText(path, args[1]);
+                break;
+            case "float":
+                PathFile.writeBinary(path, args[1], PathFile.PRECISION_FLOAT);
+                break;
+            case "double":
+                PathFile.writeBinary(path, args[1], PathFile.PRECISION_DOUBLE);
+                break;
+            default:
+                System.out.println("Unknown format " + args[2] + ", use text, float or double");
+                System.exit(1);
+        }
+
+        System.out.println("Wrote " + path.getPointCount() + " points from " + args[0] + " to " + args[1] + " as " + args[2]);
+    }
+}
@@ -0,0 +1,78 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.tools;
+
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import frc.robot.util.Path;
+import frc.robot.util.PathFile;
+import frc.robot.util.Point2D;
+
+/**
+ * Times loading the same path from a text file and from binary files, and shows how far the points in each are from the
+ * path that was written. PathFileTest checks that the formats read back and that damaged files are turned away.
+ *  java -cp <test runtime classpath> frc.robot.tools.PathFileBenchmark [points]
+ */
+public class PathFileBenchmark {
+    private static final int
+        WARMUP_LOADS = 200,
+        TIMED_LOADS = 1000;
+
+    private static final String[] FORMATS = { "text", "float", "double" };
+
+    /**
+     * Runs the benchmark.
+     * @param args Optional number of points in the path.
+     * @throws Exception if the files could not be written.
+     */
+    public static void main(String[] args) throws Exception {
+        int pointCount = (args.length > 0 ? Integer.parseInt(args[0]) : 2000);
+        Point2D[] points = new Point2D[pointCount];
+        for(int i=0; i<pointCount; i++) {
+            points[i] = new Point2D(Math.round(i * 300.0) / 100.0, Math.round(3000 * Math.sin(i / 40.0)) / 100.0, 90 * Math.sin(i / 25.0));
+        }
+        Path path = new Path(points);
+
+        java.nio.file.Path directory = Files.createTempDirectory("pathfile");
+        String[] files = new String[FORMATS.length];
+        for(int i=0; i<FORMATS.length; i++) {
+            files[i] = directory.resolve("path." + FORMATS[i]).toString();
+        }
+
+        PathFile.writeText(path, files[0]);
+        PathFile.writeBinary(path, files[1], PathFile.PRECISION_FLOAT);
+        PathFile.writeBinary(path, files[2], PathFile.PRECISION_DOUBLE);
+
+        System.out.println("Path file benchmark: " + pointCount + " points, " + TIMED_LOADS + " timed loads per format");
+        for(int format=0; format<FORMATS.length; format++) {
+            for(int i=0; i<WARMUP_LOADS; i++) {
+                new Path(files[format]);
+            }
+
+            long[] times = new long[TIMED_LOADS];
+            Path loaded = null;
+            for(int i=0; i<TIMED_LOADS; i++) {
+                long start = System.nanoTime();
+                loaded = new Path(files[format]);
+                times[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(times);
+
+            double worstError = 0;
+            for(int i=0; i<pointCount; i++) {
+                worstError = Math.max(worstError, points[i].getDistanceFrom(loaded.getPoint(i)));
+            }
+
+            System.out.println(String.format("  %-6s %7d bytes, load median %7.1f us, max %8.1f us, %d points, worst position error %.5f in",
+                FORMATS[format], Files.size(java.nio.file.Path.of(files[format])), times[TIMED_LOADS / 2] / 1000.0, times[TIMED_LOADS - 1] / 1000.0, loaded.getPointCount(), worstError));
+        }
+
+        for(String file : files) {
+            Files.deleteIfExists(java.nio.file.Path.of(file));
+        }
+        Files.deleteIfExists(directory);
+    }
+}
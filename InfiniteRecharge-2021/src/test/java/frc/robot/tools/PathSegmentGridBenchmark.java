@@ -0,0 +1,139 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.tools;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import frc.robot.Constants;
+import frc.robot.util.CompiledPath;
+import frc.robot.util.Path;
+import frc.robot.util.Point2D;
+
+/**
+ * Times the closest spot search of CompiledPath against looking at every segment in the window and in the whole path,
+ * on looping paths shaped like the barrel racing path (which crosses itself) of several lengths. PathSegmentGridTest
+ * checks that the search finds the right spot.
+ *  java -cp <test runtime classpath> frc.robot.tools.PathSegmentGridBenchmark
+ */
+public class PathSegmentGridBenchmark {
+    private static final int QUERIES = 100000;
+
+    private static final int[] LOOPS = { 3, 12, 48 };
+
+    /**
+     * Runs the benchmark.
+     * @param args Not used.
+     */
+    public static void main(String[] args) {
+        Random random = new Random(2021);
+        System.out.println("Path segment grid benchmark: " + QUERIES + " queries, window " + Constants.EMULATE_RELOCALIZE_BEHIND + " in behind to " + Constants.EMULATE_RELOCALIZE_AHEAD + " in ahead");
+        for(int loops : LOOPS) {
+            Point2D[] points = makeLoopingPath(loops);
+            CompiledPath path = new Path(points).compile();
+            double length = path.getLength();
+
+            double[][] robots = new double[QUERIES][];
+            double[] progresses = new double[QUERIES];
+            for(int i=0; i<QUERIES; i++) {
+                progresses[i] = random.nextDouble() * length;
+                robots[i] = getNear(path, progresses[i], random);
+            }
+
+            long[] gridTimes = new long[QUERIES];
+            long[] windowTimes = new long[QUERIES];
+            long[] wholeTimes = new long[QUERIES];
+            double sink = 0;
+            for(int pass=0; pass<2; pass++) { //the first pass warms up
+                for(int i=0; i<QUERIES; i++) {
+                    double from = progresses[i] - Constants.EMULATE_RELOCALIZE_BEHIND;
+                    double to = progresses[i] + Constants.EMULATE_RELOCALIZE_AHEAD;
+                    long start = System.nanoTime();
+                    sink += path.findClosestLength(robots[i][0], robots[i][1], from, to, Constants.EMULATE_RELOCALIZE_MAX_DISTANCE);
+                    long gridEnd = System.nanoTime();
+                    sink += findClosestLengthBrute(path, robots[i][0], robots[i][1], from, to);
+                    long windowEnd = System.nanoTime();
+                    sink += findClosestLengthBrute(path, robots[i][0], robots[i][1], 0, length);
+                    long wholeEnd = System.nanoTime();
+                    gridTimes[i] = gridEnd - start;
+                    windowTimes[i] = windowEnd - gridEnd;
+                    wholeTimes[i] = wholeEnd - windowEnd;
+                }
+            }
+
+            Arrays.sort(gridTimes);
+            Arrays.sort(windowTimes);
+            Arrays.sort(wholeTimes);
+            System.out.println(String.format("  %2d loops, %5d points, %6.0f in: grid median %5.0f ns | window scan %5.0f ns | whole path scan %7.0f ns%s",
+                loops, points.length, length, (double) gridTimes[QUERIES / 2], (double) windowTimes[QUERIES / 2], (double) wholeTimes[QUERIES / 2], (sink == 42 ? " " : "")));
+        }
+    }
+
+    /**
+     * Makes a path that loops around markers like the barrel racing path, in the recorder's point spacing.
+     * @param loops The number of loops.
+     */
+    private static Point2D[] makeLoopingPath(int loops) {
+        double radius = 36;
+        int pointsPerLoop = (int) (2 * Math.PI * radius / Constants.PATH_RECORDER_DISTANCE_INTERVAL);
+        int straightPoints = (int) (90 / Constants.PATH_RECORDER_DISTANCE_INTERVAL);
+        Point2D[] points = new Point2D[loops * (pointsPerLoop + straightPoints)];
+        int count = 0;
+        for(int loop=0; loop<loops; loop++) {
+            double centerX = 60 + loop * 90;
+            double startX = (loop == 0 ? 0 : centerX - 90);
+            //in along the center line, then once around a marker to cross back over it
+            for(int i=0; i<straightPoints; i++) {
+                double fraction = i / (double) straightPoints;
+                points[count++] = new Point2D(startX + fraction * (centerX - startX), 0, 0);
+            }
+
+            for(int i=0; i<pointsPerLoop; i++) {
+                double angle = 2 * Math.PI * i / pointsPerLoop;
+                points[count++] = new Point2D(centerX + radius * Math.sin(angle), radius - radius * Math.cos(angle), Math.toDegrees(angle));
+            }
+        }
+
+        return Arrays.copyOf(points, count);
+    }
+
+    /**
+     * Returns a location up to 30 inches from a spot on the path.
+     * @param path The path.
+     * @param progress The distance along the path of the spot.
+     * @param random Where the offsets come from.
+     */
+    private static double[] getNear(CompiledPath path, double progress, Random random) {
+        int segment = path.getSegmentAtLength(progress);
+        return new double[] { path.getX(segment) + (random.nextDouble() - 0.5) * 60, path.getY(segment) + (random.nextDouble() - 0.5) * 60 };
+    }
+
+    /**
+     * Finds the closest spot on part of the path by looking at every segment in it.
+     * @param path The path.
+     * @param px The x coordinate of the location.
+     * @param py The y coordinate of the location.
+     * @param fromLength Where the part of the path starts.
+     * @param toLength Where the part of the path ends.
+     * @return The distance along the path of the closest spot.
+     */
+    private static double findClosestLengthBrute(CompiledPath path, double px, double py, double fromLength, double toLength) {
+        double closestLength = Double.NaN;
+        double closestDistance = Double.MAX_VALUE;
+        for(int segment=path.getSegmentAtLength(fromLength); segment<=path.getSegmentAtLength(toLength); segment++) {
+            double ax = path.getX(segment), ay = path.getY(segment);
+            double dx = path.getX(segment + 1) - ax, dy = path.getY(segment + 1) - ay;
+            double lengthSquared = dx * dx + dy * dy;
+            double fraction = (lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lengthSquared)));
+            double distance = Math.hypot(ax + fraction * dx - px, ay + fraction * dy - py);
+            if(distance < closestDistance) {
+                closestDistance = distance;
+                closestLength = path.getLengthAt(segment) + fraction * path.getLengthBetween(segment, segment + 1);
+            }
+        }
+
+        return closestLength;
+    }
+}
@@ -0,0 +1,235 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import frc.robot.Constants;
+import frc.robot.util.CompiledPath;
+import frc.robot.util.Path;
+import frc.robot.util.Point2D;
+import frc.robot.util.TrajectoryGenerator;
+import frc.robot.util.TrajectorySegment;
+import frc.robot.util.Util;
+
+/**
+ * Compares AutoNav times of a generated trajectory against the speeds CyborgCommandEmulatePath picks each loop.
+ * The emulate speeds are its friction speed for the curvature at each point, kept between "Emulate Min Speed" and
+ * "Emulate Max Speed" (50 and 90 in/sec by default). Emulate is timed twice: changing speed instantly, which is its best
+ * case, and only able to speed up at the trajectory's max acceleration. The hardest wheel acceleration shows how sharply
+ * each one changes the wheel speeds going into and out of turns. Give recorded path files, or leave them out to use paths
+ * shaped like the slalom, barrel racing, and bounce paths.
+ *  java -cp <test runtime classpath> frc.robot.tools.TrajectoryGeneratorBenchmark [path files...]
+ */
+public class TrajectoryGeneratorBenchmark {
+    private static final double
+        EMULATE_MIN_SPEED = 50,
+        EMULATE_MAX_SPEED = 90,
+        COEFFICIENT_OF_FRICTION = 1;
+
+    private static final int GENERATE_ROUNDS = 200;
+
+    /**
+     * Runs the benchmark.
+     * @param args Optional path files.
+     */
+    public static void main(String[] args) {
+        List<String> names = new ArrayList<String>();
+        List<Path> paths = new ArrayList<Path>();
+        if(args.length > 0) {
+            for(String file : args) {
+                names.add(file);
+                paths.add(new Path(file));
+            }
+        } else {
+            names.add("slalom-like");
+            paths.add(makeSlalom());
+            names.add("barrel-like");
+            paths.add(makeBarrel());
+            names.add("bounce-like");
+            paths.add(makeBounce());
+        }
+
+        TrajectoryGenerator generator = new TrajectoryGenerator(Constants.TRAJECTORY_MAX_VELOCITY, Constants.TRAJECTORY_MAX_ACCELERATION, COEFFICIENT_OF_FRICTION);
+        System.out.println(String.format("Trajectory generator benchmark: max velocity %.0f in/s, max acceleration %.0f in/s^2, emulate speeds %.0f-%.0f in/s",
+            Constants.TRAJECTORY_MAX_VELOCITY, Constants.TRAJECTORY_MAX_ACCELERATION, EMULATE_MIN_SPEED, EMULATE_MAX_SPEED));
+        for(int p=0; p<paths.size(); p++) {
+            if(!paths.get(p).isValid() || paths.get(p).getPointCount() < 2) {
+                System.out.println("  " + names.get(p) + ": not a usable path");
+                continue;
+            }
+
+            CompiledPath path = paths.get(p).compile();
+            TrajectorySegment[] trajectory = null;
+            long start = 0;
+            for(int round=0; round<GENERATE_ROUNDS; round++) {
+                if(round == GENERATE_ROUNDS / 2) {
+                    start = System.nanoTime(); //the first half warms up
+                }
+                trajectory = generator.generate(path);
+            }
+            double generateMillis = (System.nanoTime() - start) / 1000000.0 / (GENERATE_ROUNDS - GENERATE_ROUNDS / 2);
+
+            double[] curvature = getCurvature(path);
+
+            //the trajectory's fastest wheel and hardest wheel acceleration
+            double fastestWheel = 0, trajectoryWheelAcceleration = 0;
+            for(int i=0; i<trajectory.length; i++) {
+                fastestWheel = Math.max(fastestWheel, Math.max(Math.abs(trajectory[i].getLeftVelocity()), Math.abs(trajectory[i].getRightVelocity())));
+                if(i > 0 && trajectory[i].getTime() + trajectory[i - 1].getTime() > 0) {
+                    double time = (trajectory[i].getTime() + trajectory[i - 1].getTime()) / 2;
+                    double leftChange = Math.abs(trajectory[i].getLeftVelocity() - trajectory[i - 1].getLeftVelocity());
+                    double rightChange = Math.abs(trajectory[i].getRightVelocity() - trajectory[i - 1].getRightVelocity());
+                    trajectoryWheelAcceleration = Math.max(trajectoryWheelAcceleration, Math.max(leftChange, rightChange) / time);
+                }
+            }
+
+            //emulate: its speed at every point, reached instantly, then the same speeds but only able to speed up at the max acceleration
+            double[] emulateSpeeds = getEmulateSpeeds(curvature);
+            double emulateTime = 0, limitedTime = 0, emulateWheelAcceleration = 0, limitedSpeed = 0;
+            for(int i=0; i<path.getPointCount() - 1; i++) {
+                double distance = path.getLengthBetween(i, i + 1);
+                if(distance == 0) {
+                    continue;
+                }
+
+                double time = distance / ((emulateSpeeds[i] + emulateSpeeds[i + 1]) / 2);
+                emulateTime += time;
+                double halfWidth = Constants.DRIVETRAIN_WHEEL_BASE_WIDTH / 2;
+                double leftChange = Math.abs(emulateSpeeds[i + 1] * (1 - curvature[i + 1] * halfWidth) - emulateSpeeds[i] * (1 - curvature[i] * halfWidth));
+                double rightChange = Math.abs(emulateSpeeds[i + 1] * (1 + curvature[i + 1] * halfWidth) - emulateSpeeds[i] * (1 + curvature[i] * halfWidth));
+                emulateWheelAcceleration = Math.max(emulateWheelAcceleration, Math.max(leftChange, rightChange) / time);
+
+                double nextSpeed = Math.min(emulateSpeeds[i + 1], Math.sqrt(limitedSpeed * limitedSpeed + 2 * Constants.TRAJECTORY_MAX_ACCELERATION * distance));
+                limitedTime += 2 * distance / (limitedSpeed + nextSpeed);
+                limitedSpeed = nextSpeed;
+            }
+
+            System.out.println(String.format("  %s: %d points, %.0f in, generated in %.3f ms", names.get(p), path.getPointCount(), path.getLength(), generateMillis));
+            System.out.println(String.format("    trajectory:                       %5.2f s, fastest wheel %5.1f in/s, hardest wheel acceleration %6.1f in/s^2", TrajectoryGenerator.getTime(trajectory), fastestWheel, trajectoryWheelAcceleration));
+            System.out.println(String.format("    emulate, instant speed changes:   %5.2f s, hardest wheel acceleration after the start %6.1f in/s^2", emulateTime, emulateWheelAcceleration));
+            System.out.println(String.format("    emulate, speeding up at the max:  %5.2f s, ends at %.0f in/s instead of stopped", limitedTime, limitedSpeed));
+        }
+    }
+
+    /**
+     * Returns the curvature at each point the same way TrajectoryGenerator works it out, from the robot's heading.
+     * @param path The path.
+     * @return The curvature in radians per inch.
+     */
+    private static double[] getCurvature(CompiledPath path) {
+        int window = Constants.TRAJECTORY_CURVATURE_WINDOW;
+        double[] curvature = new double[path.getPointCount()];
+        for(int i=0; i<curvature.length; i++) {
+            int first = Math.max(i - window, 0);
+            int last = Math.min(i + window, curvature.length - 1);
+            double length = path.getLengthBetween(first, last);
+            double turn = 0;
+            for(int j=first + 1; j<=last; j++) {
+                turn += Util.getAngleToHeading(path.getHeading(j - 1), path.getHeading(j));
+            }
+
+            curvature[i] = (length > 0 ? Math.toRadians(turn) / length : 0);
+        }
+
+        return curvature;
+    }
+
+    /**
+     * Returns the speed CyborgCommandEmulatePath would pick at each point of a path.
+     * @param curvature The curvature at each point in radians per inch.
+     */
+    private static double[] getEmulateSpeeds(double[] curvature) {
+        double[] speeds = new double[curvature.length];
+        for(int i=0; i<speeds.length; i++) {
+            double speed = TrajectoryGenerator.getFrictionLimit(curvature[i], COEFFICIENT_OF_FRICTION);
+            speeds[i] = Math.max(EMULATE_MIN_SPEED, Math.min(EMULATE_MAX_SPEED, speed));
+        }
+
+        return speeds;
+    }
+
+    /**
+     * Makes a path that weaves between markers like the slalom path.
+     */
+    private static Path makeSlalom() {
+        List<Point2D> points = new ArrayList<Point2D>();
+        double spacing = Constants.PATH_RECORDER_DISTANCE_INTERVAL;
+        for(double x=0; x<=300; x+=spacing / 2) {
+            double y = 30 * Math.sin(x / 300 * 4 * Math.PI);
+            double heading = Math.toDegrees(Math.atan(30 * 4 * Math.PI / 300 * Math.cos(x / 300 * 4 * Math.PI)));
+            addSpaced(points, new Point2D(x, y, heading));
+        }
+
+        return new Path(points.toArray(new Point2D[0]));
+    }
+
+    /**
+     * Makes a path that loops around three markers like the barrel racing path.
+     */
+    private static Path makeBarrel() {
+        List<Point2D> points = new ArrayList<Point2D>();
+        double radius = 30;
+        double[] centers = { 90, 180, 270 };
+        double x = 0;
+        for(int marker=0; marker<centers.length; marker++) {
+            for(; x<centers[marker]; x+=1) {
+                addSpaced(points, new Point2D(x, 0, 0));
+            }
+
+            //all the way around, clockwise for the first two and counterclockwise for the last
+            double direction = (marker < 2 ? -1 : 1);
+            for(double angle=0; angle<2 * Math.PI; angle+=0.01) {
+                double px = centers[marker] + radius * Math.sin(angle);
+                double py = direction * (radius - radius * Math.cos(angle));
+                addSpaced(points, new Point2D(px, py, direction * Math.toDegrees(angle)));
+            }
+        }
+
+        for(; x<=360; x+=1) {
+            addSpaced(points, new Point2D(x, 0, 0));
+        }
+
+        return new Path(points.toArray(new Point2D[0]));
+    }
+
+    /**
+     * Makes a path that drives out and backs up around a marker like one bounce of the bounce path.
+     */
+    private static Path makeBounce() {
+        List<Point2D> points = new ArrayList<Point2D>();
+        //forwards: a quarter turn to the left, then straight out
+        for(double angle=0; angle<Math.PI / 2; angle+=0.01) {
+            addSpaced(points, new Point2D(40 * Math.sin(angle), 40 - 40 * Math.cos(angle), Math.toDegrees(angle)));
+        }
+
+        for(double y=40; y<=100; y+=1) {
+            addSpaced(points, new Point2D(40, y, 90));
+        }
+
+        //backwards: straight back, then a quarter turn, still facing away from where the robot is going
+        for(double y=100; y>40; y-=1) {
+            addSpaced(points, new Point2D(40, y, 90));
+        }
+
+        for(double angle=0; angle<=Math.PI / 2; angle+=0.01) {
+            addSpaced(points, new Point2D(80 - 40 * Math.cos(angle), 40 - 40 * Math.sin(angle), 90 + Math.toDegrees(angle)));
+        }
+
+        return new Path(points.toArray(new Point2D[0]));
+    }
+
+    /**
+     * Adds a point to a path if it is at least the recorder's distance from the last one, like PathRecorder.
+     * @param points The path.
+     * @param point The point to add.
+     */
+    private static void addSpaced(List<Point2D> points, Point2D point) {
+        if(points.isEmpty() || points.get(points.size() - 1).getDistanceFrom(point) >= Constants.PATH_RECORDER_DISTANCE_INTERVAL) {
+            points.add(point);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.tools;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.file.Paths;
+import java.util.TreeMap;
+
+import frc.robot.util.VisionLogReader;
+
+/**
+ * Sends a log written by VisionRecorder back to the robot's vision ports, so that a match can be run through the
+ * receivers again. Each datagram goes to the port it was recorded on, at its recorded time divided by the speed.
+ * A speed of 0 sends everything as fast as possible.
+ *  java -cp <test runtime classpath> frc.robot.tools.VisionReplay [log file] [speed] [host]
+ */
+public class VisionReplay {
+    /**
+     * Replays a log.
+     * @param args Log file, then optional speed and host.
+     * @throws Exception if the log could not be read or a datagram could not be sent.
+     */
+    public static void main(String[] args) throws Exception {
+        if(args.length < 1) {
+            System.out.println("Usage: VisionReplay [log file] [speed] [host]");
+            return;
+        }
+
+        double speed = (args.length > 1 ? Double.parseDouble(args[1]) : 1);
+        String host = (args.length > 2 ? args[2] : "localhost");
+
+        VisionLogReader reader = new VisionLogReader(Paths.get(args[0]));
+        TreeMap<Integer, InetSocketAddress> addresses = new TreeMap<Integer, InetSocketAddress>();
+        TreeMap<Integer, Integer> counts = new TreeMap<Integer, Integer>();
+        long
+            maxLateNanos = 0,
+            totalLateNanos = 0,
+            sent = 0;
+
+        try(DatagramChannel channel = DatagramChannel.open()) {
+            long startTime = System.nanoTime();
+            while(reader.next()) {
+                int port = reader.getPort();
+                if(speed > 0) {
+                    long dueTime = startTime + (long) (reader.getTimeNanos() / speed);
+                    long sleepNanos = dueTime - System.nanoTime();
+                    if(sleepNanos > 0) {
+                        Thread.sleep(sleepNanos / 1000000, (int) (sleepNanos % 1000000));
+                    }
+
+                    long lateNanos = Math.max(System.nanoTime() - dueTime, 0);
+                    maxLateNanos = Math.max(maxLateNanos, lateNanos);
+                    totalLateNanos += lateNanos;
+                }
+
+                ByteBuffer packet = reader.getPacket();
+                channel.send(packet, addresses.computeIfAbsent(port, p -> new InetSocketAddress(host, p)));
+                counts.merge(port, 1, Integer::sum);
+                sent++;
+            }
+
+            double seconds = (System.nanoTime() - startTime) / 1E9;
+            System.out.println("Sent " + sent + " datagrams in " + String.format("%.3f", seconds) + " s (recorded over " + String.format("%.3f", reader.getTimeNanos() / 1E9) + " s)");
+            for(Integer port : counts.keySet()) {
+                System.out.println("  port " + port + ": " + counts.get(port));
+            }
+
+            if(speed > 0 && sent > 0) {
+                System.out.println("Timing error: mean " + String.format("%.3f", totalLateNanos / 1E6 / sent) + " ms, max " + String.format("%.3f", maxLateNanos / 1E6) + " ms");
+            }
+        }
+    }
+}
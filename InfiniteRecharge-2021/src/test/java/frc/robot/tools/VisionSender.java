@@ -0,0 +1,212 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.tools;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import frc.robot.Constants;
+import frc.robot.util.VisionProtocol;
+
+/**
+ * Stand-in for the KiwiLight and Jevois coprocessors. Sends a target that sweeps back and forth and a few power cells
+ * to the robot's vision ports, using VisionProtocol as the reference encoder. Can also send v1 text, and can drop,
+ * swap and repeat packets to check the robot's loss, reorder and duplicate statistics.
+ *  java -cp <test runtime classpath> frc.robot.tools.VisionSender [host] [rate hz] [v1|v2] [loss fraction] [reorder fraction] [duplicate fraction]
+ */
+public class VisionSender {
+    private static final int SIMULATED_PIPELINE_LATENCY_MICROS = 30000;
+
+    private final DatagramChannel channel;
+    private final InetSocketAddress
+        kiwilightAddress,
+        jevoisAddress;
+
+    private final boolean version2;
+    private final double
+        lossFraction,
+        reorderFraction,
+        duplicateFraction;
+
+    private final Random random;
+    private final ByteBuffer
+        packet,
+        heldPacket;
+
+    private InetSocketAddress heldAddress;
+    private int sequence;
+    private long sent;
+
+    /**
+     * Creates a new VisionSender.
+     * @param host The address of the robot.
+     * @param version2 True to send v2 binary packets, false to send v1 text.
+     * @param lossFraction Fraction of packets to not send.
+     * @param reorderFraction Fraction of packets to hold back and send after the next one.
+     * @param duplicateFraction Fraction of packets to send twice.
+     * @throws IOException if the channel could not be opened.
+     */
+    public VisionSender(String host, boolean version2, double lossFraction, double reorderFraction, double duplicateFraction) throws IOException {
+        this.channel = DatagramChannel.open();
+        this.kiwilightAddress = new InetSocketAddress(host, Constants.KIWILIGHT_PORT);
+        this.jevoisAddress = new InetSocketAddress(host, Constants.JEVOIS_PORT);
+        this.version2 = version2;
+        this.lossFraction = lossFraction;
+        this.reorderFraction = reorderFraction;
+        this.duplicateFraction = duplicateFraction;
+        this.random = new Random(0); //same packets every run
+        this.packet = ByteBuffer.allocate(Constants.VISION_MAX_PACKET_SIZE);
+        this.heldPacket = ByteBuffer.allocate(Constants.VISION_MAX_PACKET_SIZE);
+        this.heldAddress = null;
+        this.sequence = 0;
+        this.sent = 0;
+    }
+
+    /**
+     * Runs the sender until it is killed.
+     * @param args Optional host, rate, protocol version, and loss, reorder and duplicate fractions.
+     * @throws Exception if a packet could not be sent.
+     */
+    public static void main(String[] args) throws Exception {
+        String host = (args.length > 0 ? args[0] : "localhost");
+        double rate = (args.length > 1 ? Double.parseDouble(args[1]) : 30);
+        boolean version2 = (args.length > 2 ? !args[2].equals("v1") : true);
+        double loss = (args.length > 3 ? Double.parseDouble(args[3]) : 0);
+        double reorder = (args.length > 4 ? Double.parseDouble(args[4]) : 0);
+        double duplicate = (args.length > 5 ? Double.parseDouble(args[5]) : 0);
+
+        VisionSender sender = new VisionSender(host, version2, loss, reorder, duplicate);
+        long periodNanos = (long) (1E9 / rate);
+        long nextFrame = System.nanoTime();
+        for(int frame = 0; true; frame++) {
+            sender.sendFrame(frame / rate);
+            if(frame % (int) Math.max(rate, 1) == 0) {
+                System.out.println("Sent " + sender.getSent() + " packets, sequence " + sender.getSequence());
+            }
+
+            nextFrame += periodNanos;
+            long sleepNanos = nextFrame - System.nanoTime();
+            if(sleepNanos > 0) {
+                Thread.sleep(sleepNanos / 1000000, (int) (sleepNanos % 1000000));
+            }
+        }
+    }
+
+    /**
+     * Sends one KiwiLight packet and one Jevois packet for a moment of the simulated match.
+     * @param seconds The time of the frame, in seconds since the sender started.
+     * @throws IOException if a packet could not be sent.
+     */
+    public void sendFrame(double seconds) throws IOException {
+        long captureTime = System.currentTimeMillis() * 1000 - SIMULATED_PIPELINE_LATENCY_MICROS;
+        double horizontalAngle = 20 * Math.sin(seconds * 0.5);
+        double distance = 200 + 60 * Math.sin(seconds * 0.2);
+        boolean targetSeen = Math.sin(seconds * 0.1) > -0.8; //lose the target every so often
+
+        double[] kiwilightData = (targetSeen ? new double[] { 160 + horizontalAngle * 8, 120, 60, 25, distance, horizontalAngle, 5 } : null);
+        int[]
+            x = { 320 + (int) (100 * Math.sin(seconds)), 200, 450 },
+            y = { 300, 180 + (int) (40 * Math.cos(seconds)), 90 },
+            radius = { 40, 25, 12 };
+
+        packet.clear();
+        if(version2) {
+            VisionProtocol.encodeKiwiLight(packet, sequence, captureTime, kiwilightData);
+        } else {
+            encodeText(packet, kiwilightData == null ? ":-1,-1,-1,-1,-1,180,180;" : ":" + join(kiwilightData) + ";");
+        }
+        send(packet, kiwilightAddress);
+
+        packet.clear();
+        if(version2) {
+            VisionProtocol.encodeJevois(packet, sequence, captureTime, x, y, radius, x.length);
+        } else {
+            encodeText(packet, "[" + x[0] + "," + y[0] + "," + radius[0] + "][" + x[1] + "," + y[1] + "," + radius[1] + "][" + x[2] + "," + y[2] + "," + radius[2] + "];");
+        }
+        send(packet, jevoisAddress);
+
+        sequence++;
+    }
+
+    /**
+     * Returns the number of datagrams sent.
+     */
+    public long getSent() {
+        return sent;
+    }
+
+    /**
+     * Returns the sequence number of the next frame.
+     */
+    public int getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Sends a packet, unless the simulated network drops, holds back or repeats it.
+     * @param toSend The packet, flipped.
+     * @param address Where to send it.
+     * @throws IOException if the send fails.
+     */
+    private void send(ByteBuffer toSend, InetSocketAddress address) throws IOException {
+        if(random.nextDouble() < lossFraction) {
+            return;
+        }
+
+        if(heldAddress == null && random.nextDouble() < reorderFraction) {
+            //send it after the next packet
+            heldPacket.clear();
+            heldPacket.put(toSend);
+            heldPacket.flip();
+            heldAddress = address;
+            return;
+        }
+
+        boolean duplicate = random.nextDouble() < duplicateFraction;
+        channel.send(toSend, address);
+        sent++;
+        if(duplicate) {
+            toSend.rewind();
+            channel.send(toSend, address);
+            sent++;
+        }
+
+        if(heldAddress != null && heldAddress.equals(address)) {
+            channel.send(heldPacket, heldAddress);
+            heldAddress = null;
+            sent++;
+        }
+    }
+
+    /**
+     * Writes v1 text into a buffer and flips it.
+     * @param out The buffer.
+     * @param text The packet text.
+     */
+    private static void encodeText(ByteBuffer out, String text) {
+        out.put(text.getBytes(StandardCharsets.US_ASCII));
+        out.flip();
+    }
+
+    /**
+     * Joins numbers with commas.
+     * @param values The numbers.
+     */
+    private static String join(double[] values) {
+        StringBuilder builder = new StringBuilder();
+        for(int i=0; i<values.length; i++) {
+            if(i > 0) {
+                builder.append(",");
+            }
+            builder.append(String.format("%.3f", values[i])); //plain decimals, the robot parser does not read exponents
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,175 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that a CompiledPath gives the same distances, headings and turns as working them out from the Path's points,
+ * including the distance and turn of the points ahead of the robot that CyborgCommandEmulatePath.execute() used to
+ * work out by copying the points into an array.
+ */
+public class CompiledPathTest {
+    private static final int
+        POINTS = 2000,
+        POINTS_TO_SKIP = 2;
+
+    private static final int[] IMMEDIATE_PATH_SIZES = { 1, 5, 20, 80, 320 };
+
+    private static final double TOLERANCE = 1e-9;
+
+    private Point2D[] points;
+    private Path path;
+    private CompiledPath compiledPath;
+
+    /**
+     * Makes a wavy path and compiles it.
+     */
+    @Before
+    public void createPath() {
+        points = new Point2D[POINTS];
+        for(int i=0; i<POINTS; i++) {
+            double heading = Math.toDegrees(Math.atan2(40 / 30.0 * Math.cos(i / 30.0), 1.5));
+            points[i] = new Point2D(i * 1.5, 40 * Math.sin(i / 30.0), heading);
+        }
+
+        path = new Path(points);
+        compiledPath = path.compile();
+    }
+
+    /**
+     * A path is compiled once and the same CompiledPath is handed out after that.
+     */
+    @Test
+    public void compilesOnce() {
+        assertSame(compiledPath, path.compile());
+    }
+
+    /**
+     * Points, distances and headings match the Path's points.
+     */
+    @Test
+    public void matchesPoints() {
+        assertEquals(POINTS, compiledPath.getPointCount());
+        assertEquals(path.getLength(), compiledPath.getLength(), TOLERANCE);
+
+        double length = 0;
+        for(int i=0; i<POINTS; i++) {
+            if(i > 0) {
+                length += points[i - 1].getDistanceFrom(points[i]);
+            }
+
+            assertEquals(points[i].getX(), compiledPath.getX(i), 0);
+            assertEquals(points[i].getY(), compiledPath.getY(i), 0);
+            assertEquals(points[i].getHeading(), compiledPath.getHeading(i), 0);
+            assertEquals(length, compiledPath.getLengthAt(i), TOLERANCE);
+
+            Point2D robot = getRobot(i);
+            assertEquals(robot.getDistanceFrom(points[i]), compiledPath.getDistanceFrom(robot.getX(), robot.getY(), i), TOLERANCE);
+            assertEquals(robot.getHeadingTo(points[i]), compiledPath.getHeadingFrom(robot.getX(), robot.getY(), i), TOLERANCE);
+        }
+    }
+
+    /**
+     * The turn over a run of points is the sum of the turns at each point.
+     */
+    @Test
+    public void matchesTurns() {
+        for(int first=1; first<POINTS - 1; first+=37) {
+            double turn = 0;
+            for(int last=first; last<Math.min(first + 100, POINTS - 1); last++) {
+                turn += Util.getAngleToHeading(points[last - 1].getHeadingTo(points[last]), points[last].getHeadingTo(points[last + 1]));
+                assertEquals(turn, compiledPath.getTurnBetween(first, last), TOLERANCE);
+            }
+        }
+
+        assertEquals(0, compiledPath.getTurnBetween(10, 9), 0);
+    }
+
+    /**
+     * Distances along the path fall in the segment that holds them, and distances off the ends fall in the end segments.
+     */
+    @Test
+    public void findsSegmentAtLength() {
+        for(int i=0; i<POINTS - 1; i++) {
+            double middle = (compiledPath.getLengthAt(i) + compiledPath.getLengthAt(i + 1)) / 2;
+            assertEquals(i, compiledPath.getSegmentAtLength(middle));
+        }
+
+        assertEquals(0, compiledPath.getSegmentAtLength(-100));
+        assertEquals(POINTS - 2, compiledPath.getSegmentAtLength(compiledPath.getLength() + 100));
+    }
+
+    /**
+     * The distance and turn of the points ahead of the robot match the way execute() used to work them out.
+     */
+    @Test
+    public void matchesImmediatePath() {
+        for(int size : IMMEDIATE_PATH_SIZES) {
+            for(int index=1; index<POINTS - 2; index++) {
+                Point2D robot = getRobot(index);
+                double[] old = getOldDistanceAndTurn(robot, index, size);
+                int start = Math.min(index + POINTS_TO_SKIP, POINTS - 1);
+                int end = Math.min(start + size, POINTS) - 1;
+
+                double distance = compiledPath.getDistanceFrom(robot.getX(), robot.getY(), start) + compiledPath.getLengthBetween(start, end);
+                double headingToStart = compiledPath.getHeadingFrom(robot.getX(), robot.getY(), start);
+                double turn = Util.getAngleToHeading(robot.getHeading(), headingToStart);
+                if(end > start) {
+                    turn += Util.getAngleToHeading(headingToStart, compiledPath.getSegmentHeading(start));
+                    turn += compiledPath.getTurnBetween(start + 1, end - 1);
+                }
+
+                assertEquals("distance, size " + size + " at point " + index, old[0], distance, TOLERANCE);
+                assertEquals("turn, size " + size + " at point " + index, old[1], turn, TOLERANCE);
+            }
+        }
+    }
+
+    /**
+     * Returns a robot location a little off the path near a point, heading along the path.
+     * @param index The point to be near.
+     */
+    private Point2D getRobot(int index) {
+        Point2D point = points[index];
+        return new Point2D(point.getX() + 3 * Math.sin(index), point.getY() + 3 * Math.cos(index), point.getHeading() + 5 * Math.sin(index / 7.0));
+    }
+
+    /**
+     * Works out the distance and turn of the points ahead the way execute() used to, by copying them into an array.
+     * @param robot Where the robot is.
+     * @param index The current point index.
+     * @param size The immediate path size.
+     * @return The distance and the turn.
+     */
+    private double[] getOldDistanceAndTurn(Point2D robot, int index, int size) {
+        int start = Math.min(index + POINTS_TO_SKIP, points.length - 1);
+        int end = Math.min(start + size, points.length);
+        Point2D[] immediatePath = new Point2D[end - start + 1];
+        immediatePath[0] = robot;
+        for(int i=start; i<end; i++) {
+            immediatePath[i - start + 1] = points[i];
+        }
+
+        double distance = 0;
+        for(int i=0; i<immediatePath.length - 1; i++) {
+            distance += immediatePath[i].getDistanceFrom(immediatePath[i + 1]);
+        }
+
+        double turn = 0;
+        double lastHeading = immediatePath[0].getHeading();
+        for(int i=1; i<immediatePath.length; i++) {
+            double headingToPoint = immediatePath[i - 1].getHeadingTo(immediatePath[i]);
+            turn += Util.getAngleToHeading(lastHeading, headingToPoint);
+            lastHeading = headingToPoint;
+        }
+
+        return new double[] { distance, turn };
+    }
+}
@@ -0,0 +1,148 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that PathCache hands out the current path in a file: from the cache while it has not changed, the new one
+ * once it has, and nothing for files that are missing or are not usable paths.
+ */
+public class PathCacheTest {
+    private static final int
+        POINTS = 200,
+        WAIT_MS = 5000,
+        QUIET_MS = 500;
+
+    private java.nio.file.Path directory;
+    private String
+        preloaded,
+        notPreloaded;
+
+    /**
+     * Writes a preloaded path file and one that is not preloaded.
+     * @throws IOException if the files could not be written.
+     */
+    @Before
+    public void writeFiles() throws IOException {
+        directory = Files.createTempDirectory("pathcache");
+        preloaded = directory.resolve("preloaded.txt").toString();
+        notPreloaded = directory.resolve("recorded.txt").toString();
+        writePath(preloaded, POINTS);
+        writePath(notPreloaded, POINTS);
+    }
+
+    /**
+     * Deletes the files.
+     * @throws IOException if the files could not be deleted.
+     */
+    @After
+    public void deleteFiles() throws IOException {
+        Files.deleteIfExists(java.nio.file.Path.of(preloaded));
+        Files.deleteIfExists(java.nio.file.Path.of(notPreloaded));
+        Files.deleteIfExists(directory);
+    }
+
+    /**
+     * A preloaded file is handed out from the cache without being read again.
+     * @throws Exception if the cache did not preload in time.
+     */
+    @Test
+    public void getsPreloadedPathFromCache() throws Exception {
+        PathCache cache = waitForPreload(new PathCache(preloaded));
+        Path first = cache.get(preloaded);
+        assertNotNull(first);
+        assertEquals(POINTS, first.getPointCount());
+        assertSame(first, cache.get(preloaded));
+        assertEquals(0, cache.getMisses());
+    }
+
+    /**
+     * A file that changes is handed out as the new path, whether or not the cache thread has reloaded it yet.
+     * @throws Exception if the file could not be written.
+     */
+    @Test
+    public void getsChangedPath() throws Exception {
+        PathCache cache = waitForPreload(new PathCache(preloaded));
+        cache.get(preloaded);
+        writePath(preloaded, POINTS + 10);
+        assertEquals(POINTS + 10, cache.get(preloaded).getPointCount());
+    }
+
+    /**
+     * A file that is not preloaded, like the path being recorded, is read when it is asked for and is not watched.
+     * @throws Exception if the file could not be written.
+     */
+    @Test
+    public void doesNotWatchFilesThatAreNotPreloaded() throws Exception {
+        PathCache cache = waitForPreload(new PathCache(preloaded));
+        assertEquals(POINTS, cache.get(notPreloaded).getPointCount());
+        assertEquals(1, cache.getMisses());
+
+        writePath(notPreloaded, POINTS + 10);
+        Thread.sleep(QUIET_MS);
+        assertEquals(0, cache.getReloads());
+        assertEquals(POINTS + 10, cache.get(notPreloaded).getPointCount());
+        assertEquals(2, cache.getMisses());
+    }
+
+    /**
+     * Files that are missing or are not usable paths are handed out as null.
+     * @throws Exception if the file could not be written.
+     */
+    @Test
+    public void getsNullForUnusableFiles() throws Exception {
+        PathCache cache = waitForPreload(new PathCache(preloaded));
+        assertNull(cache.get(directory.resolve("missing.txt").toString()));
+
+        Files.writeString(java.nio.file.Path.of(notPreloaded), "0,0,0\n1,2\n3,4,5\n");
+        assertNull(cache.get(notPreloaded));
+
+        Files.writeString(java.nio.file.Path.of(notPreloaded), "0,0,0\n1,1,0\n");
+        assertNull(cache.get(notPreloaded)); //too short to emulate
+    }
+
+    /**
+     * Waits for a cache to finish preloading.
+     * @param cache The cache.
+     * @return The cache.
+     * @throws Exception if it did not preload in time.
+     */
+    private static PathCache waitForPreload(PathCache cache) throws Exception {
+        long start = System.nanoTime();
+        while(!cache.isPreloaded() && (System.nanoTime() - start) / 1000000 < WAIT_MS) {
+            Thread.sleep(1);
+        }
+
+        assertTrue(cache.isPreloaded());
+        return cache;
+    }
+
+    /**
+     * Writes a wavy path file in the recorder's format.
+     * @param file The file to write.
+     * @param pointCount The number of points.
+     * @throws IOException if the file could not be written.
+     */
+    private static void writePath(String file, int pointCount) throws IOException {
+        StringBuilder builder = new StringBuilder(pointCount * 24);
+        for(int i=0; i<pointCount; i++) {
+            builder.append(new Point2D(i * 3, 30 * Math.sin(i / 20.0), 0).toString()).append("\n");
+        }
+
+        Files.writeString(java.nio.file.Path.of(file), builder.toString());
+    }
+}
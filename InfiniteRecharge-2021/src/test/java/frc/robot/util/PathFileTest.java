@@ -0,0 +1,169 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that paths survive being written and read in every path file format, and that damaged or malformed files
+ * are turned away whole instead of read partway.
+ */
+public class PathFileTest {
+    private static final int POINTS = 500;
+
+    private java.nio.file.Path directory;
+    private Point2D[] points;
+
+    /**
+     * Makes the path and a directory to write it to.
+     * @throws IOException if the directory could not be made.
+     */
+    @Before
+    public void createPath() throws IOException {
+        directory = Files.createTempDirectory("pathfile");
+        points = new Point2D[POINTS];
+        for(int i=0; i<POINTS; i++) {
+            points[i] = new Point2D(Math.round(i * 300.0) / 100.0, Math.round(3000 * Math.sin(i / 40.0)) / 100.0, 90 * Math.sin(i / 25.0));
+        }
+    }
+
+    /**
+     * Deletes the directory and everything in it.
+     * @throws IOException if a file could not be deleted.
+     */
+    @After
+    public void deleteFiles() throws IOException {
+        try(java.util.stream.Stream<java.nio.file.Path> files = Files.list(directory)) {
+            for(java.nio.file.Path file : (Iterable<java.nio.file.Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+
+        Files.delete(directory);
+    }
+
+    /**
+     * A text path reads back with the points it was written with, to the recorder's rounding.
+     * @throws IOException if the file could not be written.
+     */
+    @Test
+    public void readsBackTextPath() throws IOException {
+        String file = directory.resolve("path.txt").toString();
+        PathFile.writeText(new Path(points), file);
+        assertFalse(PathFile.isBinary(file));
+        assertSamePoints(new Path(file, false), 0.001);
+    }
+
+    /**
+     * A binary path of either precision reads back with the points it was written with.
+     * @throws IOException if the files could not be written.
+     */
+    @Test
+    public void readsBackBinaryPaths() throws IOException {
+        String floatFile = directory.resolve("path.float").toString();
+        String doubleFile = directory.resolve("path.double").toString();
+        PathFile.writeBinary(new Path(points), floatFile, PathFile.PRECISION_FLOAT);
+        PathFile.writeBinary(new Path(points), doubleFile, PathFile.PRECISION_DOUBLE);
+        assertTrue(PathFile.isBinary(floatFile));
+        assertSamePoints(new Path(floatFile, false), 0.0001);
+        assertSamePoints(new Path(doubleFile, false), 0);
+    }
+
+    /**
+     * A binary path with one bit changed fails its checksum.
+     * @throws IOException if the file could not be written.
+     */
+    @Test(expected = IOException.class)
+    public void rejectsBinaryPathWithFlippedBit() throws IOException {
+        byte[] binary = writeBinary();
+        binary[binary.length / 2] ^= 1;
+        PathFile.readBinary(ByteBuffer.wrap(binary));
+    }
+
+    /**
+     * A binary path that was cut short does not match its header.
+     * @throws IOException if the file could not be written.
+     */
+    @Test(expected = IOException.class)
+    public void rejectsBinaryPathCutShort() throws IOException {
+        byte[] binary = writeBinary();
+        PathFile.readBinary(ByteBuffer.wrap(Arrays.copyOf(binary, binary.length - 8)));
+    }
+
+    /**
+     * A text path with a line that is not a point, like a file caught mid-line while it is written, is not read at all.
+     * @throws IOException if the file could not be written.
+     */
+    @Test
+    public void rejectsTextPathWithBadLine() throws IOException {
+        java.nio.file.Path file = directory.resolve("bad.txt");
+        Files.writeString(file, "0,0,0\n3,0,0\n6,0\n9,0,0\n");
+        Path path = new Path(file.toString(), false);
+        assertFalse(path.isValid());
+        assertEquals(0, path.getPointCount());
+
+        Files.writeString(file, "0,0,0\n3,0,NaN\n");
+        assertFalse(new Path(file.toString(), false).isValid());
+    }
+
+    /**
+     * Blank lines and Windows line endings in a text path are fine.
+     * @throws IOException if the file could not be written.
+     */
+    @Test
+    public void readsTextPathWithBlankLinesAndCRLF() throws IOException {
+        java.nio.file.Path file = directory.resolve("crlf.txt");
+        Files.writeString(file, "0,0,0\r\n\r\n3,0,0\r\n6,0,0\r\n");
+        Path path = new Path(file.toString(), false);
+        assertTrue(path.isValid());
+        assertEquals(3, path.getPointCount());
+        assertEquals(6, path.getLength(), 1e-9);
+    }
+
+    /**
+     * A path made from points cannot hold a null point.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNullPoint() {
+        new Path(new Point2D[] { new Point2D(0, 0, 0), null, new Point2D(1, 0, 0) });
+    }
+
+    /**
+     * Writes the path as a double precision binary file.
+     * @return The contents of the file.
+     * @throws IOException if the file could not be written.
+     */
+    private byte[] writeBinary() throws IOException {
+        java.nio.file.Path file = directory.resolve("path.bin");
+        PathFile.writeBinary(new Path(points), file.toString(), PathFile.PRECISION_DOUBLE);
+        return Files.readAllBytes(file);
+    }
+
+    /**
+     * Checks that a path read back has the points that were written.
+     * @param path The path read back.
+     * @param tolerance How far each value can be off.
+     */
+    private void assertSamePoints(Path path, double tolerance) {
+        assertTrue(path.isValid());
+        assertEquals(POINTS, path.getPointCount());
+        for(int i=0; i<POINTS; i++) {
+            assertEquals(points[i].getX(), path.getPoint(i).getX(), tolerance);
+            assertEquals(points[i].getY(), path.getPoint(i).getY(), tolerance);
+            assertEquals(points[i].getHeading(), path.getPoint(i).getHeading(), tolerance);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import frc.robot.Constants;
+
+/**
+ * Checks the closest spot search of CompiledPath, which uses a PathSegmentGrid, against looking at every segment in
+ * the window, on looping paths shaped like the barrel racing path (which crosses itself).
+ */
+public class PathSegmentGridTest {
+    private static final int CHECKS = 20000;
+
+    private static final int[] LOOPS = { 1, 3, 12 };
+
+    /**
+     * The grid finds a spot as close as the closest spot on any segment in the window, or none when that is too far.
+     */
+    @Test
+    public void matchesScanOfWindow() {
+        Random random = new Random(2021);
+        for(int loops : LOOPS) {
+            CompiledPath path = new Path(makeLoopingPath(loops)).compile();
+            for(int i=0; i<CHECKS; i++) {
+                double progress = random.nextDouble() * path.getLength();
+                int segment = path.getSegmentAtLength(progress);
+                double px = path.getX(segment) + (random.nextDouble() - 0.5) * 60;
+                double py = path.getY(segment) + (random.nextDouble() - 0.5) * 60;
+                double from = progress - Constants.EMULATE_RELOCALIZE_BEHIND;
+                double to = progress + Constants.EMULATE_RELOCALIZE_AHEAD;
+
+                double gridLength = path.findClosestLength(px, py, from, to, Constants.EMULATE_RELOCALIZE_MAX_DISTANCE);
+                double scanLength = findClosestLengthByScan(path, px, py, from, to);
+                double scanDistance = getDistanceAtLength(path, px, py, scanLength);
+                String where = loops + " loops, check " + i;
+                if(scanDistance > Constants.EMULATE_RELOCALIZE_MAX_DISTANCE) {
+                    assertTrue(where + ": found a spot that is too far", Double.isNaN(gridLength));
+                } else {
+                    assertEquals(where, scanDistance, getDistanceAtLength(path, px, py, gridLength), 1e-9);
+                }
+            }
+        }
+    }
+
+    /**
+     * At a crossing the whole path has two equally close passes, and the window keeps the one being driven.
+     */
+    @Test
+    public void keepsThePassBeingDriven() {
+        CompiledPath path = new Path(makeLoopingPath(1)).compile();
+        double firstPass = 0, secondPass = 0;
+        double closestApproach = Double.MAX_VALUE;
+        for(int i=0; i<path.getPointCount(); i++) {
+            for(int j=i + 20; j<path.getPointCount(); j++) {
+                double distance = Math.hypot(path.getX(i) - path.getX(j), path.getY(i) - path.getY(j));
+                if(distance < closestApproach) {
+                    closestApproach = distance;
+                    firstPass = path.getLengthAt(i);
+                    secondPass = path.getLengthAt(j);
+                }
+            }
+        }
+
+        int crossing = path.getSegmentAtLength(secondPass);
+        double px = path.getX(crossing);
+        double py = path.getY(crossing);
+        double onFirst = path.findClosestLength(px, py, firstPass - Constants.EMULATE_RELOCALIZE_BEHIND, firstPass + Constants.EMULATE_RELOCALIZE_AHEAD, Constants.EMULATE_RELOCALIZE_MAX_DISTANCE);
+        double onSecond = path.findClosestLength(px, py, secondPass - Constants.EMULATE_RELOCALIZE_BEHIND, secondPass + Constants.EMULATE_RELOCALIZE_AHEAD, Constants.EMULATE_RELOCALIZE_MAX_DISTANCE);
+        assertEquals(firstPass, onFirst, Constants.PATH_RECORDER_DISTANCE_INTERVAL);
+        assertEquals(secondPass, onSecond, Constants.PATH_RECORDER_DISTANCE_INTERVAL);
+    }
+
+    /**
+     * A path without a segment has no closest spot.
+     */
+    @Test
+    public void findsNothingOnOnePointPath() {
+        CompiledPath path = new Path(new Point2D[] { new Point2D(0, 0, 0) }).compile();
+        assertTrue(Double.isNaN(path.findClosestLength(0, 0, 0, 100, 100)));
+    }
+
+    /**
+     * Makes a path that loops around markers like the barrel racing path, in the recorder's point spacing.
+     * @param loops The number of loops.
+     */
+    private static Point2D[] makeLoopingPath(int loops) {
+        double radius = 36;
+        int pointsPerLoop = (int) (2 * Math.PI * radius / Constants.PATH_RECORDER_DISTANCE_INTERVAL);
+        int straightPoints = (int) (90 / Constants.PATH_RECORDER_DISTANCE_INTERVAL);
+        Point2D[] points = new Point2D[loops * (pointsPerLoop + straightPoints)];
+        int count = 0;
+        for(int loop=0; loop<loops; loop++) {
+            double centerX = 60 + loop * 90;
+            double startX = (loop == 0 ? 0 : centerX - 90);
+            //in along the center line, then once around a marker to cross back over it
+            for(int i=0; i<straightPoints; i++) {
+                double fraction = i / (double) straightPoints;
+                points[count++] = new Point2D(startX + fraction * (centerX - startX), 0, 0);
+            }
+
+            for(int i=0; i<pointsPerLoop; i++) {
+                double angle = 2 * Math.PI * i / pointsPerLoop;
+                points[count++] = new Point2D(centerX + radius * Math.sin(angle), radius - radius * Math.cos(angle), Math.toDegrees(angle));
+            }
+        }
+
+        return Arrays.copyOf(points, count);
+    }
+
+    /**
+     * Finds the closest spot on part of the path by looking at every segment in it.
+     * @param path The path.
+     * @param px The x coordinate of the location.
+     * @param py The y coordinate of the location.
+     * @param fromLength Where the part of the path starts.
+     * @param toLength Where the part of the path ends.
+     * @return The distance along the path of the closest spot.
+     */
+    private static double findClosestLengthByScan(CompiledPath path, double px, double py, double fromLength, double toLength) {
+        double closestLength = Double.NaN;
+        double closestDistance = Double.MAX_VALUE;
+        for(int segment=path.getSegmentAtLength(fromLength); segment<=path.getSegmentAtLength(toLength); segment++) {
+            double ax = path.getX(segment), ay = path.getY(segment);
+            double dx = path.getX(segment + 1) - ax, dy = path.getY(segment + 1) - ay;
+            double lengthSquared = dx * dx + dy * dy;
+            double fraction = (lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lengthSquared)));
+            double distance = Math.hypot(ax + fraction * dx - px, ay + fraction * dy - py);
+            if(distance < closestDistance) {
+                closestDistance = distance;
+                closestLength = path.getLengthAt(segment) + fraction * path.getLengthBetween(segment, segment + 1);
+            }
+        }
+
+        return closestLength;
+    }
+
+    /**
+     * Returns the distance from a location to the spot at a distance along the path.
+     * @param path The path.
+     * @param px The x coordinate of the location.
+     * @param py The y coordinate of the location.
+     * @param length The distance along the path.
+     */
+    private static double getDistanceAtLength(CompiledPath path, double px, double py, double length) {
+        int segment = path.getSegmentAtLength(length);
+        double segmentLength = path.getLengthBetween(segment, segment + 1);
+        double fraction = (segmentLength == 0 ? 0 : (length - path.getLengthAt(segment)) / segmentLength);
+        double x = path.getX(segment) + fraction * (path.getX(segment + 1) - path.getX(segment));
+        double y = path.getY(segment) + fraction * (path.getY(segment + 1) - path.getY(segment));
+        return Math.hypot(x - px, y - py);
+    }
+}
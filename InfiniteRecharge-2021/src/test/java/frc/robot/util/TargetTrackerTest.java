@@ -0,0 +1,150 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import frc.robot.Constants;
+
+/**
+ * Checks TargetTracker with the default tuning against noisy KiwiLight frames of a target whose bearing swings like
+ * it does while the robot drives: the innovations match the noise the filter expects, the bearing it predicts to
+ * the time the turret is aimed is closer than the latest frame, and it settles quickly on a new target.
+ */
+public class TargetTrackerTest {
+    private static final long
+        FRAME_NANOS = 33000000, //about 30 frames per second
+        AIM_DELAY_NANOS = (Constants.KIWILIGHT_PIPELINE_LATENCY_MS + 10) * 1000000L; //half a robot loop after the packet arrives
+
+    private static final int
+        FRAMES = 3000,
+        SETTLE_FRAMES = 30, //frames thrown out while a track starts
+        SETTLED_WITHIN_FRAMES = 6;
+
+    private static final double DISTANCE = 200;
+
+    //bearing swings, as {frequency in Hz, amplitude in degrees}
+    private static final double[][] SWINGS = {
+        {0, 0},
+        {0.25, 10},
+        {0.5, 10},
+        {0.5, 20}
+    };
+
+    private TargetTracker tracker;
+    private Random random;
+
+    /**
+     * Makes a tracker with the default tuning.
+     */
+    @Before
+    public void createTracker() {
+        tracker = new TargetTracker(
+            Constants.KIWILIGHT_TRACKER_BEARING_PROCESS_NOISE,
+            Constants.KIWILIGHT_TRACKER_BEARING_MEASUREMENT_NOISE,
+            Constants.KIWILIGHT_TRACKER_DISTANCE_PROCESS_NOISE,
+            Constants.KIWILIGHT_TRACKER_DISTANCE_MEASUREMENT_NOISE,
+            Constants.KIWILIGHT_TRACKER_INNOVATION_GATE
+        );
+
+        random = new Random(2021); //same noise every run
+    }
+
+    /**
+     * The mean normalized innovation squared stays near 1 and the track is never restarted, so the noise values fit
+     * the way the bearing really moves.
+     */
+    @Test
+    public void keepsNormalizedInnovationNearOne() {
+        for(double[] swing : SWINGS) {
+            tracker.reset();
+            tracker.resetStatistics();
+            track(swing);
+            String where = swing[1] + " degrees at " + swing[0] + " Hz";
+            assertEquals(where + ": restarts", 0, tracker.getResets());
+            double meanNormalizedInnovation = tracker.getMeanNormalizedInnovation();
+            assertTrue(where + ": mean NIS " + meanNormalizedInnovation, meanNormalizedInnovation > 0.5 && meanNormalizedInnovation < 2);
+        }
+    }
+
+    /**
+     * The bearing predicted to the time the turret is aimed is closer to the target than the bearing in the latest
+     * frame, which is what the turret aims at with the tracker off.
+     */
+    @Test
+    public void predictsBetterThanLatestFrame() {
+        for(double[] swing : SWINGS) {
+            tracker.reset();
+            double[] errors = track(swing);
+            String where = swing[1] + " degrees at " + swing[0] + " Hz";
+            assertTrue(where + ": tracked " + errors[1] + " vs frame " + errors[0], errors[1] < errors[0]);
+        }
+    }
+
+    /**
+     * When KiwiLight switches to a different target the track restarts on it, and within a few frames the bearing is
+     * as good as one frame.
+     */
+    @Test
+    public void settlesOnNewTarget() {
+        double measurementDeviation = Math.sqrt(Constants.KIWILIGHT_TRACKER_BEARING_MEASUREMENT_NOISE);
+        long time = 0;
+        for(int i=0; i<SETTLE_FRAMES; i++, time+=FRAME_NANOS) {
+            tracker.update(time, random.nextGaussian() * measurementDeviation, DISTANCE);
+        }
+
+        double newBearing = 15;
+        for(int i=0; i<SETTLED_WITHIN_FRAMES; i++, time+=FRAME_NANOS) {
+            tracker.update(time, newBearing + random.nextGaussian() * measurementDeviation, DISTANCE);
+        }
+
+        assertEquals(1, tracker.getResets());
+        assertTrue(tracker.getBearingStandardDeviation() < measurementDeviation);
+        assertEquals(newBearing, tracker.getBearing(time - FRAME_NANOS), 2 * measurementDeviation);
+    }
+
+    /**
+     * Feeds the tracker noisy frames of a target whose bearing swings back and forth.
+     * @param swing The frequency in Hz and amplitude in degrees of the swing.
+     * @return The root mean square error of the latest frame and of the tracked bearing at the time the turret is aimed,
+     * in degrees, after the track has started.
+     */
+    private double[] track(double[] swing) {
+        double measurementDeviation = Math.sqrt(Constants.KIWILIGHT_TRACKER_BEARING_MEASUREMENT_NOISE);
+        double frameSquaredSum = 0, trackedSquaredSum = 0;
+        for(int i=0; i<FRAMES; i++) {
+            long captureTime = i * FRAME_NANOS;
+            double measured = getBearing(swing, captureTime) + random.nextGaussian() * measurementDeviation;
+            tracker.update(captureTime, measured, DISTANCE);
+            if(i < SETTLE_FRAMES) {
+                tracker.resetStatistics();
+                continue;
+            }
+
+            long aimTime = captureTime + AIM_DELAY_NANOS;
+            double actual = getBearing(swing, aimTime);
+            frameSquaredSum += (measured - actual) * (measured - actual);
+            trackedSquaredSum += (tracker.getBearing(aimTime) - actual) * (tracker.getBearing(aimTime) - actual);
+        }
+
+        int counted = FRAMES - SETTLE_FRAMES;
+        return new double[] { Math.sqrt(frameSquaredSum / counted), Math.sqrt(trackedSquaredSum / counted) };
+    }
+
+    /**
+     * Returns the bearing to the target at a time.
+     * @param swing The frequency in Hz and amplitude in degrees of the swing.
+     * @param timeNanos The time.
+     */
+    private static double getBearing(double[] swing, long timeNanos) {
+        return swing[1] * Math.sin(2 * Math.PI * swing[0] * timeNanos / 1E9);
+    }
+}
@@ -0,0 +1,203 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import frc.robot.Constants;
+
+/**
+ * Checks that trajectories for paths shaped like the slalom, barrel racing and bounce paths keep both wheels under the
+ * max velocity and acceleration, and stop wherever the robot has to.
+ */
+public class TrajectoryGeneratorTest {
+    private static final double
+        MAX_VELOCITY = 90,
+        MAX_ACCELERATION = 120,
+        COEFFICIENT_OF_FRICTION = 1,
+        ACCELERATION_TOLERANCE = 0.01, //segment velocities are averages, so the change between two is only close to the real one
+        TOLERANCE = 1e-9;
+
+    private TrajectoryGenerator generator;
+    private List<CompiledPath> paths;
+
+    /**
+     * Makes the generator and the paths.
+     */
+    @Before
+    public void createPaths() {
+        generator = new TrajectoryGenerator(MAX_VELOCITY, MAX_ACCELERATION, COEFFICIENT_OF_FRICTION);
+        paths = new ArrayList<CompiledPath>();
+        paths.add(makeSlalom().compile());
+        paths.add(makeBarrel().compile());
+        paths.add(makeBounce().compile());
+    }
+
+    /**
+     * Neither wheel goes faster than the max velocity, including the outside wheel of a turn.
+     */
+    @Test
+    public void keepsWheelsUnderMaxVelocity() {
+        for(int p=0; p<paths.size(); p++) {
+            TrajectorySegment[] trajectory = generator.generate(paths.get(p));
+            for(int i=0; i<trajectory.length; i++) {
+                double fastest = Math.max(Math.abs(trajectory[i].getLeftVelocity()), Math.abs(trajectory[i].getRightVelocity()));
+                assertTrue("path " + p + ", segment " + i + ": " + fastest + " in/s", fastest <= MAX_VELOCITY + TOLERANCE);
+            }
+        }
+    }
+
+    /**
+     * Neither wheel changes speed faster than the max acceleration, including going into and out of turns.
+     */
+    @Test
+    public void keepsWheelsUnderMaxAcceleration() {
+        for(int p=0; p<paths.size(); p++) {
+            TrajectorySegment[] trajectory = generator.generate(paths.get(p));
+            for(int i=1; i<trajectory.length; i++) {
+                double time = (trajectory[i].getTime() + trajectory[i - 1].getTime()) / 2;
+                if(time == 0) {
+                    continue;
+                }
+
+                double leftChange = Math.abs(trajectory[i].getLeftVelocity() - trajectory[i - 1].getLeftVelocity());
+                double rightChange = Math.abs(trajectory[i].getRightVelocity() - trajectory[i - 1].getRightVelocity());
+                double acceleration = Math.max(leftChange, rightChange) / time;
+                assertTrue("path " + p + ", segment " + i + ": " + acceleration + " in/s^2", acceleration <= MAX_ACCELERATION * (1 + ACCELERATION_TOLERANCE));
+            }
+        }
+    }
+
+    /**
+     * The robot is stopped at both ends and where it changes between driving forwards and backwards, so the segments
+     * next to those points take at least as long as speeding up from a stop.
+     */
+    @Test
+    public void stopsAtEndsAndDirectionChanges() {
+        int directionChanges = 0;
+        for(int p=0; p<paths.size(); p++) {
+            TrajectorySegment[] trajectory = generator.generate(paths.get(p));
+            for(int i=0; i<trajectory.length; i++) {
+                boolean changesBefore = i > 0 && trajectory[i - 1].getIsForwards() != trajectory[i].getIsForwards();
+                boolean changesAfter = i < trajectory.length - 1 && trajectory[i + 1].getIsForwards() != trajectory[i].getIsForwards();
+                if(i == 0 || i == trajectory.length - 1 || changesBefore || changesAfter) {
+                    double fromStop = Math.sqrt(2 * trajectory[i].getDistance() / MAX_ACCELERATION);
+                    assertTrue("path " + p + ", segment " + i, trajectory[i].getTime() >= fromStop - TOLERANCE);
+                }
+
+                if(changesBefore) {
+                    directionChanges++;
+                }
+            }
+        }
+
+        assertEquals(1, directionChanges); //the bounce
+    }
+
+    /**
+     * The trajectory takes as long as its segments, and a path with one point has none.
+     */
+    @Test
+    public void addsUpSegmentTimes() {
+        TrajectorySegment[] trajectory = generator.generate(paths.get(0));
+        assertEquals(paths.get(0).getPointCount() - 1, trajectory.length);
+
+        double time = 0;
+        for(TrajectorySegment segment : trajectory) {
+            assertTrue(segment.getTime() > 0);
+            time += segment.getTime();
+        }
+
+        assertEquals(time, TrajectoryGenerator.getTime(trajectory), TOLERANCE);
+        assertEquals(0, generator.generate(new Path(new Point2D[] { new Point2D(0, 0, 0) }).compile()).length);
+    }
+
+    /**
+     * Makes a path that weaves between markers like the slalom path.
+     */
+    private static Path makeSlalom() {
+        List<Point2D> points = new ArrayList<Point2D>();
+        for(double x=0; x<=300; x+=Constants.PATH_RECORDER_DISTANCE_INTERVAL / 2) {
+            double y = 30 * Math.sin(x / 300 * 4 * Math.PI);
+            double heading = Math.toDegrees(Math.atan(30 * 4 * Math.PI / 300 * Math.cos(x / 300 * 4 * Math.PI)));
+            addSpaced(points, new Point2D(x, y, heading));
+        }
+
+        return new Path(points.toArray(new Point2D[0]));
+    }
+
+    /**
+     * Makes a path that loops around three markers like the barrel racing path.
+     */
+    private static Path makeBarrel() {
+        List<Point2D> points = new ArrayList<Point2D>();
+        double radius = 30;
+        double[] centers = { 90, 180, 270 };
+        double x = 0;
+        for(int marker=0; marker<centers.length; marker++) {
+            for(; x<centers[marker]; x+=1) {
+                addSpaced(points, new Point2D(x, 0, 0));
+            }
+
+            //all the way around, clockwise for the first two and counterclockwise for the last
+            double direction = (marker < 2 ? -1 : 1);
+            for(double angle=0; angle<2 * Math.PI; angle+=0.01) {
+                double px = centers[marker] + radius * Math.sin(angle);
+                double py = direction * (radius - radius * Math.cos(angle));
+                addSpaced(points, new Point2D(px, py, direction * Math.toDegrees(angle)));
+            }
+        }
+
+        for(; x<=360; x+=1) {
+            addSpaced(points, new Point2D(x, 0, 0));
+        }
+
+        return new Path(points.toArray(new Point2D[0]));
+    }
+
+    /**
+     * Makes a path that drives out and backs up around a marker like one bounce of the bounce path.
+     */
+    private static Path makeBounce() {
+        List<Point2D> points = new ArrayList<Point2D>();
+        //forwards: a quarter turn to the left, then straight out
+        for(double angle=0; angle<Math.PI / 2; angle+=0.01) {
+            addSpaced(points, new Point2D(40 * Math.sin(angle), 40 - 40 * Math.cos(angle), Math.toDegrees(angle)));
+        }
+
+        for(double y=40; y<=100; y+=1) {
+            addSpaced(points, new Point2D(40, y, 90));
+        }
+
+        //backwards: straight back, then a quarter turn, still facing away from where the robot is going
+        for(double y=100; y>40; y-=1) {
+            addSpaced(points, new Point2D(40, y, 90));
+        }
+
+        for(double angle=0; angle<=Math.PI / 2; angle+=0.01) {
+            addSpaced(points, new Point2D(80 - 40 * Math.cos(angle), 40 - 40 * Math.sin(angle), 90 + Math.toDegrees(angle)));
+        }
+
+        return new Path(points.toArray(new Point2D[0]));
+    }
+
+    /**
+     * Adds a point to a path if it is at least the recorder's distance from the last one, like PathRecorder.
+     * @param points The path.
+     * @param point The point to add.
+     */
+    private static void addSpaced(List<Point2D> points, Point2D point) {
+        if(points.isEmpty() || points.get(points.size() - 1).getDistanceFrom(point) >= Constants.PATH_RECORDER_DISTANCE_INTERVAL) {
+            points.add(point);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that a log written by VisionRecorder reads back through VisionLogReader with every datagram, port and
+ * receive time it was recorded with, including a log that was cut off partway through a record.
+ */
+public class VisionRecorderTest {
+    private static final int
+        DATAGRAMS = 3000,
+        FIRST_PORT = 3695,
+        SECOND_PORT = 5810,
+        CLOSE_WAIT_MS = 5000;
+
+    private java.nio.file.Path log;
+
+    /**
+     * Makes the file to record to.
+     * @throws IOException if the file could not be made.
+     */
+    @Before
+    public void createLog() throws IOException {
+        log = Files.createTempFile("vision", ".vlog");
+    }
+
+    /**
+     * Deletes the file.
+     * @throws IOException if the file could not be deleted.
+     */
+    @After
+    public void deleteLog() throws IOException {
+        Files.deleteIfExists(log);
+    }
+
+    /**
+     * Every datagram reads back from the log as it was recorded.
+     * @throws Exception if the log could not be written or read.
+     */
+    @Test
+    public void readsBackEveryDatagram() throws Exception {
+        long expectedSize = record(DATAGRAMS);
+
+        VisionLogReader reader = new VisionLogReader(log);
+        assertEquals(expectedSize, Files.size(log));
+        for(int i=0; i<DATAGRAMS; i++) {
+            assertTrue("datagram " + i + " missing", reader.next());
+            assertEquals(getPort(i), reader.getPort());
+            assertEquals(getReceiveTimeNanos(i) - getReceiveTimeNanos(0), reader.getTimeNanos());
+            ByteBuffer packet = reader.getPacket();
+            byte[] contents = new byte[packet.remaining()];
+            packet.get(contents);
+            assertArrayEquals(makeDatagram(i), contents);
+        }
+
+        assertFalse(reader.next());
+    }
+
+    /**
+     * Replaying one port feeds the handler only that port's datagrams.
+     * @throws Exception if the log could not be written or read.
+     */
+    @Test
+    public void replaysOnePort() throws Exception {
+        record(DATAGRAMS);
+
+        int[] handled = new int[1];
+        int failures = new VisionLogReader(log).replay(SECOND_PORT, (packet, receiveTimeNanos) -> {
+            handled[0]++;
+            return packet.remaining() % 2 == 0;
+        }, 0);
+
+        int expectedHandled = 0, expectedFailures = 0;
+        for(int i=0; i<DATAGRAMS; i++) {
+            if(getPort(i) == SECOND_PORT) {
+                expectedHandled++;
+                expectedFailures += makeDatagram(i).length % 2;
+            }
+        }
+
+        assertEquals(expectedHandled, handled[0]);
+        assertEquals(expectedFailures, failures);
+    }
+
+    /**
+     * A log cut off in the middle of a record, like one from a robot that lost power, reads up to the last whole record.
+     * @throws Exception if the log could not be written or read.
+     */
+    @Test
+    public void readsCutOffLogUpToTheLastWholeRecord() throws Exception {
+        long size = record(10);
+        byte[] contents = Files.readAllBytes(log);
+        int lastLength = makeDatagram(9).length;
+        Files.write(log, Arrays.copyOf(contents, (int) size - lastLength / 2));
+
+        VisionLogReader reader = new VisionLogReader(log);
+        int read = 0;
+        while(reader.next()) {
+            read++;
+        }
+
+        assertEquals(9, read);
+    }
+
+    /**
+     * Records datagrams, closes the recorder and waits for its writer thread to write them.
+     * @param count The number of datagrams.
+     * @return The size of the finished log in bytes.
+     * @throws Exception if the log could not be written in time.
+     */
+    private long record(int count) throws Exception {
+        VisionRecorder recorder = new VisionRecorder(log);
+        long expectedSize = VisionRecorder.FILE_HEADER_SIZE;
+        for(int i=0; i<count; i++) {
+            byte[] datagram = makeDatagram(i);
+            recorder.record(getPort(i), getReceiveTimeNanos(i), ByteBuffer.wrap(datagram));
+            expectedSize += VisionRecorder.RECORD_HEADER_SIZE + datagram.length;
+        }
+
+        recorder.close(); //does not wait for the writer thread
+        assertEquals(count, recorder.getRecorded());
+        assertEquals(0, recorder.getDropped());
+
+        long waitStart = System.nanoTime();
+        while(recorder.getBytesWritten() < expectedSize && (System.nanoTime() - waitStart) / 1000000 < CLOSE_WAIT_MS) {
+            Thread.sleep(1);
+        }
+
+        assertEquals(expectedSize, recorder.getBytesWritten());
+        return expectedSize;
+    }
+
+    /**
+     * Returns the port a datagram arrives on. Mostly the first port, like KiwiLight next to a slower Jevois.
+     * @param index The index of the datagram.
+     */
+    private static int getPort(int index) {
+        return (index % 3 == 0 ? SECOND_PORT : FIRST_PORT);
+    }
+
+    /**
+     * Returns when a datagram arrives, in whole microseconds so the log can hold it exactly.
+     * @param index The index of the datagram.
+     */
+    private static long getReceiveTimeNanos(int index) {
+        return 1000000000L + index * 11000L * 1000 + (index % 7) * 1000;
+    }
+
+    /**
+     * Makes a datagram whose length and contents depend on its index.
+     * @param index The index of the datagram.
+     */
+    private static byte[] makeDatagram(int index) {
+        byte[] datagram = new byte[20 + (index * 37) % 180];
+        for(int i=0; i<datagram.length; i++) {
+            datagram[i] = (byte) (index * 31 + i);
+        }
+
+        return datagram;
+    }
+}
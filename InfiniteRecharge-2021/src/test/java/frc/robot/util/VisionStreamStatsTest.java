@@ -0,0 +1,113 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Checks that VisionStreamStats accepts and counts packets the way the vision subsystems rely on: in order, late,
+ * duplicated, wrapping around, and after the sender restarts and counts from 0 again.
+ */
+public class VisionStreamStatsTest {
+    /**
+     * Every packet of an in-order stream is accepted and nothing is lost.
+     */
+    @Test
+    public void acceptsPacketsInOrder() {
+        VisionStreamStats stats = new VisionStreamStats("Test");
+        assertEquals(5000, send(stats, 0, 5000));
+        assertEquals(5000, stats.getReceived());
+        assertEquals(0, stats.getLost());
+    }
+
+    /**
+     * A skipped packet is lost until it arrives late, and is then counted as reordered instead.
+     */
+    @Test
+    public void rejectsLatePackets() {
+        VisionStreamStats stats = new VisionStreamStats("Test");
+        send(stats, 0, 10);
+        assertTrue(record(stats, 11));
+        assertEquals(1, stats.getLost());
+
+        assertFalse(record(stats, 10));
+        assertEquals(1, stats.getReordered());
+        assertEquals(0, stats.getLost());
+    }
+
+    /**
+     * A packet that arrives twice is only accepted the first time.
+     */
+    @Test
+    public void rejectsDuplicates() {
+        VisionStreamStats stats = new VisionStreamStats("Test");
+        send(stats, 0, 10);
+        assertFalse(record(stats, 9));
+        assertFalse(record(stats, 5));
+        assertEquals(2, stats.getDuplicates());
+        assertEquals(10, stats.getReceived());
+    }
+
+    /**
+     * A sender that restarts and counts from 0 again has every packet after the restart accepted.
+     */
+    @Test
+    public void startsOverWhenTheSenderRestarts() {
+        VisionStreamStats stats = new VisionStreamStats("Test");
+        send(stats, 0, 5000);
+        assertEquals(1000, send(stats, 0, 1000));
+        assertEquals(1, stats.getRestarts());
+        assertEquals(0, stats.getReordered());
+        assertEquals(0, stats.getLost());
+
+        //late packets are judged against the new sequence, and are not another restart
+        assertTrue(record(stats, 1001));
+        assertFalse(record(stats, 1000));
+        assertEquals(1, stats.getRestarts());
+    }
+
+    /**
+     * Sequence numbers that wrap past the largest int are still in order, not a restart.
+     */
+    @Test
+    public void acceptsWrappingSequences() {
+        VisionStreamStats stats = new VisionStreamStats("Test");
+        assertEquals(20, send(stats, Integer.MAX_VALUE - 10, 20));
+        assertEquals(0, stats.getRestarts());
+        assertEquals(0, stats.getLost());
+    }
+
+    /**
+     * Records a run of packets in order.
+     * @param stats The stats to record to.
+     * @param first The first sequence number.
+     * @param count The number of packets.
+     * @return The number of packets accepted.
+     */
+    private static int send(VisionStreamStats stats, int first, int count) {
+        int accepted = 0;
+        for(int i=0; i<count; i++) {
+            if(record(stats, first + i)) {
+                accepted++;
+            }
+        }
+
+        return accepted;
+    }
+
+    /**
+     * Records one packet, captured now.
+     * @param stats The stats to record to.
+     * @param sequence The sequence number.
+     * @return True if the packet was accepted.
+     */
+    private static boolean record(VisionStreamStats stats, int sequence) {
+        return stats.record(sequence, System.currentTimeMillis() * 1000, System.nanoTime());
+    }
+}